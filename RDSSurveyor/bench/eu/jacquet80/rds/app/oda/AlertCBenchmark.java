@@ -0,0 +1,112 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.app.oda;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.bench.Corpus;
+import eu.jacquet80.rds.core.TunedStation;
+import eu.jacquet80.rds.input.group.GroupEvent;
+
+/**
+ * Measures {@link AlertC#receiveGroup(PrintWriter, int, int, int[], boolean[], eu.jacquet80.rds.log.RDSTime)}
+ * on the 8A groups of the station corpus, which carry single-group and
+ * multi-group messages. Locations are looked up in the location table of
+ * the corpus, imported into an in-memory database. Scores are per group.
+ */
+@State(Scope.Thread)
+public class AlertCBenchmark {
+	/** Number of 8A groups passed per invocation */
+	private final static int GROUPS = 1024;
+	
+	private final static PrintWriter NULL_CONSOLE = new PrintWriter(new Writer() {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			// NOP
+		}
+		
+		@Override
+		public void flush() {
+			// NOP
+		}
+		
+		@Override
+		public void close() {
+			// NOP
+		}
+	});
+	
+	private final static boolean[] ALL_OK = {true, true, true, true};
+	
+	private AlertC alertC;
+	private GroupEvent[] groups;
+	private int next = 0;
+	
+	@Setup
+	public void setup() throws IOException {
+		TMC.setDbUrl("jdbc:hsqldb:mem:alertcbench");
+		TMC.readLocationTables(Corpus.LOCATION_TABLES);
+		
+		List<GroupEvent> all = Corpus.readGroups();
+		GroupEvent first = all.get(0);
+		alertC = new AlertC();
+		alertC.setStation(new TunedStation(first.blocks[0], first.getTime()));
+		for(GroupEvent g : Corpus.filter(all, 3, 0)) {
+			alertC.receiveGroup(NULL_CONSOLE, 3, 0, g.blocks, ALL_OK, g.getTime());
+		}
+		
+		groups = Corpus.filter(all, 8, 0).toArray(new GroupEvent[0]);
+		
+		// warm the location caches
+		for(GroupEvent g : groups) alertC.receiveGroup(NULL_CONSOLE, 8, 0, g.blocks, ALL_OK, g.getTime());
+	}
+	
+	@TearDown
+	public void tearDown() {
+		TMC.setDbUrl("jdbc:hsqldb:mem:.");
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(GROUPS)
+	public void receiveGroup() {
+		for(int i=0; i<GROUPS; i++) {
+			GroupEvent g = groups[next];
+			alertC.receiveGroup(NULL_CONSOLE, 8, 0, g.blocks, ALL_OK, g.getTime());
+			if(++next == groups.length) next = 0;
+		}
+	}
+}
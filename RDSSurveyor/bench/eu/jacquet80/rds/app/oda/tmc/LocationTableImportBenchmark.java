@@ -0,0 +1,160 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import eu.jacquet80.rds.bench.Corpus;
+
+/**
+ * @brief Measures how long it takes to import location tables.
+ *
+ * The location tables are imported into a new file database for each combination of batch size
+ * and number of parsing threads, and are also compiled with {@link LocationTableCompiler}. The
+ * time it takes to open the result and look up one location is measured too, as this is what
+ * determines the startup time of the application.
+ *
+ * The location tables of the corpus are used, unless another directory is given with
+ * {@code -p lt=<lt path>}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LocationTableImportBenchmark {
+	/**
+	 * @brief The location tables, and a directory for the databases built from them.
+	 *
+	 * Progress messages of the import are silenced.
+	 */
+	@State(Scope.Thread)
+	public static class Tables {
+		@Param({""})
+		public String lt;
+
+		File path;
+		File dir;
+		private int next = 0;
+		private PrintStream out;
+
+		@Setup
+		public void setup() throws IOException {
+			path = lt.isEmpty() ? Corpus.LOCATION_TABLES : new File(lt);
+			dir = File.createTempFile("ltbench", "");
+			dir.delete();
+			dir.mkdir();
+			out = System.out;
+			System.setOut(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+					// NOP
+				}
+			}));
+		}
+
+		@TearDown
+		public void tearDown() {
+			System.setOut(out);
+			TMC.setDbUrl("jdbc:hsqldb:mem:.");
+			TMC.setImportBatchSize(1000);
+			TMC.setImportThreads(Runtime.getRuntime().availableProcessors());
+			delete(dir);
+		}
+
+		/**
+		 * @brief Returns the URL of a new file database.
+		 *
+		 * The database is shut down when it is closed, so that opening it again is measured.
+		 */
+		String newDbUrl() {
+			return "jdbc:hsqldb:file:" + new File(dir, "db" + next++).getPath() + ";shutdown=true";
+		}
+
+		private static void delete(File file) {
+			File[] files = file.listFiles();
+			if (files != null)
+				for (File f : files)
+					delete(f);
+			file.delete();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ImportSettings {
+		@Param({"1", "100", "1000", "10000"})
+		public int batchSize;
+
+		@Param({"1", "4"})
+		public int threads;
+
+		@Setup
+		public void setup() {
+			TMC.setImportBatchSize(batchSize);
+			TMC.setImportThreads(threads);
+		}
+	}
+
+	/**
+	 * @brief A database imported once, and closed before each measurement.
+	 */
+	@State(Scope.Thread)
+	public static class Imported {
+		String url;
+
+		@Setup
+		public void setup(Tables tables) {
+			url = tables.newDbUrl();
+			TMC.setDbUrl(url);
+			TMC.readLocationTables(tables.path);
+		}
+	}
+
+	/**
+	 * @brief A compiled location table.
+	 */
+	@State(Scope.Thread)
+	public static class Compiled {
+		String url;
+
+		@Setup
+		public void setup(Tables tables) throws IOException {
+			File compiled = new File(tables.dir, "lt.bin");
+			LocationTableCompiler.compile(tables.path, compiled);
+			url = "ltc:" + compiled.getPath();
+		}
+	}
+
+	@Benchmark
+	public void importTables(Tables tables, ImportSettings settings) {
+		TMC.setDbUrl(tables.newDbUrl());
+		TMC.readLocationTables(tables.path);
+	}
+
+	@Benchmark
+	public void compile(Tables tables) throws IOException {
+		LocationTableCompiler.compile(tables.path, new File(tables.dir, "lt" + tables.next++ + ".bin"));
+	}
+
+	@Benchmark
+	public TMCLocation openImported(Imported imported) {
+		// the database is closed, then opened again
+		TMC.setDbUrl(imported.url);
+		return TMC.getLocation(Corpus.CID, Corpus.TABCD, Corpus.FIRST_POINT);
+	}
+
+	@Benchmark
+	public TMCLocation openCompiled(Compiled compiled) {
+		TMC.setDbUrl(compiled.url);
+		return TMC.getLocation(Corpus.CID, Corpus.TABCD, Corpus.FIRST_POINT);
+	}
+}
@@ -0,0 +1,64 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import eu.jacquet80.rds.bench.Corpus;
+
+/**
+ * @brief Measures location lookups in the location table of the corpus.
+ *
+ * The location table is either imported into an in-memory HSQLDB database, or compiled with
+ * {@link LocationTableCompiler}. Lookups are either cold, with caches of a single entry, so that
+ * each lookup goes to the database, or warm, with all points already in the cache.
+ */
+@State(Scope.Thread)
+public class TMCBenchmark {
+	@Param({"hsqldb", "compiled"})
+	public String backend;
+
+	@Param({"cold", "warm"})
+	public String cache;
+
+	private File compiled;
+	private int next = Corpus.FIRST_POINT;
+
+	@Setup
+	public void setup() throws IOException {
+		TMC.setCacheSize("cold".equals(cache) ? 1 : 100000);
+		if ("compiled".equals(backend)) {
+			compiled = File.createTempFile("tmcbench", ".bin");
+			LocationTableCompiler.compile(Corpus.LOCATION_TABLES, compiled);
+			TMC.setDbUrl("ltc:" + compiled.getPath());
+		} else {
+			TMC.setDbUrl("jdbc:hsqldb:mem:tmcbench");
+			TMC.readLocationTables(Corpus.LOCATION_TABLES);
+		}
+		if ("warm".equals(cache))
+			for (int lcd = Corpus.FIRST_POINT; lcd <= Corpus.LAST_POINT; lcd++)
+				TMC.getLocation(Corpus.CID, Corpus.TABCD, lcd);
+	}
+
+	@TearDown
+	public void tearDown() {
+		TMC.setDbUrl("jdbc:hsqldb:mem:.");
+		TMC.setCacheSize(100000);
+		if (compiled != null)
+			compiled.delete();
+	}
+
+	@Benchmark
+	public TMCLocation getLocation() {
+		TMCLocation location = TMC.getLocation(Corpus.CID, Corpus.TABCD, next);
+		if (++next > Corpus.LAST_POINT)
+			next = Corpus.FIRST_POINT;
+		return location;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.jacquet80.rds.core.RDS;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.HexFileGroupReader;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+/**
+ * Access to the corpora on which benchmarks are run.
+ * 
+ * The corpora are looked up in the directory given by the {@code rds.corpus}
+ * system property, {@code bench/corpus} by default:
+ * <ul>
+ * <li>{@code station.rds}, a hexgroups log of one station broadcasting
+ * PS, RT, CT, EON and TMC,</li>
+ * <li>{@code lt}, a location table in exchange format, which holds the
+ * locations referred to by the TMC messages of {@code station.rds}.</li>
+ * </ul>
+ */
+public final class Corpus {
+	public final static File DIR = new File(System.getProperty("rds.corpus", "bench/corpus"));
+	public final static File STATION = new File(DIR, "station.rds");
+	public final static File LOCATION_TABLES = new File(DIR, "lt");
+	
+	/** Country ID and table code of the location table */
+	public final static int CID = 58;
+	public final static int TABCD = 1;
+	
+	/** Location codes of the points of the location table */
+	public final static int FIRST_POINT = 10000;
+	public final static int LAST_POINT = 10999;
+	
+	private Corpus() {
+	}
+	
+	/**
+	 * Returns the lines of the station log.
+	 */
+	public static List<String> readLines() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(STATION), "ISO-8859-1"));
+		try {
+			String line;
+			while((line = br.readLine()) != null) lines.add(line);
+		} finally {
+			br.close();
+		}
+		return lines;
+	}
+	
+	/**
+	 * Returns the groups of the station log.
+	 */
+	public static List<GroupEvent> readGroups() throws IOException {
+		List<GroupEvent> groups = new ArrayList<GroupEvent>();
+		HexFileGroupReader reader = new HexFileGroupReader(STATION);
+		try {
+			while(true) {
+				GroupReaderEvent evt = reader.getGroup();
+				if(evt instanceof GroupEvent) groups.add((GroupEvent) evt);
+			}
+		} catch(EndOfStream e) {
+			return groups;
+		}
+	}
+	
+	/**
+	 * Returns the groups of the given type and version, version A being 0.
+	 */
+	public static List<GroupEvent> filter(List<GroupEvent> groups, int type, int version) {
+		List<GroupEvent> ret = new ArrayList<GroupEvent>();
+		for(GroupEvent g : groups) {
+			if(g.blocks[1] >= 0 && (g.blocks[1] >> 11) == (type << 1 | version)) ret.add(g);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Encodes groups into an RDS bit stream, 104 bits per group, packed as
+	 * by {@link eu.jacquet80.rds.input.BitReader#readBits(long[], int)}.
+	 * Missing blocks are encoded as zero.
+	 */
+	public static long[] encode(List<GroupEvent> groups) {
+		long[] bits = new long[(groups.size() * 104 + 63) / 64];
+		int n = 0;
+		for(GroupEvent g : groups) {
+			boolean versionB = g.blocks[1] >= 0 && (g.blocks[1] & 0x800) != 0;
+			for(int i=0; i<4; i++) {
+				int block = RDS.encodeBlock(Math.max(g.blocks[i], 0), i, versionB ? 1 : 0);
+				for(int k=25; k>=0; k--, n++) {
+					if(((block >> k) & 1) != 0) bits[n >> 6] |= 1L << (63 - (n & 63));
+				}
+			}
+		}
+		return bits;
+	}
+	
+	/**
+	 * Returns the n-th bit of a packed bit stream.
+	 */
+	public static boolean bit(long[] bits, int n) {
+		return (bits[n >> 6] << (n & 63)) < 0;
+	}
+}
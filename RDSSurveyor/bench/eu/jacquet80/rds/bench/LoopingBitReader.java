@@ -0,0 +1,73 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.bench;
+
+import java.io.IOException;
+
+import eu.jacquet80.rds.input.BitReader;
+
+/**
+ * A bit reader that plays a packed bit stream in an endless loop, so that
+ * reading bits costs next to nothing compared with what is measured.
+ */
+public class LoopingBitReader extends BitReader {
+	private final long[] bits;
+	private final int length;
+	private int pos = 0;
+	
+	/**
+	 * @param bits the bit stream, packed as by {@link #readBits(long[], int)}
+	 * @param length the number of bits of the stream
+	 */
+	public LoopingBitReader(long[] bits, int length) {
+		this.bits = bits;
+		this.length = length;
+	}
+	
+	@Override
+	public boolean getBit() {
+		boolean bit = Corpus.bit(bits, pos);
+		if(++pos == length) pos = 0;
+		return bit;
+	}
+	
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		if((length & 63) != 0 || (pos & 63) != 0 || (maxBits & 63) != 0) {
+			return super.readBits(dst, maxBits);
+		}
+		// whole words: copy them
+		int words = maxBits >> 6;
+		int word = pos >> 6;
+		int nbWords = length >> 6;
+		for(int i=0; i<words; i++) {
+			dst[i] = bits[word];
+			if(++word == nbWords) word = 0;
+		}
+		pos = word << 6;
+		return maxBits;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import eu.jacquet80.rds.bench.Corpus;
+import eu.jacquet80.rds.bench.LoopingBitReader;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.HexFileGroupReader;
+import eu.jacquet80.rds.input.SyntheticBitReader;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+/**
+ * Measures the {@link BitStreamSynchronizer} on the bit stream of the
+ * station corpus, encoded by a {@link SyntheticBitReader} with the given bit
+ * error rate:
+ * <ul>
+ * <li>{@code acquisition}: from a new synchronizer to the first group,</li>
+ * <li>{@code group}: one group, once synchronized.</li>
+ * </ul>
+ * Console output is discarded, but still produced.
+ */
+@State(Scope.Thread)
+public class BitStreamSynchronizerBenchmark {
+	private final static PrintStream NULL_CONSOLE = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+			// NOP
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+			// NOP
+		}
+	});
+	
+	@Param({"0", "0.001", "0.01"})
+	public double bitErrorRate;
+	
+	private long[] bits;
+	private int length;
+	private BitStreamSynchronizer synchronizer;
+	
+	@Setup
+	public void setup() throws IOException {
+		length = Corpus.readGroups().size() * 104;
+		bits = new long[(length + 63) / 64];
+		SyntheticBitReader reader = new SyntheticBitReader(new HexFileGroupReader(Corpus.STATION));
+		reader.setBitErrorRate(bitErrorRate);
+		reader.readBits(bits, length);
+	}
+	
+	@Setup(Level.Iteration)
+	public void synchronize() throws IOException, EndOfStream {
+		synchronizer = new BitStreamSynchronizer(NULL_CONSOLE, new LoopingBitReader(bits, length));
+		synchronizer.getGroup();
+	}
+	
+	@Benchmark
+	public GroupReaderEvent acquisition() throws IOException, EndOfStream {
+		return new BitStreamSynchronizer(NULL_CONSOLE, new LoopingBitReader(bits, length)).getGroup();
+	}
+	
+	@Benchmark
+	public GroupReaderEvent group() throws IOException, EndOfStream {
+		return synchronizer.getGroup();
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.bench.Corpus;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.log.Log;
+
+/**
+ * Measures {@link GroupLevelDecoder#processOneGroup(eu.jacquet80.rds.input.group.GroupReaderEvent)}
+ * for each type of group of the station corpus. The whole corpus is decoded
+ * first, so that the station is known and the ODAs are registered. TMC
+ * locations are looked up in the location table of the corpus, imported into
+ * an in-memory database.
+ */
+@State(Scope.Thread)
+public class GroupLevelDecoderBenchmark {
+	@Param({"0A", "1A", "2A", "3A", "4A", "8A", "14A"})
+	public String groupType;
+	
+	private GroupLevelDecoder decoder;
+	private GroupEvent[] groups;
+	private int next = 0;
+	
+	@Setup
+	public void setup() throws IOException {
+		TMC.setDbUrl("jdbc:hsqldb:mem:decoderbench");
+		TMC.readLocationTables(Corpus.LOCATION_TABLES);
+		
+		List<GroupEvent> all = Corpus.readGroups();
+		decoder = new GroupLevelDecoder(new Log());
+		for(GroupEvent g : all) decoder.processOneGroup(g);
+		
+		int type = Integer.parseInt(groupType.substring(0, groupType.length() - 1));
+		int version = groupType.charAt(groupType.length() - 1) - 'A';
+		groups = Corpus.filter(all, type, version).toArray(new GroupEvent[0]);
+		if(groups.length == 0) throw new IllegalStateException("No " + groupType + " group in corpus");
+	}
+	
+	@TearDown
+	public void tearDown() {
+		TMC.setDbUrl("jdbc:hsqldb:mem:.");
+	}
+	
+	@Benchmark
+	public void processOneGroup() throws IOException {
+		decoder.processOneGroup(groups[next]);
+		if(++next == groups.length) next = 0;
+	}
+}
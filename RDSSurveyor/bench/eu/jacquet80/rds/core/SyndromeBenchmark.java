@@ -0,0 +1,66 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import eu.jacquet80.rds.bench.Corpus;
+import eu.jacquet80.rds.input.group.GroupEvent;
+
+/**
+ * Measures the computation of the syndrome of a block, once per block of
+ * the station corpus.
+ */
+@State(Scope.Thread)
+public class SyndromeBenchmark {
+	private final static int BLOCKS = 4096;
+	
+	private int[] blocks;
+	
+	@Setup
+	public void setup() throws IOException {
+		List<GroupEvent> groups = Corpus.readGroups();
+		blocks = new int[BLOCKS];
+		for(int i=0; i<BLOCKS; i++) {
+			blocks[i] = RDS.encodeBlock(groups.get(i / 4 % groups.size()).blocks[i % 4], i % 4, 0);
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(BLOCKS)
+	public int calcSyndrome() {
+		int acc = 0;
+		for(int b : blocks) acc ^= RDS.calcSyndrome(b);
+		return acc;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import eu.jacquet80.rds.bench.Corpus;
+import eu.jacquet80.rds.bench.LoopingBitReader;
+import eu.jacquet80.rds.input.dsp.RdsModulator;
+import eu.jacquet80.rds.input.group.GroupEvent;
+
+/**
+ * Measures the demodulation of one second of MPX signal by
+ * {@link AudioBitReader}. The signal carries the bit stream of the station
+ * corpus, and is synthesized at setup by {@link RdsModulator}.
+ */
+@State(Scope.Thread)
+public class AudioBitReaderBenchmark {
+	@Param({"192000", "228000"})
+	public int sampleRate;
+	
+	private double[] mpx;
+	private AudioBitReader reader;
+	private final long[] bits = new long[128];
+	
+	@Setup
+	public void setup() throws IOException {
+		List<GroupEvent> groups = Corpus.readGroups();
+		mpx = new double[sampleRate];
+		new RdsModulator(sampleRate).modulate(new LoopingBitReader(Corpus.encode(groups), groups.size() * 104), mpx, 0, sampleRate);
+		reader = new AudioBitReader(sampleRate);
+	}
+	
+	@Benchmark
+	public int demodulateSecond() throws IOException {
+		reader.process(mpx, 0, mpx.length);
+		
+		// one second is well within the capacity of the bit queue, and
+		// all the bits it holds are read at once
+		return reader.readBits(bits, bits.length * 64);
+	}
+}
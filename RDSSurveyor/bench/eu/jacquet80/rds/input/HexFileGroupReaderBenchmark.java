@@ -0,0 +1,77 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.jacquet80.rds.bench.Corpus;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.log.SequentialTime;
+
+/**
+ * Measures the parsing of the station corpus, line by line with
+ * {@link HexFileGroupReader#parseHexLine(String, eu.jacquet80.rds.log.RDSTime)},
+ * and as a whole with the byte-level scanner of {@link HexFileGroupReader}.
+ * Scores are per pass over the corpus.
+ */
+@State(Scope.Thread)
+public class HexFileGroupReaderBenchmark {
+	private String[] lines;
+	private byte[] file;
+	
+	@Setup
+	public void setup() throws IOException {
+		List<String> l = Corpus.readLines();
+		lines = l.toArray(new String[0]);
+		StringBuilder sb = new StringBuilder();
+		for(String line : lines) sb.append(line).append("\r\n");
+		file = sb.toString().getBytes("ISO-8859-1");
+	}
+	
+	@Benchmark
+	public void parseHexLine(Blackhole bh) throws IOException {
+		SequentialTime time = new SequentialTime(0);
+		for(String line : lines) bh.consume(HexFileGroupReader.parseHexLine(line, time));
+	}
+	
+	@Benchmark
+	public void scan(Blackhole bh) throws IOException {
+		HexFileGroupReader reader = new HexFileGroupReader(new ByteArrayInputStream(file));
+		try {
+			while(true) bh.consume(reader.getGroup());
+		} catch(EndOfStream e) {
+			// done
+		}
+	}
+}
@@ -25,42 +25,60 @@
 
 package eu.jacquet80.rds;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.prefs.Preferences;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import com.fazecast.jSerialComm.SerialPort;
 
+import eu.jacquet80.rds.app.oda.AlertC;
 import eu.jacquet80.rds.app.oda.TDC;
+import eu.jacquet80.rds.app.oda.TMCLocationResolver;
+import eu.jacquet80.rds.app.oda.tmc.LocationTableCompiler;
 import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.core.BatchDecoder;
 import eu.jacquet80.rds.core.BitStreamSynchronizer;
 import eu.jacquet80.rds.core.BitStreamSynchronizer.BitInversion;
+import eu.jacquet80.rds.core.BitStreamSynchronizer.ErrorCorrection;
+import eu.jacquet80.rds.core.DecoderConfig;
 import eu.jacquet80.rds.core.DecoderShell;
-import eu.jacquet80.rds.core.TunedStation;
+import eu.jacquet80.rds.core.MultiChannelDecoder;
+import eu.jacquet80.rds.core.MultiChannelDecoder.SampleFormat;
 import eu.jacquet80.rds.img.Image;
+import eu.jacquet80.rds.input.AsyncGroupLogWriter;
 import eu.jacquet80.rds.input.AudioBitReader;
 import eu.jacquet80.rds.input.AudioFileBitReader;
 import eu.jacquet80.rds.input.BinStringFileBitReader;
 import eu.jacquet80.rds.input.BinaryFileBitReader;
+import eu.jacquet80.rds.input.BinaryGroupLog;
+import eu.jacquet80.rds.input.BinaryGroupLogReader;
 import eu.jacquet80.rds.input.BitReader;
 import eu.jacquet80.rds.input.FileFormatGuesser;
 import eu.jacquet80.rds.input.GnsGroupReader;
+import eu.jacquet80.rds.input.GroupLogWriter;
 import eu.jacquet80.rds.input.GroupReader;
 import eu.jacquet80.rds.input.HexFileGroupReader;
 import eu.jacquet80.rds.input.LiveAudioBitReader;
 import eu.jacquet80.rds.input.NativeTunerGroupReader;
+import eu.jacquet80.rds.input.RotatingGroupLogWriter;
 import eu.jacquet80.rds.input.SdrGroupReader;
 import eu.jacquet80.rds.input.SyncBinaryFileBitReader;
 import eu.jacquet80.rds.input.TCPTunerGroupReader;
@@ -120,6 +138,91 @@ public class RDSSurveyor {
 		return args[pos];
 	}
 	
+	/**
+	 * Parses a quantity with a unit, such as 100MB or 30min.
+	 * 
+	 * @return the quantity multiplied by the factor of its unit, or -1 if
+	 * none of the units matches
+	 */
+	private static long parseQuantity(String s, String[] units, long[] factors) {
+		for(int i=0; i<units.length; i++) {
+			if(s.toLowerCase().endsWith(units[i])) {
+				try {
+					return Long.parseLong(s.substring(0, s.length() - units[i].length()).trim()) * factors[i];
+				} catch(NumberFormatException e) {
+					return -1;
+				}
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Parses a frequency in MHz, such as 87.6, into kHz.
+	 */
+	private static int parseMHz(String freq) {
+		try {
+			return (int) Math.round(Double.parseDouble(freq) * 1000);
+		} catch(NumberFormatException e) {
+			System.out.println("Invalid frequency: " + freq);
+			System.exit(1);
+			return 0;
+		}
+	}
+	
+	private static void decodeIqFile(File file, SampleFormat format, int rate, int center, int[] channels,
+			ErrorCorrection correction, String dbUrl, DecoderConfig config) throws IOException, UnsupportedAudioFileException {
+		if(channels == null || center == 0) {
+			System.out.println("-iniqfile needs -iqcenter and -channels.");
+			System.exit(1);
+		}
+		
+		InputStream in;
+		if(file.getName().toLowerCase().endsWith(".wav")) {
+			AudioInputStream ais = MultiChannelDecoder.openWav(file);
+			rate = (int) ais.getFormat().getSampleRate();
+			format = SampleFormat.S16;
+			in = ais;
+		} else {
+			if(rate == 0) {
+				System.out.println("-iniqfile needs -iqrate for raw I/Q files.");
+				System.exit(1);
+			}
+			in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		}
+		
+		TMC.setDbUrl(dbUrl);
+		
+		MultiChannelDecoder decoder = new MultiChannelDecoder(rate, center, channels, config);
+		if(correction != null) decoder.setErrorCorrection(correction);
+		try {
+			decoder.decode(in, format, new File(tempDir), Runtime.getRuntime().availableProcessors(), System.out);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static void decodeBatch(String spec, File outFile, int threads, DecoderConfig config) throws IOException {
+		List<File> files = BatchDecoder.listFiles(spec);
+		System.out.println("Batch decoding " + files.size() + " files with " + threads + " threads...");
+		
+		BatchDecoder decoder = new BatchDecoder(threads, config);
+		decoder.setConsole(System.out);
+		List<BatchDecoder.FileSummary> summaries = decoder.decode(files);
+		
+		PrintWriter w = new PrintWriter(outFile, "UTF-8");
+		try {
+			if(outFile.getName().toLowerCase().endsWith(".json")) {
+				BatchDecoder.writeJson(summaries, w);
+			} else {
+				BatchDecoder.writeCsv(summaries, w);
+			}
+		} finally {
+			w.close();
+		}
+		System.out.println("Summary written to " + outFile.getAbsolutePath());
+	}
+	
 	public static void main(String[] args) throws IOException, UnavailableInputMethod, UnsupportedAudioFileException {
 		System.out.println("RDS Surveyor - (C) Christophe Jacquet and contributors, 2009-2018.");
 		
@@ -133,11 +236,31 @@ public class RDSSurveyor {
 		Segmenter segmenter = null;
 		File outBinFile = null;
 		File outGroupFile = null;
+		boolean outGroupBinary = false;
+		boolean outGroupGzip = false;
+		long rotateBytes = 0;
+		long rotateMillis = 0;
+		AsyncGroupLogWriter.FlushPolicy flushPolicy = AsyncGroupLogWriter.FlushPolicy.PERIODIC;
+		long flushInterval = AsyncGroupLogWriter.DEFAULT_FLUSH_INTERVAL;
 		PrintStream console = System.out;
 		BitStreamSynchronizer.BitInversion inversion = BitInversion.AUTO;
+		ErrorCorrection correction = null;
 		BitStreamSynchronizer bitStreamSynchronizer = null;
 		String inLtPath = null;
+		File ltCompileFile = null;
+		List<int[]> ltPreload = new ArrayList<int[]>();
 		String dbUrl = "jdbc:hsqldb:mem:.";
+		File inIqFile = null;
+		SampleFormat iqFormat = SampleFormat.U8;
+		int iqRate = 0;
+		int iqCenter = 0;
+		int[] iqChannels = null;
+		String batchSpec = null;
+		File batchOutFile = null;
+		int batchThreads = Runtime.getRuntime().availableProcessors();
+		File convertIn = null;
+		File convertOut = null;
+		DecoderConfig config = new DecoderConfig();
 		
 		// RDS Surveyor is non-localized for the time being
 		Locale.setDefault(Locale.US);
@@ -188,6 +311,8 @@ public class RDSSurveyor {
 					reader = new BitStreamSynchronizer(console, new BinStringFileBitReader(new File(getParam("inbinstrfile", args, ++i))));
 				} else if("-ingrouphexfile".equals(args[i])) {
 					reader  = new HexFileGroupReader(new File(getParam("ingrouphexfile", args, ++i)));
+				} else if("-ingroupbinfile".equals(args[i])) {
+					reader = new BinaryGroupLogReader(new File(getParam("ingroupbinfile", args, ++i)));
 				} else if("-infile".equals(args[i])) {
 					reader = FileFormatGuesser.createReader(new File(getParam("infile", args, ++i)));
 				} else if("-intcp".equals(args[i])) {
@@ -227,16 +352,88 @@ public class RDSSurveyor {
 					inversion = BitInversion.INVERT;
 				} else if("-noinvert".equals(args[i])) {
 					inversion = BitInversion.NOINVERT;
+				} else if("-correction".equals(args[i])) {
+					String level = getParam("correction", args, ++i);
+					try {
+						correction = ErrorCorrection.valueOf(level.toUpperCase());
+					} catch(IllegalArgumentException e) {
+						System.out.println("Unknown error correction level: " + level);
+						System.exit(1);
+					}
+				} else if("-iniqfile".equals(args[i])) {
+					inIqFile = new File(getParam("iniqfile", args, ++i));
+				} else if("-iqformat".equals(args[i])) {
+					String fmt = getParam("iqformat", args, ++i);
+					try {
+						iqFormat = SampleFormat.valueOf(fmt.toUpperCase());
+					} catch(IllegalArgumentException e) {
+						System.out.println("Unknown I/Q sample format: " + fmt);
+						System.exit(1);
+					}
+				} else if("-iqrate".equals(args[i])) {
+					iqRate = Integer.parseInt(getParam("iqrate", args, ++i));
+				} else if("-iqcenter".equals(args[i])) {
+					iqCenter = parseMHz(getParam("iqcenter", args, ++i));
+				} else if("-channels".equals(args[i])) {
+					String[] freqs = getParam("channels", args, ++i).split(",");
+					iqChannels = new int[freqs.length];
+					for(int j=0; j<freqs.length; j++) iqChannels[j] = parseMHz(freqs[j].trim());
+				} else if("-batch".equals(args[i])) {
+					batchSpec = getParam("batch", args, ++i);
+				} else if("-batchout".equals(args[i])) {
+					batchOutFile = new File(getParam("batchout", args, ++i));
+				} else if("-batchthreads".equals(args[i])) {
+					batchThreads = Integer.parseInt(getParam("batchthreads", args, ++i));
 				} else if("-inaudiofile".equals(args[i])) {
 					reader = new BitStreamSynchronizer(console, new AudioFileBitReader(new File(getParam("inaudiofile", args, ++i))));
 				} else if("-outbinfile".equals(args[i])) {
 					outBinFile = new File(getParam("outbinfile", args, ++i));
 				} else if("-outgrouphexfile".equals(args[i])) {
 					outGroupFile = new File(getParam("outgrouphexfile", args, ++i));
+					outGroupBinary = false;
+				} else if("-outgroupbinfile".equals(args[i])) {
+					outGroupFile = new File(getParam("outgroupbinfile", args, ++i));
+					outGroupBinary = true;
+				} else if("-outgroupgzip".equals(args[i])) {
+					outGroupGzip = true;
+				} else if("-outgrouprotate".equals(args[i])) {
+					String limit = getParam("outgrouprotate", args, ++i);
+					rotateBytes = parseQuantity(limit, new String[] {"kb", "mb", "gb"}, 
+							new long[] {1L << 10, 1L << 20, 1L << 30});
+					if(rotateBytes < 0) {
+						rotateBytes = 0;
+						rotateMillis = parseQuantity(limit, new String[] {"min", "s", "h", "d"}, 
+								new long[] {60000L, 1000L, 3600000L, 86400000L});
+					}
+					if(rotateMillis < 0) {
+						System.out.println("Invalid rotation limit: " + limit + ", expecting a size (e.g. 100MB) or a duration (e.g. 1h)");
+						System.exit(1);
+					}
+				} else if("-outgroupflush".equals(args[i])) {
+					String policy = getParam("outgroupflush", args, ++i);
+					if("station".equals(policy)) {
+						flushPolicy = AsyncGroupLogWriter.FlushPolicy.STATION_CHANGE;
+					} else {
+						try {
+							flushInterval = Long.parseLong(policy);
+						} catch(NumberFormatException e) {
+							System.out.println("Invalid flush policy: " + policy + ", expecting \"station\" or a number of milliseconds");
+							System.exit(1);
+						}
+					}
+				} else if("-convert".equals(args[i])) {
+					convertIn = new File(getParam("convert", args, ++i));
+					convertOut = new File(getParam("convert", args, ++i));
 				} else if("-nogui".equals(args[i])) {
 					showGui = false;
 				} else if("-noconsole".equals(args[i])) {
 					console = null;
+				} else if("-logbudget".equals(args[i])) {
+					config.setLogMemoryBudget(Long.parseLong(getParam("logbudget", args, ++i)) << 20);
+				} else if("-logspill".equals(args[i])) {
+					config.setLogSpillFile(new File(getParam("logspill", args, ++i)));
+				} else if("-noanalysis".equals(args[i])) {
+					config.setAnalysisEnabled(false);
 				} else if("-segment".equals(args[i])) {
 					console = null;   // implies -noconsole
 					showGui = false;         // implies -nogui
@@ -248,8 +445,10 @@ public class RDSSurveyor {
 					showGui = false;
 				} else if("-rds".equals(args[i])) {
 					preferences.putBoolean(PREF_RBDS, false);
+					config.setRBDS(false);
 				} else if("-rbds".equals(args[i])) {
 					preferences.putBoolean(PREF_RBDS, true);
+					config.setRBDS(true);
 				} else if("-tdc".equals(args[i])) {
 					String tdcApp = getParam("tdc", args, ++i);
 					if(TDC.setPreferredTDCApp(tdcApp)) {
@@ -266,7 +465,7 @@ public class RDSSurveyor {
 						char v = m.group(2).charAt(0);
 						int aid = Integer.parseInt(m.group(3), 16);
 						
-						TunedStation.addForcedODA((num<<1) + (v=='A'?0:1), aid);
+						config.addForcedODA((num<<1) + (v=='A'?0:1), aid);
 						System.out.printf("Forcing ODA: %d%c -> %04X\n", num, v, aid);
 					} else {
 						System.out.println("Malformed -force option");
@@ -278,6 +477,27 @@ public class RDSSurveyor {
 					TMC.setCharset(getParam("ltcharset", args, ++i));
 				} else if("-ltdb".equals(args[i])) {
 					dbUrl = String.format("jdbc:hsqldb:file:%s", getParam("ltdb", args, ++i));
+				} else if("-ltfile".equals(args[i])) {
+					dbUrl = "ltc:" + getParam("ltfile", args, ++i);
+				} else if("-ltcompile".equals(args[i])) {
+					ltCompileFile = new File(getParam("ltcompile", args, ++i));
+				} else if("-ltbatch".equals(args[i])) {
+					TMC.setImportBatchSize(Integer.parseInt(getParam("ltbatch", args, ++i)));
+				} else if("-ltthreads".equals(args[i])) {
+					TMC.setImportThreads(Integer.parseInt(getParam("ltthreads", args, ++i)));
+				} else if("-ltasync".equals(args[i])) {
+					AlertC.setResolver(new TMCLocationResolver(Integer.parseInt(getParam("ltasync", args, ++i))));
+				} else if("-ltcache".equals(args[i])) {
+					TMC.setCacheSize(Integer.parseInt(getParam("ltcache", args, ++i)));
+				} else if("-ltpreload".equals(args[i])) {
+					for(String table : getParam("ltpreload", args, ++i).split(",")) {
+						String[] parts = table.split(":");
+						if(parts.length != 2) {
+							System.out.println("-ltpreload needs a list of <cid>:<ltn>.");
+							System.exit(1);
+						}
+						ltPreload.add(new int[] {Integer.parseInt(parts[0]), Integer.parseInt(parts[1])});
+					}
 				} else {
 					System.out.println("Unknown argument: " + args[i]);
 					
@@ -289,16 +509,35 @@ public class RDSSurveyor {
 					System.out.println("  -inbinstrfile <file>     Use the given binary string file as input");
 					System.out.println("  -inaudiofile <file>      Use the given audio file as input");
 					System.out.println("  -ingrouphexfile <file>   Use the given group-level file as input");
+					System.out.println("  -ingroupbinfile <file>   Use the given binary group log as input");
 					System.out.println("  -infile <file>           Use the given file as input (autodetect format)");
 					System.out.println("  -inv4l <device>          Reads from Video4Linux device, e.g. /dev/radio");
 					System.out.println("  -intuner <driver>        Reads from a native tuner, specify driver (.so, .dll, .dylib)");
 					System.out.println("  -insdr <driver>          Reads from an SDR, specify driver (.so, .dll, .dylib)");
 					System.out.println("  -ingns <port>            Reads from a GNS TMC tuner, specify port (tty*, COM*)");
+					System.out.println("  -iniqfile <file>         Decode several stations from a wideband I/Q recording (raw or WAV)");
+					System.out.println("  -iqformat <format>       Raw I/Q sample format: u8 (default, rtl_sdr), s8, s16");
+					System.out.println("  -iqrate <rate>           Sample rate of a raw I/Q recording, in Hz");
+					System.out.println("  -iqcenter <MHz>          Center frequency of the I/Q recording");
+					System.out.println("  -channels <MHz,MHz,...>  Frequencies of the stations to decode from the I/Q recording");
+					System.out.println("  -batch <dir|glob>        Decode many files without GUI, and summarize them");
+					System.out.println("  -batchout <file>         Batch summary file, CSV or JSON depending on extension");
+					System.out.println("  -batchthreads <n>        Number of files decoded in parallel (default: one per CPU)");
 					System.out.println("  -invert / -noinvert      Force bit inversion (default: auto-detect");
+					System.out.println("  -correction <level>      Burst error correction: none, light (default), full");
 					System.out.println("  -outbinfile <file>       Write bitstream to binary file (if applicable)");
 					System.out.println("  -outgrouphexfile <file>  Write groups to file (in hexadecimal)");
+					System.out.println("  -outgroupbinfile <file>  Write groups to a binary group log");
+					System.out.println("  -outgroupgzip            Compress the hexadecimal group file with gzip");
+					System.out.println("  -outgrouprotate <limit>  Start a new group file after a size (e.g. 100MB) or a duration (e.g. 1h)");
+					System.out.println("  -outgroupflush <policy>  When to flush the group file: every given number of ms (default: 1000),");
+					System.out.println("                           or only on station changes (station)");
+					System.out.println("  -convert <in> <out>      Convert a binary group log to hexgroups, or any other file to a binary group log");
 					System.out.println("  -nogui                   Do not show the graphical user interface");
 					System.out.println("  -noconsole               No console analysis");
+					System.out.println("  -logbudget <MB>          Memory used by the log of groups (default: a quarter of the heap)");
+					System.out.println("  -logspill <file>         Spill the groups beyond the log budget to a file, instead of discarding them");
+					System.out.println("  -noanalysis              Do not produce the analysis text of groups (for server use)");
 					System.out.println("  -rds                     Force standard RDS mode (and save as a preference)");
 					System.out.println("  -rbds                    Force American RBDS mode (and save as a preference)");
 					System.out.println("  -tdc <decoder>           Use a given TDC decoder (available decoder: CATRADIO)");
@@ -306,11 +545,38 @@ public class RDSSurveyor {
 					System.out.println("  -lt <path>               Read TMC location tables found at the given path (or subdirs)");
 					System.out.println("  -ltcharset <charset>     Use a specific charset for reading TMC location tables");
 					System.out.println("  -ltdb <path>             Use TMC location database at the given path");
+					System.out.println("  -ltbatch <records>       Number of records inserted at once when importing TMC location tables");
+					System.out.println("  -ltthreads <n>           Number of threads parsing TMC location tables (default: one per CPU)");
+					System.out.println("  -ltfile <file>           Use compiled TMC location tables from the given file");
+					System.out.println("  -ltcompile <file>        Compile the location tables given with -lt into a file, instead of importing them");
+					System.out.println("  -ltcache <entries>       Maximum number of cached TMC locations of each kind");
+					System.out.println("  -ltpreload <cid>:<ltn>,...  Load whole TMC location tables into memory at startup");
+					System.out.println("  -ltasync <threads>       Resolve TMC locations on background threads, not while decoding");
 					System.exit(1);
 				}
 			}
 		}
 
+		if(convertIn != null) {
+			long count = BinaryGroupLog.convert(convertIn, convertOut, console == null ? nullConsole : console);
+			System.out.println("Converted " + count + " events to " + convertOut.getAbsolutePath());
+			System.exit(0);
+		}
+
+		if(batchSpec != null) {
+			TMC.setDbUrl(dbUrl);
+			if(batchOutFile == null) {
+				batchOutFile = new File(tempDir, "rdsbatch_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".csv");
+			}
+			decodeBatch(batchSpec, batchOutFile, batchThreads, config);
+			System.exit(0);
+		}
+		
+		if(inIqFile != null) {
+			decodeIqFile(inIqFile, iqFormat, iqRate, iqCenter, iqChannels, correction, dbUrl, config);
+			System.exit(0);
+		}
+
 		if ((reader == null) && (inLtPath == null)) {
 			if(showGui) {
 				console = null;
@@ -324,6 +590,16 @@ public class RDSSurveyor {
 			}
 		}
 		
+		// Compile location tables if requested, the compiled file can then be used right away
+		if (inLtPath != null && ltCompileFile != null) {
+			System.out.println("Compiling TMC location tables...");
+			LocationTableCompiler.compile(new File(inLtPath), ltCompileFile);
+			if (reader == null)
+				System.exit(0);
+			dbUrl = "ltc:" + ltCompileFile.getPath();
+			inLtPath = null;
+		}
+		
 		TMC.setDbUrl(dbUrl);
 		
 		// Build db if needed
@@ -334,21 +610,45 @@ public class RDSSurveyor {
 			if (reader == null)
 				System.exit(0);
 		}
+		
+		for(int[] table : ltPreload) {
+			System.out.println("Preloaded " + TMC.preload(table[0], table[1]) + 
+					" locations from TMC location table " + table[0] + ":" + table[1]);
+		}
 				
+		// nobody will read the analysis of groups
+		if(!showGui && console == null && segmenter == null && !overview) {
+			config.setAnalysisEnabled(false);
+		}
+		
 		if (outGroupFile == null)
 			teeReader = reader;
-		else
-			teeReader = new TeeGroupReader(reader, outGroupFile);
+		else {
+			RotatingGroupLogWriter.Format format = 
+					outGroupBinary ? RotatingGroupLogWriter.Format.BINARY :
+					outGroupGzip ? RotatingGroupLogWriter.Format.HEX_GZIP :
+						RotatingGroupLogWriter.Format.HEX;
+			GroupLogWriter groupWriter;
+			if(rotateBytes > 0 || rotateMillis > 0)
+				groupWriter = new RotatingGroupLogWriter(outGroupFile, format, rotateBytes, rotateMillis);
+			else
+				groupWriter = RotatingGroupLogWriter.open(outGroupFile, format);
+			AsyncGroupLogWriter asyncWriter = new AsyncGroupLogWriter(groupWriter, 
+					AsyncGroupLogWriter.DEFAULT_CAPACITY, flushPolicy);
+			asyncWriter.setFlushInterval(flushInterval);
+			teeReader = new TeeGroupReader(reader, asyncWriter);
+		}
 		
 		// Create a decoder "shell"
 		final PrintStream fConsole = console == null ? nullConsole : console;
-		DecoderShell.instance.setConsole(console);
+		final DecoderShell decoderShell = new DecoderShell(config);
+		decoderShell.setConsole(console);
 		
 		// Create the input toolbar before wrapping the reader into a station change detector
 		// and possibly a group logger (tee)
 		if(showGui) {
-			MainWindow mainWindow = new MainWindow();
-			mainWindow.setReader(DecoderShell.instance.getLog(), reader);
+			MainWindow mainWindow = new MainWindow(decoderShell);
+			mainWindow.setReader(decoderShell.getLog(), reader);
 			mainWindow.setVisible(true);
 		}
 		
@@ -367,16 +667,20 @@ public class RDSSurveyor {
 			bitStreamSynchronizer.forceInversion(inversion);
 		}
 		
+		if(correction != null && reader instanceof BitStreamSynchronizer) {
+			((BitStreamSynchronizer) reader).setErrorCorrection(correction);
+		}
+		
 
 			
 		if(segmenter != null) {
-			segmenter.registerAtLog(DecoderShell.instance.getLog());
+			segmenter.registerAtLog(decoderShell.getLog());
 		}
 
 		if(showGui) {
-			DecoderShell.instance.process(teeReader, liveGroupInput);
+			decoderShell.process(teeReader, liveGroupInput);
 		} else {
-			DecoderShell.instance.processAndQuit(teeReader, liveGroupInput);
+			decoderShell.processAndQuit(teeReader, liveGroupInput);
 		}
 		
 		
@@ -411,8 +715,8 @@ public class RDSSurveyor {
 		} else if(overview) {
 			if(reader instanceof TunerGroupReader) {
 				final TunerGroupReader tgr = (TunerGroupReader) reader;
-				DecoderShell.instance.setConsole(nullConsole);
-				new Overviewer(tgr, fConsole).start();
+				decoderShell.setConsole(nullConsole);
+				new Overviewer(tgr, decoderShell, fConsole).start();
 			} else {
 				console.println("Overview may be used only with a tuner (" + reader.getClass() + ")");
 				System.exit(1);
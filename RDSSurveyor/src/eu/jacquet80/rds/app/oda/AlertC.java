@@ -75,10 +75,48 @@ public class AlertC extends ODA {
 	
 	private Map<Integer, TMCOtherNetwork> otherNetworks = Collections.synchronizedMap(new HashMap<Integer, TMCOtherNetwork>());
 	private MessageBuilder builder = new MessageBuilder();
-	private List<Message> messages = new ArrayList<Message>();
 	private Comparator<Message> messageComparator = new DefaultComparator();
+	private final TMCMessageStore messages = new TMCMessageStore(messageComparator);
+	
+	/** An immutable copy of the list of messages, published after each change */
+	private volatile List<Message> messageSnapshot = Collections.emptyList();
 	private Message currentMessage;
 	private boolean storeCancellationMessages = false;
+	private TMCMessageIndex index = null;
+	
+	/** The aggregator to which all instances pass the messages they receive */
+	private static volatile TMCAggregator aggregator = null;
+	
+	/** The resolver to which all instances leave the resolution of locations, if any */
+	private static volatile TMCLocationResolver resolver = null;
+	
+	/** Updates the list of messages when the locations of a message have been resolved */
+	private final TMCLocationResolver.Listener resolverListener = new TMCLocationResolver.Listener() {
+		@Override
+		public void resolved(Message message) {
+			boolean stored;
+			TMCAggregator a = aggregator;
+			synchronized (messages) {
+				/*
+				 * The position of the message in sorted lists depends on its location, which may
+				 * only change while the message is out of them and their locks are held.
+				 */
+				stored = messages.remove(message);
+				if (a != null)
+					a.refresh(message);
+				else
+					message.publishLocation();
+				if (stored) {
+					messages.add(message);
+					if (index != null)
+						index.add(message);
+					publishMessages();
+				}
+			}
+			if (stored)
+				fireChangeListeners();
+		}
+	};
 	private Bitstream multiGroupBits;
 
 	private int currentContIndex = -1;
@@ -97,6 +135,10 @@ public class AlertC extends ODA {
 		// in all cases, we need all blocks to proceed
 		if(!blocksOk[2] || !blocksOk[3]) return;
 		
+		// leave locations to the resolver, if any, so that decoding never waits for the database
+		TMCLocationResolver resolver = AlertC.resolver;
+		builder.setDeferResolution(resolver != null);
+		
 		// get CC so that we can decode locations
 		if (blocksOk[0])
 			cc = blocks[0] >> 12;
@@ -362,31 +404,48 @@ public class AlertC extends ODA {
 			}
 		}
 		
+		// remove messages which have expired, as of the time of the current group
+		Date now = (station == null) ? null : station.getRealTimeForStreamTime(time);
+		if (now != null)
+			synchronized (messages) {
+				List<Message> expired = messages.expire(now);
+				for (Message m : expired)
+					if (index != null)
+						index.remove(m);
+				if (!expired.isEmpty())
+					publishMessages();
+			}
+		
 		// if a message has just been completed, update the list of messages
 		// accordingly
 		if(messageJustCompleted) {
-			// 1) first we need to remove any message overriden by the current one
-			List<Message> messagesToRemove = new LinkedList<Message>();
-			int oldUpdate = 0;
-			for(Message m : messages) {
-				if(currentMessage.overrides(m)) {
-					messagesToRemove.add(m);
-					oldUpdate = m.updateCount;
+			synchronized (messages) {
+				// 1) first we need to remove any message overriden by the current one
+				int oldUpdate = 0;
+				for(Message msgToRemove : messages.getOverridden(currentMessage)) {
+					oldUpdate = msgToRemove.updateCount;
+					messages.remove(msgToRemove);
+					if (index != null)
+						index.remove(msgToRemove);
 				}
+				currentMessage.updateCount = oldUpdate + 1;
+				
+				// 2) second we just need to add the current message
+				// (unless it is a cancellation message)
+				if(storeCancellationMessages || !currentMessage.isCancellation()) {
+					messages.add(currentMessage);
+					if (index != null)
+						index.add(currentMessage);
+				}
+				publishMessages();
 			}
 			
-			for(Message msgToRemove : messagesToRemove) {
-				messages.remove(msgToRemove);
-			}
-			
-			// 2) second we just need to add the current message
-			// (unless it is a cancellation message)
-			if(storeCancellationMessages || !currentMessage.isCancellation()) {
-				messages.add(currentMessage);
-				Collections.sort(messages, messageComparator);
-			}
+			if (resolver != null)
+				resolver.resolve(currentMessage, resolverListener);
 			
-			currentMessage.updateCount = oldUpdate + 1;
+			TMCAggregator a = aggregator;
+			if (a != null)
+				a.receive(currentMessage);
 			
 			//System.out.println("*** Current TMC messages: ");
 			//for(Message m : messages) System.out.println("\t" + m);
@@ -408,8 +467,21 @@ public class AlertC extends ODA {
 			((mgs&1) != 0 ? "U" : "");
 	}
 	
+	/**
+	 * @brief Publishes a copy of the list of messages. Must be called with the lock held.
+	 */
+	private void publishMessages() {
+		messageSnapshot = Collections.unmodifiableList(new ArrayList<Message>(messages.getMessages()));
+	}
+	
+	/**
+	 * @brief Returns the current messages, sorted with the comparator.
+	 * 
+	 * The list is immutable and is not affected by subsequent updates, so it can be read without
+	 * locking while messages are being received.
+	 */
 	public List<Message> getMessages() {
-		return messages;
+		return messageSnapshot;
 	}
 
 	@Override
@@ -485,12 +557,64 @@ public class AlertC extends ODA {
 	public void setComparator(Comparator<Message> comparator) {
 		if (comparator != messageComparator) {
 			messageComparator = comparator;
-			Collections.sort(messages, messageComparator);
+			synchronized (messages) {
+				messages.setComparator(messageComparator);
+				publishMessages();
+			}
 			fireChangeListeners();
 		}
 	}
 	
 	
+	/**
+	 * @brief Sets a spatial index which will be kept up to date with the list of messages.
+	 * 
+	 * Messages which are already in the list are added to the index.
+	 * 
+	 * @param index The index, or {@code null} to stop updating the current one
+	 */
+	public void setIndex(TMCMessageIndex index) {
+		synchronized (messages) {
+			this.index = index;
+			if (index != null)
+				for (Message m : messages.getMessages())
+					index.add(m);
+		}
+	}
+	
+	
+	/**
+	 * @brief Sets the aggregator to which all instances pass the messages they receive.
+	 * 
+	 * @param aggregator The aggregator, or {@code null} to stop passing messages
+	 */
+	public static void setAggregator(TMCAggregator aggregator) {
+		AlertC.aggregator = aggregator;
+	}
+	
+	
+	/**
+	 * @brief Sets the resolver to which all instances leave the resolution of locations.
+	 * 
+	 * When a resolver is set, messages are built without resolving their locations, which
+	 * the resolver then fills in on its own threads. The list of messages is updated, and change
+	 * listeners are notified, once this is done.
+	 * 
+	 * @param resolver The resolver, or {@code null} to resolve locations when messages are built
+	 */
+	public static void setResolver(TMCLocationResolver resolver) {
+		AlertC.resolver = resolver;
+	}
+	
+	
+	/**
+	 * @brief Returns the aggregator set with {@link #setAggregator(TMCAggregator)}, if any.
+	 */
+	public static TMCAggregator getAggregator() {
+		return aggregator;
+	}
+	
+	
 	/**
 	 * @brief Specifies whether cancellation messages will be stored.
 	 * 
@@ -612,8 +736,15 @@ public class AlertC extends ODA {
 		 * 
 		 * The primary location is the location of the disruption, or the location at which the
 		 * driver would exit from the affected stretch of road.
+		 * 
+		 * If the message was built with deferred resolution (see
+		 * {@link MessageBuilder#setDeferResolution(boolean)}), this is {@code null} until the
+		 * location has been resolved by a {@link TMCLocationResolver}.
 		 */
-		public final TMCLocation location;
+		public volatile TMCLocation location;
+		
+		/** The primary location found by {@link #resolveLocations()}, until it is published */
+		private volatile TMCLocation resolvedLocation = null;
 
 		/** Whether the message affects both directions.
 		 * 
@@ -685,7 +816,7 @@ public class AlertC extends ODA {
 				int direction, boolean bidirectional, int extent, boolean diversion,
 				EventDurationType durationType, int duration, int startTime, int stopTime,
 				EventNature nature, EventUrgency urgency, boolean spoken,
-				List<InformationBlock> informationBlocks, int updateCount) {
+				List<InformationBlock> informationBlocks, int updateCount, boolean resolve) {
 			this.isBidirectional = bidirectional;
 			this.cc = cc;
 			this.date = date;
@@ -701,7 +832,7 @@ public class AlertC extends ODA {
 			this.informationBlocks = informationBlocks;
 			this.interroad = interroad;
 			this.lcid = location;
-			if (!this.isEncrypted)
+			if (!this.isEncrypted && resolve)
 				this.location = TMC.getLocation(String.format("%X", this.fcc), this.fltn, location);
 			else
 				this.location = null;
@@ -1514,6 +1645,47 @@ public class AlertC extends ODA {
 					&& ((location != null) || (lcid >= LOCATION_ALL_LISTENERS)));
 		}
 		
+		/**
+		 * @brief Resolves the locations of a message built with deferred resolution.
+		 * 
+		 * This is called by {@link TMCLocationResolver} on one of its threads. The locations
+		 * which the message refers to are looked up, as well as those needed to display it
+		 * (secondary location, names and coordinates), so that they are cached when the message
+		 * is displayed. The primary location is only published by {@link #publishLocation()}.
+		 * 
+		 * @return True if a location has been resolved
+		 */
+		boolean resolveLocations() {
+			boolean ret = false;
+			for (InformationBlock ib : informationBlocks)
+				ret |= ib.resolveLocations();
+			if (isEncrypted || (location != null) || (resolvedLocation != null)
+					|| (lcid >= LOCATION_ALL_LISTENERS))
+				return ret;
+			TMCLocation loc = TMC.getLocation(String.format("%X", this.fcc), this.fltn, this.lcid);
+			if (loc == null)
+				return ret;
+			TMCLocation secondary = loc.getOffset(this.extent, this.direction);
+			loc.getDisplayName(secondary, this.direction, this.isBidirectional);
+			loc.getFirstCoordinates();
+			loc.getLastCoordinates();
+			secondary.getFirstCoordinates();
+			secondary.getLastCoordinates();
+			this.resolvedLocation = loc;
+			return true;
+		}
+		
+		/**
+		 * @brief Publishes the primary location found by {@link #resolveLocations()}.
+		 * 
+		 * The order of messages sorted by a comparator depends on their location. This must thus
+		 * only be called while the message is out of all sorted lists, with their locks held.
+		 */
+		void publishLocation() {
+			if ((location == null) && (resolvedLocation != null))
+				location = resolvedLocation;
+		}
+		
 		/**
 		 * @brief Sets the LocationTable Number (LTN) and Service Identifier (SID).
 		 * 
@@ -1700,13 +1872,19 @@ public class AlertC extends ODA {
 
 		/**
 		 * The location for the destination (null if no destination is specified or if the location
-		 * code cannot be resolved).
+		 * code cannot be resolved, or has not been resolved yet).
 		 */
-		public final TMCLocation destination;
+		public volatile TMCLocation destination;
 
 		private final List<Event> events;
 		
 		private final List<Integer> diversionLcids;
+		
+		/**
+		 * The locations of the diversion route, in the same order as {@link #diversionLcids}, with
+		 * {@code null} for location codes which cannot be resolved. Null until resolved.
+		 */
+		private volatile List<TMCLocation> diversion = null;
 
 		/**
 		 * @brief Constructs an information block with the given parameters.
@@ -1714,15 +1892,39 @@ public class AlertC extends ODA {
 		 * This constructor is intended for use by {@link MessageBuilder}.
 		 */
 		private InformationBlock(List<Event> events, int cc, int ltn, int destinationLcid,
-				List<Integer> diversionLcids, int length, int speed) {
+				List<Integer> diversionLcids, int length, int speed, boolean resolve) {
 			this.events = events;
 			this.cc = cc;
 			this.ltn = ltn;
 			this.destinationLcid = destinationLcid;
-			this.destination = TMC.getLocation(String.format("%X", this.cc), this.ltn, destinationLcid);
 			this.diversionLcids = diversionLcids;
 			this.length = length;
 			this.speed = speed;
+			if (resolve)
+				resolveLocations();
+		}
+		
+		/**
+		 * @brief Resolves the destination and the diversion route.
+		 * 
+		 * @return True if a location has been resolved
+		 */
+		boolean resolveLocations() {
+			boolean ret = false;
+			if ((destination == null) && (destinationLcid != -1)) {
+				destination = TMC.getLocation(String.format("%X", this.cc), this.ltn, destinationLcid);
+				ret = (destination != null);
+			}
+			if (diversion == null) {
+				List<TMCLocation> res = new ArrayList<TMCLocation>();
+				for (int lcid : diversionLcids) {
+					TMCLocation location = TMC.getLocation(String.format("%X", cc), ltn, lcid);
+					res.add(location);
+					ret |= (location != null);
+				}
+				diversion = res;
+			}
+			return ret;
 		}
 
 		/**
@@ -1753,8 +1955,10 @@ public class AlertC extends ODA {
 		 */
 		public List<TMCLocation> getDiversion() {
 			List<TMCLocation> res = new LinkedList<TMCLocation>();
-			for (int lcid : diversionLcids) {
-				TMCLocation location = TMC.getLocation(String.format("%X", cc), ltn, lcid);
+			List<TMCLocation> diversion = this.diversion;
+			if (diversion == null)
+				return res;
+			for (TMCLocation location : diversion) {
 				if (location == null)
 					return new LinkedList<TMCLocation>();
 				res.add(location);
@@ -1814,11 +2018,12 @@ public class AlertC extends ODA {
 			}
 			
 			if(diversionLcids.size() > 0) res.append("Diversion route: " + diversionLcids).append('\n');
+			List<TMCLocation> diversion = this.diversion;
 			if (diversionLcids.size() > 0) {
 				res.append("Diversion route: " + diversionLcids).append("\n");
-				for (int lcid : diversionLcids) {
-					res.append("#").append(lcid);
-					TMCLocation location = TMC.getLocation(String.format("%X", cc), ltn, lcid);
+				for (int i = 0; i < diversionLcids.size(); i++) {
+					res.append("#").append(diversionLcids.get(i));
+					TMCLocation location = (diversion == null) ? null : diversion.get(i);
 					if (location != null)
 						res.append(location).append("\n");
 				}
@@ -1849,11 +2054,12 @@ public class AlertC extends ODA {
 				res.append(e.html()).append("<br>");
 			}
 			
+			List<TMCLocation> diversion = this.diversion;
 			if (diversionLcids.size() > 0) {
 				res.append("Diversion route: " + diversionLcids).append("<br><ul>");
-				for (int lcid : diversionLcids) {
-					res.append("<li>").append(lcid);
-					TMCLocation location = TMC.getLocation(String.format("%X", cc), ltn, lcid);
+				for (int i = 0; i < diversionLcids.size(); i++) {
+					res.append("<li>").append(diversionLcids.get(i));
+					TMCLocation location = (diversion == null) ? null : diversion.get(i);
 					if (location != null)
 						res.append("<blockquote>").append(location.html()).append("</blockquote>");
 				}
@@ -2031,6 +2237,9 @@ public class AlertC extends ODA {
 		/** Whether the message affects both directions. */
 		private boolean bidirectional;
 
+		/** Whether locations are left for a {@link TMCLocationResolver} to resolve (not reset). */
+		private boolean deferResolution = false;
+
 		/** The country code of the service that sent the message (from RDS PI). */
 		private int cc = -1;
 
@@ -2151,6 +2360,20 @@ public class AlertC extends ODA {
 			setServiceInfo(cc, ltn, sid, timeZone, encrypted);
 		}
 
+		/**
+		 * @brief Specifies whether the messages built will leave their locations unresolved.
+		 * 
+		 * By default, {@link #build()} resolves the locations of the message, which may require
+		 * database queries. If resolution is deferred, the locations are left {@code null} and
+		 * must be resolved by passing the message to a {@link TMCLocationResolver}. This setting
+		 * is not affected by {@link #reset()}.
+		 * 
+		 * @param value Whether to defer resolution
+		 */
+		public void setDeferResolution(boolean value) {
+			this.deferResolution = value;
+		}
+
 		/**
 		 * @brief Adds a new waypoint to the diversion route for the current information block.
 		 * 
@@ -2355,7 +2578,8 @@ public class AlertC extends ODA {
 					this.encrypted, this.interroad, this.fcc, this.fltn, this.lcid,
 					this.direction, this.bidirectional, this.extent, this.diversion,
 					this.durationType, this.duration, this.startTime, this.stopTime, this.nature,
-					this.urgency, this.spoken, this.informationBlocks, this.updateCount);
+					this.urgency, this.spoken, this.informationBlocks, this.updateCount,
+					!this.deferResolution);
 
 			reset();
 			return res;
@@ -2716,7 +2940,8 @@ public class AlertC extends ODA {
 			if (this.ibEvents.isEmpty())
 				throw new IllegalStateException("Cannot create an information block without events");
 			this.informationBlocks.add(new InformationBlock(this.ibEvents, this.fcc, this.fltn,
-					this.ibDestination,	this.ibDiversionLcids, this.ibLength, this.ibSpeed));
+					this.ibDestination,	this.ibDiversionLcids, this.ibLength, this.ibSpeed,
+					!this.deferResolution));
 			resetInformationBlock();
 		}
 
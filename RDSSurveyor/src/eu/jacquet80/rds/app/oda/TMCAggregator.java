@@ -0,0 +1,245 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.app.oda;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import eu.jacquet80.rds.app.ChangeListener;
+import eu.jacquet80.rds.app.oda.AlertC.Message;
+
+/**
+ * @brief Merges the TMC messages received from all stations, by service.
+ * 
+ * An {@link AlertC} instance only holds the messages received from its station, and is discarded
+ * when another station is tuned in. When an aggregator is set with
+ * {@link AlertC#setAggregator(TMCAggregator)}, all {@link AlertC} instances also pass the
+ * messages they receive to it. Messages are grouped by service (CC, LTN and SID), and a message
+ * replaces the messages of the same service which it overrides (see
+ * {@link Message#overrides(Message)}), regardless of the station from which either was received.
+ * The aggregator thus holds the current messages of each service across retunes. Messages
+ * received before the service information is known are ignored: they will be received again.
+ * 
+ * Messages expire as in {@link TMCMessageStore}, the current time being that of the last
+ * message received for the service, or that passed to {@link #expire(Date)}.
+ * 
+ * Updates are serialized. After each update, an immutable snapshot of all messages is
+ * published, which readers obtain without locking: readers never block decoders, and always see
+ * a consistent state.
+ */
+public class TMCAggregator {
+	/** Current messages, by service in order of first reception */
+	private final Map<Service, TMCMessageStore> stores = new LinkedHashMap<Service, TMCMessageStore>();
+	
+	/** The last snapshot published */
+	private volatile Map<Service, List<Message>> snapshot = Collections.emptyMap();
+	
+	private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<ChangeListener>();
+	
+	/**
+	 * @brief Receives a message from an {@link AlertC} instance.
+	 * 
+	 * Messages overridden by the new message are removed, then the new message is added unless
+	 * it is a cancellation message.
+	 * 
+	 * @param message The message
+	 */
+	public void receive(Message message) {
+		if ((message.cc < 0) || (message.getLocationTableNumber() < 0) || (message.getSid() < 0))
+			return;
+		Service service = new Service(message.cc, message.getLocationTableNumber(), message.getSid());
+		synchronized (this) {
+			TMCMessageStore store = stores.get(service);
+			if (store == null) {
+				store = new TMCMessageStore(new AlertC.DefaultComparator());
+				stores.put(service, store);
+			}
+			store.expire(message.getTimestamp());
+			for (Message m : store.getOverridden(message))
+				store.remove(m);
+			if (!message.isCancellation())
+				store.add(message);
+			publish(Collections.singleton(service));
+		}
+		fireChangeListeners();
+	}
+	
+	/**
+	 * @brief Publishes the location of a message which has been resolved after it was received.
+	 * 
+	 * The location is published with {@link Message#publishLocation()}, and the message moved
+	 * accordingly if it is still current. Callers which hold the message in another sorted list
+	 * must have removed it from that list.
+	 * 
+	 * @param message The message
+	 */
+	public void refresh(Message message) {
+		Service service = new Service(message.cc, message.getLocationTableNumber(), message.getSid());
+		synchronized (this) {
+			TMCMessageStore store = stores.get(service);
+			/* the position of the message in the list depends on its location */
+			boolean stored = (store != null) && store.remove(message);
+			message.publishLocation();
+			if (!stored)
+				return;
+			store.add(message);
+			publish(Collections.singleton(service));
+		}
+		fireChangeListeners();
+	}
+	
+	/**
+	 * @brief Removes the messages which have expired from all services.
+	 * 
+	 * @param now The current time
+	 */
+	public void expire(Date now) {
+		Set<Service> changed = new HashSet<Service>();
+		synchronized (this) {
+			for (Map.Entry<Service, TMCMessageStore> entry : stores.entrySet())
+				if (!entry.getValue().expire(now).isEmpty())
+					changed.add(entry.getKey());
+			if (!changed.isEmpty())
+				publish(changed);
+		}
+		if (!changed.isEmpty())
+			fireChangeListeners();
+	}
+	
+	/**
+	 * @brief Publishes a snapshot of the current messages.
+	 * 
+	 * Only the messages of the services which have changed are copied, the lists of the other
+	 * services are taken from the previous snapshot. Must be called with the lock held.
+	 * 
+	 * @param changed The services whose messages have changed
+	 */
+	private void publish(Set<Service> changed) {
+		Map<Service, List<Message>> newSnapshot = new LinkedHashMap<Service, List<Message>>();
+		for (Map.Entry<Service, TMCMessageStore> entry : stores.entrySet()) {
+			List<Message> list = snapshot.get(entry.getKey());
+			if ((list == null) || changed.contains(entry.getKey()))
+				list = Collections.unmodifiableList(new ArrayList<Message>(entry.getValue().getMessages()));
+			newSnapshot.put(entry.getKey(), list);
+		}
+		snapshot = Collections.unmodifiableMap(newSnapshot);
+	}
+	
+	/**
+	 * @brief Returns the current messages of all services.
+	 * 
+	 * The map and the lists it holds are immutable and are not affected by subsequent updates.
+	 * 
+	 * @return The messages of each service, sorted with {@link AlertC.DefaultComparator}
+	 */
+	public Map<Service, List<Message>> getSnapshot() {
+		return snapshot;
+	}
+	
+	/**
+	 * @brief Returns the current messages of a service.
+	 * 
+	 * @return An immutable list, empty if no message has been received for the service
+	 */
+	public List<Message> getMessages(Service service) {
+		List<Message> ret = snapshot.get(service);
+		if (ret == null)
+			return Collections.emptyList();
+		return ret;
+	}
+	
+	/**
+	 * @brief Removes all messages.
+	 */
+	public void clear() {
+		synchronized (this) {
+			stores.clear();
+			snapshot = Collections.emptyMap();
+		}
+		fireChangeListeners();
+	}
+	
+	/**
+	 * @brief Adds a listener which is notified after each update.
+	 * 
+	 * Listeners are called from the thread which made the update, usually a decoder thread.
+	 */
+	public void addChangeListener(ChangeListener l) {
+		changeListeners.add(l);
+	}
+	
+	public void removeChangeListener(ChangeListener l) {
+		changeListeners.remove(l);
+	}
+	
+	private void fireChangeListeners() {
+		for (ChangeListener l : changeListeners)
+			l.notifyChange();
+	}
+	
+	/**
+	 * @brief Identifies a TMC service.
+	 */
+	public static class Service {
+		/** The country code */
+		public final int cc;
+		/** The location table number */
+		public final int ltn;
+		/** The service ID */
+		public final int sid;
+		
+		public Service(int cc, int ltn, int sid) {
+			this.cc = cc;
+			this.ltn = ltn;
+			this.sid = sid;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Service))
+				return false;
+			Service s = (Service) obj;
+			return (cc == s.cc) && (ltn == s.ltn) && (sid == s.sid);
+		}
+		
+		@Override
+		public int hashCode() {
+			return (cc << 16) | (ltn << 8) | sid;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("CC=%X, LTN=%d, SID=%d", cc, ltn, sid);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.app.oda;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.jacquet80.rds.app.oda.AlertC.Message;
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.app.oda.tmc.TMCDatabase;
+
+/**
+ * @brief Resolves the locations of TMC messages on background threads.
+ * 
+ * Resolving a location may require several database queries, which should not be run on the
+ * thread which decodes groups. Messages built with deferred resolution (see
+ * {@link AlertC.MessageBuilder#setDeferResolution(boolean)}) are passed to
+ * {@link #resolve(Message, Listener)} instead, and their locations are looked up by a pool of
+ * threads. The primary location of a message determines its place in sorted lists, so it is
+ * only published by the listener, with {@link Message#publishLocation()}, once the message has
+ * been taken out of those lists. Until then, {@link Message#isFullyResolved()} returns false.
+ * 
+ * Pending messages are grouped by database and location table: a single task resolves all the
+ * messages queued for a table while it waits for a thread, so that the statements and cached
+ * locations of the table are reused across the batch.
+ * 
+ * The threads are daemon threads, which do not prevent the application from exiting.
+ */
+public class TMCLocationResolver {
+	/** Messages waiting to be resolved, by table */
+	private final Map<Table, List<Pending>> pending = new HashMap<Table, List<Pending>>();
+	
+	private final ExecutorService executor;
+	
+	/**
+	 * @param threads The number of threads which resolve locations
+	 */
+	public TMCLocationResolver(int threads) {
+		final AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "TMC-Resolver-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * @brief Queues a message for resolution.
+	 * 
+	 * The message is resolved against the database of the calling thread (see
+	 * {@link TMC#setThreadDatabase(TMCDatabase)}). This method does not block.
+	 * 
+	 * @param message The message
+	 * @param listener Notified on a resolver thread once the message has been resolved, if any of
+	 * its locations could be resolved
+	 */
+	public void resolve(Message message, Listener listener) {
+		Table table = new Table(TMC.getThreadDatabase(), message.fcc, message.getForeignLocationTableNumber());
+		synchronized (pending) {
+			List<Pending> list = pending.get(table);
+			if (list == null) {
+				list = new ArrayList<Pending>();
+				pending.put(table, list);
+				executor.execute(new Batch(table));
+			}
+			list.add(new Pending(message, listener));
+		}
+	}
+	
+	/**
+	 * @brief Returns the number of messages waiting to be resolved.
+	 */
+	public int getPendingCount() {
+		int ret = 0;
+		synchronized (pending) {
+			for (List<Pending> list : pending.values())
+				ret += list.size();
+		}
+		return ret;
+	}
+	
+	/**
+	 * @brief Stops the threads, after the messages already queued have been resolved.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	/**
+	 * @brief Receives messages once they have been resolved.
+	 */
+	public static interface Listener {
+		/**
+		 * @brief Called on a resolver thread after locations of a message have been resolved.
+		 * 
+		 * The listener must publish the primary location with {@link Message#publishLocation()}.
+		 */
+		public void resolved(Message message);
+	}
+	
+	/**
+	 * @brief A location table in a database.
+	 */
+	private static class Table {
+		private final TMCDatabase db;
+		private final int cc;
+		private final int ltn;
+		
+		private Table(TMCDatabase db, int cc, int ltn) {
+			this.db = db;
+			this.cc = cc;
+			this.ltn = ltn;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Table))
+				return false;
+			Table t = (Table) obj;
+			return (db == t.db) && (cc == t.cc) && (ltn == t.ltn);
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(db) * 31 + (cc << 8) + ltn;
+		}
+	}
+	
+	private static class Pending {
+		private final Message message;
+		private final Listener listener;
+		
+		private Pending(Message message, Listener listener) {
+			this.message = message;
+			this.listener = listener;
+		}
+	}
+	
+	/**
+	 * @brief Resolves all the messages queued for a table.
+	 */
+	private class Batch implements Runnable {
+		private final Table table;
+		
+		private Batch(Table table) {
+			this.table = table;
+		}
+		
+		@Override
+		public void run() {
+			List<Pending> list;
+			synchronized (pending) {
+				list = pending.remove(table);
+			}
+			TMCDatabase previous = TMC.setThreadDatabase(table.db);
+			try {
+				for (Pending p : list)
+					try {
+						if (p.message.resolveLocations())
+							p.listener.resolved(p.message);
+					} catch (RuntimeException e) {
+						e.printStackTrace(System.err);
+					}
+			} finally {
+				TMC.setThreadDatabase(previous);
+			}
+		}
+	}
+}
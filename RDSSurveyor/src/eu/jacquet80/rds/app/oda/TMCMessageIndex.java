@@ -0,0 +1,218 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.app.oda;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.jacquet80.rds.app.oda.AlertC.Message;
+import eu.jacquet80.rds.app.oda.tmc.GridIndex;
+import eu.jacquet80.rds.app.oda.tmc.TMCLocation;
+import eu.jacquet80.rds.app.oda.tmc.TMCPoint;
+
+/**
+ * @brief A spatial index of TMC messages.
+ * 
+ * Messages are indexed in two ways: by the bounding box of their coordinates, for map views
+ * which need the messages in a given area, and by the locations they span (the primary location
+ * and every location up to the secondary one), for route guidance which needs the messages
+ * affecting a stretch of road. Messages without a resolved location are not indexed.
+ * 
+ * An index can be attached to an {@link AlertC} instance with {@link AlertC#setIndex(TMCMessageIndex)},
+ * which keeps it up to date as messages are received, replaced or cancelled.
+ * 
+ * All methods are thread-safe.
+ */
+public class TMCMessageIndex {
+	/** The size of a grid cell, in degrees (about 10 km) */
+	private static final float CELL_SIZE = 0.1f;
+	
+	/** The maximum number of points walked by {@link #getMessagesAlong(TMCPoint, TMCPoint)} */
+	private static final int MAX_STEPS = 1000;
+	
+	private final GridIndex<Message> grid = new GridIndex<Message>(CELL_SIZE);
+	
+	/** Messages by the key of each location they span, see {@link #key(int, int, int)} */
+	private final Map<Long, List<Message>> byLocation = new HashMap<Long, List<Message>>();
+	
+	/** The location keys of each message */
+	private final Map<Message, List<Long>> keys = new HashMap<Message, List<Long>>();
+	
+	private static long key(int cid, int tabcd, int lcd) {
+		return ((long) (cid & 0xFFFF) << 48) | ((long) (tabcd & 0xFFFF) << 32) | (lcd & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * @brief Adds a message to the index.
+	 * 
+	 * If the message is already in the index, it is re-indexed.
+	 */
+	public synchronized void add(Message message) {
+		remove(message);
+		TMCLocation location = message.location;
+		if (location == null)
+			return;
+		
+		float[] c = message.getCoordinates();
+		if (c != null) {
+			float minX = c[0], minY = c[1], maxX = c[0], maxY = c[1];
+			for (int i = 2; i + 1 < c.length; i += 2) {
+				minX = Math.min(minX, c[i]);
+				minY = Math.min(minY, c[i + 1]);
+				maxX = Math.max(maxX, c[i]);
+				maxY = Math.max(maxY, c[i + 1]);
+			}
+			grid.add(message, minX, minY, maxX, maxY);
+		}
+		
+		List<Long> spanned = new ArrayList<Long>();
+		TMCLocation current = location;
+		for (int i = 0; i <= message.extent; i++) {
+			long key = key(current.cid, current.tabcd, current.lcd);
+			if (spanned.contains(key))
+				break;
+			spanned.add(key);
+			current = current.getOffset(1, message.direction);
+		}
+		for (Long key : spanned) {
+			List<Message> list = byLocation.get(key);
+			if (list == null) {
+				list = new ArrayList<Message>(2);
+				byLocation.put(key, list);
+			}
+			list.add(message);
+		}
+		keys.put(message, spanned);
+	}
+	
+	/**
+	 * @brief Removes a message from the index.
+	 * 
+	 * @return {@code true} if the message was in the index
+	 */
+	public synchronized boolean remove(Message message) {
+		boolean ret = grid.remove(message);
+		List<Long> spanned = keys.remove(message);
+		if (spanned == null)
+			return ret;
+		for (Long key : spanned) {
+			List<Message> list = byLocation.get(key);
+			list.remove(message);
+			if (list.isEmpty())
+				byLocation.remove(key);
+		}
+		return true;
+	}
+	
+	/**
+	 * @brief Returns the messages whose coordinates intersect a bounding box.
+	 */
+	public synchronized List<Message> getMessages(float minLon, float minLat, float maxLon, float maxLat) {
+		return grid.query(minLon, minLat, maxLon, maxLat);
+	}
+	
+	/**
+	 * @brief Returns the messages affecting a location.
+	 * 
+	 * These are the messages which span the location itself, not those which span a road or
+	 * segment containing it.
+	 */
+	public synchronized List<Message> getMessages(TMCLocation location) {
+		List<Message> list = byLocation.get(key(location.cid, location.tabcd, location.lcd));
+		return (list == null) ? new ArrayList<Message>() : new ArrayList<Message>(list);
+	}
+	
+	/**
+	 * @brief Returns the messages affecting the stretch of road between two points.
+	 * 
+	 * The points from {@code from} to {@code to} are walked through their offsets, first in
+	 * positive direction, then in negative direction if {@code to} is not found. Messages which
+	 * span any of these points, or the segment or road to which they belong, are returned. The
+	 * direction of the messages is not taken into account.
+	 * 
+	 * @param from The first point
+	 * @param to The last point, which must be on the same road as {@code from}
+	 * @return The messages, in the order in which they are encountered from {@code from}, or an
+	 * empty list if {@code to} cannot be reached from {@code from}
+	 */
+	public synchronized List<Message> getMessagesAlong(TMCPoint from, TMCPoint to) {
+		List<TMCPoint> points = walk(from, to, 0);
+		if (points == null)
+			points = walk(from, to, 1);
+		Set<Message> ret = new LinkedHashSet<Message>();
+		if (points == null)
+			return new ArrayList<Message>(ret);
+		for (TMCPoint point : points) {
+			addMessages(ret, key(point.cid, point.tabcd, point.lcd));
+			if (point.segLcd >= 0)
+				addMessages(ret, key(point.cid, point.tabcd, point.segLcd));
+			if (point.roaLcd >= 0)
+				addMessages(ret, key(point.cid, point.tabcd, point.roaLcd));
+		}
+		return new ArrayList<Message>(ret);
+	}
+	
+	/**
+	 * @brief Walks from one point to another in the given direction.
+	 * 
+	 * @return The points walked through, including both ends, or {@code null} if {@code to}
+	 * was not reached
+	 */
+	private static List<TMCPoint> walk(TMCPoint from, TMCPoint to, int direction) {
+		List<TMCPoint> ret = new ArrayList<TMCPoint>();
+		TMCPoint current = from;
+		for (int i = 0; (current != null) && (i < MAX_STEPS); i++) {
+			ret.add(current);
+			if (current.equals(to))
+				return ret;
+			current = (direction == 0) ? current.getPosOffset() : current.getNegOffset();
+		}
+		return null;
+	}
+	
+	private void addMessages(Set<Message> set, long key) {
+		List<Message> list = byLocation.get(key);
+		if (list != null)
+			set.addAll(list);
+	}
+	
+	/**
+	 * @brief Returns the number of messages in the index.
+	 */
+	public synchronized int size() {
+		return keys.size();
+	}
+	
+	public synchronized void clear() {
+		grid.clear();
+		byLocation.clear();
+		keys.clear();
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.app.oda;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.jacquet80.rds.app.oda.AlertC.Message;
+
+/**
+ * @brief A store of current TMC messages.
+ * 
+ * Messages are held in a list sorted with a comparator, as displayed to the user, and are
+ * indexed by country code, location code and direction. When a new message is received, only
+ * the messages with the same location and direction (and those whose country code is not yet
+ * known) need to be checked with {@link Message#overrides(Message)}, rather than all current
+ * messages. Location-independent messages, which may override messages at any location, are the
+ * only ones for which all messages are checked.
+ * 
+ * Messages expire at the time returned by {@link Message#getPersistence()}. Expiry is driven by
+ * a hashed timer wheel with a resolution of one minute, which {@link #expire(Date)} advances:
+ * only the messages due in the slots which have elapsed since the last call are examined.
+ * 
+ * This class is not thread-safe.
+ */
+public class TMCMessageStore {
+	/** The resolution of the timer wheel, in milliseconds */
+	private static final long TICK = 60000;
+	
+	/** The number of slots of the timer wheel (one day) */
+	private static final int SLOTS = 1440;
+	
+	/** Current messages, sorted with {@link #comparator} */
+	private final List<Message> messages = new ArrayList<Message>();
+	
+	private Comparator<Message> comparator;
+	
+	/** Messages by country code, location code and direction, see {@link #key(int, int, int)} */
+	private final Map<Long, List<Message>> byLocation = new HashMap<Long, List<Message>>();
+	
+	/** The timer wheel, each slot holding the messages which expire at a tick modulo {@link #SLOTS} */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final Set<Message>[] wheel = new Set[SLOTS];
+	
+	/** The tick at which each message expires */
+	private final Map<Message, Long> expiries = new HashMap<Message, Long>();
+	
+	/** The last tick processed by {@link #expire(Date)}, or -1 if it has never been called */
+	private long currentTick = -1;
+	
+	/**
+	 * @param comparator The comparator with which the list of messages is sorted
+	 */
+	public TMCMessageStore(Comparator<Message> comparator) {
+		this.comparator = comparator;
+	}
+	
+	private static long key(int cc, int lcid, int direction) {
+		return ((long) (cc & 0xFFFF) << 32) | ((lcid & 0xFFFFL) << 8) | (direction & 0xFF);
+	}
+	
+	/**
+	 * @brief Returns the current messages, sorted with the comparator.
+	 * 
+	 * The list returned is an unmodifiable view, which reflects subsequent changes.
+	 */
+	public List<Message> getMessages() {
+		return Collections.unmodifiableList(messages);
+	}
+	
+	/**
+	 * @brief Sets a new comparator and sorts the list of messages with it.
+	 */
+	public void setComparator(Comparator<Message> comparator) {
+		this.comparator = comparator;
+		Collections.sort(messages, comparator);
+	}
+	
+	/**
+	 * @brief Returns the current messages which a new message overrides.
+	 * 
+	 * @param message The new message
+	 * @return The messages {@code message} overrides, see {@link Message#overrides(Message)}
+	 */
+	public List<Message> getOverridden(Message message) {
+		List<Message> ret = new ArrayList<Message>();
+		if (message.lcid == Message.LOCATION_INDEPENDENT) {
+			for (Message m : messages)
+				if (message.overrides(m))
+					ret.add(m);
+			return ret;
+		}
+		addOverridden(ret, message, message.fcc);
+		/* messages received before the CC was known match any non-INTER-ROAD message */
+		if (!message.interroad && (message.fcc >= 0))
+			addOverridden(ret, message, -1);
+		return ret;
+	}
+	
+	private void addOverridden(List<Message> ret, Message message, int cc) {
+		List<Message> list = byLocation.get(key(cc, message.lcid, message.direction));
+		if (list != null)
+			for (Message m : list)
+				if (message.overrides(m))
+					ret.add(m);
+	}
+	
+	/**
+	 * @brief Adds a message.
+	 * 
+	 * The message is inserted at its place in the sorted list, and scheduled to expire at the
+	 * time returned by {@link Message#getPersistence()}.
+	 */
+	public void add(Message message) {
+		int pos = Collections.binarySearch(messages, message, comparator);
+		messages.add((pos < 0) ? -pos - 1 : pos, message);
+		
+		long key = key(message.fcc, message.lcid, message.direction);
+		List<Message> list = byLocation.get(key);
+		if (list == null) {
+			list = new ArrayList<Message>(2);
+			byLocation.put(key, list);
+		}
+		list.add(message);
+		
+		long tick = (message.getPersistence().getTime() + TICK - 1) / TICK;
+		if ((currentTick >= 0) && (tick <= currentTick))
+			tick = currentTick + 1;
+		expiries.put(message, tick);
+		int slot = (int) (tick % SLOTS);
+		if (wheel[slot] == null)
+			wheel[slot] = new HashSet<Message>();
+		wheel[slot].add(message);
+	}
+	
+	/**
+	 * @brief Removes a message.
+	 * 
+	 * @return {@code true} if the message was in the store
+	 */
+	public boolean remove(Message message) {
+		Long tick = expiries.remove(message);
+		if (tick == null)
+			return false;
+		wheel[(int) (tick % SLOTS)].remove(message);
+		
+		long key = key(message.fcc, message.lcid, message.direction);
+		List<Message> list = byLocation.get(key);
+		list.remove(message);
+		if (list.isEmpty())
+			byLocation.remove(key);
+		
+		/* look for the message among those which compare equal to it, if the order is still consistent */
+		int pos = Collections.binarySearch(messages, message, comparator);
+		if (pos >= 0) {
+			for (int i = pos; (i >= 0) && (comparator.compare(messages.get(i), message) == 0); i--)
+				if (messages.get(i) == message) {
+					messages.remove(i);
+					return true;
+				}
+			for (int i = pos + 1; (i < messages.size()) && (comparator.compare(messages.get(i), message) == 0); i++)
+				if (messages.get(i) == message) {
+					messages.remove(i);
+					return true;
+				}
+		}
+		messages.remove(message);
+		return true;
+	}
+	
+	/**
+	 * @brief Removes the messages which have expired.
+	 * 
+	 * Time is that of the received data, which is why it is supplied by the caller. If it goes
+	 * backwards, nothing expires until it catches up.
+	 * 
+	 * @param now The current time
+	 * @return The messages which have expired and have been removed
+	 */
+	public List<Message> expire(Date now) {
+		List<Message> ret = new ArrayList<Message>();
+		long nowTick = now.getTime() / TICK;
+		if (currentTick < 0)
+			currentTick = nowTick - 1;
+		if (nowTick <= currentTick)
+			return ret;
+		/* each slot needs to be examined only once, even after a long gap */
+		long from = Math.max(currentTick + 1, nowTick - SLOTS + 1);
+		for (long tick = from; tick <= nowTick; tick++) {
+			Set<Message> slot = wheel[(int) (tick % SLOTS)];
+			if (slot == null)
+				continue;
+			for (Message m : slot)
+				if (expiries.get(m) <= nowTick)
+					ret.add(m);
+		}
+		for (Message m : ret)
+			remove(m);
+		currentTick = nowTick;
+		return ret;
+	}
+	
+	/**
+	 * @brief Returns the number of messages.
+	 */
+	public int size() {
+		return messages.size();
+	}
+	
+	public void clear() {
+		messages.clear();
+		byLocation.clear();
+		expiries.clear();
+		for (int i = 0; i < SLOTS; i++)
+			wheel[i] = null;
+	}
+}
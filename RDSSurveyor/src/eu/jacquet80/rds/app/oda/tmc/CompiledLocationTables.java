@@ -0,0 +1,450 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.jacquet80.rds.app.oda.tmc.TMCLocation.LocationClass;
+
+/**
+ * @brief A set of location tables compiled into a single binary file.
+ *
+ * Compiled location tables are an alternative to the HSQLDB database: they are written by
+ * {@link LocationTableCompiler} and opened with a database URL of the form {@code ltc:<file>}.
+ * The file is memory-mapped and never parsed as a whole: lookups are binary searches in sorted
+ * arrays of keys, and the records found are turned into objects only when requested (and then
+ * cached by {@link TMC} as usual). Opening a file thus takes constant time, and the memory used
+ * does not depend on the number of location tables it holds.
+ *
+ * The file begins with a header made of {@link #MAGIC}, {@link #VERSION} and a table of
+ * sections, each described by its offset and its number of entries. The first section holds all
+ * strings, each stored as a 16-bit length followed by the UTF-8 bytes, and referred to by the
+ * offset of its length in the section ({@code -1} for {@code null}). Each of the other sections
+ * holds a sorted array of 64-bit keys (see {@link LocationCache#key(int, int, int)}) followed by
+ * an array of fixed-size records of 32-bit integers, in the same order. Missing values are
+ * stored as {@code -1}, except coordinates (stored in 1/100000 degrees) which are stored as 0.
+ *
+ * All values are big-endian. This class is thread-safe.
+ */
+public class CompiledLocationTables {
+	/** Magic number at the start of a compiled location table file ("RLTC") */
+	static final int MAGIC = 0x524C5443;
+
+	/** Version of the file format */
+	static final int VERSION = 1;
+
+	/** Strings, the count being the size of the section in bytes */
+	static final int STRINGS = 0;
+	/** Countries by CID: ECC, CCD, CNAME */
+	static final int COUNTRIES = 1;
+	/** Location data sets by CID and TABCD: DCOMMENT, VERSION, VERSIONDESCRIPTION */
+	static final int DATASETS = 2;
+	/** Aliases by CID and ALIAS: TABCD */
+	static final int ALIASES = 3;
+	/** Names by CID, NID and LID (see {@link #nameKey(int, int, int)}): NAME, NCOMMENT */
+	static final int NAMES = 4;
+	/** Administrative and other areas by CID, TABCD and LCD: CLASS, TCD, STCD, NID, POL_LCD */
+	static final int AREAS = 5;
+	/**
+	 * Roads by CID, TABCD and LCD: CLASS, TCD, STCD, ROADNUMBER, RNID, N1ID, N2ID, POL_LCD,
+	 * PES_LEV
+	 */
+	static final int ROADS = 6;
+	/**
+	 * Segments by CID, TABCD and LCD: CLASS, TCD, STCD, ROADNUMBER, RNID, N1ID, N2ID, ROA_LCD,
+	 * SEG_LCD, POL_LCD, NEG_OFF_LCD, POS_OFF_LCD
+	 */
+	static final int SEGMENTS = 7;
+	/**
+	 * Points by CID, TABCD and LCD: CLASS, TCD, STCD, JUNCTIONNUMBER, RNID, N1ID, N2ID, POL_LCD,
+	 * OTH_LCD, SEG_LCD, ROA_LCD, DIVERSIONPOS, DIVERSIONNEG, XCOORD, YCOORD, INTERRUPTSROAD,
+	 * URBAN, NEG_OFF_LCD, POS_OFF_LCD
+	 */
+	static final int POINTS = 8;
+	/** First segment of a road or segment, by CID, TABCD and the LCD of the parent: LCD */
+	static final int FIRST_SEGMENTS = 9;
+	/** Last segment of a road or segment, by CID, TABCD and the LCD of the parent: LCD */
+	static final int LAST_SEGMENTS = 10;
+	/** First point of a road or segment, by CID, TABCD and the LCD of the parent: LCD */
+	static final int FIRST_POINTS = 11;
+	/** Last point of a road or segment, by CID, TABCD and the LCD of the parent: LCD */
+	static final int LAST_POINTS = 12;
+
+	/** Number of sections */
+	static final int SECTION_COUNT = 13;
+
+	/** Number of integers in a record, by section */
+	static final int[] RECORD_SIZES = {0, 3, 3, 1, 2, 5, 9, 12, 19, 1, 1, 1, 1};
+
+	/** Size of the header, in bytes */
+	static final int HEADER_SIZE = 12 + 8 * SECTION_COUNT;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final MappedByteBuffer buffer;
+
+	/** Offset of each section */
+	private final int[] offsets = new int[SECTION_COUNT];
+
+	/** Number of entries of each section */
+	private final int[] counts = new int[SECTION_COUNT];
+
+	/** All countries, which are few */
+	private final List<Country> countries = new ArrayList<Country>();
+
+	/**
+	 * @brief Opens a compiled location table file.
+	 *
+	 * @param file The file
+	 * @throws IOException if the file cannot be read, or is not a compiled location table file
+	 */
+	public CompiledLocationTables(File file) throws IOException {
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "r");
+		try {
+			this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			if ((buffer.capacity() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC))
+				throw new IOException(file + " is not a compiled location table file");
+			if (buffer.getInt(4) != VERSION)
+				throw new IOException(String.format("%s has unsupported version %d", file, buffer.getInt(4)));
+			if (buffer.getInt(8) != SECTION_COUNT)
+				throw new IOException(String.format("%s has %d sections, expected %d", file, buffer.getInt(8), SECTION_COUNT));
+			for (int i = 0; i < SECTION_COUNT; i++) {
+				offsets[i] = buffer.getInt(12 + 8 * i);
+				counts[i] = buffer.getInt(16 + 8 * i);
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+
+		for (int i = 0; i < counts[COUNTRIES]; i++) {
+			long key = getKey(COUNTRIES, i);
+			Country country = new Country();
+			country.cid = (int) (key >>> 48);
+			country.ecc = getString(COUNTRIES, i, 0);
+			if (country.ecc == null)
+				country.ecc = "";
+			country.ccd = getString(COUNTRIES, i, 1);
+			country.country = getString(COUNTRIES, i, 2);
+			if (country.country == null)
+				country.country = "unknown#" + country.cid;
+			countries.add(country);
+		}
+	}
+
+	/**
+	 * @brief Builds the key of a name.
+	 *
+	 * Unlike other keys, the NID comes before the LID, so that all the translations of a name
+	 * are next to each other.
+	 */
+	static long nameKey(int cid, int lid, int nid) {
+		return ((long) (cid & 0xFFFF) << 48) | ((nid & 0xFFFFFFFFL) << 16) | (lid & 0xFFFF);
+	}
+
+	/**
+	 * @brief Returns the file from which the location tables are read.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @brief Returns the number of entries in a section.
+	 *
+	 * @param section One of the section constants, e.g. {@link #POINTS}
+	 */
+	int getCount(int section) {
+		return counts[section];
+	}
+
+	private long getKey(int section, int index) {
+		return buffer.getLong(offsets[section] + 8 * index);
+	}
+
+	private int getInt(int section, int index, int field) {
+		int size = RECORD_SIZES[section];
+		return buffer.getInt(offsets[section] + 8 * counts[section] + 4 * (index * size + field));
+	}
+
+	private String getString(int section, int index, int field) {
+		int ref = getInt(section, index, field);
+		if (ref < 0)
+			return null;
+		int pos = offsets[STRINGS] + ref;
+		int length = buffer.getShort(pos) & 0xFFFF;
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = buffer.get(pos + 2 + i);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * @brief Finds the first entry of a section whose key is not less than the given key.
+	 *
+	 * @return The index of the entry, or the number of entries if all keys are less than {@code key}
+	 */
+	private int ceiling(int section, long key) {
+		int low = 0;
+		int high = counts[section];
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getKey(section, mid) < key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * @brief Finds an entry of a section.
+	 *
+	 * @return The index of the entry, or -1 if it was not found
+	 */
+	private int find(int section, long key) {
+		int index = ceiling(section, key);
+		return ((index < counts[section]) && (getKey(section, index) == key)) ? index : -1;
+	}
+
+	Country getCountry(int cid) {
+		for (Country country : countries)
+			if (country.cid == cid)
+				return country;
+		return null;
+	}
+
+	Country getCountry(String ecc) {
+		for (Country country : countries)
+			if (ecc.equals(country.ecc))
+				return country;
+		return null;
+	}
+
+	/**
+	 * @brief Returns the country with a given CCD which has a location table (or an alias) with a given number.
+	 */
+	Country getCountry(String ccd, int ltn) {
+		for (Country country : countries)
+			if (ccd.equals(country.ccd) && (find(DATASETS, LocationCache.key(country.cid, ltn, 0)) >= 0))
+				return country;
+		for (Country country : countries)
+			if (ccd.equals(country.ccd) && (find(ALIASES, LocationCache.key(country.cid, ltn, 0)) >= 0))
+				return country;
+		return null;
+	}
+
+	LocationDataset getLocationDataset(int cid, int tabcd) {
+		int i = find(DATASETS, LocationCache.key(cid, tabcd, 0));
+		if (i < 0)
+			return null;
+		LocationDataset ret = new LocationDataset();
+		ret.cid = cid;
+		ret.tabcd = tabcd;
+		ret.dComment = getString(DATASETS, i, 0);
+		ret.version = getString(DATASETS, i, 1);
+		ret.versionDescription = getString(DATASETS, i, 2);
+		if (ret.versionDescription == null)
+			ret.versionDescription = "";
+		return ret;
+	}
+
+	/**
+	 * @brief Returns the LTN for which {@code alias} is an alias, or -1 if it is none.
+	 */
+	int getAlias(int cid, int alias) {
+		int i = find(ALIASES, LocationCache.key(cid, alias, 0));
+		return i < 0 ? -1 : getInt(ALIASES, i, 0);
+	}
+
+	TMCName getName(int cid, int lid, int nid) {
+		int i = find(NAMES, nameKey(cid, lid, nid));
+		if (i < 0)
+			return null;
+		TMCName ret = new TMCName();
+		ret.cid = cid;
+		ret.lid = lid;
+		ret.nid = nid;
+		ret.name = getString(NAMES, i, 0);
+		ret.nameComment = getString(NAMES, i, 1);
+		if (ret.nameComment == null)
+			ret.nameComment = "";
+		return ret;
+	}
+
+	/**
+	 * @brief Returns the lowest LID in which a name exists, or -1 if there is no such name.
+	 */
+	int getDefaultLid(int cid, int nid) {
+		int i = ceiling(NAMES, nameKey(cid, 0, nid));
+		if ((i < counts[NAMES]) && ((getKey(NAMES, i) >>> 16) == (nameKey(cid, 0, nid) >>> 16)))
+			return (int) (getKey(NAMES, i) & 0xFFFF);
+		return -1;
+	}
+
+	/**
+	 * @brief Sets the fields common to all locations.
+	 *
+	 * @return The index of the next field
+	 */
+	private int readLocation(TMCLocation location, int section, int i, int cid, int tabcd, int lcd) {
+		location.cid = cid;
+		location.tabcd = tabcd;
+		location.lcd = lcd;
+		location.category = LocationClass.forCode(String.valueOf((char) getInt(section, i, 0)));
+		location.tcd = getInt(section, i, 1);
+		location.stcd = getInt(section, i, 2);
+		return 3;
+	}
+
+	/**
+	 * @brief Sets the road name, first name and second name of a location, read from three fields.
+	 */
+	private void readNames(TMCLocation location, int section, int i, int field) {
+		location.rnid = getInt(section, i, field);
+		if (location.rnid >= 0)
+			location.roadName = TMC.getName(location.cid, location.rnid);
+		location.n1id = getInt(section, i, field + 1);
+		if (location.n1id >= 0)
+			location.name1 = TMC.getName(location.cid, location.n1id);
+		location.n2id = getInt(section, i, field + 2);
+		if (location.n2id >= 0)
+			location.name2 = TMC.getName(location.cid, location.n2id);
+	}
+
+	/**
+	 * @brief Sets the enclosing administrative area of a location.
+	 */
+	private void readArea(TMCLocation location, int section, int i, int field) {
+		location.polLcd = getInt(section, i, field);
+		if (location.polLcd >= 0)
+			location.area = TMC.getArea(location.cid, location.tabcd, location.polLcd);
+	}
+
+	TMCArea getArea(int cid, int tabcd, int lcd) {
+		int i = find(AREAS, LocationCache.key(cid, tabcd, lcd));
+		if (i < 0)
+			return null;
+		TMCArea ret = new TMCArea();
+		int f = readLocation(ret, AREAS, i, cid, tabcd, lcd);
+		ret.n1id = getInt(AREAS, i, f);
+		if (ret.n1id >= 0)
+			ret.name1 = TMC.getName(cid, ret.n1id);
+		readArea(ret, AREAS, i, f + 1);
+		return ret;
+	}
+
+	Road getRoad(int cid, int tabcd, int lcd) {
+		int i = find(ROADS, LocationCache.key(cid, tabcd, lcd));
+		if (i < 0)
+			return null;
+		Road ret = new Road();
+		int f = readLocation(ret, ROADS, i, cid, tabcd, lcd);
+		ret.roadNumber = getString(ROADS, i, f);
+		readNames(ret, ROADS, i, f + 1);
+		readArea(ret, ROADS, i, f + 4);
+		ret.pesLev = getInt(ROADS, i, f + 5);
+		return ret;
+	}
+
+	Segment getSegment(int cid, int tabcd, int lcd) {
+		int i = find(SEGMENTS, LocationCache.key(cid, tabcd, lcd));
+		if (i < 0)
+			return null;
+		Segment ret = new Segment();
+		int f = readLocation(ret, SEGMENTS, i, cid, tabcd, lcd);
+		ret.roadNumber = getString(SEGMENTS, i, f);
+		readNames(ret, SEGMENTS, i, f + 1);
+		ret.roaLcd = getInt(SEGMENTS, i, f + 4);
+		if (ret.roaLcd >= 0)
+			ret.road = TMC.getRoad(cid, tabcd, ret.roaLcd);
+		ret.segLcd = getInt(SEGMENTS, i, f + 5);
+		if (ret.segLcd >= 0)
+			ret.segment = TMC.getSegment(cid, tabcd, ret.segLcd);
+		readArea(ret, SEGMENTS, i, f + 6);
+		ret.negOffLcd = getInt(SEGMENTS, i, f + 7);
+		ret.posOffLcd = getInt(SEGMENTS, i, f + 8);
+		return ret;
+	}
+
+	TMCPoint getPoint(int cid, int tabcd, int lcd) {
+		int i = find(POINTS, LocationCache.key(cid, tabcd, lcd));
+		if (i < 0)
+			return null;
+		TMCPoint ret = new TMCPoint();
+		int f = readLocation(ret, POINTS, i, cid, tabcd, lcd);
+		ret.junctionNumber = getString(POINTS, i, f);
+		readNames(ret, POINTS, i, f + 1);
+		readArea(ret, POINTS, i, f + 4);
+		ret.othLcd = getInt(POINTS, i, f + 5);
+		if (ret.othLcd >= 0)
+			ret.othArea = TMC.getArea(cid, tabcd, ret.othLcd);
+		ret.roaLcd = getInt(POINTS, i, f + 7);
+		if (ret.roaLcd >= 0)
+			ret.road = TMC.getRoad(cid, tabcd, ret.roaLcd);
+		ret.segLcd = getInt(POINTS, i, f + 6);
+		if (ret.segLcd >= 0)
+			ret.segment = TMC.getSegment(cid, tabcd, ret.segLcd);
+		ret.diversionPos = getString(POINTS, i, f + 8);
+		ret.diversionNeg = getString(POINTS, i, f + 9);
+		ret.xCoord = getInt(POINTS, i, f + 10) / 100000.0f;
+		ret.yCoord = getInt(POINTS, i, f + 11) / 100000.0f;
+		ret.interruptsRoad = getInt(POINTS, i, f + 12);
+		ret.urban = getInt(POINTS, i, f + 13) > 0;
+		ret.negOffLcd = getInt(POINTS, i, f + 14);
+		ret.posOffLcd = getInt(POINTS, i, f + 15);
+		return ret;
+	}
+
+	/**
+	 * @brief Returns the coordinates of all points of a location table.
+	 *
+	 * @return A map of LCDs to coordinates (longitude, latitude), without the points which have no coordinates
+	 */
+	Map<Integer, float[]> getPointCoordinates(int cid, int tabcd) {
+		Map<Integer, float[]> ret = new HashMap<Integer, float[]>();
+		long last = LocationCache.key(cid, tabcd, -1);
+		for (int i = ceiling(POINTS, LocationCache.key(cid, tabcd, 0)); (i < counts[POINTS]) && (getKey(POINTS, i) <= last); i++) {
+			int x = getInt(POINTS, i, 13);
+			int y = getInt(POINTS, i, 14);
+			if ((x != 0) || (y != 0))
+				ret.put((int) getKey(POINTS, i), new float[] {x / 100000.0f, y / 100000.0f});
+		}
+		return ret;
+	}
+
+	/**
+	 * @brief Returns the LCD of the first or last segment or point of a location.
+	 *
+	 * @param section One of {@link #FIRST_SEGMENTS}, {@link #LAST_SEGMENTS}, {@link #FIRST_POINTS}
+	 * and {@link #LAST_POINTS}
+	 * @return The LCD, or -1 if the location has no such child
+	 */
+	int getEnd(int section, int cid, int tabcd, int lcd) {
+		int i = find(section, LocationCache.key(cid, tabcd, lcd));
+		return i < 0 ? -1 : getInt(section, i, 0);
+	}
+
+	/**
+	 * @brief Closes the file.
+	 *
+	 * The mapping itself is released only when the buffer is garbage-collected.
+	 */
+	void close() {
+		try {
+			raf.close();
+		} catch (IOException e) {
+			// NOP
+		}
+	}
+}
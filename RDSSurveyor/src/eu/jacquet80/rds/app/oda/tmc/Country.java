@@ -14,6 +14,9 @@ public class Country {
 	/** The name of the country. */
 	public String country;
 
+	Country() {
+	}
+	
 	/**
 	 * @brief Creates a new {@code Country} from a given record.
 	 * 
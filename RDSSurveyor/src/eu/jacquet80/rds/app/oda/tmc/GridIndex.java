@@ -0,0 +1,198 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @brief A spatial index of items with geographic coordinates, based on a uniform grid.
+ *
+ * Each item has a bounding box, in degrees of longitude (X) and latitude (Y), and is stored in
+ * all the grid cells which its bounding box intersects. Items are compared with
+ * {@link Object#equals(Object)}, and each item is held only once.
+ *
+ * Distances are expressed in degrees of latitude, longitudes being scaled by the cosine of the
+ * latitude. This is accurate enough for the distances over which TMC locations are searched.
+ *
+ * All methods are thread-safe.
+ */
+public class GridIndex<T> {
+	/** Kilometers per degree of latitude */
+	public static final float KM_PER_DEGREE = 111.2f;
+
+	/** The size of a cell, in degrees */
+	private final float cellSize;
+
+	/** Items in each cell, by cell key */
+	private final Map<Long, List<T>> cells = new HashMap<Long, List<T>>();
+
+	/** The bounding box of each item: min X, min Y, max X, max Y */
+	private final Map<T, float[]> bounds = new HashMap<T, float[]>();
+
+	/** The range of the cells which hold items, possibly larger than needed after removals */
+	private int minCellX = Integer.MAX_VALUE, minCellY = Integer.MAX_VALUE;
+	private int maxCellX = Integer.MIN_VALUE, maxCellY = Integer.MIN_VALUE;
+
+	/**
+	 * @brief Creates an empty index.
+	 *
+	 * @param cellSize The size of a grid cell, in degrees. It should be in the order of the size
+	 * of the areas which are typically searched.
+	 */
+	public GridIndex(float cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	private int cell(float coord) {
+		return (int) Math.floor(coord / cellSize);
+	}
+
+	private static long key(int cellX, int cellY) {
+		return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @brief Adds an item located at a single point.
+	 */
+	public void add(T item, float x, float y) {
+		add(item, x, y, x, y);
+	}
+
+	/**
+	 * @brief Adds an item with the given bounding box.
+	 *
+	 * If the item is already in the index, it is moved.
+	 */
+	public synchronized void add(T item, float minX, float minY, float maxX, float maxY) {
+		remove(item);
+		bounds.put(item, new float[] {minX, minY, maxX, maxY});
+		for (int cx = cell(minX); cx <= cell(maxX); cx++)
+			for (int cy = cell(minY); cy <= cell(maxY); cy++) {
+				long key = key(cx, cy);
+				List<T> list = cells.get(key);
+				if (list == null) {
+					list = new ArrayList<T>(4);
+					cells.put(key, list);
+				}
+				list.add(item);
+			}
+		minCellX = Math.min(minCellX, cell(minX));
+		minCellY = Math.min(minCellY, cell(minY));
+		maxCellX = Math.max(maxCellX, cell(maxX));
+		maxCellY = Math.max(maxCellY, cell(maxY));
+	}
+
+	/**
+	 * @brief Removes an item.
+	 *
+	 * @return {@code true} if the item was in the index
+	 */
+	public synchronized boolean remove(T item) {
+		float[] b = bounds.remove(item);
+		if (b == null)
+			return false;
+		for (int cx = cell(b[0]); cx <= cell(b[2]); cx++)
+			for (int cy = cell(b[1]); cy <= cell(b[3]); cy++) {
+				long key = key(cx, cy);
+				List<T> list = cells.get(key);
+				list.remove(item);
+				if (list.isEmpty())
+					cells.remove(key);
+			}
+		return true;
+	}
+
+	/**
+	 * @brief Returns the items whose bounding box intersects the given box.
+	 */
+	public synchronized List<T> query(float minX, float minY, float maxX, float maxY) {
+		List<T> ret = new ArrayList<T>();
+		if (bounds.isEmpty())
+			return ret;
+		Set<T> seen = new HashSet<T>();
+		int fromX = Math.max(cell(minX), minCellX), toX = Math.min(cell(maxX), maxCellX);
+		int fromY = Math.max(cell(minY), minCellY), toY = Math.min(cell(maxY), maxCellY);
+		for (int cx = fromX; cx <= toX; cx++)
+			for (int cy = fromY; cy <= toY; cy++) {
+				List<T> list = cells.get(key(cx, cy));
+				if (list == null)
+					continue;
+				for (T item : list) {
+					float[] b = bounds.get(item);
+					if ((b[0] <= maxX) && (b[2] >= minX) && (b[1] <= maxY) && (b[3] >= minY)
+							&& seen.add(item))
+						ret.add(item);
+				}
+			}
+		return ret;
+	}
+
+	/**
+	 * @brief Returns the item nearest to a point.
+	 *
+	 * The distance to an item is the distance to the nearest point of its bounding box.
+	 *
+	 * @param maxDistance The maximum distance, in degrees of latitude
+	 * @return The nearest item, or {@code null} if there is none within {@code maxDistance}
+	 */
+	public synchronized T nearest(float x, float y, float maxDistance) {
+		if (bounds.isEmpty())
+			return null;
+		float scale = (float) Math.cos(Math.toRadians(y));
+		int cx = cell(x), cy = cell(y);
+		/* rings beyond this one hold no items, or only items which are too far */
+		int maxRing = Math.max(Math.max(cx - minCellX, maxCellX - cx), Math.max(cy - minCellY, maxCellY - cy));
+		maxRing = (int) Math.min(maxRing, Math.ceil(maxDistance / (cellSize * Math.max(scale, 0.01f))) + 1);
+		T best = null;
+		float bestDistance = maxDistance;
+		for (int ring = 0; ring <= maxRing; ring++) {
+			/* items in this ring and beyond are at least this far */
+			if ((best != null) && (bestDistance <= (ring - 1) * cellSize * scale))
+				break;
+			for (int i = cx - ring; i <= cx + ring; i++)
+				for (int j = cy - ring; j <= cy + ring; j++) {
+					if ((Math.abs(i - cx) != ring) && (Math.abs(j - cy) != ring))
+						continue;
+					List<T> list = cells.get(key(i, j));
+					if (list == null)
+						continue;
+					for (T item : list) {
+						float d = distance(bounds.get(item), x, y, scale);
+						if (d <= bestDistance) {
+							best = item;
+							bestDistance = d;
+						}
+					}
+				}
+		}
+		return best;
+	}
+
+	private static float distance(float[] b, float x, float y, float scale) {
+		float dx = (x < b[0]) ? b[0] - x : (x > b[2]) ? x - b[2] : 0;
+		float dy = (y < b[1]) ? b[1] - y : (y > b[3]) ? y - b[3] : 0;
+		dx *= scale;
+		return (float) Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * @brief Returns the distance between two points, in degrees of latitude.
+	 */
+	public static float distance(float x1, float y1, float x2, float y2) {
+		return distance(new float[] {x2, y2, x2, y2}, x1, y1, (float) Math.cos(Math.toRadians((y1 + y2) / 2)));
+	}
+
+	public synchronized int size() {
+		return bounds.size();
+	}
+
+	public synchronized void clear() {
+		cells.clear();
+		bounds.clear();
+		minCellX = minCellY = Integer.MAX_VALUE;
+		maxCellX = maxCellY = Integer.MIN_VALUE;
+	}
+}
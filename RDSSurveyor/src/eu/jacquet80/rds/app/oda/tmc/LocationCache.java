@@ -0,0 +1,103 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @brief A cache of objects read from the location database, keyed by a composite long key.
+ *
+ * Keys are built with {@link #key(int, int, int)} from the country ID, location table number and
+ * location code (or the equivalent fields of other records). The cache holds at most a given number
+ * of entries, evicting the least recently used ones. Entries added with {@link #pin(long, Object)},
+ * typically when a whole location table is preloaded, are never evicted.
+ *
+ * All methods are thread-safe.
+ */
+class LocationCache<V> {
+	/** The maximum number of entries which can be evicted */
+	private final int maxSize;
+
+	/** Entries which can be evicted, in access order */
+	private final LinkedHashMap<Long, V> entries;
+
+	/** Entries which are never evicted */
+	private final Map<Long, V> pinned = new HashMap<Long, V>();
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * @brief Creates a new cache.
+	 *
+	 * @param maxSize The maximum number of entries, not counting pinned entries
+	 */
+	LocationCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<Long, V>(Math.min(maxSize, 1024), .75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+				return size() > LocationCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @brief Builds a composite key.
+	 *
+	 * @param cid The country ID (16 bits)
+	 * @param tabcd The location table number, or language ID for names (16 bits)
+	 * @param lcd The location code, or name ID for names (32 bits)
+	 */
+	static long key(int cid, int tabcd, int lcd) {
+		return ((long) (cid & 0xFFFF) << 48) | ((long) (tabcd & 0xFFFF) << 32) | (lcd & 0xFFFFFFFFL);
+	}
+
+	synchronized V get(long key) {
+		V ret = pinned.get(key);
+		if (ret == null)
+			ret = entries.get(key);
+		if (ret == null)
+			misses++;
+		else
+			hits++;
+		return ret;
+	}
+
+	synchronized void put(long key, V value) {
+		if (pinned.containsKey(key))
+			pinned.put(key, value);
+		else
+			entries.put(key, value);
+	}
+
+	/**
+	 * @brief Adds an entry which will never be evicted.
+	 */
+	synchronized void pin(long key, V value) {
+		entries.remove(key);
+		pinned.put(key, value);
+	}
+
+	/**
+	 * @brief Returns the number of entries in the cache, including pinned entries.
+	 */
+	synchronized int size() {
+		return entries.size() + pinned.size();
+	}
+
+	/**
+	 * @brief Returns the proportion of lookups which were found in the cache.
+	 */
+	synchronized double getHitRate() {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		pinned.clear();
+		hits = misses = 0;
+	}
+}
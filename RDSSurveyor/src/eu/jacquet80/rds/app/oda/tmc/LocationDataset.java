@@ -15,6 +15,9 @@ public class LocationDataset {
 	/** A description of the location table version. */
 	public String versionDescription;
 	
+	LocationDataset() {
+	}
+	
 	/**
 	 * @brief Creates a new {@code LocationDataset} from a given record.
 	 * 
@@ -0,0 +1,448 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static eu.jacquet80.rds.app.oda.tmc.CompiledLocationTables.*;
+
+/**
+ * @brief Compiles location tables in exchange format into a single binary file.
+ *
+ * The resulting file is read by {@link CompiledLocationTables}, see there for a description of
+ * the format. Location data sets are added one folder at a time, as with
+ * {@link TMC#readLocationTables(java.io.File)}; when the same data set is found more than once,
+ * the newest version is kept. All data is held in memory until {@link #write(File)} is called.
+ */
+public class LocationTableCompiler {
+	/** Records of each section, sorted by key */
+	private final List<TreeMap<Long, int[]>> sections = new ArrayList<TreeMap<Long, int[]>>();
+
+	/** Versions of the location data sets, by CID and TABCD */
+	private final Map<Long, String> versions = new HashMap<Long, String>();
+
+	/** The strings section */
+	private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+
+	/** Offsets of the strings already in the strings section */
+	private final Map<String, Integer> stringRefs = new HashMap<String, Integer>();
+
+	public LocationTableCompiler() {
+		for (int i = 0; i < SECTION_COUNT; i++)
+			sections.add(new TreeMap<Long, int[]>());
+	}
+
+	/**
+	 * @brief Compiles the location data sets found at the given path and its immediate subfolders.
+	 *
+	 * @param path The folder to read location data sets from
+	 * @param out The compiled file to write
+	 * @throws IOException if the compiled file cannot be written
+	 */
+	public static void compile(File path, File out) throws IOException {
+		LocationTableCompiler compiler = new LocationTableCompiler();
+		compiler.addLocationTables(path);
+		compiler.write(out);
+	}
+
+	/**
+	 * @brief Adds the location data sets found at the given path and its immediate subfolders.
+	 *
+	 * @param path
+	 */
+	public void addLocationTables(File path) {
+		addLocationTablesFromDir(path);
+		File[] files = path.listFiles();
+		if (files != null)
+			for (File file: files)
+				if (file.isDirectory())
+					addLocationTablesFromDir(file);
+	}
+
+	/**
+	 * @brief Adds a single location data set from the given path.
+	 *
+	 * If a newer or identical version of the same data set has been added before, only the
+	 * aliases of the data set are added. If an older version has been added before, it is
+	 * replaced.
+	 *
+	 * @param path The folder in which the files for the location data set are located.
+	 */
+	public void addLocationTablesFromDir(File path) {
+		TMC.detectCharset(path);
+		try {
+			if (prepareDataSetUpdate(path)) {
+				readCountries(new File(path, "COUNTRIES.DAT"));
+				readNames(new File(path, "NAMES.DAT"));
+				readAreas(new File(path, "ADMINISTRATIVEAREA.DAT"));
+				readAreas(new File(path, "OTHERAREAS.DAT"));
+				readRoads(new File(path, "ROADS.DAT"));
+				readSegments(new File(path, "SEGMENTS.DAT"));
+				readOffsets(SEGMENTS, 10, new File(path, "SOFFSETS.DAT"));
+				readPoints(new File(path, "POINTS.DAT"));
+				readOffsets(POINTS, 17, new File(path, "POFFSETS.DAT"));
+			}
+			readAliases(new File(path, "TABCDALIASES.DAT"));
+		} catch (IOException e) {
+			e.printStackTrace(System.err);
+		} catch (RuntimeException e) {
+			System.err.println(String.format("Location data set in %s is invalid", path.getAbsolutePath()));
+			e.printStackTrace(System.err);
+		} finally {
+			TMC.clearDetectedCharset();
+		}
+	}
+
+	/**
+	 * @brief Reads the data set description, and removes any older version of the data set.
+	 *
+	 * @return {@code true} if the data set needs to be read, {@code false} if not.
+	 */
+	private boolean prepareDataSetUpdate(File path) throws IOException {
+		DatFile file = DatFile.open(new File(path, "LOCATIONDATASETS.DAT"));
+		if (file == null) {
+			System.out.println(String.format("No LOCATIONDATASETS.DAT in %s, skipping location table compilation",
+					path.getAbsolutePath()));
+			return false;
+		}
+		try {
+			if (!file.next())
+				return false;
+			int cid = file.getInt("CID");
+			int tabcd = file.getInt("TABCD");
+			String version = file.get("VERSION");
+			long key = LocationCache.key(cid, tabcd, 0);
+			String current = versions.get(key);
+			if (current != null) {
+				if (TMC.isSameOrNewerVersion(current, version)) {
+					System.out.println(String.format("Location data set %d:%d version %s is already present, skipping",
+							cid, tabcd, current));
+					return false;
+				}
+				System.out.println(String.format("Replacing location data set %d:%d version %s with version %s",
+						cid, tabcd, current, version));
+				long last = LocationCache.key(cid, tabcd, -1);
+				for (int section = AREAS; section < SECTION_COUNT; section++)
+					sections.get(section).subMap(key, true, last, true).clear();
+			}
+			versions.put(key, version);
+			sections.get(DATASETS).put(key,
+					new int[] {string(file.get("DCOMMENT")), string(version), string(file.get("VERSIONDESCRIPTION"))});
+			return true;
+		} finally {
+			file.close();
+		}
+	}
+
+	private void readCountries(File path) throws IOException {
+		DatFile file = DatFile.open(path);
+		if (file == null)
+			return;
+		while (file.next())
+			sections.get(COUNTRIES).put(LocationCache.key(file.getInt("CID"), 0, 0),
+					new int[] {string(file.get("ECC")), string(file.get("CCD")), string(file.get("CNAME"))});
+		file.close();
+	}
+
+	private void readNames(File path) throws IOException {
+		DatFile file = DatFile.open(path);
+		if (file == null)
+			return;
+		while (file.next())
+			sections.get(NAMES).put(nameKey(file.getInt("CID"), file.getInt("LID"), file.getInt("NID")),
+					new int[] {string(file.get("NAME")), string(file.get("NCOMMENT"))});
+		file.close();
+	}
+
+	private void readAreas(File path) throws IOException {
+		DatFile file = DatFile.open(path);
+		if (file == null)
+			return;
+		while (file.next())
+			sections.get(AREAS).put(file.getKey(), new int[] {
+					file.get("CLASS").charAt(0), file.getInt("TCD"), file.getInt("STCD"),
+					file.getInt("NID"), file.getInt("POL_LCD")});
+		file.close();
+	}
+
+	private void readRoads(File path) throws IOException {
+		DatFile file = DatFile.open(path);
+		if (file == null)
+			return;
+		while (file.next())
+			sections.get(ROADS).put(file.getKey(), new int[] {
+					file.get("CLASS").charAt(0), file.getInt("TCD"), file.getInt("STCD"),
+					string(file.get("ROADNUMBER")), file.getInt("RNID"), file.getInt("N1ID"), file.getInt("N2ID"),
+					file.getInt("POL_LCD"), Math.max(0, file.getInt("PES_LEV"))});
+		file.close();
+	}
+
+	private void readSegments(File path) throws IOException {
+		DatFile file = DatFile.open(path);
+		if (file == null)
+			return;
+		while (file.next())
+			sections.get(SEGMENTS).put(file.getKey(), new int[] {
+					file.get("CLASS").charAt(0), file.getInt("TCD"), file.getInt("STCD"),
+					string(file.get("ROADNUMBER")), file.getInt("RNID"), file.getInt("N1ID"), file.getInt("N2ID"),
+					file.getInt("ROA_LCD"), file.getInt("SEG_LCD"), file.getInt("POL_LCD"),
+					-1, -1});
+		file.close();
+	}
+
+	private void readPoints(File path) throws IOException {
+		DatFile file = DatFile.open(path);
+		if (file == null)
+			return;
+		while (file.next()) {
+			String urban = file.get("URBAN");
+			sections.get(POINTS).put(file.getKey(), new int[] {
+					file.get("CLASS").charAt(0), file.getInt("TCD"), file.getInt("STCD"),
+					string(file.get("JUNCTIONNUMBER")), file.getInt("RNID"), file.getInt("N1ID"), file.getInt("N2ID"),
+					file.getInt("POL_LCD"), file.getInt("OTH_LCD"), file.getInt("SEG_LCD"), file.getInt("ROA_LCD"),
+					string(file.get("DIVERSIONPOS")), string(file.get("DIVERSIONNEG")),
+					file.getCoordinate("XCOORD"), file.getCoordinate("YCOORD"), file.getInt("INTERRUPTSROAD"),
+					("1".equals(urban) || Boolean.parseBoolean(urban)) ? 1 : 0,
+					-1, -1});
+		}
+		file.close();
+	}
+
+	/**
+	 * @brief Reads offsets into the records of segments or points.
+	 *
+	 * @param section The section of the locations
+	 * @param field The field of the negative offset, followed by the positive offset
+	 */
+	private void readOffsets(int section, int field, File path) throws IOException {
+		DatFile file = DatFile.open(path);
+		if (file == null)
+			return;
+		while (file.next()) {
+			int[] record = sections.get(section).get(file.getKey());
+			if (record != null) {
+				record[field] = file.getInt("NEG_OFF_LCD");
+				record[field + 1] = file.getInt("POS_OFF_LCD");
+			}
+		}
+		file.close();
+	}
+
+	private void readAliases(File path) throws IOException {
+		DatFile file = DatFile.open(path);
+		if (file == null)
+			return;
+		System.out.println(String.format("Found TABCDALIASES.DAT in %s, adding aliases", path.getParent()));
+		while (file.next())
+			sections.get(ALIASES).put(LocationCache.key(file.getInt("CID"), file.getInt("ALIAS"), 0),
+					new int[] {file.getInt("TABCD")});
+		file.close();
+	}
+
+	/**
+	 * @brief Adds a string to the strings section.
+	 *
+	 * @return The offset of the string, or -1 if {@code s} is {@code null}
+	 */
+	private int string(String s) {
+		if (s == null)
+			return -1;
+		Integer ret = stringRefs.get(s);
+		if (ret == null) {
+			byte[] bytes = s.getBytes(UTF8);
+			if (bytes.length > 0xFFFF)
+				throw new IllegalArgumentException("String too long: " + s.substring(0, 20) + "...");
+			ret = strings.size();
+			strings.write(bytes.length >> 8);
+			strings.write(bytes.length);
+			strings.write(bytes, 0, bytes.length);
+			stringRefs.put(s, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * @brief Determines the first and last segments and points of roads and segments.
+	 *
+	 * The first ones have no negative offset, the last ones no positive offset. Points which
+	 * border on an interruption of the road are not considered. If there are several
+	 * candidates, the one with the lowest LCD is used.
+	 */
+	private void computeEnds() {
+		for (int section = FIRST_SEGMENTS; section <= LAST_POINTS; section++)
+			sections.get(section).clear();
+		for (Map.Entry<Long, int[]> entry : sections.get(SEGMENTS).entrySet()) {
+			int[] record = entry.getValue();
+			addEnd(entry.getKey(), record, 7, 8, record[10] < 0 ? FIRST_SEGMENTS : -1);
+			addEnd(entry.getKey(), record, 7, 8, record[11] < 0 ? LAST_SEGMENTS : -1);
+		}
+		for (Map.Entry<Long, int[]> entry : sections.get(POINTS).entrySet()) {
+			int[] record = entry.getValue();
+			if (record[15] > 0)
+				continue;
+			addEnd(entry.getKey(), record, 10, 9, record[17] < 0 ? FIRST_POINTS : -1);
+			addEnd(entry.getKey(), record, 10, 9, record[18] < 0 ? LAST_POINTS : -1);
+		}
+	}
+
+	private void addEnd(long key, int[] record, int roaField, int segField, int section) {
+		if (section < 0)
+			return;
+		long parent = key & 0xFFFFFFFF00000000L;
+		for (int field : new int[] {roaField, segField}) {
+			if (record[field] < 0)
+				continue;
+			long parentKey = parent | record[field];
+			if (!sections.get(section).containsKey(parentKey))
+				sections.get(section).put(parentKey, new int[] {(int) key});
+		}
+	}
+
+	/**
+	 * @brief Writes the compiled location tables.
+	 *
+	 * @param out The file to write
+	 * @throws IOException
+	 */
+	public void write(File out) throws IOException {
+		computeEnds();
+
+		int[] offsets = new int[SECTION_COUNT];
+		int[] counts = new int[SECTION_COUNT];
+		long pos = HEADER_SIZE;
+		for (int i = 0; i < SECTION_COUNT; i++) {
+			// keep keys aligned on 8 bytes
+			pos = (pos + 7) & ~7L;
+			offsets[i] = (int) pos;
+			if (i == STRINGS) {
+				counts[i] = strings.size();
+				pos += counts[i];
+			} else {
+				counts[i] = sections.get(i).size();
+				pos += counts[i] * (8L + 4L * RECORD_SIZES[i]);
+			}
+			if (pos > Integer.MAX_VALUE)
+				throw new IOException("Location tables too large to be compiled");
+		}
+
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out), 1 << 16));
+		try {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(SECTION_COUNT);
+			for (int i = 0; i < SECTION_COUNT; i++) {
+				dos.writeInt(offsets[i]);
+				dos.writeInt(counts[i]);
+			}
+			for (int i = 0; i < SECTION_COUNT; i++) {
+				while (dos.size() < offsets[i])
+					dos.writeByte(0);
+				if (i == STRINGS) {
+					strings.writeTo(dos);
+					continue;
+				}
+				for (Long key : sections.get(i).keySet())
+					dos.writeLong(key);
+				for (int[] record : sections.get(i).values())
+					for (int value : record)
+						dos.writeInt(value);
+			}
+		} finally {
+			dos.close();
+		}
+		System.out.println(String.format("Compiled %d areas, %d roads, %d segments and %d points into %s",
+				counts[AREAS], counts[ROADS], counts[SEGMENTS], counts[POINTS], out.getAbsolutePath()));
+	}
+
+	/**
+	 * @brief A location table file in exchange format, read one record at a time.
+	 */
+	private static class DatFile {
+		private final BufferedReader reader;
+		private final Map<String, Integer> columns = new HashMap<String, Integer>();
+		private String[] values;
+
+		private DatFile(BufferedReader reader) throws IOException {
+			this.reader = reader;
+			String line = reader.readLine();
+			if (line != null) {
+				String[] fields = TMC.getFields(line);
+				for (int i = 0; i < fields.length; i++)
+					columns.put(fields[i].trim().toUpperCase(), i);
+			}
+		}
+
+		/**
+		 * @brief Opens a file.
+		 *
+		 * @return The file, or {@code null} if it does not exist
+		 */
+		static DatFile open(File file) throws IOException {
+			if (!file.exists())
+				return null;
+			System.out.println(String.format("Processing file %s", file.getAbsolutePath()));
+			return new DatFile(TMC.openLTFile(file));
+		}
+
+		/**
+		 * @brief Moves to the next record, skipping empty lines.
+		 *
+		 * @return {@code false} at the end of the file
+		 */
+		boolean next() throws IOException {
+			String line;
+			while ((line = reader.readLine()) != null)
+				if (line.length() > 0) {
+					values = TMC.colonPattern.split(line);
+					return true;
+				}
+			return false;
+		}
+
+		/**
+		 * @brief Returns a field of the current record, or {@code null} if it is empty.
+		 */
+		String get(String field) {
+			Integer i = columns.get(field);
+			if ((i == null) || (i >= values.length) || values[i].isEmpty())
+				return null;
+			return values[i];
+		}
+
+		/**
+		 * @brief Returns a numeric field of the current record, or -1 if it is empty.
+		 */
+		int getInt(String field) {
+			String value = get(field);
+			return value == null ? -1 : Integer.parseInt(value);
+		}
+
+		/**
+		 * @brief Returns a coordinate of the current record, in 1/100000 degrees, or 0 if it is empty.
+		 */
+		int getCoordinate(String field) {
+			String value = get(field);
+			return value == null ? 0 : Integer.parseInt(value);
+		}
+
+		/**
+		 * @brief Returns the key of the location described by the current record.
+		 */
+		long getKey() {
+			return LocationCache.key(getInt("CID"), getInt("TABCD"), getInt("LCD"));
+		}
+
+		void close() throws IOException {
+			reader.close();
+		}
+	}
+}
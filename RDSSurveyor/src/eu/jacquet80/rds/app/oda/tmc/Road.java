@@ -13,6 +13,9 @@ public class Road extends TMCLocation {
 	/** The road network level. */
 	public int pesLev;
 	
+	Road() {
+	}
+	
 	/**
 	 * @brief Creates a new {@code Road} from a given record.
 	 * 
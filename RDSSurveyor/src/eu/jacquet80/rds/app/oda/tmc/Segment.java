@@ -30,6 +30,9 @@ public class Segment extends TMCLocation {
 	/** The next location in positive direction. */
 	public Segment posOffset = null;
 
+	Segment() {
+	}
+	
 	/**
 	 * @brief Creates a new {@code Segment} from a given record.
 	 * 
@@ -8,19 +8,25 @@ import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.BatchUpdateException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 public class TMC {
@@ -66,8 +72,75 @@ public class TMC {
 		// 23 - TabcdAliases - TABCDALIASES.DAT; not part of official spec
 		"create cached table if not exists TabcdAliases(CID integer, ALIAS integer, TABCD integer, primary key(CID, ALIAS));",
 	};
-	private static String dbUrl = null;
-	private static Connection dbConnection = null;
+	
+	/** Tables imported from the files of a location data set, in foreign key order */
+	private static final String[][] IMPORT_TABLES = {
+		{"Countries", "COUNTRIES.DAT"},
+		{"LocationDataSets", "LOCATIONDATASETS.DAT"},
+		// LOCATIONCODES, CLASSES, TYPES, SUBTYPES, LANGUAGES, EUROROADNO; skipped for now
+		{"Names", "NAMES.DAT"},
+		// NAMETRANSLATIONS, SUBTYPETRANSLATIONS, ERNO_BELONGS_TO_CO; skipped for now
+		{"AdministrativeAreas", "ADMINISTRATIVEAREA.DAT"},
+		{"OtherAreas", "OTHERAREAS.DAT"},
+		{"Roads", "ROADS.DAT"},
+		// ROAD_NETWORK_LEVEL_TYPES; skipped for now
+		{"Segments", "SEGMENTS.DAT"},
+		{"Soffsets", "SOFFSETS.DAT"},
+		// SEG_HAS_ERNO; skipped for now
+		{"Points", "POINTS.DAT"},
+		{"Poffsets", "POFFSETS.DAT"},
+		// INTERSECTIONS; skipped for now
+	};
+	
+	/** How often the progress of an import is reported, in records */
+	private static final int IMPORT_PROGRESS_INTERVAL = 50000;
+	
+	/** Number of records inserted at once when importing location tables */
+	private static int importBatchSize = 1000;
+	
+	/** Number of threads which parse location table files */
+	private static int importThreads = Runtime.getRuntime().availableProcessors();
+	
+	/** The default database, used by threads which have not set their own */
+	private static TMCDatabase defaultDb = null;
+	
+	/** Databases set for specific threads */
+	private static final ThreadLocal<TMCDatabase> threadDb = new ThreadLocal<TMCDatabase>();
+	
+	/** Open databases, by URL */
+	private static final Map<String, TMCDatabase> databases = new HashMap<String, TMCDatabase>();
+	
+	/** The maximum number of entries in each location cache of the databases opened from now on */
+	private static int cacheSize = 100000;
+	
+	private static final String SQL_COUNTRY_BY_CCD_TABCD = "select * from Countries where CCD = ? and CID in (select CID from LocationDataSets where TABCD = ?);";
+	private static final String SQL_COUNTRY_BY_CCD_ALIAS = "select * from Countries where CCD = ? and CID in (select CID from TabcdAliases where ALIAS = ?);";
+	private static final String SQL_COUNTRY_BY_CID = "select * from Countries where CID = ?";
+	private static final String SQL_COUNTRY_BY_ECC = "select * from Countries where ECC = ?";
+	private static final String SQL_LOCATION_DATASET = "select * from LocationDataSets where CID = ? AND TABCD = ?";
+	private static final String SQL_ALIAS = "select * from TabcdAliases where CID = ? AND ALIAS = ?";
+	private static final String SQL_NAME_BY_NID = "select * from Names where CID = ? AND NID = ? ORDER BY LID";
+	private static final String SQL_NAME = "select * from Names where CID = ? AND LID = ? AND NID = ?";
+	private static final String SQL_ADMINISTRATIVE_AREA = "select * from AdministrativeAreas where CID = ? AND TABCD = ? AND LCD = ?";
+	private static final String SQL_OTHER_AREA = "select * from OtherAreas where CID = ? AND TABCD = ? AND LCD = ?";
+	private static final String SQL_ROAD = "select * from Roads where CID = ? AND TABCD = ? AND LCD = ?";
+	private static final String SQL_SEGMENT = "select * from Segments where CID = ? AND TABCD = ? AND LCD = ?";
+	private static final String SQL_SOFFSETS = "select * from Soffsets where CID = ? AND TABCD = ? AND LCD = ?";
+	private static final String SQL_FIRST_SEGMENT = "select * from Segments where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Soffsets WHERE Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD AND Soffsets.NEG_OFF_LCD IS NOT NULL)";
+	private static final String SQL_LAST_SEGMENT = "select * from Segments where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Soffsets WHERE Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD AND Soffsets.POS_OFF_LCD IS NOT NULL)";
+	private static final String SQL_POINT = "select * from Points where CID = ? AND TABCD = ? AND LCD = ?";
+	private static final String SQL_POFFSETS = "select * from Poffsets where CID = ? AND TABCD = ? AND LCD = ?";
+	private static final String SQL_FIRST_POINT = "select * from Points where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Poffsets WHERE Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD AND Poffsets.NEG_OFF_LCD IS NOT NULL) AND (INTERRUPTSROAD IS NULL OR INTERRUPTSROAD = 0)";
+	private static final String SQL_LAST_POINT = "select * from Points where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Poffsets WHERE Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD AND Poffsets.POS_OFF_LCD IS NOT NULL) AND (INTERRUPTSROAD IS NULL OR INTERRUPTSROAD = 0)";
+	
+	// bulk queries for preload(); areas are sorted by type so that enclosing areas come first
+	private static final String SQL_POINT_COORDINATES = "select LCD, XCOORD, YCOORD from Points where CID = ? AND TABCD = ?";
+	private static final String SQL_PRELOAD_NAMES = "select * from Names where CID = ? ORDER BY LID";
+	private static final String SQL_PRELOAD_ADMINISTRATIVE_AREAS = "select * from AdministrativeAreas where CID = ? AND TABCD = ? ORDER BY TCD";
+	private static final String SQL_PRELOAD_OTHER_AREAS = "select * from OtherAreas where CID = ? AND TABCD = ? ORDER BY TCD";
+	private static final String SQL_PRELOAD_ROADS = "select * from Roads where CID = ? AND TABCD = ?";
+	private static final String SQL_PRELOAD_SEGMENTS = "select Segments.*, Soffsets.LCD as OFF_LCD, Soffsets.NEG_OFF_LCD, Soffsets.POS_OFF_LCD from Segments left join Soffsets on Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD where Segments.CID = ? AND Segments.TABCD = ?";
+	private static final String SQL_PRELOAD_POINTS = "select Points.*, Poffsets.LCD as OFF_LCD, Poffsets.NEG_OFF_LCD, Poffsets.POS_OFF_LCD from Points left join Poffsets on Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD where Points.CID = ? AND Points.TABCD = ?";
 
 	/** The character set to be used for location table encoding */
 	private static Charset charset = null;
@@ -182,44 +255,136 @@ public class TMC {
 	 * @return the dbUrl
 	 */
 	public static String getDbUrl() {
-		return dbUrl;
+		TMCDatabase db = db();
+		return db == null ? null : db.url;
 	}
 
 	/**
 	 * @brief Sets the database URL.
 	 * 
+	 * This sets the default database, used by all threads which have not set their own database.
+	 * If a database is already open with the given URL, it is closed and reopened.
+	 * 
 	 * @param dbUrl the dbUrl to set
 	 */
-	public static void setDbUrl(String dbUrl) {
-		if (dbConnection != null)
-			try {
-				if (!dbConnection.isClosed())
-					dbConnection.close();
-			} catch (Exception e) {
-				// NOP
-			}
+	public static synchronized void setDbUrl(String dbUrl) {
+		if (defaultDb != null) {
+			defaultDb.close();
+			databases.remove(defaultDb.url);
+			defaultDb = null;
+		}
+		TMCDatabase old = databases.remove(dbUrl);
+		if (old != null)
+			old.close();
 
-		TMC.dbUrl = dbUrl;
+		defaultDb = openDatabase(dbUrl);
+	}
+	
+	/**
+	 * @brief Returns the database with the given URL, opening it if needed.
+	 * 
+	 * Databases are shared: sessions which use the same URL use the same connection and caches.
+	 * 
+	 * @param dbUrl The JDBC URL of the database
+	 * @return The database, or {@code null} if it could not be opened
+	 */
+	public static synchronized TMCDatabase getDatabase(String dbUrl) {
+		TMCDatabase db = databases.get(dbUrl);
+		if (db == null)
+			db = openDatabase(dbUrl);
+		return db;
+	}
+	
+	private static TMCDatabase openDatabase(String dbUrl) {
 		try {
 			Class.forName("org.hsqldb.jdbc.JDBCDriver" );
 		} catch (Exception e) {
-			TMC.dbUrl = null;
 			System.err.println("ERROR: failed to load HSQLDB JDBC driver.");
 			e.printStackTrace();
-			return;
+			return null;
 		}
 		try {
-			dbConnection = DriverManager.getConnection(dbUrl);
-			dbConnection.setAutoCommit(false);
+			TMCDatabase db = new TMCDatabase(dbUrl, cacheSize);
+			databases.put(dbUrl, db);
 			// for an in-memory DB, create tables
-			if (isDbInMemory())
-				initDb();
+			if (db.isInMemory())
+				initDb(db);
+			return db;
 		} catch (SQLException e) {
-			dbUrl = null;
 			e.printStackTrace(System.err);
+			return null;
 		}
 	}
 	
+	/**
+	 * @brief Sets the maximum number of entries in each location cache.
+	 * 
+	 * This applies to the databases opened afterwards. Locations loaded with
+	 * {@link #preload(int, int)} do not count against this limit.
+	 * 
+	 * @param size The maximum number of entries
+	 */
+	public static synchronized void setCacheSize(int size) {
+		cacheSize = size;
+	}
+	
+	/**
+	 * @brief Sets the number of records inserted at once when importing location tables.
+	 * 
+	 * @param size The batch size, 1 to insert records one by one
+	 */
+	public static void setImportBatchSize(int size) {
+		importBatchSize = Math.max(1, size);
+	}
+	
+	/**
+	 * @brief Sets the number of threads which parse location table files during an import.
+	 * 
+	 * Records are still inserted by a single thread, one table after the other.
+	 * 
+	 * @param threads The number of threads
+	 */
+	public static void setImportThreads(int threads) {
+		importThreads = Math.max(1, threads);
+	}
+	
+	/**
+	 * @brief Sets the database used by the calling thread.
+	 * 
+	 * Decoder sessions call this method from the thread that processes their groups, so that
+	 * TMC messages are resolved against the session's location tables.
+	 * 
+	 * @param db The database, or {@code null} to use the default database
+	 * @return The database previously set for the calling thread, or {@code null}
+	 */
+	public static TMCDatabase setThreadDatabase(TMCDatabase db) {
+		TMCDatabase previous = threadDb.get();
+		if (db == null)
+			threadDb.remove();
+		else
+			threadDb.set(db);
+		return previous;
+	}
+	
+	/**
+	 * @brief Returns the database set by the calling thread with {@link #setThreadDatabase(TMCDatabase)}.
+	 * 
+	 * This allows work to be handed over to another thread, which then sets the same database.
+	 * 
+	 * @return The database, or {@code null} if the calling thread uses the default database
+	 */
+	public static TMCDatabase getThreadDatabase() {
+		return threadDb.get();
+	}
+	
+	/**
+	 * @brief Returns the database for the calling thread.
+	 */
+	private static TMCDatabase db() {
+		TMCDatabase db = threadDb.get();
+		return db != null ? db : defaultDb;
+	}
+	
 	/**
 	 * @brief Whether an in-memory database is used.
 	 * 
@@ -227,9 +392,8 @@ public class TMC {
 	 * database is used or if the database is invalid.
 	 */
 	private static boolean isDbInMemory() {
-		if (dbUrl == null)
-			return false;
-		return dbUrl.startsWith("jdbc:hsqldb:mem:");
+		TMCDatabase db = db();
+		return db != null && db.isInMemory();
 	}
 
 
@@ -278,53 +442,58 @@ public class TMC {
 		return r;
 	}
 	
-	private static Map<String, Country> COUNTRIES = new HashMap<String, Country>();
-
 	public static Country getCountry(String cc, int ltn) {
-		Country ret = COUNTRIES.get("ccd=" + cc + ";tabcd=" + ltn);
+		TMCDatabase db = db();
+		Country ret = db.countries.get("ccd=" + cc + ";tabcd=" + ltn);
 		if (ret == null) {
-			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Countries where CCD = ? and CID in (select CID from LocationDataSets where TABCD = ?);");
-				stmt.setString(1, cc);
-				stmt.setInt(2, ltn);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
-					Country country = new Country(rset);
-					putCountry(cc, ltn, country);
-					putCountry(country.cid, country);
-					putCountry(country.ecc, country);
-					return country;
-				}
-			} catch (SQLException e) {
-				e.printStackTrace(System.err);
-				return null;
+			if (db.compiled != null)
+				ret = db.compiled.getCountry(cc, ltn);
+			else {
+				ret = queryCountry(db, SQL_COUNTRY_BY_CCD_TABCD, cc, ltn);
+				/* no hit, try to find country by CC and alias LTN */
+				if (ret == null)
+					ret = queryCountry(db, SQL_COUNTRY_BY_CCD_ALIAS, cc, ltn);
 			}
-			/* no hit, try to find country by CC and alias LTN */
-			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Countries where CCD = ? and CID in (select CID from TabcdAliases where ALIAS = ?);");
-				stmt.setString(1, cc);
-				stmt.setInt(2, ltn);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
-					Country country = new Country(rset);
-					putCountry(cc, ltn, country);
-					putCountry(country.cid, country);
-					putCountry(country.ecc, country);
-					return country;
-				}
-			} catch (SQLException e) {
-				e.printStackTrace(System.err);
-				return null;
+			if (ret != null) {
+				putCountry(cc, ltn, ret);
+				putCountry(ret.cid, ret);
+				putCountry(ret.ecc, ret);
 			}
 		}
 		return ret;
 	}
 	
+	private static Country queryCountry(TMCDatabase db, String sql, String cc, int ltn) {
+		PreparedStatement stmt = null;
+		try {
+			stmt = db.acquire(sql);
+			stmt.setString(1, cc);
+			stmt.setInt(2, ltn);
+			ResultSet rset = stmt.executeQuery();
+			return rset.next() ? new Country(rset) : null;
+		} catch (SQLException e) {
+			e.printStackTrace(System.err);
+			return null;
+		} finally {
+			db.release(sql, stmt);
+		}
+	}
+	
 	public static Country getCountry(int cid) {
-		Country ret = COUNTRIES.get("cid=" + cid);
-		if (ret == null) 
+		TMCDatabase db = db();
+		Country ret = db.countries.get("cid=" + cid);
+		if ((ret == null) && (db.compiled != null)) {
+			ret = db.compiled.getCountry(cid);
+			if (ret != null) {
+				putCountry(cid, ret);
+				putCountry(ret.ecc, ret);
+			}
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Countries where CID = ?");
+				stmt = db.acquire(SQL_COUNTRY_BY_CID);
 				stmt.setInt(1, cid);
 				ResultSet rset = stmt.executeQuery();
 				if (rset.next()) {
@@ -337,15 +506,28 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_COUNTRY_BY_CID, stmt);
 			}
+		}
 		return ret;
 	}
 	
 	public static Country getCountry(String ecc) {
-		Country ret = COUNTRIES.get("ecc=" + ecc);
-		if (ret == null) 
+		TMCDatabase db = db();
+		Country ret = db.countries.get("ecc=" + ecc);
+		if ((ret == null) && (db.compiled != null)) {
+			ret = db.compiled.getCountry(ecc);
+			if (ret != null) {
+				putCountry(ecc, ret);
+				putCountry(ret.cid, ret);
+			}
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Countries where ECC = ?");
+				stmt = db.acquire(SQL_COUNTRY_BY_ECC);
 				stmt.setString(1, ecc);
 				ResultSet rset = stmt.executeQuery();
 				if (rset.next()) {
@@ -358,29 +540,38 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_COUNTRY_BY_ECC, stmt);
 			}
+		}
 		return ret;
 	}
 	
 	public static void putCountry(String cc, int ltn, Country country) {
-		COUNTRIES.put("ccd=" + cc + ";tabcd=" + ltn, country);
+		db().countries.put("ccd=" + cc + ";tabcd=" + ltn, country);
 	}
 	
 	public static void putCountry(int cid, Country country) {
-		COUNTRIES.put("cid=" + cid, country);
+		db().countries.put("cid=" + cid, country);
 	}
 	
 	public static void putCountry(String ecc, Country country) {
-		COUNTRIES.put("ecc=" + ecc, country);
+		db().countries.put("ecc=" + ecc, country);
 	}
 	
-	private static Map<String, LocationDataset> LOCATION_DATASETS = new HashMap<String, LocationDataset>();
-
 	public static LocationDataset getLocationDataset(int cid, int tabcd) {
-		LocationDataset ret = LOCATION_DATASETS.get(cid + ";" + tabcd);
-		if (ret == null) 
+		TMCDatabase db = db();
+		LocationDataset ret = db.locationDatasets.get(LocationCache.key(cid, tabcd, 0));
+		if ((ret == null) && (db.compiled != null)) {
+			ret = db.compiled.getLocationDataset(cid, tabcd);
+			if (ret != null)
+				putLocationDataset(cid, tabcd, ret);
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from LocationDataSets where CID = ? AND TABCD = ?");
+				stmt = db.acquire(SQL_LOCATION_DATASET);
 				stmt.setInt(1, cid);
 				stmt.setInt(2, tabcd);
 				ResultSet rset = stmt.executeQuery();
@@ -393,16 +584,17 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_LOCATION_DATASET, stmt);
 			}
+		}
 		return ret;
 	}
 	
 	public static void putLocationDataset(int cid, int tabcd, LocationDataset locationDataset) {
-		LOCATION_DATASETS.put(cid + ";" + tabcd, locationDataset);
+		db().locationDatasets.put(LocationCache.key(cid, tabcd, 0), locationDataset);
 	}
 
-	private static Map<String, Integer> LTN_ALIASES = new HashMap<String, Integer>();
-
 	/**
 	 * @brief Returns the LTN to be used for a given alias.
 	 *
@@ -416,42 +608,58 @@ public class TMC {
 	 * @return The LTN to be used for lookup. The LTN is not guaranteed to be contained in the location database.
 	 */
 	public static int getLtnForAlias(int cid, int alias) {
-		int ret = alias;
-		Integer tabcd = LTN_ALIASES.get(cid + ";" + alias);
+		TMCDatabase db = db();
+		Integer tabcd = db.ltnAliases.get(LocationCache.key(cid, alias, 0));
 		if (tabcd != null)
-			ret = tabcd;
-		else {
-			LocationDataset lds = getLocationDataset(cid, alias);
-			if (lds != null)
-				putLtnAlias(cid, alias, lds.tabcd);
-			else
-				try {
-					PreparedStatement stmt = dbConnection.prepareStatement("select * from TabcdAliases where CID = ? AND ALIAS = ?");
-					stmt.setInt(1, cid);
-					stmt.setInt(2, alias);
-					ResultSet rset = stmt.executeQuery();
-					if (rset.next()) {
-						ret = rset.getInt("TABCD");
-						putLtnAlias(cid, alias, ret);
-					}
-				} catch (SQLException e) {
-					e.printStackTrace(System.err);
-				}
+			return tabcd;
+		
+		int ret = alias;
+		LocationDataset lds = getLocationDataset(cid, alias);
+		if (lds != null)
+			ret = lds.tabcd;
+		else if (db.compiled != null) {
+			int compiledTabcd = db.compiled.getAlias(cid, alias);
+			if (compiledTabcd >= 0)
+				ret = compiledTabcd;
+		} else {
+			PreparedStatement stmt = null;
+			try {
+				stmt = db.acquire(SQL_ALIAS);
+				stmt.setInt(1, cid);
+				stmt.setInt(2, alias);
+				ResultSet rset = stmt.executeQuery();
+				if (rset.next())
+					ret = rset.getInt("TABCD");
+			} catch (SQLException e) {
+				e.printStackTrace(System.err);
+				return ret;
+			} finally {
+				db.release(SQL_ALIAS, stmt);
+			}
 		}
+		// unknown LTNs are cached too, as this is called for every lookup
+		putLtnAlias(cid, alias, ret);
 		return ret;
 	}
 
 	public static void putLtnAlias(int cid, int alias, Integer tabcd) {
-		LTN_ALIASES.put(cid + ";" + alias, tabcd);
+		db().ltnAliases.put(LocationCache.key(cid, alias, 0), tabcd);
 	}
 
-	private static Map<String, TMCName> NAMES = new HashMap<String, TMCName>();
-
 	public static TMCName getName(int cid, int nid) {
-		TMCName ret = NAMES.get(cid + ";" + nid);
-		if (ret == null) 
+		TMCDatabase db = db();
+		TMCName ret = db.defaultNames.get(LocationCache.key(cid, 0, nid));
+		if ((ret == null) && (db.compiled != null)) {
+			int lid = db.compiled.getDefaultLid(cid, nid);
+			ret = (lid < 0) ? null : getName(cid, lid, nid);
+			if (ret != null)
+				putName(cid, nid, ret);
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Names where CID = ? AND NID = ? ORDER BY LID");
+				stmt = db.acquire(SQL_NAME_BY_NID);
 				stmt.setInt(1, cid);
 				stmt.setInt(2, nid);
 				ResultSet rset = stmt.executeQuery();
@@ -467,15 +675,26 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_NAME_BY_NID, stmt);
 			}
+		}
 		return ret;
 	}
 
 	public static TMCName getName(int cid, int lid, int nid) {
-		TMCName ret = NAMES.get(cid + ";" + lid + ";" + nid);
-		if (ret == null) 
+		TMCDatabase db = db();
+		TMCName ret = db.names.get(LocationCache.key(cid, lid, nid));
+		if ((ret == null) && (db.compiled != null)) {
+			ret = db.compiled.getName(cid, lid, nid);
+			if (ret != null)
+				putName(cid, lid, nid, ret);
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Names where CID = ? AND LID = ? AND NID = ?");
+				stmt = db.acquire(SQL_NAME);
 				stmt.setInt(1, cid);
 				stmt.setInt(2, lid);
 				stmt.setInt(3, nid);
@@ -489,23 +708,24 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_NAME, stmt);
 			}
+		}
 		return ret;
 	}
 	
 	public static void putName(int cid, int nid, TMCName name) {
-		NAMES.put(cid + ";" + nid, name);
+		db().defaultNames.put(LocationCache.key(cid, 0, nid), name);
 	}
 	
 	public static void putName(int cid, int lid, int nid, TMCName name) {
-		NAMES.put(cid + ";" + lid + ";" + nid, name);
+		db().names.put(LocationCache.key(cid, lid, nid), name);
 	}
 	
-	private static Map<String, TMCLocation> LOCATIONS = new HashMap<String, TMCLocation>();
-
 	public static TMCLocation getLocation(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		TMCLocation ret = LOCATIONS.get(cid + ";" + tabcd + ";" + lcd);
+		TMCLocation ret = db().locations.get(LocationCache.key(cid, tabcd, lcd));
 		if (ret == null) {
 			ret = getArea(cid, tabcd, lcd);
 			if (ret == null)
@@ -530,65 +750,99 @@ public class TMC {
 	
 	public static void putLocation(int cid, int tabcd, int lcd, TMCLocation location) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		LOCATIONS.put(cid + ";" + tabcd + ";" + lcd, location);
+		db().locations.put(LocationCache.key(cid, tabcd, lcd), location);
+	}
+	
+	/**
+	 * @brief Runs a query for a single location.
+	 * 
+	 * @return The result set, positioned on the location, or {@code null} if it was not found
+	 */
+	private static ResultSet queryLocation(PreparedStatement stmt, int cid, int tabcd, int lcd) throws SQLException {
+		stmt.setInt(1, cid);
+		stmt.setInt(2, tabcd);
+		stmt.setInt(3, lcd);
+		ResultSet rset = stmt.executeQuery();
+		return rset.next() ? rset : null;
+	}
+	
+	/**
+	 * @brief Runs a query for the first or last segment or point of a location.
+	 * 
+	 * @return The result set, positioned on the first match, or {@code null} if none was found
+	 */
+	private static ResultSet queryEnd(PreparedStatement stmt, int cid, int tabcd, int lcd) throws SQLException {
+		stmt.setInt(1, cid);
+		stmt.setInt(2, tabcd);
+		stmt.setInt(3, lcd);
+		stmt.setInt(4, lcd);
+		ResultSet rset = stmt.executeQuery();
+		return rset.next() ? rset : null;
 	}
 	
-	private static Map<String, TMCArea> AREAS = new HashMap<String, TMCArea>();
-
 	public static TMCArea getArea(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		TMCArea ret = AREAS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null) 
+		TMCDatabase db = db();
+		TMCArea ret = db.areas.get(LocationCache.key(cid, tabcd, lcd));
+		if ((ret == null) && (db.compiled != null)) {
+			ret = db.compiled.getArea(cid, tabcd, lcd);
+			if (ret != null) {
+				putArea(cid, tabcd, lcd, ret);
+				putLocation(cid, tabcd, lcd, ret);
+			}
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
+			PreparedStatement stmt2 = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from AdministrativeAreas where CID = ? AND TABCD = ? AND LCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				stmt = db.acquire(SQL_ADMINISTRATIVE_AREA);
+				ResultSet rset = queryLocation(stmt, cid, tabcd, lcd);
+				if (rset == null) {
+					stmt2 = db.acquire(SQL_OTHER_AREA);
+					rset = queryLocation(stmt2, cid, tabcd, lcd);
+				}
+				if (rset != null) {
 					TMCArea area = new TMCArea(rset);
 					putArea(cid, tabcd, lcd, area);
 					putLocation(cid, tabcd, lcd, area);
 					return area;
-				} else {
-					stmt = dbConnection.prepareStatement("select * from OtherAreas where CID = ? AND TABCD = ? AND LCD = ?");
-					stmt.setInt(1, cid);
-					stmt.setInt(2, tabcd);
-					stmt.setInt(3, lcd);
-					rset = stmt.executeQuery();
-					if (rset.next()) {
-						TMCArea area = new TMCArea(rset);
-						putArea(cid, tabcd, lcd, area);
-						putLocation(cid, tabcd, lcd, area);
-						return area;
-					} else
-						return null;
-				}
+				} else
+					return null;
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_ADMINISTRATIVE_AREA, stmt);
+				db.release(SQL_OTHER_AREA, stmt2);
 			}
+		}
 		return ret;
 	}
 	
 	public static void putArea(int cid, int tabcd, int lcd, TMCArea area) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		AREAS.put(cid + ";" + tabcd + ";" + lcd, area);
+		db().areas.put(LocationCache.key(cid, tabcd, lcd), area);
 	}
 
-	private static Map<String, Road> ROADS = new HashMap<String, Road>();
-
 	public static Road getRoad(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		Road ret = ROADS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null) 
+		TMCDatabase db = db();
+		Road ret = db.roads.get(LocationCache.key(cid, tabcd, lcd));
+		if ((ret == null) && (db.compiled != null)) {
+			ret = db.compiled.getRoad(cid, tabcd, lcd);
+			if (ret != null) {
+				putRoad(cid, tabcd, lcd, ret);
+				putLocation(cid, tabcd, lcd, ret);
+			}
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Roads where CID = ? AND TABCD = ? AND LCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				stmt = db.acquire(SQL_ROAD);
+				ResultSet rset = queryLocation(stmt, cid, tabcd, lcd);
+				if (rset != null) {
 					Road road = new Road(rset);
 					putRoad(cid, tabcd, lcd, road);
 					putLocation(cid, tabcd, lcd, road);
@@ -598,38 +852,51 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_ROAD, stmt);
 			}
+		}
 		return ret;
 	}
 	
 	public static void putRoad(int cid, int tabcd, int lcd, Road road) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		ROADS.put(cid + ";" + tabcd + ";" + lcd, road);
+		db().roads.put(LocationCache.key(cid, tabcd, lcd), road);
+	}
+	
+	/**
+	 * @brief Creates a segment from a record of the {@code Segments} table, reading its offsets.
+	 */
+	private static Segment newSegment(TMCDatabase db, ResultSet rset, int cid, int tabcd, int lcd) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = db.acquire(SQL_SOFFSETS);
+			ResultSet offsets = queryLocation(stmt, cid, tabcd, lcd);
+			return new Segment(rset, offsets);
+		} finally {
+			db.release(SQL_SOFFSETS, stmt);
+		}
 	}
 	
-	private static Map<String, Segment> SEGMENTS = new HashMap<String, Segment>();
-
 	public static Segment getSegment(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		Segment ret = SEGMENTS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null) 
+		TMCDatabase db = db();
+		Segment ret = db.segments.get(LocationCache.key(cid, tabcd, lcd));
+		if ((ret == null) && (db.compiled != null)) {
+			ret = db.compiled.getSegment(cid, tabcd, lcd);
+			if (ret != null) {
+				putSegment(cid, tabcd, lcd, ret);
+				putLocation(cid, tabcd, lcd, ret);
+			}
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Segments where CID = ? AND TABCD = ? AND LCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
-					stmt = dbConnection.prepareStatement("select * from Soffsets where CID = ? AND TABCD = ? AND LCD = ?");
-					stmt.setInt(1, cid);
-					stmt.setInt(2, tabcd);
-					stmt.setInt(3, lcd);
-					ResultSet offsets = stmt.executeQuery();
-					Segment segment;
-					if (offsets.next())
-						segment = new Segment(rset, offsets);
-					else
-						segment = new Segment(rset, null);
+				stmt = db.acquire(SQL_SEGMENT);
+				ResultSet rset = queryLocation(stmt, cid, tabcd, lcd);
+				if (rset != null) {
+					Segment segment = newSegment(db, rset, cid, tabcd, lcd);
 					putSegment(cid, tabcd, lcd, segment);
 					putLocation(cid, tabcd, lcd, segment);
 					// TODO add to FIRST_SEGMENTS, LAST_SEGMENTS if conditions are met
@@ -639,17 +906,44 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_SEGMENT, stmt);
 			}
+		}
 		return ret;
 	}
 	
 	public static void putSegment(int cid, int tabcd, int lcd, Segment segment) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		SEGMENTS.put(cid + ";" + tabcd + ";" + lcd, segment);
+		db().segments.put(LocationCache.key(cid, tabcd, lcd), segment);
+	}
+	
+	/**
+	 * @brief Gets the first or last segment of a location, with the given query.
+	 */
+	private static Segment getEndSegment(TMCDatabase db, String sql, int cid, int tabcd, int lcd) {
+		PreparedStatement stmt = null;
+		try {
+			stmt = db.acquire(sql);
+			ResultSet rset = queryEnd(stmt, cid, tabcd, lcd);
+			if (rset == null)
+				return null;
+			int segLcd = rset.getInt("LCD");
+			Segment segment = getSegment(cid, tabcd, segLcd);
+			if (segment == null) {
+				segment = newSegment(db, rset, cid, tabcd, segLcd);
+				putSegment(cid, tabcd, segment.lcd, segment);
+				putLocation(cid, tabcd, segment.lcd, segment);
+			}
+			return segment;
+		} catch (SQLException e) {
+			e.printStackTrace(System.err);
+			return null;
+		} finally {
+			db.release(sql, stmt);
+		}
 	}
 	
-	private static Map<String, Segment> FIRST_SEGMENTS = new HashMap<String, Segment>();
-
 	/**
 	 * @brief Gets the first segment of the location specified by the arguments.
 	 * 
@@ -661,54 +955,26 @@ public class TMC {
 	 */
 	public static Segment getFirstSegment(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		Segment ret = FIRST_SEGMENTS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null)
-			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Segments where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Soffsets WHERE Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD AND Soffsets.NEG_OFF_LCD IS NOT NULL)");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				stmt.setInt(4, lcd);
-				ResultSet rset = stmt.executeQuery();
-				Segment segment = null;
-				if (rset.next()) {
-					try {
-						segment = getSegment(cid, tabcd, rset.getInt("LCD"));
-					} catch (SQLException e) {
-						segment = null;
-					}
-					if (segment == null) {
-						stmt = dbConnection.prepareStatement("select * from Soffsets where CID = ? AND TABCD = ? AND LCD = ?");
-						stmt.setInt(1, cid);
-						stmt.setInt(2, tabcd);
-						stmt.setInt(3, lcd);
-						ResultSet offsets = stmt.executeQuery();
-						if (offsets.next())
-							segment = new Segment(rset, offsets);
-						else
-							segment = new Segment(rset, null);
-						putSegment(cid, tabcd, segment.lcd, segment);
-						putLocation(cid, tabcd, segment.lcd, segment);
-					}
-					putFirstSegment(cid, tabcd, lcd, segment);
-					// TODO populate LAST_SEGMENTS if available
-					return segment;
-				} else
-					return null;
-			} catch (SQLException e) {
-				e.printStackTrace(System.err);
-				return null;
-			}
+		TMCDatabase db = db();
+		Segment ret = db.firstSegments.get(LocationCache.key(cid, tabcd, lcd));
+		if (ret == null) {
+			if (db.compiled != null) {
+				int endLcd = db.compiled.getEnd(CompiledLocationTables.FIRST_SEGMENTS, cid, tabcd, lcd);
+				ret = (endLcd < 0) ? null : getSegment(cid, tabcd, endLcd);
+			} else
+				ret = getEndSegment(db, SQL_FIRST_SEGMENT, cid, tabcd, lcd);
+			if (ret != null)
+				putFirstSegment(cid, tabcd, lcd, ret);
+			// TODO populate LAST_SEGMENTS if available
+		}
 		return ret;
 	}
 	
 	public static void putFirstSegment(int cid, int tabcd, int lcd, Segment segment) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		FIRST_SEGMENTS.put(cid + ";" + tabcd + ";" + lcd, segment);
+		db().firstSegments.put(LocationCache.key(cid, tabcd, lcd), segment);
 	}
 	
-	private static Map<String, Segment> LAST_SEGMENTS = new HashMap<String, Segment>();
-
 	/**
 	 * @brief Gets the last segment of the location specified by the arguments.
 	 * 
@@ -720,75 +986,59 @@ public class TMC {
 	 */
 	public static Segment getLastSegment(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		Segment ret = LAST_SEGMENTS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null)
-			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Segments where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Soffsets WHERE Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD AND Soffsets.POS_OFF_LCD IS NOT NULL)");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				stmt.setInt(4, lcd);
-				ResultSet rset = stmt.executeQuery();
-				Segment segment = null;
-				if (rset.next()) {
-					try {
-						segment = getSegment(cid, tabcd, rset.getInt("LCD"));
-					} catch (SQLException e) {
-						segment = null;
-					}
-					if (segment == null) {
-						stmt = dbConnection.prepareStatement("select * from Soffsets where CID = ? AND TABCD = ? AND LCD = ?");
-						stmt.setInt(1, cid);
-						stmt.setInt(2, tabcd);
-						stmt.setInt(3, lcd);
-						ResultSet offsets = stmt.executeQuery();
-						if (offsets.next())
-							segment = new Segment(rset, offsets);
-						else
-							segment = new Segment(rset, null);
-						putSegment(cid, tabcd, segment.lcd, segment);
-						putLocation(cid, tabcd, segment.lcd, segment);
-					}
-					putLastSegment(cid, tabcd, lcd, segment);
-					// TODO populate FIRST_SEGMENTS if available
-					return segment;
-				} else
-					return null;
-			} catch (SQLException e) {
-				e.printStackTrace(System.err);
-				return null;
-			}
+		TMCDatabase db = db();
+		Segment ret = db.lastSegments.get(LocationCache.key(cid, tabcd, lcd));
+		if (ret == null) {
+			if (db.compiled != null) {
+				int endLcd = db.compiled.getEnd(CompiledLocationTables.LAST_SEGMENTS, cid, tabcd, lcd);
+				ret = (endLcd < 0) ? null : getSegment(cid, tabcd, endLcd);
+			} else
+				ret = getEndSegment(db, SQL_LAST_SEGMENT, cid, tabcd, lcd);
+			if (ret != null)
+				putLastSegment(cid, tabcd, lcd, ret);
+			// TODO populate FIRST_SEGMENTS if available
+		}
 		return ret;
 	}
 	
 	public static void putLastSegment(int cid, int tabcd, int lcd, Segment segment) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		LAST_SEGMENTS.put(cid + ";" + tabcd + ";" + lcd, segment);
+		db().lastSegments.put(LocationCache.key(cid, tabcd, lcd), segment);
+	}
+	
+	/**
+	 * @brief Creates a point from a record of the {@code Points} table, reading its offsets.
+	 */
+	private static TMCPoint newPoint(TMCDatabase db, ResultSet rset, int cid, int tabcd, int lcd) throws SQLException {
+		PreparedStatement stmt = null;
+		try {
+			stmt = db.acquire(SQL_POFFSETS);
+			ResultSet offsets = queryLocation(stmt, cid, tabcd, lcd);
+			return new TMCPoint(rset, offsets);
+		} finally {
+			db.release(SQL_POFFSETS, stmt);
+		}
 	}
 	
-	private static Map<String, TMCPoint> POINTS = new HashMap<String, TMCPoint>();
-
 	public static TMCPoint getPoint(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		TMCPoint ret = POINTS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null) 
+		TMCDatabase db = db();
+		TMCPoint ret = db.points.get(LocationCache.key(cid, tabcd, lcd));
+		if ((ret == null) && (db.compiled != null)) {
+			ret = db.compiled.getPoint(cid, tabcd, lcd);
+			if (ret != null) {
+				putPoint(cid, tabcd, lcd, ret);
+				putLocation(cid, tabcd, lcd, ret);
+			}
+			return ret;
+		}
+		if (ret == null) {
+			PreparedStatement stmt = null;
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Points where CID = ? AND TABCD = ? AND LCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				ResultSet rset = stmt.executeQuery();
-				TMCPoint point;
-				if (rset.next()) {
-					stmt = dbConnection.prepareStatement("select * from Poffsets where CID = ? AND TABCD = ? AND LCD = ?");
-					stmt.setInt(1, cid);
-					stmt.setInt(2, tabcd);
-					stmt.setInt(3, lcd);
-					ResultSet offsets = stmt.executeQuery();
-					if (offsets.next())
-						point = new TMCPoint(rset, offsets);
-					else
-						point = new TMCPoint(rset, null);
+				stmt = db.acquire(SQL_POINT);
+				ResultSet rset = queryLocation(stmt, cid, tabcd, lcd);
+				if (rset != null) {
+					TMCPoint point = newPoint(db, rset, cid, tabcd, lcd);
 					putPoint(cid, tabcd, lcd, point);
 					putLocation(cid, tabcd, lcd, point);
 					// TODO add to FIRST_POINTS, LAST_POINTS if conditions are met
@@ -798,17 +1048,44 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				db.release(SQL_POINT, stmt);
 			}
+		}
 		return ret;
 	}
 	
 	public static void putPoint(int cid, int tabcd, int lcd, TMCPoint point) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		POINTS.put(cid + ";" + tabcd + ";" + lcd, point);
+		db().points.put(LocationCache.key(cid, tabcd, lcd), point);
+	}
+	
+	/**
+	 * @brief Gets the first or last point of a location, with the given query.
+	 */
+	private static TMCPoint getEndPoint(TMCDatabase db, String sql, int cid, int tabcd, int lcd) {
+		PreparedStatement stmt = null;
+		try {
+			stmt = db.acquire(sql);
+			ResultSet rset = queryEnd(stmt, cid, tabcd, lcd);
+			if (rset == null)
+				return null;
+			int pointLcd = rset.getInt("LCD");
+			TMCPoint point = getPoint(cid, tabcd, pointLcd);
+			if (point == null) {
+				point = newPoint(db, rset, cid, tabcd, pointLcd);
+				putPoint(cid, tabcd, point.lcd, point);
+				putLocation(cid, tabcd, point.lcd, point);
+			}
+			return point;
+		} catch (SQLException e) {
+			e.printStackTrace(System.err);
+			return null;
+		} finally {
+			db.release(sql, stmt);
+		}
 	}
 	
-	private static Map<String, TMCPoint> FIRST_POINTS = new HashMap<String, TMCPoint>();
-
 	/**
 	 * @brief Gets the first point of the location specified by the arguments.
 	 * 
@@ -820,54 +1097,26 @@ public class TMC {
 	 */
 	public static TMCPoint getFirstPoint(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		TMCPoint ret = FIRST_POINTS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null)
-			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Points where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Poffsets WHERE Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD AND Poffsets.NEG_OFF_LCD IS NOT NULL) AND (INTERRUPTSROAD IS NULL OR INTERRUPTSROAD = 0)");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				stmt.setInt(4, lcd);
-				ResultSet rset = stmt.executeQuery();
-				TMCPoint point = null;
-				if (rset.next()) {
-					try {
-						point = getPoint(cid, tabcd, rset.getInt("LCD"));
-					} catch (SQLException e) {
-						point = null;
-					}
-					if (point == null) {
-						stmt = dbConnection.prepareStatement("select * from Poffsets where CID = ? AND TABCD = ? AND LCD = ?");
-						stmt.setInt(1, cid);
-						stmt.setInt(2, tabcd);
-						stmt.setInt(3, lcd);
-						ResultSet offsets = stmt.executeQuery();
-						if (offsets.next())
-							point = new TMCPoint(rset, offsets);
-						else
-							point = new TMCPoint(rset, null);
-						putPoint(cid, tabcd, point.lcd, point);
-						putLocation(cid, tabcd, point.lcd, point);
-					}
-					putFirstPoint(cid, tabcd, lcd, point);
-					// TODO populate LAST_POINTS if applicable
-					return point;
-				} else
-					return null;
-			} catch (SQLException e) {
-				e.printStackTrace(System.err);
-				return null;
-			}
+		TMCDatabase db = db();
+		TMCPoint ret = db.firstPoints.get(LocationCache.key(cid, tabcd, lcd));
+		if (ret == null) {
+			if (db.compiled != null) {
+				int endLcd = db.compiled.getEnd(CompiledLocationTables.FIRST_POINTS, cid, tabcd, lcd);
+				ret = (endLcd < 0) ? null : getPoint(cid, tabcd, endLcd);
+			} else
+				ret = getEndPoint(db, SQL_FIRST_POINT, cid, tabcd, lcd);
+			if (ret != null)
+				putFirstPoint(cid, tabcd, lcd, ret);
+			// TODO populate LAST_POINTS if applicable
+		}
 		return ret;
 	}
 	
 	public static void putFirstPoint(int cid, int tabcd, int lcd, TMCPoint point) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		FIRST_POINTS.put(cid + ";" + tabcd + ";" + lcd, point);
+		db().firstPoints.put(LocationCache.key(cid, tabcd, lcd), point);
 	}
 	
-	private static Map<String, TMCPoint> LAST_POINTS = new HashMap<String, TMCPoint>();
-
 	/**
 	 * @brief Gets the last point of the location specified by the arguments.
 	 * 
@@ -879,62 +1128,157 @@ public class TMC {
 	 */
 	public static TMCPoint getLastPoint(int cid, int tabcd, int lcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		TMCPoint ret = LAST_POINTS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null)
-			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Points where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Poffsets WHERE Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD AND Poffsets.POS_OFF_LCD IS NOT NULL) AND (INTERRUPTSROAD IS NULL OR INTERRUPTSROAD = 0)");
+		TMCDatabase db = db();
+		TMCPoint ret = db.lastPoints.get(LocationCache.key(cid, tabcd, lcd));
+		if (ret == null) {
+			if (db.compiled != null) {
+				int endLcd = db.compiled.getEnd(CompiledLocationTables.LAST_POINTS, cid, tabcd, lcd);
+				ret = (endLcd < 0) ? null : getPoint(cid, tabcd, endLcd);
+			} else
+				ret = getEndPoint(db, SQL_LAST_POINT, cid, tabcd, lcd);
+			if (ret != null)
+				putLastPoint(cid, tabcd, lcd, ret);
+			// TODO populate FIRST_POINTS if applicable
+		}
+		return ret;
+	}
+	
+	public static void putLastPoint(int cid, int tabcd, int lcd, TMCPoint point) {
+		tabcd = getLtnForAlias(cid, tabcd);
+		db().lastPoints.put(LocationCache.key(cid, tabcd, lcd), point);
+	}
+	
+	/**
+	 * @brief Loads all the names and locations of a location table into the caches.
+	 * 
+	 * Locations are read in a few bulk queries, instead of one query per location, and are never
+	 * evicted from the caches. This is worthwhile when many messages refer to the same location
+	 * table, for instance when monitoring a busy TMC service. Compiled location tables are not
+	 * preloaded, as reading them is cheap.
+	 * 
+	 * @param cid The country ID
+	 * @param tabcd The location table number (or an alias)
+	 * @return The number of locations loaded
+	 */
+	public static int preload(int cid, int tabcd) {
+		tabcd = getLtnForAlias(cid, tabcd);
+		TMCDatabase db = db();
+		if (db.compiled != null)
+			return 0;
+		int count = 0;
+		PreparedStatement stmt = null;
+		String sql = null;
+		try {
+			/* names, the first one in LID order being the default one, as in getName(cid, nid) */
+			stmt = db.acquire(sql = SQL_PRELOAD_NAMES);
+			stmt.setInt(1, cid);
+			ResultSet rset = stmt.executeQuery();
+			while (rset.next()) {
+				TMCName name = new TMCName(rset);
+				db.names.pin(LocationCache.key(cid, name.lid, name.nid), name);
+				long key = LocationCache.key(cid, 0, name.nid);
+				if (db.defaultNames.get(key) == null)
+					db.defaultNames.pin(key, name);
+			}
+			db.release(sql, stmt);
+			stmt = null;
+			
+			/* areas, roads, segments and points, in that order so that most references are cached */
+			for (String query : new String[] {SQL_PRELOAD_ADMINISTRATIVE_AREAS, SQL_PRELOAD_OTHER_AREAS,
+					SQL_PRELOAD_ROADS, SQL_PRELOAD_SEGMENTS, SQL_PRELOAD_POINTS}) {
+				stmt = db.acquire(sql = query);
 				stmt.setInt(1, cid);
 				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				stmt.setInt(4, lcd);
-				ResultSet rset = stmt.executeQuery();
-				TMCPoint point = null;
-				if (rset.next()) {
-					try {
-						point = getPoint(cid, tabcd, rset.getInt("LCD"));
-					} catch (SQLException e) {
-						point = null;
+				rset = stmt.executeQuery();
+				while (rset.next()) {
+					long key = LocationCache.key(cid, tabcd, rset.getInt("LCD"));
+					TMCLocation location = db.locations.get(key);
+					if (query == SQL_PRELOAD_ROADS) {
+						Road road = location instanceof Road ? (Road) location : new Road(rset);
+						db.roads.pin(key, road);
+						location = road;
+					} else if (query == SQL_PRELOAD_SEGMENTS) {
+						Segment segment = location instanceof Segment ? (Segment) location : new Segment(rset, getOffsets(rset));
+						db.segments.pin(key, segment);
+						location = segment;
+					} else if (query == SQL_PRELOAD_POINTS) {
+						TMCPoint point = location instanceof TMCPoint ? (TMCPoint) location : new TMCPoint(rset, getOffsets(rset));
+						db.points.pin(key, point);
+						location = point;
+					} else {
+						TMCArea area = location instanceof TMCArea ? (TMCArea) location : new TMCArea(rset);
+						db.areas.pin(key, area);
+						location = area;
 					}
-					if (point == null) {
-						stmt = dbConnection.prepareStatement("select * from Poffsets where CID = ? AND TABCD = ? AND LCD = ?");
-						stmt.setInt(1, cid);
-						stmt.setInt(2, tabcd);
-						stmt.setInt(3, lcd);
-						ResultSet offsets = stmt.executeQuery();
-						if (offsets.next())
-							point = new TMCPoint(rset, offsets);
-						else
-							point = new TMCPoint(rset, null);
-						putPoint(cid, tabcd, point.lcd, point);
-						putLocation(cid, tabcd, point.lcd, point);
-					}
-					putLastPoint(cid, tabcd, lcd, point);
-					// TODO populate FIRST_POINTS if applicable
-					return point;
-				} else
-					return null;
-			} catch (SQLException e) {
-				e.printStackTrace(System.err);
-				return null;
+					db.locations.pin(key, location);
+					count++;
+				}
+				db.release(sql, stmt);
+				stmt = null;
 			}
-		return ret;
+		} catch (SQLException e) {
+			e.printStackTrace(System.err);
+		} finally {
+			db.release(sql, stmt);
+		}
+		return count;
 	}
 	
-	public static void putLastPoint(int cid, int tabcd, int lcd, TMCPoint point) {
+	/**
+	 * @brief Returns the coordinates of all the points of a location table.
+	 * 
+	 * This does not create any {@link TMCPoint}, so that all the points of large location tables
+	 * can be indexed, see {@link TMCPointIndex}.
+	 * 
+	 * @param cid The country ID
+	 * @param tabcd The location table number (or an alias)
+	 * @return A map of LCDs to coordinates (longitude, latitude). Points without coordinates are
+	 * omitted.
+	 */
+	public static Map<Integer, float[]> getPointCoordinates(int cid, int tabcd) {
 		tabcd = getLtnForAlias(cid, tabcd);
-		LAST_POINTS.put(cid + ";" + tabcd + ";" + lcd, point);
+		TMCDatabase db = db();
+		if (db.compiled != null)
+			return db.compiled.getPointCoordinates(cid, tabcd);
+		Map<Integer, float[]> ret = new HashMap<Integer, float[]>();
+		PreparedStatement stmt = null;
+		try {
+			stmt = db.acquire(SQL_POINT_COORDINATES);
+			stmt.setInt(1, cid);
+			stmt.setInt(2, tabcd);
+			ResultSet rset = stmt.executeQuery();
+			while (rset.next()) {
+				float x = rset.getFloat("XCOORD");
+				float y = rset.getFloat("YCOORD");
+				if (!rset.wasNull())
+					ret.put(rset.getInt("LCD"), new float[] {x, y});
+			}
+		} catch (SQLException e) {
+			e.printStackTrace(System.err);
+		} finally {
+			db.release(SQL_POINT_COORDINATES, stmt);
+		}
+		return ret;
 	}
 	
+	/**
+	 * @brief Returns a preload result set as offsets, or {@code null} if the location has no offset record.
+	 */
+	private static ResultSet getOffsets(ResultSet rset) throws SQLException {
+		rset.getInt("OFF_LCD");
+		return rset.wasNull() ? null : rset;
+	}
+
 	/**
 	 * @brief Initializes the database tables.
 	 */
-	private static void initDb() {
+	private static void initDb(TMCDatabase db) {
 		// read and execute SQL initialization script
 		for (String stmtSql: initStmts) {
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement(stmtSql);
+				PreparedStatement stmt = db.connection.prepareStatement(stmtSql);
 				stmt.execute();
-				dbConnection.commit();
+				db.connection.commit();
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return;
@@ -947,9 +1291,21 @@ public class TMC {
 	 * @param path
 	 */
 	public static void readLocationTables(File path) {
+		if (db().isCompiled()) {
+			System.err.println("Cannot import location tables into compiled location tables " + db().url);
+			return;
+		}
+		
 		// create tables (unless it's an in-memory DB, for which we have already done this)
 		if (!isDbInMemory())
-			initDb();
+			initDb(db());
+		
+		/*
+		 * Writing the redo log is not needed during the import, as the database is compacted afterwards.
+		 * If the import is interrupted, it must be restarted anyway.
+		 */
+		if (!isDbInMemory())
+			setFilesLog(false);
 		
 		readLocationTablesFromDir(path);
 		for (File file: path.listFiles())
@@ -957,11 +1313,12 @@ public class TMC {
 				readLocationTablesFromDir(file);
 		
 		if (!isDbInMemory()) {
+			setFilesLog(true);
 			// if database is not an in-memory DB, close database to compact files on disk, then reopen it
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("shutdown compact;");
+				PreparedStatement stmt = db().connection.prepareStatement("shutdown compact;");
 				stmt.execute();
-				dbConnection.commit();
+				db().connection.commit();
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return;
@@ -971,6 +1328,19 @@ public class TMC {
 		}
 	}
 	
+	/**
+	 * @brief Enables or disables the redo log of a file database.
+	 */
+	private static void setFilesLog(boolean enabled) {
+		try {
+			PreparedStatement stmt = db().connection.prepareStatement("set files log " + enabled + ";");
+			stmt.execute();
+			stmt.close();
+		} catch (SQLException e) {
+			e.printStackTrace(System.err);
+		}
+	}
+	
 	/**
 	 * @brief Compares two version strings and determines which one is newer.
 	 * 
@@ -1058,25 +1428,14 @@ public class TMC {
 	}
 
 	/**
-	 * @brief Prepares an update of the database with the location data set at {@code path}.
+	 * @brief Sets the charset of a location data set from its README.DAT file.
 	 * 
-	 * First, unless a character set has been explicitly set by the user, the character set for the data is determined
-	 * from {@code README.DAT} and stored. If this step fails, no character set will be set, and the import routine
-	 * will try to probe for the correct character set to use.
-	 * 
-	 * Next, the new location data set is compared to the database to see if it needs to be imported. This is the case
-	 * if the database does not yet contain a data set with the same CID and TABCD, or if it contains an older version.
-	 * In the latter case, this method will delete all data associated with the older version.
+	 * This does nothing if a charset was explicitly set with {@link #setCharset(String)}. Callers must reset
+	 * the charset once the data set has been read, unless {@code isCharsetForced} is set.
 	 * 
-	 * If the folder at {@code path} does not hold a valid location data set (specifically, if its
-	 * {@code LOCATIONDATASETS.DAT} file is not found), the result will be {@code false}. 
-	 * 
-	 * @param path The path to the folder which holds the files of the new data set
-	 * @return {@code true} if an import is needed, {@code false} if not.
+	 * @param path The folder in which the files for the location data set are located.
 	 */
-	public static boolean prepareDataSetUpdate(File path) {
-		boolean ret = false;
-		String version = null;
+	static void detectCharset(File path) {
 		isCharsetForced = (charset != null);
 		File file = new File(path.getAbsolutePath() + File.separator + "README.DAT");
 		if (file.exists() && !isCharsetForced) {
@@ -1137,7 +1496,38 @@ public class TMC {
 					setCharset(values[firstPos]);
 			}
 		}
-		file = new File(path.getAbsolutePath() + File.separator + "LOCATIONDATASETS.DAT");
+	}
+	
+	/**
+	 * @brief Clears the charset if it was read from the location table data.
+	 */
+	static void clearDetectedCharset() {
+		if (!isCharsetForced)
+			charset = null;
+	}
+	
+	/**
+	 * @brief Prepares an update of the database with the location data set at {@code path}.
+	 * 
+	 * First, unless a character set has been explicitly set by the user, the character set for the data is determined
+	 * from {@code README.DAT} and stored. If this step fails, no character set will be set, and the import routine
+	 * will try to probe for the correct character set to use.
+	 * 
+	 * Next, the new location data set is compared to the database to see if it needs to be imported. This is the case
+	 * if the database does not yet contain a data set with the same CID and TABCD, or if it contains an older version.
+	 * In the latter case, this method will delete all data associated with the older version.
+	 * 
+	 * If the folder at {@code path} does not hold a valid location data set (specifically, if its
+	 * {@code LOCATIONDATASETS.DAT} file is not found), the result will be {@code false}. 
+	 * 
+	 * @param path The path to the folder which holds the files of the new data set
+	 * @return {@code true} if an import is needed, {@code false} if not.
+	 */
+	public static boolean prepareDataSetUpdate(File path) {
+		boolean ret = false;
+		String version = null;
+		detectCharset(path);
+		File file = new File(path.getAbsolutePath() + File.separator + "LOCATIONDATASETS.DAT");
 		PreparedStatement stmt = null;
 		int cid = -1;
 		int tabcd = -1;
@@ -1158,7 +1548,7 @@ public class TMC {
 				}
 				if ((cid == -1) || (tabcd == -1))
 					throw new IllegalArgumentException();
-				stmt = dbConnection.prepareStatement("select * from LocationDataSets where CID = ? and TABCD = ?;");
+				stmt = db().connection.prepareStatement("select * from LocationDataSets where CID = ? and TABCD = ?;");
 				stmt.setInt(1, cid);
 				stmt.setInt(2, tabcd);
 				ResultSet rset = stmt.executeQuery();
@@ -1174,11 +1564,11 @@ public class TMC {
 				}
 
 				if (ret) {
-					stmt = dbConnection.prepareStatement("delete from LocationDataSets where CID = ? and TABCD = ?;");
+					stmt = db().connection.prepareStatement("delete from LocationDataSets where CID = ? and TABCD = ?;");
 					stmt.setInt(1, cid);
 					stmt.setInt(2, tabcd);
 					stmt.executeUpdate();
-					dbConnection.commit();
+					db().connection.commit();
 				}
 				return ret;
 			} catch (Exception e) {
@@ -1192,6 +1582,46 @@ public class TMC {
 		}
 	}
 
+	/**
+	 * @brief Imports the tables of a location data set.
+	 * 
+	 * The files are parsed in parallel, by as many threads as set with {@link #setImportThreads(int)},
+	 * while the records are inserted in the order of {@link #IMPORT_TABLES}, so that the foreign keys
+	 * are satisfied. Records are inserted in batches, see {@link #setImportBatchSize(int)}.
+	 * 
+	 * @param path The folder in which the files for the location data set are located.
+	 */
+	private static void importTables(File path) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(importThreads, IMPORT_TABLES.length));
+		try {
+			List<Future<ParsedTable>> tables = new ArrayList<Future<ParsedTable>>();
+			for (String[] table : IMPORT_TABLES) {
+				File file = new File(path.getAbsolutePath() + File.separator + table[1]);
+				System.out.println(String.format("Processing table %s from file %s", table[0], file.getAbsolutePath()));
+				if (!file.exists())
+					continue;
+				try {
+					tables.add(executor.submit(new ParsedTable(table[0], file)));
+				} catch (IOException e) {
+					e.printStackTrace(System.err);
+				} catch (SQLException e) {
+					e.printStackTrace(System.err);
+				}
+			}
+			for (Future<ParsedTable> table : tables) {
+				try {
+					insertTable(table.get());
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace(System.err);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
 	/**
 	 * @brief Reads a single location data set from the given path.
 	 * 
@@ -1200,68 +1630,10 @@ public class TMC {
 	public static void readLocationTablesFromDir(File path) {
 		File file;
 		
-		if (prepareDataSetUpdate(path)) {
-			// 1 - COUNTRIES.DAT;
-			file = new File(path.getAbsolutePath() + File.separator + "COUNTRIES.DAT");
-			importTable("Countries", file);
-
-			// 2 - LOCATIONDATASETS.DAT;
-			file = new File(path.getAbsolutePath() + File.separator + "LOCATIONDATASETS.DAT");
-			importTable("LocationDataSets", file);
-
-			// 3 - LOCATIONCODES.DAT; skipped for now
-			// 4 - CLASSES.DAT; skipped for now
-			// 5 - TYPES.DAT; skipped for now
-			// 6 - SUBTYPES.DAT; skipped for now
-			// 7 - LANGUAGES.DAT; skipped for now
-			// 8 - EUROROADNO-DAT; skipped for now;
-
-			// 9 - NAMES.DAT;
-			file = new File(path.getAbsolutePath() + File.separator + "NAMES.DAT");
-			importTable("Names", file);
-
-			// 10 - NAMETRANSLATIONS.DAT; skipped for now
-			// 11 - SUBTYPETRANSLATIONS.DAT; skipped for now
-			// 12 - ERNO_BELONGS_TO_CO.DAT; skipped for now
-
-			// 13 - ADMINISTRATIVEAREA.DAT;
-			file = new File(path.getAbsolutePath() + File.separator + "ADMINISTRATIVEAREA.DAT");
-			importTable("AdministrativeAreas", file);
-
-			// 14 - OTHERAREAS.DAT;
-			file = new File(path.getAbsolutePath() + File.separator + "OTHERAREAS.DAT");
-			importTable("OtherAreas", file);
+		if (prepareDataSetUpdate(path))
+			importTables(path);
 
-			// 15 - ROADS.DAT;
-			file = new File(path.getAbsolutePath() + File.separator + "ROADS.DAT");
-			importTable("Roads", file);
-
-			// 16 - ROAD_NETWORK_LEVEL_TYPES.DAT; skipped for now
-
-			// 17 - SEGMENTS.DAT;
-			file = new File(path.getAbsolutePath() + File.separator + "SEGMENTS.DAT");
-			importTable("Segments", file);
-
-			// 18 - SOFFSETS.DAT
-			file = new File(path.getAbsolutePath() + File.separator + "SOFFSETS.DAT");
-			importTable("Soffsets", file);
-
-			// 19 - SEG_HAS_ERNO.DAT; skipped for now
-
-			// 20 - POINTS.DAT;
-			file = new File(path.getAbsolutePath() + File.separator + "POINTS.DAT");
-			importTable("Points", file);
-
-			// 21 - POFFSETS.DAT
-			file = new File(path.getAbsolutePath() + File.separator + "POFFSETS.DAT");
-			importTable("Poffsets", file);
-
-			// 22 - INTERSECTIONS.DAT; skipped for now
-		}
-
-		/* clear charset if it was read from the location table data */
-		if (!isCharsetForced)
-			charset = null;
+		clearDetectedCharset();
 
 		// TabcdAliases - TABCDALIASES.DAT; not part of official spec
 		file = new File(path.getAbsolutePath() + File.separator + "TABCDALIASES.DAT");
@@ -1284,7 +1656,7 @@ public class TMC {
 				stmtBuilder.append("on t.CID = vals.CID AND t.ALIAS = vals.ALIAS ");
 				stmtBuilder.append("when matched then update set t.TABCD = vals.TABCD ");
 				stmtBuilder.append("when not matched then insert values vals.CID, vals.ALIAS, vals.TABCD;");
-				stmt = dbConnection.prepareStatement(stmtBuilder.toString());
+				stmt = db().connection.prepareStatement(stmtBuilder.toString());
 				while((line = br.readLine()) != null)
 					if (line.length() > 0) {
 						stmt.clearParameters();
@@ -1302,7 +1674,7 @@ public class TMC {
 							hasConstraintViolations = true;
 						}
 					}
-				dbConnection.commit();
+				db().connection.commit();
 			} catch (IOException e) {
 				e.printStackTrace(System.err);
 				return;
@@ -1329,7 +1701,7 @@ public class TMC {
 	 */
 	static int[] getColumnTypes(String table, String[] fields) throws SQLException {
 		int[] res = new int[fields.length];
-		PreparedStatement stmt = dbConnection.prepareStatement(String.format("select * from %s limit 1;", table));
+		PreparedStatement stmt = db().connection.prepareStatement(String.format("select * from %s limit 1;", table));
 		ResultSet rs = stmt.executeQuery();
 		for (int i = 0; i < fields.length; i++) {
 			try {
@@ -1349,84 +1721,200 @@ public class TMC {
 	 * @param file The file to import (a file from a LT in exchange format)
 	 */
 	static void importTable(String table, File file) {
-		PreparedStatement stmt = null;
-		Boolean hasConstraintViolations = false;
 		System.out.println(String.format("Processing table %s from file %s", table, file.getAbsolutePath()));
 		if (file.exists()) {
 			try {
-				BufferedReader br = openLTFile(file);
-				String line = br.readLine();
-				String[] fields = getFields(line);
-				int[] types = getColumnTypes(table, fields);
-				String[] values;
-				StringBuilder stmtBuilder = new StringBuilder("insert into ");
-				stmtBuilder.append(table);
-				stmtBuilder.append(" (");
-				for (int i = 0; i < fields.length; i++) {
-					if (stmtBuilder.charAt(stmtBuilder.length() - 1) != '(')
-						stmtBuilder.append(", ");
-					stmtBuilder.append(fields[i]);
+				insertTable(new ParsedTable(table, file).call());
+			} catch (IOException e) {
+				e.printStackTrace(System.err);
+			} catch (SQLException e) {
+				e.printStackTrace(System.err);
+			}
+		}
+	}
+	
+	/**
+	 * @brief Inserts the records of a parsed location table file into the database.
+	 * 
+	 * Records which violate an integrity constraint are skipped.
+	 * 
+	 * @param parsed The parsed file
+	 */
+	private static void insertTable(ParsedTable parsed) {
+		PreparedStatement stmt = null;
+		int skipped = 0;
+		int total = parsed.rows.size();
+		long start = System.currentTimeMillis();
+		try {
+			StringBuilder stmtBuilder = new StringBuilder("insert into ");
+			stmtBuilder.append(parsed.table);
+			stmtBuilder.append(" (");
+			for (int i = 0; i < parsed.fields.length; i++) {
+				if (stmtBuilder.charAt(stmtBuilder.length() - 1) != '(')
+					stmtBuilder.append(", ");
+				stmtBuilder.append(parsed.fields[i]);
+			}
+			stmtBuilder.append(") VALUES (");
+			for (int i = 0; i < parsed.fields.length; i++) {
+				if (stmtBuilder.charAt(stmtBuilder.length() - 1) != '(')
+					stmtBuilder.append(", ");
+				stmtBuilder.append("?");
+			}
+			stmtBuilder.append(");");
+			stmt = db().connection.prepareStatement(stmtBuilder.toString());
+			for (int from = 0; from < total; from += importBatchSize) {
+				int to = Math.min(total, from + importBatchSize);
+				skipped += insertBatch(stmt, parsed, from, to);
+				if ((to < total) && (to / IMPORT_PROGRESS_INTERVAL > from / IMPORT_PROGRESS_INTERVAL))
+					System.out.println(String.format("  %s: %d of %d records", parsed.table, to, total));
+			}
+			db().connection.commit();
+			stmt.close();
+		} catch (SQLException e) {
+			if (stmt != null)
+				System.err.println(String.format("Error executing: %s", stmt.toString()));
+			e.printStackTrace(System.err);
+			return;
+		}
+		System.out.println(String.format("Imported %d records into %s in %d ms", total - skipped, parsed.table,
+				System.currentTimeMillis() - start));
+		if (parsed.invalidRows > 0)
+			System.err.println(String.format("%d invalid records from %s were skipped.", parsed.invalidRows, parsed.file.getAbsolutePath()));
+		if (skipped > 0)
+			System.err.println(String.format("Some records from %s were skipped due to integrity constraint violations.", parsed.file.getAbsolutePath()));
+	}
+	
+	/**
+	 * @brief Inserts a range of records as a batch.
+	 * 
+	 * If a record violates an integrity constraint, it is skipped and the remaining records are
+	 * inserted in a new batch (unless the driver has processed them already).
+	 * 
+	 * @return The number of records which were skipped
+	 */
+	private static int insertBatch(PreparedStatement stmt, ParsedTable parsed, int from, int to) throws SQLException {
+		int skipped = 0;
+		while (from < to) {
+			for (int i = from; i < to; i++) {
+				Object[] row = parsed.rows.get(i);
+				for (int j = 0; j < row.length; j++) {
+					if (row[j] == null)
+						stmt.setNull(j + 1, parsed.types[j]);
+					else if (row[j] instanceof Boolean)
+						stmt.setBoolean(j + 1, (Boolean) row[j]);
+					else if (row[j] instanceof Float)
+						stmt.setFloat(j + 1, (Float) row[j]);
+					else if (row[j] instanceof Integer)
+						stmt.setInt(j + 1, (Integer) row[j]);
+					else
+						stmt.setString(j + 1, (String) row[j]);
 				}
-				stmtBuilder.append(") VALUES (");
-				for (int i = 0; i < fields.length; i++) {
-					if (stmtBuilder.charAt(stmtBuilder.length() - 1) != '(')
-						stmtBuilder.append(", ");
-					stmtBuilder.append("?");
+				stmt.addBatch();
+			}
+			try {
+				stmt.executeBatch();
+				return skipped;
+			} catch (BatchUpdateException e) {
+				if (!isConstraintViolation(e))
+					throw e;
+				stmt.clearBatch();
+				int[] counts = e.getUpdateCounts();
+				if (counts.length >= to - from) {
+					// the driver went on after the failed records
+					for (int count : counts)
+						if (count == Statement.EXECUTE_FAILED)
+							skipped++;
+					return skipped;
 				}
-				stmtBuilder.append(");");
-				stmt = dbConnection.prepareStatement(stmtBuilder.toString());
-				while((line = br.readLine()) != null)
+				// the driver stopped at the failed record: skip it and go on with the next one
+				skipped++;
+				from += counts.length + 1;
+			}
+		}
+		return skipped;
+	}
+	
+	private static boolean isConstraintViolation(SQLException e) {
+		for (Throwable t = e; t != null; t = t.getCause())
+			if ((t instanceof SQLIntegrityConstraintViolationException)
+					|| ((t instanceof SQLException) && (((SQLException) t).getSQLState() != null)
+							&& ((SQLException) t).getSQLState().startsWith("23")))
+				return true;
+		return false;
+	}
+	
+	/**
+	 * @brief The records of a location table file, converted to the types of the table columns.
+	 * 
+	 * The file is opened by the constructor, in the calling thread, as the character set is a
+	 * global setting. It can then be parsed by another thread, with {@link #call()}.
+	 */
+	private static class ParsedTable implements Callable<ParsedTable> {
+		private final String table;
+		private final File file;
+		private final BufferedReader reader;
+		private final String[] fields;
+		private final int[] types;
+		private final List<Object[]> rows = new ArrayList<Object[]>();
+		private int invalidRows = 0;
+		
+		ParsedTable(String table, File file) throws IOException, SQLException {
+			this.table = table;
+			this.file = file;
+			this.reader = openLTFile(file);
+			this.fields = getFields(reader.readLine());
+			this.types = getColumnTypes(table, fields);
+		}
+		
+		@Override
+		public ParsedTable call() throws IOException {
+			try {
+				String line;
+				while ((line = reader.readLine()) != null)
 					if (line.length() > 0) {
-						stmt.clearParameters();
-						values = TMC.colonPattern.split(line);
-						for (int i = 0; i < fields.length; i++) {
-							if ((i >= values.length) || values[i].isEmpty())
-								stmt.setNull(i + 1, types[i]);
-							else
-								switch (types[i]) {
-									case Types.BOOLEAN:
-										stmt.setBoolean(i + 1, Boolean.parseBoolean(values[i]));
-										break;
-									case Types.DECIMAL:
-										/* Special case: this is the only type which requires conversion.
-										 * DECIMAL is currently used only for two columns, Points.XCOORD and Points.YCOORD.
-										 * Both are represented as 1/100000s of a degree in the source files and are
-										 * converted to degrees on import.
-										 * If further DECIMAL columns are introduced in the DB at a later stage, extra
-										 * logic may be needed here.
-										 */
-										stmt.setFloat(i + 1, Integer.parseInt(values[i]) / 100000.0f);
-										break;
-									case Types.INTEGER:
-										stmt.setInt(i + 1, Integer.parseInt(values[i]));
-										break;
-									case Types.VARCHAR:
-										stmt.setString(i + 1, values[i]);
-										break;
-									default:
-										System.err.println(String.format("Unknown type for parameter %d (%s.%s), type %d", i, table, fields[i], types[i]));
-										stmt.setNull(i + 1, types[i]);
-								}
-						}
-						
 						try {
-							stmt.executeUpdate();
-						} catch (SQLIntegrityConstraintViolationException e) {
-							hasConstraintViolations = true;
+							rows.add(parse(TMC.colonPattern.split(line)));
+						} catch (NumberFormatException e) {
+							invalidRows++;
 						}
 					}
-				dbConnection.commit();
-			} catch (IOException e) {
-				e.printStackTrace(System.err);
-				return;
-			} catch (SQLException e) {
-				if (stmt != null)
-					System.err.println(String.format("Error executing: %s", stmt.toString()));
-				e.printStackTrace(System.err);
-				return;
+			} finally {
+				reader.close();
 			}
-			if (hasConstraintViolations)
-				System.err.println(String.format("Some records from %s were skipped due to integrity constraint violations.", file.getAbsolutePath()));
+			return this;
+		}
+		
+		private Object[] parse(String[] values) {
+			Object[] row = new Object[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				if ((i >= values.length) || values[i].isEmpty())
+					continue;
+				switch (types[i]) {
+					case Types.BOOLEAN:
+						/* The exchange format uses 0 and 1 */
+						row[i] = "1".equals(values[i]) || Boolean.parseBoolean(values[i]);
+						break;
+					case Types.DECIMAL:
+						/* Special case: this is the only type which requires conversion.
+						 * DECIMAL is currently used only for two columns, Points.XCOORD and Points.YCOORD.
+						 * Both are represented as 1/100000s of a degree in the source files and are
+						 * converted to degrees on import.
+						 * If further DECIMAL columns are introduced in the DB at a later stage, extra
+						 * logic may be needed here.
+						 */
+						row[i] = Integer.parseInt(values[i]) / 100000.0f;
+						break;
+					case Types.INTEGER:
+						row[i] = Integer.valueOf(values[i]);
+						break;
+					case Types.VARCHAR:
+						row[i] = values[i];
+						break;
+					default:
+						/* unknown columns have already been reported by getColumnTypes() */
+				}
+			}
+			return row;
 		}
 	}
 }
@@ -6,6 +6,9 @@ import java.sql.SQLException;
 /** Describes a TMC AREA location. */
 public class TMCArea extends TMCLocation {
 
+	TMCArea() {
+	}
+	
 	/**
 	 * @brief Creates a new {@code TMCArea} from a given record.
 	 * 
@@ -0,0 +1,175 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @brief A TMC location database, with the caches of the locations read from it.
+ * 
+ * Several databases can be open at once, so that decoder sessions can use different location
+ * tables. The lookup methods of {@link TMC} use the database set for the calling thread with
+ * {@link TMC#setThreadDatabase(TMCDatabase)}, or the default database set with
+ * {@link TMC#setDbUrl(String)}.
+ * 
+ * Locations are cached with composite long keys, see {@link LocationCache}. The size of the
+ * caches is set with {@link TMC#setCacheSize(int)}. Prepared statements are reused: each thread
+ * has its own pool of statements, since a statement cannot be used by two threads at once, nor
+ * re-executed while its results are being read (which happens as lookups are nested).
+ * 
+ * Instead of a JDBC URL, the URL can be {@code ltc:} followed by the path of location tables
+ * compiled with {@link LocationTableCompiler}. The database then has no connection, and locations
+ * are read from the {@link CompiledLocationTables}.
+ */
+public class TMCDatabase {
+	/** The database URL */
+	final String url;
+	
+	/** Prefix of the URLs of compiled location tables */
+	static final String COMPILED_PREFIX = "ltc:";
+	
+	/** The connection to the database, {@code null} for compiled location tables */
+	final Connection connection;
+	
+	/** The compiled location tables, {@code null} for a JDBC database */
+	final CompiledLocationTables compiled;
+	
+	final Map<String, Country> countries = Collections.synchronizedMap(new HashMap<String, Country>());
+	final LocationCache<LocationDataset> locationDatasets = new LocationCache<LocationDataset>(Integer.MAX_VALUE);
+	final LocationCache<Integer> ltnAliases = new LocationCache<Integer>(Integer.MAX_VALUE);
+	/** Names by CID, LID and NID */
+	final LocationCache<TMCName> names;
+	/** Names by CID and NID, in the first language available */
+	final LocationCache<TMCName> defaultNames;
+	final LocationCache<TMCLocation> locations;
+	final LocationCache<TMCArea> areas;
+	final LocationCache<Road> roads;
+	final LocationCache<Segment> segments;
+	final LocationCache<Segment> firstSegments;
+	final LocationCache<Segment> lastSegments;
+	final LocationCache<TMCPoint> points;
+	final LocationCache<TMCPoint> firstPoints;
+	final LocationCache<TMCPoint> lastPoints;
+	
+	/** Unused prepared statements of each thread, by SQL string */
+	private final ThreadLocal<Map<String, List<PreparedStatement>>> statements = new ThreadLocal<Map<String, List<PreparedStatement>>>() {
+		@Override
+		protected Map<String, List<PreparedStatement>> initialValue() {
+			return new HashMap<String, List<PreparedStatement>>();
+		}
+	};
+	
+	/**
+	 * @brief Opens a database.
+	 * 
+	 * @param url The JDBC URL of the database, or {@code ltc:} followed by the path of compiled
+	 * location tables
+	 * @throws SQLException if the database cannot be opened
+	 */
+	TMCDatabase(String url, int cacheSize) throws SQLException {
+		this.url = url;
+		if (isCompiled()) {
+			this.connection = null;
+			try {
+				this.compiled = new CompiledLocationTables(new File(url.substring(COMPILED_PREFIX.length())));
+			} catch (IOException e) {
+				throw new SQLException("Cannot open compiled location tables", e);
+			}
+		} else {
+			this.compiled = null;
+			this.connection = DriverManager.getConnection(url);
+			this.connection.setAutoCommit(false);
+		}
+		names = new LocationCache<TMCName>(cacheSize);
+		defaultNames = new LocationCache<TMCName>(cacheSize);
+		locations = new LocationCache<TMCLocation>(cacheSize);
+		areas = new LocationCache<TMCArea>(cacheSize);
+		roads = new LocationCache<Road>(cacheSize);
+		segments = new LocationCache<Segment>(cacheSize);
+		firstSegments = new LocationCache<Segment>(cacheSize);
+		lastSegments = new LocationCache<Segment>(cacheSize);
+		points = new LocationCache<TMCPoint>(cacheSize);
+		firstPoints = new LocationCache<TMCPoint>(cacheSize);
+		lastPoints = new LocationCache<TMCPoint>(cacheSize);
+	}
+	
+	/**
+	 * @brief Gets a prepared statement for the calling thread.
+	 * 
+	 * The statement must be given back with {@link #release(String, PreparedStatement)} once its
+	 * results have been read. Until then, nested calls with the same SQL return other statements.
+	 * 
+	 * @param sql The SQL string
+	 * @return The statement
+	 * @throws SQLException
+	 */
+	PreparedStatement acquire(String sql) throws SQLException {
+		List<PreparedStatement> free = statements.get().get(sql);
+		if (free != null && !free.isEmpty())
+			return free.remove(free.size() - 1);
+		return connection.prepareStatement(sql);
+	}
+	
+	/**
+	 * @brief Gives back a statement obtained with {@link #acquire(String)}.
+	 * 
+	 * @param sql The SQL string of the statement
+	 * @param stmt The statement, can be {@code null}
+	 */
+	void release(String sql, PreparedStatement stmt) {
+		if (stmt == null)
+			return;
+		Map<String, List<PreparedStatement>> pool = statements.get();
+		List<PreparedStatement> free = pool.get(sql);
+		if (free == null) {
+			free = new ArrayList<PreparedStatement>();
+			pool.put(sql, free);
+		}
+		free.add(stmt);
+	}
+	
+	/**
+	 * @brief Returns the URL of the database.
+	 */
+	public String getUrl() {
+		return url;
+	}
+	
+	/**
+	 * @brief Whether this is an in-memory database.
+	 */
+	boolean isInMemory() {
+		return url.startsWith("jdbc:hsqldb:mem:");
+	}
+	
+	/**
+	 * @brief Whether this database consists of compiled location tables.
+	 */
+	boolean isCompiled() {
+		return url.startsWith(COMPILED_PREFIX);
+	}
+	
+	/**
+	 * @brief Closes the connection to the database.
+	 */
+	void close() {
+		if (compiled != null) {
+			compiled.close();
+			return;
+		}
+		try {
+			if (!connection.isClosed())
+				connection.close();
+		} catch (Exception e) {
+			// NOP
+		}
+	}
+}
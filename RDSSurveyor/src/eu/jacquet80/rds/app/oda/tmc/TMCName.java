@@ -15,6 +15,9 @@ public class TMCName {
 	public String name;
 	public String nameComment;
 	
+	TMCName() {
+	}
+	
 	/**
 	 * @brief Creates a new {@code TMCName} from a given record.
 	 * 
@@ -77,6 +77,9 @@ public class TMCPoint extends TMCLocation {
 	/** The next location in positive direction. */
 	public TMCPoint posOffset = null;
 
+	TMCPoint() {
+	}
+	
 	/**
 	 * @brief Creates a new {@code TMCPoint} from a given record.
 	 * 
@@ -0,0 +1,90 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @brief A spatial index of the points of one or more location tables.
+ *
+ * Only the coordinates of the points are held in memory, together with the key of each point.
+ * Points are read from the location database (and cached as usual) only when they are returned
+ * by a query.
+ *
+ * All methods are thread-safe.
+ */
+public class TMCPointIndex {
+	/** The default size of a grid cell, in degrees (about 5 km) */
+	public static final float DEFAULT_CELL_SIZE = 0.05f;
+
+	private final GridIndex<Long> grid;
+
+	public TMCPointIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize The size of a grid cell, in degrees
+	 */
+	public TMCPointIndex(float cellSize) {
+		grid = new GridIndex<Long>(cellSize);
+	}
+
+	/**
+	 * @brief Adds all the points of a location table to the index.
+	 *
+	 * @param cid The country ID
+	 * @param tabcd The location table number (or an alias)
+	 * @return The number of points added
+	 */
+	public int addLocationTable(int cid, int tabcd) {
+		tabcd = TMC.getLtnForAlias(cid, tabcd);
+		Map<Integer, float[]> coords = TMC.getPointCoordinates(cid, tabcd);
+		for (Map.Entry<Integer, float[]> entry : coords.entrySet()) {
+			float[] c = entry.getValue();
+			grid.add(LocationCache.key(cid, tabcd, entry.getKey()), c[0], c[1]);
+		}
+		return coords.size();
+	}
+
+	/**
+	 * @brief Returns the point nearest to the given coordinates.
+	 *
+	 * @param lon The longitude
+	 * @param lat The latitude
+	 * @param maxKm The maximum distance, in kilometers
+	 * @return The point, or {@code null} if there is no point within {@code maxKm}
+	 */
+	public TMCPoint getNearestPoint(float lon, float lat, float maxKm) {
+		Long key = grid.nearest(lon, lat, maxKm / GridIndex.KM_PER_DEGREE);
+		return (key == null) ? null : getPoint(key);
+	}
+
+	/**
+	 * @brief Returns all points within a bounding box.
+	 */
+	public List<TMCPoint> getPoints(float minLon, float minLat, float maxLon, float maxLat) {
+		List<TMCPoint> ret = new ArrayList<TMCPoint>();
+		for (Long key : grid.query(minLon, minLat, maxLon, maxLat)) {
+			TMCPoint point = getPoint(key);
+			if (point != null)
+				ret.add(point);
+		}
+		return ret;
+	}
+
+	private static TMCPoint getPoint(long key) {
+		return TMC.getPoint((int) (key >>> 48), (int) ((key >>> 32) & 0xFFFF), (int) key);
+	}
+
+	/**
+	 * @brief Returns the number of points in the index.
+	 */
+	public int size() {
+		return grid.size();
+	}
+
+	public void clear() {
+		grid.clear();
+	}
+}
@@ -0,0 +1,446 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.app.Application;
+import eu.jacquet80.rds.input.BinaryGroupLog;
+import eu.jacquet80.rds.input.BinaryGroupLogReader;
+import eu.jacquet80.rds.input.FileFormatGuesser;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.StationChangeDetector;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
+import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.MessageSubscription;
+import eu.jacquet80.rds.log.StationLost;
+
+/**
+ * Decodes many recorded files without any user interface, and summarizes
+ * the stations found in each of them.
+ *
+ * Every file gets its own {@link GroupLevelDecoder} and {@link Log}, which
+ * are discarded once the file has been summarized, so files are decoded
+ * independently on a bounded {@link ForkJoinPool}. Summaries are kept in
+ * the order of the input files, and can be written as CSV or JSON.
+ */
+public class BatchDecoder {
+	/** How often progress is reported, in files */
+	private static final int PROGRESS_INTERVAL = 100;
+	
+	private final int parallelism;
+	private final DecoderConfig config;
+	private PrintStream console = RDSSurveyor.nullConsole;
+	
+	/**
+	 * @param parallelism the maximum number of files decoded at once
+	 */
+	public BatchDecoder(int parallelism) {
+		this(parallelism, new DecoderConfig());
+	}
+	
+	/**
+	 * @param parallelism the maximum number of files decoded at once
+	 * @param config the configuration shared by the decoders of all files
+	 */
+	public BatchDecoder(int parallelism, DecoderConfig config) {
+		this.parallelism = parallelism;
+		
+		// only summaries are produced, the analysis of groups is not needed
+		this.config = new DecoderConfig(config);
+		this.config.setAnalysisEnabled(false);
+	}
+	
+	public void setConsole(PrintStream console) {
+		this.console = console == null ? RDSSurveyor.nullConsole : console;
+	}
+	
+	/**
+	 * Summary of a station found in a file.
+	 */
+	public static class StationSummary {
+		public final int pi;
+		public final String ps;
+		public final int ecc;
+		public final String country;
+		/** ODAs, as AID and group type, e.g. {@code CD46/8A} */
+		public final List<String> odas;
+		public final int[][] groupStats;
+		public final int totalBlocks;
+		public final int totalBlocksOk;
+		
+		private StationSummary(TunedStation station) {
+			this.pi = station.getPI();
+			this.ps = station.getStationName();
+			this.ecc = station.getECC();
+			this.country = ecc == 0 ? null : RDS.getISOCountryCode((pi>>12) & 0xF, ecc);
+			
+			List<String> odas = new ArrayList<String>();
+			for(int aid : station.getODAs()) {
+				int group = station.getODAgroup(aid);
+				Application app = station.getODAapplication(aid);
+				odas.add(String.format("%04X/%d%c%s", aid, group>>1, (char)('A' + (group & 1)),
+						app == null ? "" : " " + app.getName()));
+			}
+			Collections.sort(odas);
+			this.odas = Collections.unmodifiableList(odas);
+			
+			int[][] stats = station.numericGroupStats();
+			this.groupStats = new int[stats.length][];
+			for(int i=0; i<stats.length; i++) groupStats[i] = stats[i].clone();
+			this.totalBlocks = station.getTotalBlocks();
+			this.totalBlocksOk = station.getTotalBlocksOk();
+		}
+		
+		/**
+		 * Returns the block error rate over the whole file.
+		 */
+		public double getBLER() {
+			return totalBlocks == 0 ? 0 : 1. - (double) totalBlocksOk / totalBlocks;
+		}
+		
+		/**
+		 * Returns the group statistics in compact form, e.g. {@code 0A:120 2A:64}.
+		 */
+		public String groupStatsString() {
+			StringBuilder b = new StringBuilder();
+			for(int i=0; i<groupStats.length; i++) {
+				for(int j=0; j<groupStats[i].length; j++) {
+					if(groupStats[i][j] == 0) continue;
+					if(b.length() > 0) b.append(' ');
+					if(i < 16) b.append(i).append((char)('A' + j));
+					else b.append('U');
+					b.append(':').append(groupStats[i][j]);
+				}
+			}
+			return b.toString();
+		}
+	}
+	
+	/**
+	 * Summary of a file.
+	 */
+	public static class FileSummary {
+		public final File file;
+		private final List<StationSummary> stations = new ArrayList<StationSummary>();
+		private int groupCount = 0;
+		private String error = null;
+		
+		private FileSummary(File file) {
+			this.file = file;
+		}
+		
+		public List<StationSummary> getStations() {
+			return Collections.unmodifiableList(stations);
+		}
+		
+		public int getGroupCount() {
+			return groupCount;
+		}
+		
+		/**
+		 * Returns the reason why the file could not be decoded entirely,
+		 * or {@code null} if it was.
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+	
+	/**
+	 * Lists the files designated by a directory, which is searched
+	 * recursively, or by a glob pattern such as {@code logs/**.rds}.
+	 * Files are sorted by path.
+	 */
+	public static List<File> listFiles(String spec) throws IOException {
+		final List<File> files = new ArrayList<File>();
+		Path start;
+		final PathMatcher matcher;
+		
+		int wildcard = indexOfWildcard(spec);
+		if(wildcard < 0) {
+			start = Paths.get(spec);
+			matcher = null;
+			if(!Files.isDirectory(start)) {
+				files.add(start.toFile());
+				return files;
+			}
+		} else {
+			// search from the deepest directory without wildcards
+			int sep = Math.max(spec.lastIndexOf('/', wildcard), spec.lastIndexOf(File.separatorChar, wildcard));
+			start = Paths.get(sep < 0 ? "." : spec.substring(0, sep + 1));
+			String pattern = spec.startsWith("./") ? spec.substring(2) : spec;
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+		}
+		
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if(attrs.isRegularFile() &&
+						(matcher == null || matcher.matches(file.normalize()))) {
+					files.add(file.toFile());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(files);
+		return files;
+	}
+	
+	private static int indexOfWildcard(String spec) {
+		for(int i=0; i<spec.length(); i++) {
+			if("*?[{".indexOf(spec.charAt(i)) >= 0) return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Decodes a list of files.
+	 * 
+	 * @return the summaries, in the same order as the files
+	 */
+	public List<FileSummary> decode(List<File> files) {
+		final FileSummary[] results = new FileSummary[files.size()];
+		final File[] input = files.toArray(new File[files.size()]);
+		final AtomicInteger done = new AtomicInteger();
+		
+		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			pool.invoke(new DecodeTask(input, results, 0, input.length, done));
+		} finally {
+			pool.shutdown();
+		}
+		console.println("Decoded " + input.length + " files.");
+		return Arrays.asList(results);
+	}
+	
+	private class DecodeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final File[] files;
+		private final FileSummary[] results;
+		private final int from, to;
+		private final AtomicInteger done;
+		
+		public DecodeTask(File[] files, FileSummary[] results, int from, int to, AtomicInteger done) {
+			this.files = files;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.done = done;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= 1) {
+				if(to > from) {
+					results[from] = decodeFile(files[from], config);
+					int n = done.incrementAndGet();
+					if(n % PROGRESS_INTERVAL == 0) console.println("  " + n + "/" + files.length + " files");
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new DecodeTask(files, results, from, mid, done),
+					new DecodeTask(files, results, mid, to, done));
+		}
+	}
+	
+	/**
+	 * Decodes a single file, in the calling thread.
+	 */
+	public static FileSummary decodeFile(File file, DecoderConfig config) {
+		final FileSummary summary = new FileSummary(file);
+		final List<TunedStation> stations = new ArrayList<TunedStation>();
+		
+		// only the listeners of the log are used, no need to keep old groups
+		Log log = new Log(0, null);
+		log.addNewMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(StationLost stationLost) {
+				stations.add(stationLost.getStation());
+			}
+		}, MessageSubscription.Policy.SYNCHRONOUS);
+		GroupLevelDecoder decoder = new GroupLevelDecoder(log, config);
+		
+		InputStream in = null;
+		BinaryGroupLogReader binaryLog = null;
+		try {
+			GroupReader source;
+			if(BinaryGroupLog.isBinaryGroupLog(file)) {
+				source = binaryLog = new BinaryGroupLogReader(file);
+			} else {
+				in = new FileInputStream(file);
+				source = FileFormatGuesser.createReader(in, RDSSurveyor.nullConsole);
+			}
+			GroupReader reader = new StationChangeDetector(source);
+			try {
+				while(true) {
+					GroupReaderEvent evt = reader.getGroup();
+					decoder.processOneGroup(evt);
+					if(evt instanceof GroupEvent) summary.groupCount++;
+				}
+			} catch(GroupReader.EndOfStream eos) {
+				// normal end of file
+			}
+		} catch(IOException e) {
+			summary.error = e.toString();
+		} catch(RuntimeException e) {
+			// a corrupt file must not abort the whole batch
+			summary.error = e.toString();
+		} finally {
+			try {
+				if(in != null) in.close();
+				if(binaryLog != null) binaryLog.close();
+			} catch (IOException e) {}
+		}
+		
+		TunedStation last = decoder.getTunedStation();
+		if(last != null && !stations.contains(last)) stations.add(last);
+		
+		// a station whose PI was never confirmed only received a few
+		// groups before the actual station was identified
+		for(TunedStation st : stations) {
+			if(st.getPI() != 0 && st.getTotalBlocks() > 0) summary.stations.add(new StationSummary(st));
+		}
+		return summary;
+	}
+	
+	/**
+	 * Writes summaries as CSV, with one line per station, or a line with
+	 * empty station fields for files without any station.
+	 */
+	public static void writeCsv(List<FileSummary> summaries, PrintWriter w) {
+		w.println("file,pi,ps,ecc,country,odas,groups,group_stats,blocks,blocks_ok,bler,error");
+		for(FileSummary f : summaries) {
+			String file = csv(f.file.getPath());
+			String error = csv(f.error == null ? "" : f.error);
+			if(f.stations.isEmpty()) {
+				w.printf("%s,,,,,,%d,,,,,%s%n", file, f.groupCount, error);
+			}
+			for(StationSummary s : f.stations) {
+				StringBuilder odas = new StringBuilder();
+				for(String oda : s.odas) {
+					if(odas.length() > 0) odas.append(';');
+					odas.append(oda);
+				}
+				w.printf("%s,%04X,%s,%s,%s,%s,%d,%s,%d,%d,%.4f,%s%n",
+						file, s.pi, csv(s.ps), s.ecc == 0 ? "" : String.format("%02X", s.ecc),
+						s.country == null ? "" : csv(s.country), csv(odas.toString()), f.groupCount,
+						csv(s.groupStatsString()), s.totalBlocks, s.totalBlocksOk, s.getBLER(), error);
+			}
+		}
+		w.flush();
+	}
+	
+	/**
+	 * Writes summaries as a JSON array, with one object per file.
+	 */
+	public static void writeJson(List<FileSummary> summaries, PrintWriter w) {
+		w.println("[");
+		for(int i=0; i<summaries.size(); i++) {
+			FileSummary f = summaries.get(i);
+			w.print("  {\"file\": " + json(f.file.getPath()) + ", \"groups\": " + f.groupCount);
+			if(f.error != null) w.print(", \"error\": " + json(f.error));
+			w.print(", \"stations\": [");
+			for(int j=0; j<f.stations.size(); j++) {
+				StationSummary s = f.stations.get(j);
+				w.print(j == 0 ? "\n" : ",\n");
+				w.printf("    {\"pi\": \"%04X\", \"ps\": %s", s.pi, json(s.ps));
+				if(s.ecc != 0) w.printf(", \"ecc\": \"%02X\"", s.ecc);
+				if(s.country != null) w.print(", \"country\": " + json(s.country));
+				w.print(", \"odas\": [");
+				for(int k=0; k<s.odas.size(); k++) {
+					if(k > 0) w.print(", ");
+					w.print(json(s.odas.get(k)));
+				}
+				w.print("], \"groupStats\": {");
+				boolean first = true;
+				for(int g=0; g<s.groupStats.length; g++) {
+					for(int v=0; v<s.groupStats[g].length; v++) {
+						if(s.groupStats[g][v] == 0) continue;
+						if(!first) w.print(", ");
+						first = false;
+						String name = g < 16 ? "" + g + (char)('A' + v) : "U";
+						w.print("\"" + name + "\": " + s.groupStats[g][v]);
+					}
+				}
+				w.printf("}, \"blocks\": %d, \"blocksOk\": %d, \"bler\": %.4f}",
+						s.totalBlocks, s.totalBlocksOk, s.getBLER());
+			}
+			w.print(f.stations.isEmpty() ? "]}" : "\n  ]}");
+			w.println(i < summaries.size() - 1 ? "," : "");
+		}
+		w.println("]");
+		w.flush();
+	}
+	
+	private static String csv(String s) {
+		if(s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+	
+	private static String json(String s) {
+		StringBuilder b = new StringBuilder(s.length() + 2).append('"');
+		for(int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+			case '"': b.append("\\\""); break;
+			case '\\': b.append("\\\\"); break;
+			case '\n': b.append("\\n"); break;
+			case '\r': b.append("\\r"); break;
+			case '\t': b.append("\\t"); break;
+			default:
+				if(c < 0x20) b.append(String.format("\\u%04x", (int) c));
+				else b.append(c);
+			}
+		}
+		return b.append('"').toString();
+	}
+}
@@ -28,9 +28,10 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 
+import eu.jacquet80.rds.RDSSurveyor;
 import eu.jacquet80.rds.input.BitReader;
 import eu.jacquet80.rds.input.GroupReader;
 import eu.jacquet80.rds.input.group.GroupEvent;
@@ -42,13 +43,44 @@ public class BitStreamSynchronizer extends GroupReader {
 	private final static int SYNC_THRESHOLD = 2;  // need 2 blocks after initial block to confirm synchronization
 	private final static int SYNC_CONFIRM_DURATION = 5;  // 3 blocks in 5 groups
 	private final static int SYNC_LOSS_DURATION = 10;    // lose synchronization if 10 groups without a good syndrome
+	private final static int BIT_BUFFER_LEN = 256;       // number of bits read at once from the bit reader
+	private final static int DEFAULT_TELEMETRY_WINDOW = 10;   // groups
+	
+	/**
+	 * Synchronization hypotheses: offset of block boundaries within 26 bits,
+	 * position of block A within 4 blocks (pseudo-block), and polarity.
+	 */
+	private final static int NB_HYPOTHESES = 26 * 4 * 2;
+	
+	/** Hits older than this, in bits, do not count towards synchronization */
+	private final static int SYNC_WINDOW = SYNC_CONFIRM_DURATION * 104;
+	
+	/** Length of the history of blocks, a power of two of at least 3 blocks */
+	private final static int HISTORY_LEN = 128;
+	
+	/**
+	 * For each syndrome, bit {@code i} is set if it is the syndrome of the
+	 * offset word of block {@code i}, C' counting as C. As the offset words
+	 * have distinct syndromes, this matches all of them in one lookup.
+	 */
+	private final static byte[] OFFSET_WORD_MATCHES = new byte[1024];
+	
+	static {
+		for(int i=0; i<4; i++) {
+			for(int j=0; j<2; j++) OFFSET_WORD_MATCHES[RDS.syndromes[i][j]] |= 1 << i;
+		}
+	}
 
-	private final PrintStream console;
 	//private final Log log;
 	private final BitReader reader;
+	private final long[] bitBuffer = new long[BIT_BUFFER_LEN / 64];
+	private int bitBufferLen = 0;
+	private int bitBufferPos = 0;
+	private boolean eof = false;  // the reader reached its end, stay there
 	private BitInversion inversion = BitInversion.AUTO;
 	
 	private int block = 0;        // block contents
+	private int syndrome = 0;     // syndrome of the block, updated incrementally
 	private int blockCount = 0;   // block counter within group
 	private int bitCount = 0;     // bit count within block
 	private int[] group = {0, 0, 0, 0};   // group
@@ -59,121 +91,195 @@ public class BitStreamSynchronizer extends GroupReader {
 	private int groupCount = 0;
 	private int bitTime = 0;
 	private boolean negativePolarity = false;
-	private @SuppressWarnings("unchecked") LinkedList<Integer> nbSyncAtOffset[][][] = new LinkedList[26][4][2];
+	
+	/**
+	 * Times of the last {@link #SYNC_THRESHOLD} syndrome hits of each
+	 * hypothesis, in a ring per hypothesis. The ring of hypothesis
+	 * {@code h} starts at {@code h * SYNC_THRESHOLD}, and its next slot to
+	 * write, which holds the oldest hit, is {@code syncHitPos[h]}.
+	 */
+	private final int[] syncHits = new int[NB_HYPOTHESES * SYNC_THRESHOLD];
+	private final int[] syncHitPos = new int[NB_HYPOTHESES];
+	
+	/** The last bits received, as the 26-bit block ending at each bit */
+	private final int[] blockHistory = new int[HISTORY_LEN];
+	
+	private BurstErrorCorrector corrector = new BurstErrorCorrector(ErrorCorrection.LIGHT.maxBurstLength);
 	
 	private List<StatusChangeListener> statusChangeListeners = new ArrayList<StatusChangeListener>();
+	private List<TelemetryListener> telemetryListeners = new ArrayList<TelemetryListener>();
+	private List<BlockListener> blockListeners = new ArrayList<BlockListener>();
 	
+	// telemetry counters, per block for the current window
+	private int telemetryWindow = DEFAULT_TELEMETRY_WINDOW;
+	private int windowGroups = 0;
+	private final int[] windowOk = new int[4];
+	private final int[] windowCorrected = new int[4];
+	private final int[] windowInError = new int[4];
+	private int acquisitionStart = 0;
+	private int timeToSync = -1;
+	private int syncOffset = -1;
+	private int slips = 0;
 	
-	public BitStreamSynchronizer(PrintStream console, BitReader reader) {
-		this.console = console;
+	/**
+	 * Creates a synchronizer which does not print anything. Its activity can
+	 * be followed with {@link #addTelemetryListener(TelemetryListener)} and
+	 * {@link #addBlockListener(BlockListener)}.
+	 */
+	public BitStreamSynchronizer(BitReader reader) {
 		//this.log = log;
 		this.reader = reader;
 		setParent(reader);
 		
-		eraseSyncArray(nbSyncAtOffset);
+		eraseSyncHits();
+	}
+	
+	/**
+	 * Creates a synchronizer which prints its activity to a console, with a
+	 * {@link SyncConsolePrinter}.
+	 * 
+	 * @param console the console, or {@code null} (or
+	 *            {@link RDSSurveyor#nullConsole}) to print nothing
+	 */
+	public BitStreamSynchronizer(PrintStream console, BitReader reader) {
+		this(reader);
+		if(console != null && console != RDSSurveyor.nullConsole) {
+			SyncConsolePrinter printer = new SyncConsolePrinter(console);
+			addTelemetryListener(printer);
+			addBlockListener(printer);
+		}
 	}
 	
-	private final static void eraseSyncArray(LinkedList<Integer> nbSyncAtOffset[][][]) {
-		for(int i=0; i<nbSyncAtOffset.length; i++)
-			for(int j=0; j<nbSyncAtOffset[i].length; j++)
-				for(int k=0; k<nbSyncAtOffset[i][j].length; k++)
-					nbSyncAtOffset[i][j][k] = new LinkedList<Integer>();
+	private void eraseSyncHits() {
+		Arrays.fill(syncHits, Integer.MIN_VALUE);
 	}
 	
 	@Override
 	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+		if(eof) throw new EndOfStream();
 		while(true) {
-			// read bit and add it to stream
-			boolean bit = false;
-			try {
-				bit = reader.getBit();
-			} catch(EOFException e) {
-				throw new EndOfStream();
+			// read bits by whole words, then add them one by one to stream
+			if(bitBufferPos == bitBufferLen) {
+				bitBufferPos = 0;
+				try {
+					bitBufferLen = reader.readBits(bitBuffer, BIT_BUFFER_LEN);
+				} catch(EOFException e) {
+					bitBufferLen = -1;
+				}
+				if(bitBufferLen < 0) {
+					bitBufferLen = 0;
+					eof = true;
+					throw new EndOfStream();
+				}
 			}
+			boolean bit = (bitBuffer[bitBufferPos >> 6] << (bitBufferPos & 63)) < 0;
+			bitBufferPos++;
+			syndrome = RDS.shiftSyndrome(syndrome, block, bit);
 			block = (block << 1) & 0x3FFFFFF;
 			if(bit) block |= 1;
 			bitCount++;
 			bitTime++;
 						
+			blockHistory[bitTime & (HISTORY_LEN - 1)] = block;
+			
 			if(! synced) {
-				int[] synd = { RDS.calcSyndrome(block), RDS.calcSyndrome(~block) };
+				// match all offset words, in both polarities, at once
+				int matches = OFFSET_WORD_MATCHES[syndrome] | (OFFSET_WORD_MATCHES[syndrome ^ RDS.SYNDROME_ALL_ONES] << 4);
+				if(inversion == BitInversion.INVERT) matches &= 0xF0;
+				else if(inversion == BitInversion.NOINVERT) matches &= 0x0F;
 				
-				console.print(".");
-
-				for(int i=0; i<4; i++) {
-					for(int j=0; j<2; j++) {
-						if(j==0 && inversion == BitInversion.INVERT ||
-								j==1 && inversion == BitInversion.NOINVERT) continue;
-						if(synd[j] == RDS.syndromes[i][0] || synd[j] == RDS.syndromes[i][1]) {
-							int offset = bitTime % 26;
-							int pseudoBlock = (bitTime / 26 + 4 - i) % 4;
-
-							console.print("[" + (j==0 ? "+" : "-") + ((char)('A'+i)) + ":" + offset + "/" + pseudoBlock + "]");
-
-							// add current time to the list of syndrome hits
-							nbSyncAtOffset[offset][pseudoBlock][j].addLast(bitTime);
-
-							// weed out out-of-time hits
-							while(nbSyncAtOffset[offset][pseudoBlock][j].getFirst() < bitTime - SYNC_CONFIRM_DURATION * 104)
-								nbSyncAtOffset[offset][pseudoBlock][j].removeFirst();
-
-							// are we above threshold
-							if(nbSyncAtOffset[offset][pseudoBlock][j].size() > SYNC_THRESHOLD) {
-								synced = true;
-								eraseSyncArray(nbSyncAtOffset);
-
-								group[i] = (block >> 10) & 0xFFFF;
-								blockCount = (i+1) % 4;
-								bitCount = 0;
-								nbOk = 1;
-								for(int k=0; k<4; k++) blocksOk[k] = (k == i);
-								negativePolarity = (j==1);
-								
-								if(negativePolarity) group[i] = ~ group[i];
-								
-								console.println("\nGot synchronization on block " + (char)('A' + i) + "! (" + (j==0 ? "positive" : "negative") + " polarity)");
-								console.print("      ");
-								for(int k=0; k<i; k++) console.print(".");
-								console.print("S");
-								if(blockCount == 0) console.println();
-								reportStatus();
-							}
-							break;
+				while(matches != 0 && ! synced) {
+					int m = Integer.numberOfTrailingZeros(matches);
+					matches &= matches - 1;
+					int i = m & 3;
+					int j = m >> 2;
+					
+					int offset = bitTime % 26;
+					int pseudoBlock = (bitTime / 26 + 4 - i) % 4;
+
+					// the oldest of the last hits of this hypothesis is replaced
+					// with the current one: if it is recent enough, there are
+					// enough hits to confirm synchronization
+					int h = (offset * 4 + pseudoBlock) * 2 + j;
+					int slot = h * SYNC_THRESHOLD + syncHitPos[h];
+					boolean confirmed = syncHits[slot] >= bitTime - SYNC_WINDOW;
+					syncHits[slot] = bitTime;
+					if(++syncHitPos[h] == SYNC_THRESHOLD) syncHitPos[h] = 0;
 
+					if(confirmed) {
+						synced = true;
+						eraseSyncHits();
+
+						negativePolarity = (j==1);
+						blockCount = (i+1) % 4;
+						bitCount = 0;
+						nbOk = 0;
+						nbUnsync = 0;
+						
+						timeToSync = bitTime - acquisitionStart;
+						if(syncOffset >= 0 && offset != syncOffset) slips++;
+						syncOffset = offset;
+						reportTelemetry(SyncTelemetry.Kind.SYNC_GAINED, i);
+						
+						// the previous blocks of the group are in the history:
+						// keep those which are correct
+						for(int k=0; k<=i; k++) {
+							int b = blockHistory[(bitTime - 26 * (i-k)) & (HISTORY_LEN - 1)];
+							if(negativePolarity) b = ~b & 0x3FFFFFF;
+							int synd = RDS.calcSyndrome(b);
+							blocksOk[k] = (synd == RDS.syndromes[k][0] || synd == RDS.syndromes[k][1]);
+							if(blocksOk[k]) {
+								group[k] = (b >> 10) & 0xFFFF;
+								nbOk++;
+								countBlock(k, synd == RDS.syndromes[k][0] ? BlockStatus.OK : BlockStatus.OK_C_PRIME);
+							} else {
+								group[k] = -1;
+								countBlock(k, BlockStatus.ERROR);
+							}
+						}
+						for(int k=i+1; k<4; k++) blocksOk[k] = false;
+						reportStatus();
+						
+						// synchronized on block D: the group is complete
+						if(blockCount == 0) {
+							endGroup();
+							nbOk = 0;
+							return newGroupEvent();
 						}
 					}
 				}
 			} else {   // if synced
 				if(bitCount == 26) {
-					if(negativePolarity) block = ~block;    // invert block if polarity is negative
-					group[blockCount] = (block>>10) & 0xFFFF;
-					int synd = RDS.calcSyndrome(block);
+					// invert block if polarity is negative
+					int theBlock = negativePolarity ? ~block & 0x3FFFFFF : block;
+					int synd = negativePolarity ? syndrome ^ RDS.SYNDROME_ALL_ONES : syndrome;
+					group[blockCount] = (theBlock>>10) & 0xFFFF;
 
 					if(synd == RDS.syndromes[blockCount][0] || synd == RDS.syndromes[blockCount][1]) {
 						nbOk++;
 						blocksOk[blockCount] = true;
-						if(synd == RDS.syndromes[blockCount][0]) console.print("G");   // type A offset word
-						else console.print("g");   // type B offset word (for group C)
+						if(synd == RDS.syndromes[blockCount][0]) countBlock(blockCount, BlockStatus.OK);   // type A offset word
+						else countBlock(blockCount, BlockStatus.OK_C_PRIME);   // type B offset word (for group C)
 					} else {
-						blocksOk[blockCount] = false;
-						group[blockCount] = -1;
-						console.print(".");
-						/*
-						This is a placeholder for error correction code
-						
-						int syndrome = (synd ^ syndromes[blockCount][0])>>6;///
+						// try to correct a burst error, preferring the shortest burst
+						// when there are two candidate offset words (C and C')
+						int lenA = corrector.burstLength(synd, RDS.syndromes[blockCount][0]);
+						int lenB = corrector.burstLength(synd, RDS.syndromes[blockCount][1]);
+						int expected = (lenA > 0 && (lenB == 0 || lenA <= lenB)) ?
+								RDS.syndromes[blockCount][0] : RDS.syndromes[blockCount][1];
+						int error = corrector.errorPattern(synd, expected);
 						
-						int nbErrors = 1;
-						if(nbErrors <= 0) {
-							block = RDS.correct(block, syndrome); ///
-							group[blockCount] = (block>>10) & 0xFFFF; ///
+						// a corrected block does not count towards keeping
+						// synchronization, as noise may look correctable
+						if(error != 0) {
+							group[blockCount] = ((theBlock ^ error)>>10) & 0xFFFF;
 							blocksOk[blockCount] = true;
-							output.print("c");
+							countBlock(blockCount, BlockStatus.CORRECTED);
 						} else {
 							blocksOk[blockCount] = false;
-							output.print(".");
+							group[blockCount] = -1;
+							countBlock(blockCount, BlockStatus.ERROR);
 						}
-						*/
 					}
 					
 					//console.printf("-%07X>%04X+%03X ", block, group[blockCount], synd);
@@ -183,8 +289,7 @@ public class BitStreamSynchronizer extends GroupReader {
 					
 					// end of group?
 					if(blockCount > 3) {
-						console.print(" ");
-						groupCount++;
+						endGroup();
 						
 						blockCount = 0;
 						
@@ -195,8 +300,9 @@ public class BitStreamSynchronizer extends GroupReader {
 							synced = false;
 							//groupLevelDecoder.loseSync();
 							//TODO: need a means to inform a group decoder of a sync loss?
-							console.println(" Lost synchronization.");
+							acquisitionStart = bitTime;
 							reportStatus();
+							reportTelemetry(SyncTelemetry.Kind.SYNC_LOST, -1);
 						}
 						
 						
@@ -209,9 +315,7 @@ public class BitStreamSynchronizer extends GroupReader {
 						nbOk = 0;
 						
 						// return group data
-						int[] theGroup = new int[4];
-						System.arraycopy(group, 0, theGroup, 0, 4);
-						return new GroupEvent(new SequentialTime(bitTime), theGroup, false);
+						return newGroupEvent();
 						//groupLevelDecoder.processGroup(nbOk, blocksOk, group, bitTime);
 					}
 				}
@@ -219,15 +323,75 @@ public class BitStreamSynchronizer extends GroupReader {
 		}
 	}
 	
+	/**
+	 * Counts a block for telemetry, and reports it to block listeners.
+	 */
+	private void countBlock(int blockIndex, BlockStatus status) {
+		switch(status) {
+		case CORRECTED: windowCorrected[blockIndex]++; break;
+		case ERROR: windowInError[blockIndex]++; break;
+		default: windowOk[blockIndex]++;
+		}
+		if(! blockListeners.isEmpty()) {
+			for(BlockListener l : blockListeners) l.block(blockIndex, status);
+		}
+	}
+	
+	/**
+	 * Counts a group for telemetry, and reports the window if it is complete.
+	 */
+	private void endGroup() {
+		groupCount++;
+		if(++windowGroups >= telemetryWindow) {
+			reportTelemetry(SyncTelemetry.Kind.WINDOW, -1);
+			windowGroups = 0;
+			Arrays.fill(windowOk, 0);
+			Arrays.fill(windowCorrected, 0);
+			Arrays.fill(windowInError, 0);
+		}
+	}
+	
+	private void reportTelemetry(SyncTelemetry.Kind kind, int syncBlock) {
+		if(telemetryListeners.isEmpty()) return;
+		SyncTelemetry t = new SyncTelemetry(kind, synced ? Status.SYNCED : Status.NOT_SYNCED, negativePolarity, 
+				bitTime, syncBlock, timeToSync, slips, groupCount, windowGroups, windowOk, windowCorrected, windowInError);
+		for(TelemetryListener l : telemetryListeners) l.report(t);
+	}
+	
+	private GroupEvent newGroupEvent() {
+		int[] theGroup = new int[4];
+		System.arraycopy(group, 0, theGroup, 0, 4);
+		return new GroupEvent(new SequentialTime(bitTime), theGroup, false);
+	}
+	
 	public void forceInversion(BitInversion inversion) {
 		this.inversion = inversion;
 	}
 	
+	public void setErrorCorrection(ErrorCorrection correction) {
+		this.corrector = new BurstErrorCorrector(correction.maxBurstLength);
+	}
+	
 	
 	public static enum BitInversion {
 		AUTO, INVERT, NOINVERT;
 	}
 	
+	/**
+	 * How aggressively burst errors are corrected. Correcting longer
+	 * bursts recovers more blocks, at the price of a higher probability
+	 * of miscorrections.
+	 */
+	public static enum ErrorCorrection {
+		NONE(0), LIGHT(2), FULL(BurstErrorCorrector.MAX_BURST_LENGTH);
+		
+		private final int maxBurstLength;
+		
+		private ErrorCorrection(int maxBurstLength) {
+			this.maxBurstLength = maxBurstLength;
+		}
+	}
+	
 	public static enum Status {
 		NOT_SYNCED, SYNCED;
 	}
@@ -236,6 +400,62 @@ public class BitStreamSynchronizer extends GroupReader {
 		public void report(Status status);
 	}
 	
+	/**
+	 * Outcome of the reception of a block.
+	 */
+	public static enum BlockStatus {
+		/** Correct, with the offset word of its position */
+		OK,
+		/** Correct, with offset word C' (block C of version B groups) */
+		OK_C_PRIME,
+		/** Burst error corrected */
+		CORRECTED,
+		/** Uncorrectable error */
+		ERROR;
+	}
+	
+	/**
+	 * Receives telemetry snapshots when synchronization is gained or lost,
+	 * and at the end of each window of groups.
+	 */
+	public static interface TelemetryListener {
+		public void report(SyncTelemetry telemetry);
+	}
+	
+	/**
+	 * Receives the outcome of each block, while synchronized.
+	 */
+	public static interface BlockListener {
+		/**
+		 * @param blockIndex 0 to 3 for blocks A to D
+		 * @param status the outcome of the block
+		 */
+		public void block(int blockIndex, BlockStatus status);
+	}
+	
+	/**
+	 * Sets the length of telemetry windows, in groups. It is 10 by default.
+	 */
+	public void setTelemetryWindow(int groups) {
+		this.telemetryWindow = Math.max(groups, 1);
+	}
+	
+	public void addTelemetryListener(TelemetryListener l) {
+		telemetryListeners.add(l);
+	}
+	
+	public void removeTelemetryListener(TelemetryListener l) {
+		telemetryListeners.remove(l);
+	}
+	
+	public void addBlockListener(BlockListener l) {
+		blockListeners.add(l);
+	}
+	
+	public void removeBlockListener(BlockListener l) {
+		blockListeners.remove(l);
+	}
+	
 	public void addStatusChangeListener(StatusChangeListener l) {
 		statusChangeListeners.add(l);
 		reportStatus(l);
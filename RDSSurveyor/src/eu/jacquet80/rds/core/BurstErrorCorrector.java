@@ -0,0 +1,111 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+/**
+ * Corrects burst errors in RDS blocks. The RDS (26, 16) code is able to
+ * correct any burst of up to 5 bits (IEC 62106, annex B). The error
+ * patterns are looked up from the syndrome in a precomputed table.
+ *
+ * Correcting long bursts increases the probability of miscorrecting a
+ * block that actually contains more errors, so the maximum burst length
+ * that is corrected is configurable.
+ */
+public class BurstErrorCorrector {
+	public final static int MAX_BURST_LENGTH = 5;
+
+	/**
+	 * Error pattern for each error syndrome, or 0 if the syndrome does not
+	 * correspond to a correctable burst.
+	 */
+	private final static int[] errorPatterns = new int[1024];
+
+	/**
+	 * Length of the burst for each error syndrome.
+	 */
+	private final static byte[] burstLengths = new byte[1024];
+
+	static {
+		// shortest bursts first, so that they take precedence
+		for(int len=1; len<=MAX_BURST_LENGTH; len++) {
+			int inner = len > 2 ? 1 << (len-2) : 1;
+			for(int mid=0; mid<inner; mid++) {
+				// a burst of length len begins and ends with an erroneous bit
+				int burst = len == 1 ? 1 : (1 | (mid << 1) | (1 << (len-1)));
+				for(int pos=0; pos <= 26 - len; pos++) {
+					int pattern = burst << pos;
+					int synd = RDS.calcSyndrome(pattern);
+					if(errorPatterns[synd] == 0) {
+						errorPatterns[synd] = pattern;
+						burstLengths[synd] = (byte) len;
+					}
+				}
+			}
+		}
+	}
+
+	private final int maxBurstLength;
+
+	/**
+	 * @param maxBurstLength the longest burst that is corrected, from 0
+	 * (no correction) to {@link #MAX_BURST_LENGTH}
+	 */
+	public BurstErrorCorrector(int maxBurstLength) {
+		if(maxBurstLength < 0 || maxBurstLength > MAX_BURST_LENGTH)
+			throw new IllegalArgumentException("Burst length must be between 0 and " + MAX_BURST_LENGTH);
+		this.maxBurstLength = maxBurstLength;
+	}
+
+	/**
+	 * Returns the error pattern of the shortest correctable burst that
+	 * turns a block with the given syndrome into a block with the expected
+	 * syndrome.
+	 *
+	 * @param synd the syndrome of the received block
+	 * @param expectedSynd the syndrome of the expected offset word
+	 * @return the error pattern to XOR the block with, or 0 if the block
+	 * cannot be corrected
+	 */
+	public int errorPattern(int synd, int expectedSynd) {
+		int errSynd = synd ^ expectedSynd;
+		if(burstLengths[errSynd] > maxBurstLength) return 0;
+		return errorPatterns[errSynd];
+	}
+
+	/**
+	 * Returns the length of the burst that would be corrected, 0 if the
+	 * block is correct or cannot be corrected.
+	 */
+	public int burstLength(int synd, int expectedSynd) {
+		int errSynd = synd ^ expectedSynd;
+		int len = burstLengths[errSynd];
+		return len > maxBurstLength ? 0 : len;
+	}
+
+	public int getMaxBurstLength() {
+		return maxBurstLength;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.app.oda.tmc.TMCDatabase;
+import eu.jacquet80.rds.log.Log;
+
+/**
+ * Configuration of a decoder session. Every {@link DecoderShell},
+ * {@link GroupLevelDecoder} and the stations they create use their own
+ * configuration, so that decoders with different settings can run in the
+ * same JVM.
+ *
+ * A configuration must be fully set up before it is handed to a decoder:
+ * it is read, but not synchronized, by the decoding threads.
+ */
+public class DecoderConfig {
+	/**
+	 * Default flavour of stations: {@code true} for RBDS, {@code false} for
+	 * RDS. Initially that specified in the preferences.
+	 */
+	private boolean rbds = RDSSurveyor.preferences.getBoolean(RDSSurveyor.PREF_RBDS, false);
+	
+	/** ODAs to use regardless of 3A groups: group (type * 2 + version) to AID */
+	private final Map<Integer, Integer> forcedODAs = new HashMap<Integer, Integer>();
+	
+	/** URL of the TMC location database, {@code null} for the default database */
+	private String tmcDbUrl = null;
+	
+	/** Approximate memory budget of the log, in bytes */
+	private long logMemoryBudget = Runtime.getRuntime().maxMemory() / 4;
+	
+	/** File where the log spills old groups, {@code null} to discard them */
+	private File logSpillFile = null;
+	
+	/** Whether a human-readable analysis of each group is produced */
+	private boolean analysis = true;
+	
+	public DecoderConfig() {
+	}
+	
+	/**
+	 * Creates a copy of a configuration.
+	 */
+	public DecoderConfig(DecoderConfig other) {
+		this.rbds = other.rbds;
+		this.forcedODAs.putAll(other.forcedODAs);
+		this.tmcDbUrl = other.tmcDbUrl;
+		this.analysis = other.analysis;
+		this.logMemoryBudget = other.logMemoryBudget;
+		this.logSpillFile = other.logSpillFile;
+	}
+	
+	/**
+	 * Returns whether stations use American RBDS until they transmit an
+	 * ECC. Stations that transmit an ECC use the flavour of their country.
+	 */
+	public boolean isRBDS() {
+		return rbds;
+	}
+	
+	public void setRBDS(boolean rbds) {
+		this.rbds = rbds;
+	}
+	
+	/**
+	 * Forces the use of a given ODA for the given group.
+	 * 
+	 * @param groupId the group, as type * 2 + version (0 for A, 1 for B)
+	 * @param aid the AID of the application
+	 */
+	public void addForcedODA(int groupId, int aid) {
+		forcedODAs.put(groupId, aid);
+	}
+	
+	public Map<Integer, Integer> getForcedODAs() {
+		return Collections.unmodifiableMap(forcedODAs);
+	}
+	
+	/**
+	 * Sets the TMC location database of the session.
+	 * 
+	 * @param url the JDBC URL of the database, or {@code null} to use the
+	 * default database (see {@link TMC#setDbUrl(String)})
+	 */
+	public void setTMCDbUrl(String url) {
+		this.tmcDbUrl = url;
+	}
+	
+	public String getTMCDbUrl() {
+		return tmcDbUrl;
+	}
+	
+	/**
+	 * Returns the TMC location database of the session, opening it if
+	 * needed, or {@code null} if the session uses the default database.
+	 */
+	public TMCDatabase getTMCDatabase() {
+		return tmcDbUrl == null ? null : TMC.getDatabase(tmcDbUrl);
+	}
+	
+	/**
+	 * Returns whether the decoder produces the analysis text of each group
+	 * (see {@link eu.jacquet80.rds.log.GroupReceived#getAnalysis()}).
+	 */
+	public boolean isAnalysisEnabled() {
+		return analysis;
+	}
+	
+	/**
+	 * Enables or disables the analysis text of groups. Nobody reads it in
+	 * batch or server use, where disabling it saves a lot of formatting.
+	 */
+	public void setAnalysisEnabled(boolean analysis) {
+		this.analysis = analysis;
+	}
+	
+	/**
+	 * Sets the approximate amount of memory that the log of a session may
+	 * use for its messages (a quarter of the heap by default). Older groups
+	 * are spilled to disk or discarded beyond this budget.
+	 */
+	public void setLogMemoryBudget(long bytes) {
+		this.logMemoryBudget = bytes;
+	}
+	
+	public long getLogMemoryBudget() {
+		return logMemoryBudget;
+	}
+	
+	/**
+	 * Sets the file where the log of a session spills the groups that
+	 * exceed its memory budget, or {@code null} to discard them.
+	 */
+	public void setLogSpillFile(File file) {
+		this.logSpillFile = file;
+	}
+	
+	public File getLogSpillFile() {
+		return logSpillFile;
+	}
+	
+	/**
+	 * Creates a log that follows the memory settings of this configuration.
+	 */
+	public Log createLog() {
+		return new Log(logMemoryBudget, logSpillFile);
+	}
+}
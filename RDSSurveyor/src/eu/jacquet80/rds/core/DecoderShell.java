@@ -17,26 +17,50 @@ import eu.jacquet80.rds.log.EndOfStream;
 import eu.jacquet80.rds.log.GroupReceived;
 import eu.jacquet80.rds.log.Log;
 import eu.jacquet80.rds.log.LogMessageVisitor;
+import eu.jacquet80.rds.log.MessageSubscription;
 import eu.jacquet80.rds.log.StationLost;
 
+/**
+ * A decoder session: decodes the groups of a reader in a worker thread, and
+ * records the results in its own {@link Log}. Each session has its own
+ * {@link DecoderConfig}, so that many sessions can coexist in one JVM,
+ * for instance one per tuner in a server process.
+ */
 public class DecoderShell {
-	private final Log log = new Log();
+	private final Log log;
 	
 	private final Thread worker;
 	
+	private final DecoderConfig config;
+	
 	// concurrent accesses to reader must be synchronized on DecoderShell's monitor
 	private GroupReader reader;
-	private final GroupLevelDecoder groupDecoder = new GroupLevelDecoder(log);
+	private final GroupLevelDecoder groupDecoder;
 	
 	private final Semaphore groupReady = new Semaphore(0);
 	private boolean quitAfterProcess = false;
 	
-	public final static DecoderShell instance = new DecoderShell();
-	
 	private PrintStream console = RDSSurveyor.nullConsole;
 	
-	private DecoderShell() {
-		this.log.addNewMessageListener(consolePrinter);
+	/**
+	 * Creates a session with the default configuration.
+	 */
+	public DecoderShell() {
+		this(new DecoderConfig());
+	}
+	
+	/**
+	 * Creates a session and starts its worker thread, which waits for a
+	 * reader to be passed to {@link #process(GroupReader, boolean)}.
+	 * 
+	 * @param config the configuration, which must not be modified afterwards
+	 */
+	public DecoderShell(DecoderConfig config) {
+		this.config = config;
+		this.log = config.createLog();
+		this.groupDecoder = new GroupLevelDecoder(log, config);
+		// synchronous, because the decoder prints to the same console
+		this.log.addNewMessageListener(consolePrinter, MessageSubscription.Policy.SYNCHRONOUS);
 		
 		worker = new Thread() {
 			{
@@ -46,7 +70,7 @@ public class DecoderShell {
 			public void run() {
 				try {
 					while(true) {
-						groupReady.acquireUninterruptibly();
+						groupReady.acquire();
 						
 						GroupReaderEvent evt;
 						boolean goOn;
@@ -66,7 +90,10 @@ public class DecoderShell {
 							}
 							log.addMessage(new eu.jacquet80.rds.log.EndOfStream(null));
 							goOn = false;
-							if(quitAfterProcess) return;
+							if(quitAfterProcess) {
+								log.awaitListeners();
+								return;
+							}
 						}
 
 						if(goOn) groupReady.release();
@@ -74,6 +101,8 @@ public class DecoderShell {
 				} catch (IOException e) {
 					System.err.println("In RDS worker thread: " + e);
 					e.printStackTrace(System.err);
+				} catch (InterruptedException e) {
+					// session shut down
 				}
 			};
 		};
@@ -133,6 +162,19 @@ public class DecoderShell {
 		process(reader, outFile);
 	}
 	
+	public DecoderConfig getConfig() {
+		return config;
+	}
+	
+	/**
+	 * Stops the worker thread, once the group being processed, if any, is
+	 * done. The session cannot be used afterwards.
+	 */
+	public void shutdown() {
+		worker.interrupt();
+		log.close();
+	}
+	
 	public GroupLevelDecoder getGroupReader() {
 		return groupDecoder;
 	}
@@ -39,6 +39,8 @@ import eu.jacquet80.rds.app.Paging;
 import eu.jacquet80.rds.app.oda.AlertC;
 import eu.jacquet80.rds.app.oda.ODA;
 import eu.jacquet80.rds.app.oda.TDC;
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.app.oda.tmc.TMCDatabase;
 import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
 import eu.jacquet80.rds.input.group.GroupEvent;
 import eu.jacquet80.rds.input.group.GroupReaderEvent;
@@ -53,6 +55,7 @@ import eu.jacquet80.rds.log.Log;
 import eu.jacquet80.rds.log.RDSTime;
 import eu.jacquet80.rds.log.StationLost;
 import eu.jacquet80.rds.log.StationTuned;
+import eu.jacquet80.rds.util.NullPrintWriter;
 
 public class GroupLevelDecoder {
 	private int[] qualityHistory = new int[40];
@@ -75,8 +78,30 @@ public class GroupLevelDecoder {
 			"RP groups 20-39",
 	};
 
+	private final DecoderConfig config;
+	
+	/** The session's TMC database, or {@code null} to use the default one */
+	private final TMCDatabase tmcDatabase;
+	
+	// reused from group to group
+	private final boolean analysisEnabled;
+	private final StringWriter analysisBuffer = new StringWriter();
+	private final PrintWriter analysisWriter = new PrintWriter(analysisBuffer);
+	private final ServiceStat serviceStat = new ServiceStat();
+
 	public GroupLevelDecoder(Log log) {
+		this(log, new DecoderConfig());
+	}
+	
+	public GroupLevelDecoder(Log log, DecoderConfig config) {
 		this.log = log;
+		this.config = config;
+		this.tmcDatabase = config.getTMCDatabase();
+		this.analysisEnabled = config.isAnalysisEnabled();
+	}
+	
+	public DecoderConfig getConfig() {
+		return config;
 	}
 
 	public void loseSync() {
@@ -108,8 +133,11 @@ public class GroupLevelDecoder {
 	}
 
 	private void processGroup(int nbOk, boolean[] blocksOk, int[] blocks, RDSTime time) {
-		StringWriter consoleWriter = new StringWriter();
-		PrintWriter console = new PrintWriter(consoleWriter);
+		PrintWriter console;
+		if(analysisEnabled) {
+			analysisBuffer.getBuffer().setLength(0);
+			console = analysisWriter;
+		} else console = NullPrintWriter.INSTANCE;
 
 		//console.print(" (" + (station == null ? null : station.getStationName() ) + ") ");
 		Application newApp = null;
@@ -169,7 +197,7 @@ public class GroupLevelDecoder {
 		} else workingStation.addUnknownGroupToStats(nbOk);
 
 		// initialize service stats
-		ServiceStat serviceStat = new ServiceStat();
+		serviceStat.clear();
 		serviceStat.add(ServiceStat.PI, 16);  // always a PI code on 16 bits
 		serviceStat.add(ServiceStat.OVERHEAD, 5);	// group type: protocol overhead
 		serviceStat.add(ServiceStat.PROG_TYPE, 5+1);	// PTY+TP: program type
@@ -687,7 +715,7 @@ public class GroupLevelDecoder {
 		}
 
 		// add a log message for each group
-		log.addMessage(new GroupReceived(time, blocks, nbOk, consoleWriter.toString()));
+		log.addMessage(new GroupReceived(time, blocks, nbOk, analysisEnabled ? analysisBuffer.toString() : null));
 
 		// if the last 3 blocks of a group were received completely, then commit service stats
 		if(blocksOk[1] && blocksOk[2] && blocksOk[3]) {
@@ -724,7 +752,7 @@ public class GroupLevelDecoder {
 	}
 
 	public void notifyFrequencyChange(RDSTime time) {
-		station = new TunedStation(time);
+		station = new TunedStation(time, config);
 	}
 
 
@@ -734,7 +762,7 @@ public class GroupLevelDecoder {
 			if(station != null)
 				log.addMessage(new StationLost(station.getTimeOfLastPI(), station));
 			RDSTime time = stationChangeEvent.getTime();
-			station = new TunedStation(time);
+			station = new TunedStation(time, config);
 			log.addMessage(new StationTuned(time, station));
 		}
 
@@ -746,7 +774,7 @@ public class GroupLevelDecoder {
 			// but a (defective) input driver may forget to send the
 			// StationChangeEvent...
 			if(station == null) {
-				station = new TunedStation(time);
+				station = new TunedStation(time, config);
 				log.addMessage(new StationTuned(time, station));
 			}
 			// end defensive programming section
@@ -779,7 +807,17 @@ public class GroupLevelDecoder {
 	 * @throws IOException
 	 */
 	public void processOneGroup(GroupReaderEvent evt) throws IOException {
-		evt.accept(readerEventVisitor);
+		if(tmcDatabase == null) {
+			evt.accept(readerEventVisitor);
+		} else {
+			// resolve TMC locations against the session's database
+			TMCDatabase previous = TMC.setThreadDatabase(tmcDatabase);
+			try {
+				evt.accept(readerEventVisitor);
+			} finally {
+				TMC.setThreadDatabase(previous);
+			}
+		}
 
 
 		/*
@@ -0,0 +1,377 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import eu.jacquet80.rds.core.BitStreamSynchronizer.ErrorCorrection;
+import eu.jacquet80.rds.input.AudioBitReader;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.TeeGroupReader;
+import eu.jacquet80.rds.input.dsp.FftChannelizer;
+import eu.jacquet80.rds.input.dsp.FmDiscriminator;
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.SequentialTime;
+import eu.jacquet80.rds.log.StationLost;
+
+/**
+ * Decodes RDS from all the FM stations found in a wideband I/Q recording,
+ * in a single pass.
+ *
+ * The recording is split into channels by a {@link FftChannelizer}. For each
+ * block of input samples, the channels are FM-demodulated and their RDS
+ * subcarriers demodulated in parallel on a pool of worker threads. Each
+ * channel has its own {@link AudioBitReader}, {@link BitStreamSynchronizer}
+ * and {@link GroupLevelDecoder}, with its own {@link Log}, and writes its
+ * groups to its own hexadecimal group file. Bit and group level decoding
+ * is light, so it runs in one thread per channel, which mostly waits for
+ * bits.
+ */
+public class MultiChannelDecoder {
+	/** Formats of raw I/Q samples */
+	public static enum SampleFormat {
+		/** Unsigned 8-bit, as written by rtl_sdr */
+		U8(1),
+		/** Signed 8-bit, as written by hackrf_transfer */
+		S8(1),
+		/** Signed 16-bit little-endian, as found in WAV baseband recordings */
+		S16(2);
+		
+		public final int bytes;
+		
+		private SampleFormat(int bytes) {
+			this.bytes = bytes;
+		}
+	}
+	
+	private final int sampleRate;
+	private final int centerFrequency;
+	private final Channel[] channels;
+	private final FftChannelizer channelizer;
+	private final DecoderConfig config;
+	private ErrorCorrection correction = null;
+	
+	/**
+	 * @param sampleRate the I/Q sample rate
+	 * @param centerFrequency the center frequency of the recording, in kHz
+	 * @param frequencies the frequencies of the stations to decode, in kHz
+	 */
+	public MultiChannelDecoder(int sampleRate, int centerFrequency, int[] frequencies) {
+		this(sampleRate, centerFrequency, frequencies, new DecoderConfig());
+	}
+	
+	/**
+	 * @param sampleRate the I/Q sample rate
+	 * @param centerFrequency the center frequency of the recording, in kHz
+	 * @param frequencies the frequencies of the stations to decode, in kHz
+	 * @param config the configuration shared by the decoders of all channels
+	 */
+	public MultiChannelDecoder(int sampleRate, int centerFrequency, int[] frequencies, DecoderConfig config) {
+		this.sampleRate = sampleRate;
+		
+		// groups are logged to files and summarized, but not displayed
+		this.config = new DecoderConfig(config);
+		this.config.setAnalysisEnabled(false);
+		this.centerFrequency = centerFrequency;
+		
+		double[] offsets = new double[frequencies.length];
+		for(int i=0; i<frequencies.length; i++) {
+			offsets[i] = (frequencies[i] - centerFrequency) * 1000.0;
+		}
+		this.channelizer = new FftChannelizer(sampleRate, offsets);
+		
+		this.channels = new Channel[frequencies.length];
+		for(int i=0; i<frequencies.length; i++) {
+			channels[i] = new Channel(i, frequencies[i]);
+		}
+	}
+	
+	public void setErrorCorrection(ErrorCorrection correction) {
+		this.correction = correction;
+	}
+	
+	/**
+	 * Returns the log of the channel which decodes a given frequency, for
+	 * instance to register listeners before decoding. Synchronous listeners
+	 * are run in the thread which decodes the channel, and any exception
+	 * they throw aborts the decoding.
+	 * 
+	 * @param frequency the frequency of the channel, in kHz
+	 */
+	public Log getLog(int frequency) {
+		for(Channel c : channels) {
+			if(c.frequency == frequency) return c.log;
+		}
+		throw new IllegalArgumentException("No channel at " + mhz(frequency));
+	}
+	
+	/**
+	 * Decodes a recording, and prints a summary of the stations found.
+	 * 
+	 * @param in the raw I/Q samples, interleaved, in-phase first
+	 * @param format the format of the samples
+	 * @param outDir the directory where the group files are written
+	 * @param threads the number of worker threads
+	 * @param console where to print progress and the summary
+	 * @throws IOException if the input cannot be read, or if the decoding of
+	 *             a channel fails, in which case the other channels are
+	 *             stopped too
+	 */
+	public void decode(InputStream in, SampleFormat format, File outDir, int threads, PrintStream console) throws IOException {
+		console.println("Decoding " + channels.length + " channels around " + mhz(centerFrequency) +
+				", I/Q rate " + sampleRate + " Hz, MPX rate " + channelizer.getOutputRate() + " Hz");
+		
+		for(Channel c : channels) {
+			c.start(outDir);
+			console.println("  " + mhz(c.frequency) + " -> " + c.outFile.getAbsolutePath());
+		}
+		
+		final int blockLength = channelizer.getBlockLength();
+		final byte[] raw = new byte[2 * blockLength * format.bytes];
+		final double[] re = new double[blockLength];
+		final double[] im = new double[blockLength];
+		final DataInputStream din = new DataInputStream(in);
+		
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(channels.length);
+		for(Channel c : channels) tasks.add(c);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, channels.length)));
+		Channel failed = null;
+		try {
+			boolean eof = false;
+			while(!eof && failed == null) {
+				int len = 0;
+				while(len < raw.length) {
+					int n = din.read(raw, len, raw.length - len);
+					if(n < 0) {
+						eof = true;
+						break;
+					}
+					len += n;
+				}
+				if(len == 0) break;
+				// pad the last block with silence
+				for(int i=len; i<raw.length; i++) raw[i] = format == SampleFormat.U8 ? (byte) 0x80 : 0;
+				
+				convert(raw, format, re, im, blockLength);
+				channelizer.transform(re, im);
+				
+				for(Future<Void> f : pool.invokeAll(tasks)) {
+					f.get();
+				}
+				
+				// a channel which no longer decodes stops the whole recording
+				for(Channel c : channels) {
+					if(c.failure != null) failed = c;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IOException("Channel processing failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+			for(Channel c : channels) c.reader.endOfStream();
+		}
+		
+		for(Channel c : channels) {
+			try {
+				c.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if(failed == null && c.failure != null) failed = c;
+		}
+		
+		if(failed != null) {
+			throw new IOException("Decoding of " + mhz(failed.frequency) + " failed", failed.failure);
+		}
+		
+		console.println("Stations:");
+		for(Channel c : channels) {
+			TunedStation st = c.decoder.getTunedStation();
+			if(st == null) {
+				console.printf("  %-10s  no RDS%n", mhz(c.frequency));
+			} else {
+				console.printf("  %-10s  PI=%04X  PS=\"%s\"  groups=%d  BLER=%.1f%%%n",
+						mhz(c.frequency), st.getPI(), st.getStationName(),
+						c.groupCount, 100 * st.getBLER());
+			}
+		}
+	}
+	
+	private static String mhz(int frequency) {
+		return String.format("%.1f MHz", frequency / 1000.0);
+	}
+	
+	private static void convert(byte[] raw, SampleFormat format, double[] re, double[] im, int length) {
+		switch(format) {
+		case U8:
+			for(int i=0; i<length; i++) {
+				re[i] = ((raw[2*i] & 0xFF) - 127.5) / 127.5;
+				im[i] = ((raw[2*i+1] & 0xFF) - 127.5) / 127.5;
+			}
+			break;
+		case S8:
+			for(int i=0; i<length; i++) {
+				re[i] = raw[2*i] / 128.0;
+				im[i] = raw[2*i+1] / 128.0;
+			}
+			break;
+		case S16:
+			for(int i=0; i<length; i++) {
+				re[i] = (short) ((raw[4*i] & 0xFF) | (raw[4*i+1] << 8)) / 32768.0;
+				im[i] = (short) ((raw[4*i+2] & 0xFF) | (raw[4*i+3] << 8)) / 32768.0;
+			}
+			break;
+		}
+	}
+	
+	/**
+	 * Opens a stereo 16-bit WAV baseband recording, as produced by most SDR
+	 * applications, and returns its sample rate.
+	 */
+	public static AudioInputStream openWav(File file) throws IOException, UnsupportedAudioFileException {
+		AudioInputStream ais = AudioSystem.getAudioInputStream(file);
+		AudioFormat format = ais.getFormat();
+		if(format.getChannels() != 2 || format.getSampleSizeInBits() != 16 || format.isBigEndian()
+				|| format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+			throw new UnsupportedAudioFileException("I/Q recordings must be 16-bit PCM, stereo, little-endian.");
+		}
+		return ais;
+	}
+	
+	/**
+	 * The decoding chain of one channel. As a {@link Callable}, processes the
+	 * current block of the channelizer up to the bit level.
+	 */
+	private class Channel implements Callable<Void> {
+		private final int index;
+		private final int frequency;
+		
+		private final FmDiscriminator discriminator;
+		private final AudioBitReader reader;
+		// only the listeners of the log are used, no need to keep old groups
+		private final Log log = new Log(0, null);
+		private final GroupLevelDecoder decoder;
+		
+		private final double[] basebandRe;
+		private final double[] basebandIm;
+		private final double[] mpx;
+		
+		private File outFile;
+		private Thread thread;
+		private volatile int groupCount = 0;
+		
+		/** Set if the decoding thread died */
+		private volatile Throwable failure = null;
+		
+		public Channel(int index, int frequency) {
+			this.index = index;
+			this.frequency = frequency;
+			int rate = channelizer.getOutputRate();
+			this.discriminator = new FmDiscriminator(rate);
+			this.reader = new AudioBitReader(rate);
+			this.decoder = new GroupLevelDecoder(log, config);
+			int len = channelizer.getOutputLength();
+			basebandRe = new double[len];
+			basebandIm = new double[len];
+			mpx = new double[len];
+		}
+		
+		@Override
+		public Void call() {
+			channelizer.extract(index, basebandRe, basebandIm);
+			discriminator.process(basebandRe, basebandIm, mpx.length, mpx);
+			reader.process(mpx, 0, mpx.length);
+			return null;
+		}
+		
+		public void start(File outDir) throws IOException {
+			final BitStreamSynchronizer synchronizer = new BitStreamSynchronizer(reader);
+			if(correction != null) synchronizer.setErrorCorrection(correction);
+			
+			// announce the frequency first, so that it is recorded in the group file
+			GroupReader withFrequency = new GroupReader() {
+				private boolean first = true;
+				
+				@Override
+				public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+					if(first) {
+						first = false;
+						return new FrequencyChangeEvent(new SequentialTime(0), frequency);
+					}
+					return synchronizer.getGroup();
+				}
+			};
+			
+			outFile = new File(outDir, String.format("rdslog_%d.rds", frequency));
+			final GroupReader groups = new TeeGroupReader(withFrequency, outFile);
+			
+			thread = new Thread("RDS-Channel-" + frequency) {
+				public void run() {
+					try {
+						while(true) {
+							GroupReaderEvent evt = groups.getGroup();
+							decoder.processOneGroup(evt);
+							if(evt instanceof GroupEvent) groupCount++;
+						}
+					} catch(GroupReader.EndOfStream eos) {
+						TunedStation lastStation = decoder.getTunedStation();
+						if(lastStation != null) {
+							log.addMessage(new StationLost(null, lastStation, true));
+						}
+						log.addMessage(new eu.jacquet80.rds.log.EndOfStream(null));
+					} catch(Throwable t) {
+						// do not let the demodulator wait for bits nobody reads
+						failure = t;
+						reader.abandon();
+					}
+				}
+			};
+			thread.start();
+		}
+	}
+}
@@ -228,12 +228,94 @@ public class RDS {
 		}
 	}
 	
+	/**
+	 * Syndrome contributions of the 13 least significant bits of a block,
+	 * and of its 13 most significant bits. Since the syndrome is linear,
+	 * the syndrome of a 26-bit block is the XOR of two table lookups.
+	 */
+	private final static int[] syndromeLow = new int[1 << 13];
+	private final static int[] syndromeHigh = new int[1 << 13];
+	
+	/**
+	 * Generator polynomial of the RDS code, x^10+x^8+x^7+x^5+x^4+x^3+1.
+	 */
+	private final static int GENERATOR = 0x5B9;
+	
+	/**
+	 * Syndrome of the bit that falls off the 26-bit window when a block
+	 * is shifted left by one bit (i.e. the would-be 27th row of matH).
+	 */
+	private final static int SYNDROME_SHIFTED_OUT = (matH[25] << 1) ^ GENERATOR;
+	
+	/**
+	 * Syndrome of 0x3FFFFFF. The syndrome of an inverted block is the
+	 * syndrome of the block XORed with this value.
+	 */
+	public final static int SYNDROME_ALL_ONES;
+	
+	static {
+		for(int v=0; v < (1<<13); v++) {
+			int lo = 0, hi = 0;
+			for(int i=0; i<13; i++) {
+				if((v & (1<<i)) != 0) {
+					lo ^= matH[i];
+					hi ^= matH[i + 13];
+				}
+			}
+			syndromeLow[v] = lo;
+			syndromeHigh[v] = hi;
+		}
+		SYNDROME_ALL_ONES = syndromeLow[0x1FFF] ^ syndromeHigh[0x1FFF];
+	}
+	
 	public final static int calcSyndrome(int bloc) {
-		int synd = 0;
-		for(int i=0; i<26; i++) {
-			if((bloc & 1) != 0) synd ^= matH[i];
-			bloc >>= 1;
+		return syndromeLow[bloc & 0x1FFF] ^ syndromeHigh[(bloc >> 13) & 0x1FFF];
+	}
+
+	/**
+	 * Check word having a given syndrome, for each syndrome. The syndrome
+	 * of a block made of a check word only is a one-to-one function of the
+	 * check word.
+	 */
+	private final static int[] checkwordForSyndrome = new int[1 << 10];
+
+	static {
+		for(int c=0; c < (1<<10); c++) {
+			checkwordForSyndrome[calcSyndrome(c)] = c;
 		}
+	}
+
+	/**
+	 * Computes a 26-bit block, made of 16 data bits followed by their check
+	 * word and offset word, so that the syndrome of the block is
+	 * {@code syndromes[blockIndex][version]}.
+	 *
+	 * @param data the 16 data bits
+	 * @param blockIndex 0 to 3 for blocks A to D
+	 * @param version 0 for version A, 1 for version B (which only matters
+	 * for block C, encoded with offset word C' in version B)
+	 * @return the block
+	 */
+	public final static int encodeBlock(int data, int blockIndex, int version) {
+		int block = (data & 0xFFFF) << 10;
+		return block | checkwordForSyndrome[calcSyndrome(block) ^ syndromes[blockIndex][version]];
+	}
+	
+	/**
+	 * Updates a syndrome incrementally when a 26-bit block is shifted left
+	 * by one bit and a new bit is inserted at the least significant
+	 * position. This avoids recomputing the full syndrome for every bit.
+	 * 
+	 * @param synd the syndrome of the block before the shift
+	 * @param block the block before the shift
+	 * @param bit the new bit
+	 * @return the syndrome of {@code ((block << 1) & 0x3FFFFFF) | bit}
+	 */
+	public final static int shiftSyndrome(int synd, int block, boolean bit) {
+		synd <<= 1;
+		if((synd & 0x400) != 0) synd ^= GENERATOR;
+		if((block & 0x2000000) != 0) synd ^= SYNDROME_SHIFTED_OUT;
+		if(bit) synd ^= matH[0];
 		return synd;
 	}
 	
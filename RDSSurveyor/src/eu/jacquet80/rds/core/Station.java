@@ -30,7 +30,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import eu.jacquet80.rds.RDSSurveyor;
 import eu.jacquet80.rds.log.RDSTime;
 
 
@@ -51,13 +50,13 @@ public abstract class Station {
 	
 	/**
 	 * A station uses (World/European) RDS or American RBDS. We use the default
-	 * specified in the preferences (true for RBDS, false for standard RDS),
-	 * which defaults to false (=RDS).
+	 * specified in the decoder configuration (true for RBDS, false for
+	 * standard RDS), which defaults to false (=RDS).
 	 * If a station broadcasts an ECC, then we can set the rbds flag 
 	 * appropriately: true for the USA, Canada and Mexico, false for any other
 	 * country. 
 	 */
-	protected boolean rbds = RDSSurveyor.preferences.getBoolean(RDSSurveyor.PREF_RBDS, false);
+	protected boolean rbds = false;
 
 	
 	protected void reset(int pi) {
@@ -74,6 +73,14 @@ public abstract class Station {
 		this.pi = pi;
 	}
 	
+	public boolean isRBDS() {
+		return rbds;
+	}
+	
+	public void setRBDS(boolean rbds) {
+		this.rbds = rbds;
+	}
+	
 	public void pingPI(RDSTime time) {
 		this.timeOfLastPI = time;
 	}
@@ -0,0 +1,74 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.PrintStream;
+
+import eu.jacquet80.rds.core.BitStreamSynchronizer.BlockStatus;
+
+/**
+ * Renders the activity of a {@link BitStreamSynchronizer} as text: one
+ * character per block ({@code G}: correct, {@code g}: correct with offset
+ * word C', {@code c}: corrected, {@code .}: error), groups separated by
+ * spaces, and a line when synchronization is gained or lost.
+ */
+public class SyncConsolePrinter implements BitStreamSynchronizer.TelemetryListener, BitStreamSynchronizer.BlockListener {
+	private final PrintStream console;
+	
+	public SyncConsolePrinter(PrintStream console) {
+		this.console = console;
+	}
+	
+	@Override
+	public void report(SyncTelemetry telemetry) {
+		switch(telemetry.kind) {
+		case SYNC_GAINED:
+			console.println("\nGot synchronization on block " + (char)('A' + telemetry.syncBlock) + "! (" 
+					+ (telemetry.negativePolarity ? "negative" : "positive") + " polarity, after " 
+					+ telemetry.timeToSync + " bits)");
+			console.print("      ");
+			break;
+			
+		case SYNC_LOST:
+			console.println(" Lost synchronization.");
+			break;
+			
+		default:
+			break;
+		}
+	}
+	
+	@Override
+	public void block(int blockIndex, BlockStatus status) {
+		switch(status) {
+		case OK: console.print("G"); break;
+		case OK_C_PRIME: console.print("g"); break;
+		case CORRECTED: console.print("c"); break;
+		default: console.print(".");
+		}
+		if(blockIndex == 3) console.print(" ");
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import eu.jacquet80.rds.core.BitStreamSynchronizer.Status;
+
+/**
+ * A snapshot of the state and counters of a {@link BitStreamSynchronizer},
+ * as reported to its {@link BitStreamSynchronizer.TelemetryListener}s.
+ * 
+ * Snapshots are taken when synchronization is gained or lost, and at the
+ * end of each window of groups. Block counters cover the current window,
+ * up to the time of the snapshot. Other counters cover the whole stream.
+ */
+public class SyncTelemetry {
+	public static enum Kind {
+		/** Synchronization has just been gained */
+		SYNC_GAINED,
+		/** Synchronization has just been lost */
+		SYNC_LOST,
+		/** A window of groups has just ended */
+		WINDOW;
+	}
+	
+	public final Kind kind;
+	public final Status status;
+	public final boolean negativePolarity;
+	
+	/** Number of bits read since the start of the stream */
+	public final long bitTime;
+	
+	/** For {@link Kind#SYNC_GAINED}, the block on which synchronization was gained (0 for A), otherwise -1 */
+	public final int syncBlock;
+	
+	/** Number of bits it took to acquire synchronization the last time, or -1 if never synced */
+	public final int timeToSync;
+	
+	/** Number of times synchronization was regained with block boundaries shifted, i.e. after bit slips */
+	public final int slips;
+	
+	/** Number of groups since the start of the stream */
+	public final long groups;
+	
+	/** Number of groups in the window */
+	public final int windowGroups;
+	
+	private final int[] blocksOk;
+	private final int[] blocksCorrected;
+	private final int[] blocksInError;
+	
+	/* package */ SyncTelemetry(Kind kind, Status status, boolean negativePolarity, long bitTime, int syncBlock,
+			int timeToSync, int slips, long groups, int windowGroups, 
+			int[] blocksOk, int[] blocksCorrected, int[] blocksInError) {
+		this.kind = kind;
+		this.status = status;
+		this.negativePolarity = negativePolarity;
+		this.bitTime = bitTime;
+		this.syncBlock = syncBlock;
+		this.timeToSync = timeToSync;
+		this.slips = slips;
+		this.groups = groups;
+		this.windowGroups = windowGroups;
+		this.blocksOk = blocksOk.clone();
+		this.blocksCorrected = blocksCorrected.clone();
+		this.blocksInError = blocksInError.clone();
+	}
+	
+	/**
+	 * Returns the number of blocks received without errors in the window.
+	 * 
+	 * @param blockIndex 0 to 3 for blocks A to D
+	 */
+	public int getBlocksOk(int blockIndex) {
+		return blocksOk[blockIndex];
+	}
+	
+	/**
+	 * Returns the number of blocks whose errors were corrected in the window.
+	 * 
+	 * @param blockIndex 0 to 3 for blocks A to D
+	 */
+	public int getBlocksCorrected(int blockIndex) {
+		return blocksCorrected[blockIndex];
+	}
+	
+	/**
+	 * Returns the number of blocks with uncorrectable errors in the window.
+	 * 
+	 * @param blockIndex 0 to 3 for blocks A to D
+	 */
+	public int getBlocksInError(int blockIndex) {
+		return blocksInError[blockIndex];
+	}
+	
+	/**
+	 * Returns the proportion of blocks of the window with uncorrectable
+	 * errors, or 0 if no block was received in the window.
+	 */
+	public double getBlockErrorRate() {
+		int total = 0, errors = 0;
+		for(int i=0; i<4; i++) {
+			total += blocksOk[i] + blocksCorrected[i] + blocksInError[i];
+			errors += blocksInError[i];
+		}
+		return total == 0 ? 0 : (double) errors / total;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(kind).append(" @").append(bitTime).append(": ").append(status);
+		if(status == Status.SYNCED) sb.append(negativePolarity ? " (negative)" : " (positive)");
+		sb.append(", groups=").append(windowGroups).append('/').append(groups);
+		for(int i=0; i<4; i++) {
+			sb.append(", ").append((char) ('A' + i)).append('=')
+				.append(blocksOk[i]).append('/').append(blocksCorrected[i]).append('/').append(blocksInError[i]);
+		}
+		sb.append(", slips=").append(slips).append(", timeToSync=").append(timeToSync);
+		return sb.toString();
+	}
+}
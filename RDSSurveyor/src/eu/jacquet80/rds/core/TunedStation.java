@@ -27,6 +27,7 @@ package eu.jacquet80.rds.core;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -69,12 +70,24 @@ public class TunedStation extends Station {
 	private Map<Integer, Application> odaApps = new HashMap<Integer, Application>();
 	
 	
-	public TunedStation(int pi, RDSTime time) {
+	private final DecoderConfig config;
+	
+	public TunedStation(int pi, RDSTime time, DecoderConfig config) {
+		this.config = config;
+		this.rbds = config.isRBDS();
 		reset(pi);
 		pingPI(time);
 		registerForcedODAs();
 	}
 	
+	public TunedStation(RDSTime time, DecoderConfig config) {
+		this(0, time, config);
+	}
+	
+	public TunedStation(int pi, RDSTime time) {
+		this(pi, time, new DecoderConfig());
+	}
+	
 	public TunedStation(RDSTime time) {
 		this(0, time);
 	}
@@ -223,6 +236,8 @@ public class TunedStation extends Station {
 	}
 	
 	public synchronized void addON(Station on) {
+		// other networks are assumed to use the same flavour as the session
+		on.setRBDS(config.isRBDS());
 		otherNetworks.put(on.getPI(), on);
 	}
 	
@@ -414,14 +429,12 @@ public class TunedStation extends Station {
 	
 	/* Forced ODAs */
 	
-	private static Map<Integer, Integer> forcedODAs = new HashMap<Integer, Integer>();
-	
-	public static void addForcedODA(int groupId, int aid) {
-		forcedODAs.put(groupId, aid);
+	public DecoderConfig getConfig() {
+		return config;
 	}
 	
 	public void registerForcedODAs() {
-		for(Map.Entry<Integer, Integer> e : forcedODAs.entrySet()) {
+		for(Map.Entry<Integer, Integer> e : config.getForcedODAs().entrySet()) {
 			int group = e.getKey();
 			int groupN = group>>1;
 			int groupV = group & 1;
@@ -460,30 +473,54 @@ class GroupStatElement implements Comparable<GroupStatElement> {
 	}
 }
 
+/**
+ * Number of bits used by each service. There are only a few services per
+ * group, so they are stored in small arrays rather than in a map.
+ */
 class ServiceStat {
-	private Map<String, Integer> stats = new HashMap<String, Integer>();
+	private String[] services = new String[8];
+	private int[] bits = new int[8];
+	private int size = 0;
 	
 	public void add(String service, int bits) {
-		Integer previousCount = stats.get(service);
-		if(previousCount == null) previousCount = 0;
-		stats.put(service, bits + previousCount);
+		for(int i=0; i<size; i++) {
+			if(services[i] == service || services[i].equals(service)) {
+				this.bits[i] += bits;
+				return;
+			}
+		}
+		if(size == services.length) {
+			services = Arrays.copyOf(services, 2 * size);
+			this.bits = Arrays.copyOf(this.bits, 2 * size);
+		}
+		services[size] = service;
+		this.bits[size] = bits;
+		size++;
 	}
 	
 	public int getTotalCount() {
 		int count = 0;
-		for(int c : stats.values()) {
-			count += c;
+		for(int i=0; i<size; i++) {
+			count += bits[i];
 		}
 		
 		return count;
 	}
 	
 	public void merge(ServiceStat other) {
-		for(Map.Entry<String, Integer> e : other.stats.entrySet()) {
-			this.add(e.getKey(), e.getValue());
+		for(int i=0; i<other.size; i++) {
+			this.add(other.services[i], other.bits[i]);
 		}
 	}
 	
+	/**
+	 * Removes all services, so that the instance can be reused.
+	 */
+	public void clear() {
+		for(int i=0; i<size; i++) services[i] = null;
+		size = 0;
+	}
+	
 	public static final String 
 			OVERHEAD = "Protocol overhead",		// addressing, very basic features, etc.
 			PROG_TYPE = "Program type",		// PTY + TA/TP
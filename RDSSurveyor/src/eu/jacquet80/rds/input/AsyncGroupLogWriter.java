@@ -0,0 +1,263 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.input.group.StationChangeEvent;
+
+/**
+ * Writes events to another {@link GroupLogWriter} from a background thread,
+ * so that the decoder never waits for the disk (unless the queue is full).
+ *
+ * Events are written in batches. Depending on the {@link FlushPolicy}, the
+ * underlying writer is flushed periodically and every few events, or only
+ * when the station changes. In any case it is flushed and closed when this
+ * writer is closed, or when the JVM shuts down.
+ */
+public class AsyncGroupLogWriter implements GroupLogWriter {
+	public static enum FlushPolicy {
+		/** Flush at regular intervals, and after a number of events */
+		PERIODIC,
+		
+		/** Flush only on a station change, or when closing */
+		STATION_CHANGE;
+	}
+	
+	public final static int DEFAULT_CAPACITY = 1024;
+	public final static long DEFAULT_FLUSH_INTERVAL = 1000;
+	public final static int DEFAULT_FLUSH_EVENTS = 256;
+	
+	private final static Object FLUSH = new Object();
+	private final static Object CLOSE = new Object();
+	
+	private final GroupLogWriter writer;
+	private final BlockingQueue<Object> queue;
+	private final FlushPolicy policy;
+	private final Thread worker;
+	private final Thread shutdownHook;
+	
+	private volatile long flushInterval = DEFAULT_FLUSH_INTERVAL;
+	private volatile int flushEvents = DEFAULT_FLUSH_EVENTS;
+	
+	/** Error encountered by the worker, reported to the next caller */
+	private volatile IOException error;
+	private boolean closed = false;
+	
+	public AsyncGroupLogWriter(GroupLogWriter writer) {
+		this(writer, DEFAULT_CAPACITY, FlushPolicy.PERIODIC);
+	}
+	
+	/**
+	 * @param writer the writer to which events are written
+	 * @param capacity the maximum number of events waiting to be written
+	 * @param policy when to flush {@code writer}
+	 */
+	public AsyncGroupLogWriter(GroupLogWriter writer, int capacity, FlushPolicy policy) {
+		this.writer = writer;
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+		this.policy = policy;
+		
+		worker = new Thread("Group log writer") {
+			@Override
+			public void run() {
+				work();
+			}
+		};
+		worker.setDaemon(true);
+		worker.start();
+		
+		shutdownHook = new Thread() {
+			@Override
+			public void run() {
+				try {
+					shutdown();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+	
+	/**
+	 * Sets the maximum time between two flushes, in the
+	 * {@link FlushPolicy#PERIODIC} mode.
+	 */
+	public void setFlushInterval(long millis) {
+		this.flushInterval = millis;
+	}
+	
+	/**
+	 * Sets the maximum number of events between two flushes, in the
+	 * {@link FlushPolicy#PERIODIC} mode.
+	 */
+	public void setFlushEvents(int count) {
+		this.flushEvents = count;
+	}
+	
+	private void checkError() throws IOException {
+		IOException e = error;
+		if(e != null) throw e;
+	}
+	
+	private void enqueue(Object o) throws IOException {
+		try {
+			queue.put(o);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while queuing a group");
+		}
+	}
+	
+	@Override
+	public void write(GroupReaderEvent event) throws IOException {
+		checkError();
+		enqueue(event);
+	}
+	
+	/**
+	 * Requests a flush of the events written so far. Does not wait for the
+	 * flush to be done.
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkError();
+		enqueue(FLUSH);
+	}
+	
+	/**
+	 * Writes all pending events, then closes the underlying writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch(IllegalStateException e) {
+			// already shutting down, the hook will do the job
+		}
+		shutdown();
+	}
+	
+	private synchronized void shutdown() throws IOException {
+		if(closed) return;
+		closed = true;
+		enqueue(CLOSE);
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while closing the group log");
+		}
+		checkError();
+	}
+	
+	private void work() {
+		List<Object> batch = new ArrayList<Object>();
+		long lastFlush = System.currentTimeMillis();
+		int unflushed = 0;
+		int lastPI = -1;
+		boolean closing = false;
+		
+		while(true) {
+			try {
+				Object first;
+				if(policy == FlushPolicy.PERIODIC && unflushed > 0) {
+					long wait = lastFlush + flushInterval - System.currentTimeMillis();
+					first = queue.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+				} else {
+					first = queue.take();
+				}
+				
+				if(first != null) {
+					batch.add(first);
+					queue.drainTo(batch);
+				}
+				
+				boolean flush = false;
+				for(Object o : batch) {
+					if(o == CLOSE) {
+						closing = true;
+						writer.close();
+						return;
+					} else if(o == FLUSH) {
+						flush = true;
+					} else if(error == null) {
+						GroupReaderEvent event = (GroupReaderEvent) o;
+						writer.write(event);
+						unflushed++;
+						
+						if(policy == FlushPolicy.STATION_CHANGE) {
+							if(event instanceof StationChangeEvent || event instanceof FrequencyChangeEvent) {
+								flush = true;
+							} else if(event instanceof GroupEvent) {
+								int pi = ((GroupEvent) event).blocks[0];
+								if(pi >= 0) {
+									if(lastPI >= 0 && pi != lastPI) flush = true;
+									lastPI = pi;
+								}
+							}
+						}
+					}
+				}
+				batch.clear();
+				
+				if(policy == FlushPolicy.PERIODIC && unflushed > 0 && (unflushed >= flushEvents 
+						|| System.currentTimeMillis() - lastFlush >= flushInterval)) {
+					flush = true;
+				}
+				
+				if(flush && error == null) {
+					writer.flush();
+					unflushed = 0;
+					lastFlush = System.currentTimeMillis();
+				}
+			} catch(IOException e) {
+				// keep consuming the queue so that the producer does not block
+				if(error == null) error = e;
+				if(closing) return;
+				if(batch.contains(CLOSE)) {
+					try {
+						writer.close();
+					} catch(IOException e2) {}
+					return;
+				}
+				batch.clear();
+			} catch(InterruptedException e) {
+				return;
+			}
+		}
+	}
+}
@@ -37,6 +37,7 @@ import java.io.UnsupportedEncodingException;
 
 public class BinStringFileBitReader extends BitReader {
 	private final InputStream isr;
+	private byte[] buf = null;
 	
 	public BinStringFileBitReader(InputStream isr) {
 		this.isr = isr;
@@ -56,5 +57,23 @@ public class BinStringFileBitReader extends BitReader {
 			}
 		}
 	}
-
+	
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		// there is at most one bit per character, so never read more
+		// characters than bits requested
+		if(buf == null || buf.length < maxBits) buf = new byte[maxBits];
+		int n = 0;
+		while(n == 0) {
+			int len = isr.read(buf, 0, maxBits);
+			if(len < 0) return -1;
+			for(int i=0; i<len; i++) {
+				switch(buf[i]) {
+				case '0': putBits(dst, n++, 0, 1); break;
+				case '1': putBits(dst, n++, 1, 1); break;
+				}
+			}
+		}
+		return n;
+	}
 }
@@ -33,7 +33,12 @@ import java.io.InputStream;
 
 
 public class BinaryFileBitReader extends BitReader {
+	private final static int BUFLEN = 4096;
+	
 	private final InputStream is;
+	private final byte[] buf = new byte[BUFLEN];
+	private int bufPos = 0;
+	private int bufLen = 0;
 	private int oct;
 	private int octPtr;
 	
@@ -48,15 +53,31 @@ public class BinaryFileBitReader extends BitReader {
 		this(new FileInputStream(f));
 	}
 	
+	/**
+	 * Makes sure that at least one byte is available in the buffer.
+	 * 
+	 * @return {@code false} at the end of the stream
+	 */
+	private boolean fillBuffer() throws IOException {
+		if(bufPos < bufLen) return true;
+		bufLen = is.read(buf);
+		bufPos = 0;
+		if(bufLen <= 0) {
+			bufLen = 0;
+			return false;
+		}
+		return true;
+	}
+	
 	
 	public boolean getBit() throws IOException {
 		oct = oct<<1;
 
 		if(octPtr==0) {
-			oct = is.read();
-			if(oct == -1) {
+			if(! fillBuffer()) {
 				throw new EOFException();
 			}
+			oct = buf[bufPos++] & 0xFF;
 			octPtr=8;
 		}
 
@@ -64,5 +85,38 @@ public class BinaryFileBitReader extends BitReader {
 		return (oct&128) != 0;
 	}
 
-
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = 0;
+		
+		// first finish the current byte
+		for(; octPtr > 0 && n < maxBits; n++) {
+			putBits(dst, n, getBit() ? 1 : 0, 1);
+		}
+		
+		// then copy whole bytes, up to 8 at a time
+		while(maxBits - n >= 8) {
+			if(! fillBuffer()) break;
+			int nBytes = Math.min(Math.min((maxBits - n) >> 3, bufLen - bufPos), 8);
+			long word = 0;
+			for(int i=0; i<nBytes; i++) {
+				word = (word << 8) | (buf[bufPos++] & 0xFF);
+			}
+			putBits(dst, n, word, nBytes << 3);
+			n += nBytes << 3;
+			
+			// do not block if some bits are already available
+			if(bufPos == bufLen) break;
+		}
+		
+		if(n == 0 && maxBits > 0) {
+			try {
+				putBits(dst, 0, getBit() ? 1 : 0, 1);
+			} catch(EOFException e) {
+				return -1;
+			}
+			n = 1;
+		}
+		return n;
+	}
 }
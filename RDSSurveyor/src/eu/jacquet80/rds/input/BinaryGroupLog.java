@@ -0,0 +1,168 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+/**
+ * Definition of the binary group log format, and conversion from and to the
+ * hexgroup text format.
+ *
+ * A binary group log starts with a {@value #HEADER_SIZE}-byte header, then
+ * contains a sequence of fixed-size chunks of {@link #CHUNK_CAPACITY}
+ * records. Every chunk occupies {@link #CHUNK_SIZE} bytes, even if it is not
+ * full, so that the position of any chunk can be computed directly. Inside a
+ * chunk, records are stored by column:
+ * <ul>
+ * <li>chunk header: record count (int), time flags (int), sequential time
+ * base (int), reserved (int), real time base in ms (long), reserved (long),</li>
+ * <li>blocks A, B, C and D: one column of 16-bit values for each block,</li>
+ * <li>flags: one byte per record, see below,</li>
+ * <li>time deltas: one int per record, relative to the base of the chunk
+ * (in ms for real time).</li>
+ * </ul>
+ * The flags byte of a record holds the error mask in bits 0-3 (bit {@code i}
+ * is set if block {@code i} is missing), the record kind in bits 4-5 and the
+ * time kind in bits 6-7. For a frequency marker, the frequency in kHz is
+ * stored in blocks A (high half) and B (low half).
+ *
+ * The chunk headers make up the index of the file: they are enough to find
+ * the chunk that contains any given time.
+ *
+ * All values are big-endian.
+ */
+public final class BinaryGroupLog {
+	static final byte[] MAGIC = "RDSGROUP".getBytes(StandardCharsets.US_ASCII);
+	static final int VERSION = 1;
+	
+	public static final int HEADER_SIZE = 64;
+	public static final int CHUNK_CAPACITY = 4096;
+	
+	static final int CHUNK_HEADER_SIZE = 32;
+	static final int BLOCKS_OFFSET = CHUNK_HEADER_SIZE;
+	static final int FLAGS_OFFSET = BLOCKS_OFFSET + 4 * 2 * CHUNK_CAPACITY;
+	static final int DELTAS_OFFSET = FLAGS_OFFSET + CHUNK_CAPACITY;
+	public static final int CHUNK_SIZE = DELTAS_OFFSET + 4 * CHUNK_CAPACITY;
+	
+	// offsets in the chunk header
+	static final int COUNT = 0;
+	static final int TIME_FLAGS = 4;
+	static final int BASE_SEQUENTIAL = 8;
+	static final int BASE_REAL = 16;
+	
+	// time flags of a chunk
+	static final int HAS_SEQUENTIAL = 1;
+	static final int HAS_REAL = 2;
+	
+	// record kinds
+	static final int KIND_GROUP = 0;
+	static final int KIND_IGNORED_GROUP = 1;
+	static final int KIND_FREQUENCY = 2;
+	static final int KIND_STATION_CHANGE = 3;
+	static final int KIND_SHIFT = 4;
+	
+	// time kinds
+	static final int TIME_NONE = 0;
+	static final int TIME_SEQUENTIAL = 1;
+	static final int TIME_REAL = 2;
+	static final int TIME_SHIFT = 6;
+	
+	private BinaryGroupLog() {}
+	
+	/**
+	 * Tells whether a file is a binary group log, by looking at its header.
+	 */
+	public static boolean isBinaryGroupLog(File file) throws IOException {
+		InputStream is = new FileInputStream(file);
+		try {
+			return hasMagic(is);
+		} finally {
+			is.close();
+		}
+	}
+	
+	/* package */ static boolean hasMagic(InputStream is) throws IOException {
+		byte[] start = new byte[MAGIC.length];
+		try {
+			new DataInputStream(is).readFully(start);
+		} catch(IOException e) {
+			return false;
+		}
+		return Arrays.equals(start, MAGIC);
+	}
+	
+	/**
+	 * Converts a group log. A binary group log is converted to the hexgroup
+	 * format. Any other input file (hexgroups, or bit-level formats) is
+	 * converted to a binary group log.
+	 * 
+	 * @return the number of events written
+	 */
+	public static long convert(File in, File out, PrintStream console) throws IOException {
+		GroupReader reader;
+		GroupLogWriter writer;
+		FileInputStream is = null;
+		if(isBinaryGroupLog(in)) {
+			reader = new BinaryGroupLogReader(in);
+			writer = new HexGroupLogWriter(out);
+		} else {
+			is = new FileInputStream(in);
+			try {
+				reader = FileFormatGuesser.createReader(is, console);
+				writer = new BinaryGroupLogWriter(out);
+			} catch(IOException e) {
+				is.close();
+				throw e;
+			}
+		}
+		
+		long count = 0;
+		try {
+			while(true) {
+				GroupReaderEvent event = reader.getGroup();
+				if(event == null) continue;
+				writer.write(event);
+				count++;
+			}
+		} catch(GroupReader.EndOfStream eos) {
+			// conversion finished
+		} finally {
+			writer.close();
+			if(reader instanceof BinaryGroupLogReader) ((BinaryGroupLogReader) reader).close();
+			if(is != null) is.close();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import static eu.jacquet80.rds.input.BinaryGroupLog.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Date;
+
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.input.group.StationChangeEvent;
+import eu.jacquet80.rds.log.RDSTime;
+import eu.jacquet80.rds.log.RealTime;
+import eu.jacquet80.rds.log.SequentialTime;
+
+/**
+ * Reads a binary group log, see {@link BinaryGroupLog}.
+ *
+ * The file is memory-mapped, a window of a few chunks at a time, so that
+ * logs larger than the address space can be read as well. The chunk headers
+ * are read when the file is opened, which makes it possible to seek to any
+ * record or any time.
+ */
+public class BinaryGroupLogReader extends GroupReader {
+	private final static int WINDOW_CHUNKS = 64;
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int chunkCount;
+	
+	// index built from the chunk headers
+	private final int[] counts;
+	private final long[] firstRecord;
+	private final long recordCount;
+	private final int[] timeFlags;
+	private final int[] baseSequential;
+	private final long[] baseReal;
+	
+	private MappedByteBuffer window;
+	private int windowStart = -1;
+	
+	private int chunk = 0;
+	private int index = 0;
+	
+	public BinaryGroupLogReader(File f) throws IOException {
+		file = new RandomAccessFile(f, "r");
+		channel = file.getChannel();
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(header, 0);
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		if(! Arrays.equals(magic, MAGIC)) {
+			file.close();
+			throw new IOException("Not a binary group log: " + f);
+		}
+		int version = header.getInt();
+		int capacity = header.getInt();
+		if(version != VERSION || capacity != CHUNK_CAPACITY) {
+			file.close();
+			throw new IOException("Unsupported binary group log version " + version);
+		}
+		
+		// a chunk being written may be incomplete, ignore it
+		chunkCount = (int) ((channel.size() - HEADER_SIZE) / CHUNK_SIZE);
+		counts = new int[chunkCount];
+		firstRecord = new long[chunkCount];
+		timeFlags = new int[chunkCount];
+		baseSequential = new int[chunkCount];
+		baseReal = new long[chunkCount];
+		
+		ByteBuffer chunkHeader = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+		long total = 0;
+		for(int i=0; i<chunkCount; i++) {
+			chunkHeader.clear();
+			readFully(chunkHeader, HEADER_SIZE + (long) i * CHUNK_SIZE);
+			counts[i] = Math.min(Math.max(chunkHeader.getInt(COUNT), 0), CHUNK_CAPACITY);
+			timeFlags[i] = chunkHeader.getInt(TIME_FLAGS);
+			baseSequential[i] = chunkHeader.getInt(BASE_SEQUENTIAL);
+			baseReal[i] = chunkHeader.getLong(BASE_REAL);
+			firstRecord[i] = total;
+			total += counts[i];
+		}
+		recordCount = total;
+	}
+	
+	private void readFully(ByteBuffer buf, long pos) throws IOException {
+		while(buf.hasRemaining()) {
+			int n = channel.read(buf, pos);
+			if(n < 0) throw new IOException("Truncated binary group log");
+			pos += n;
+		}
+		buf.flip();
+	}
+	
+	/**
+	 * Returns the mapped window that contains the given chunk.
+	 */
+	private ByteBuffer window(int c) throws IOException {
+		int start = c - c % WINDOW_CHUNKS;
+		if(start != windowStart) {
+			int n = Math.min(WINDOW_CHUNKS, chunkCount - start);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, 
+					HEADER_SIZE + (long) start * CHUNK_SIZE, (long) n * CHUNK_SIZE);
+			windowStart = start;
+		}
+		return window;
+	}
+	
+	@Override
+	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+		while(chunk < chunkCount && index >= counts[chunk]) {
+			chunk++;
+			index = 0;
+		}
+		if(chunk >= chunkCount) throw new EndOfStream();
+		
+		ByteBuffer w = window(chunk);
+		int base = (chunk - windowStart) * CHUNK_SIZE;
+		int i = index++;
+		
+		int flags = w.get(base + FLAGS_OFFSET + i) & 0xFF;
+		RDSTime time = time(w, base, chunk, i, flags);
+		
+		switch((flags >> KIND_SHIFT) & 3) {
+		case KIND_FREQUENCY:
+			return new FrequencyChangeEvent(time, 
+					(block(w, base, 0, i) << 16) | block(w, base, 1, i));
+			
+		case KIND_STATION_CHANGE:
+			return new StationChangeEvent(time);
+			
+		default:
+			int[] blocks = new int[4];
+			for(int b=0; b<4; b++) {
+				blocks[b] = (flags & (1 << b)) != 0 ? -1 : block(w, base, b, i);
+			}
+			return new GroupEvent(time, blocks, ((flags >> KIND_SHIFT) & 3) == KIND_IGNORED_GROUP);
+		}
+	}
+	
+	private static int block(ByteBuffer w, int base, int b, int i) {
+		return w.getShort(base + BLOCKS_OFFSET + 2 * (b * CHUNK_CAPACITY + i)) & 0xFFFF;
+	}
+	
+	private RDSTime time(ByteBuffer w, int base, int c, int i, int flags) {
+		int delta = w.getInt(base + DELTAS_OFFSET + 4 * i);
+		switch(flags >> TIME_SHIFT) {
+		case TIME_SEQUENTIAL: return new SequentialTime(baseSequential[c] + delta);
+		case TIME_REAL: return new RealTime(new Date(baseReal[c] + delta));
+		default: return null;
+		}
+	}
+	
+	/**
+	 * @return the number of records (groups and markers) in the log
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+	
+	/**
+	 * @return the number of the record that will be returned next
+	 */
+	public long getPosition() {
+		if(chunk >= chunkCount) return recordCount;
+		return firstRecord[chunk] + Math.min(index, counts[chunk]);
+	}
+	
+	/**
+	 * Positions the reader on a given record.
+	 */
+	public void seekToRecord(long record) {
+		if(record >= recordCount) {
+			chunk = chunkCount;
+			index = 0;
+			return;
+		}
+		int pos = Arrays.binarySearch(firstRecord, Math.max(record, 0));
+		if(pos < 0) pos = -pos - 2;
+		
+		// skip empty chunks that start at the same record
+		while(counts[pos] == 0) pos++;
+		chunk = pos;
+		index = (int) (Math.max(record, 0) - firstRecord[pos]);
+	}
+	
+	/**
+	 * Positions the reader on the first record whose real time is at least
+	 * the given date.
+	 */
+	public void seek(Date date) throws IOException {
+		seekToTime(TIME_REAL, date.getTime());
+	}
+	
+	/**
+	 * Positions the reader on the first record whose sequential time is at
+	 * least the given value.
+	 */
+	public void seek(SequentialTime time) throws IOException {
+		seekToTime(TIME_SEQUENTIAL, time.getGroupTime());
+	}
+	
+	/**
+	 * Positions the reader at a given offset from the beginning of the log.
+	 * If the log contains real time stamps, the offset is relative to the
+	 * first of them. Otherwise, the sequential time is assumed to count bits
+	 * (see {@link SequentialTime}).
+	 * 
+	 * @param offsetMillis the offset in milliseconds
+	 */
+	public void seek(long offsetMillis) throws IOException {
+		for(int c=0; c<chunkCount; c++) {
+			if((timeFlags[c] & HAS_REAL) != 0) {
+				seekToTime(TIME_REAL, baseReal[c] + offsetMillis);
+				return;
+			}
+		}
+		for(int c=0; c<chunkCount; c++) {
+			if((timeFlags[c] & HAS_SEQUENTIAL) != 0) {
+				seekToTime(TIME_SEQUENTIAL, baseSequential[c] + (long) (offsetMillis * 1.1875));
+				return;
+			}
+		}
+		seekToRecord(0);
+	}
+	
+	private void seekToTime(int timeKind, long t) throws IOException {
+		int flag = timeKind == TIME_REAL ? HAS_REAL : HAS_SEQUENTIAL;
+		
+		// binary search for the last chunk that starts before t, among those
+		// which contain this kind of time
+		int lo = 0, hi = chunkCount - 1, start = 0;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = mid;
+			while(c <= hi && (timeFlags[c] & flag) == 0) c++;
+			if(c > hi) {
+				hi = mid - 1;
+			} else if(chunkBase(timeKind, c) <= t) {
+				start = c;
+				lo = c + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		
+		// then scan the records
+		for(int c=start; c<chunkCount; c++) {
+			if((timeFlags[c] & flag) == 0) continue;
+			ByteBuffer w = window(c);
+			int base = (c - windowStart) * CHUNK_SIZE;
+			long chunkBase = chunkBase(timeKind, c);
+			for(int i=0; i<counts[c]; i++) {
+				int flags = w.get(base + FLAGS_OFFSET + i) & 0xFF;
+				if((flags >> TIME_SHIFT) != timeKind) continue;
+				if(chunkBase + w.getInt(base + DELTAS_OFFSET + 4 * i) >= t) {
+					chunk = c;
+					index = i;
+					return;
+				}
+			}
+		}
+		chunk = chunkCount;
+		index = 0;
+	}
+	
+	private long chunkBase(int timeKind, int c) {
+		return timeKind == TIME_REAL ? baseReal[c] : baseSequential[c];
+	}
+	
+	public void close() throws IOException {
+		window = null;
+		file.close();
+	}
+}
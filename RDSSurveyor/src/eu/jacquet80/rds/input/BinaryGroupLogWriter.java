@@ -0,0 +1,216 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import static eu.jacquet80.rds.input.BinaryGroupLog.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.input.group.StationChangeEvent;
+import eu.jacquet80.rds.log.RDSTime;
+import eu.jacquet80.rds.log.RealTime;
+import eu.jacquet80.rds.log.SequentialTime;
+
+/**
+ * Writes groups to a binary group log, see {@link BinaryGroupLog}.
+ *
+ * The current chunk is kept in memory. It is written when it is full, and
+ * when the log is flushed: in this case, only the records added since the
+ * previous flush are written, and the chunk is completed in place later on.
+ */
+public class BinaryGroupLogWriter implements GroupLogWriter {
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+	
+	/** Index of the current chunk in the file */
+	private long chunkIndex = 0;
+	
+	/** Number of records in the current chunk */
+	private int count = 0;
+	
+	/** Number of records of the current chunk already written to the file */
+	private int written = 0;
+	
+	private int timeFlags = 0;
+	private int baseSequential;
+	private long baseReal;
+	
+	private boolean closed = false;
+	
+	public BinaryGroupLogWriter(File of) throws IOException {
+		file = new RandomAccessFile(of, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(CHUNK_CAPACITY);
+		header.rewind();
+		writeFully(header, 0);
+	}
+	
+	@Override
+	public void write(GroupReaderEvent event) throws IOException {
+		int kind;
+		int mask = 0;
+		int hi = 0, lo = 0, c = 0, d = 0;
+		
+		if(event instanceof GroupEvent) {
+			GroupEvent group = (GroupEvent) event;
+			kind = group.ignored ? KIND_IGNORED_GROUP : KIND_GROUP;
+			int[] blocks = group.blocks;
+			for(int i=0; i<4; i++) {
+				if(blocks[i] < 0) mask |= 1 << i;
+			}
+			hi = Math.max(blocks[0], 0);
+			lo = Math.max(blocks[1], 0);
+			c = Math.max(blocks[2], 0);
+			d = Math.max(blocks[3], 0);
+		} else if(event instanceof FrequencyChangeEvent) {
+			kind = KIND_FREQUENCY;
+			int f = ((FrequencyChangeEvent) event).frequency;
+			hi = f >>> 16;
+			lo = f & 0xFFFF;
+		} else if(event instanceof StationChangeEvent) {
+			kind = KIND_STATION_CHANGE;
+		} else {
+			return;
+		}
+		
+		// compute the time delta, starting a new chunk if it does not fit
+		RDSTime time = event.getTime();
+		int timeKind = TIME_NONE;
+		int delta = 0;
+		if(time instanceof SequentialTime) {
+			timeKind = TIME_SEQUENTIAL;
+			int t = ((SequentialTime) time).getGroupTime();
+			if((timeFlags & HAS_SEQUENTIAL) == 0) {
+				timeFlags |= HAS_SEQUENTIAL;
+				baseSequential = t;
+			}
+			long dl = (long) t - baseSequential;
+			if(dl != (int) dl) {
+				newChunk();
+				write(event);
+				return;
+			}
+			delta = (int) dl;
+		} else if(time instanceof RealTime) {
+			timeKind = TIME_REAL;
+			long t = time.getRealTime(null, null).getTime();
+			if((timeFlags & HAS_REAL) == 0) {
+				timeFlags |= HAS_REAL;
+				baseReal = t;
+			}
+			long dl = t - baseReal;
+			if(dl != (int) dl) {
+				newChunk();
+				write(event);
+				return;
+			}
+			delta = (int) dl;
+		}
+		
+		chunk.putShort(BLOCKS_OFFSET + 2 * count, (short) hi);
+		chunk.putShort(BLOCKS_OFFSET + 2 * (CHUNK_CAPACITY + count), (short) lo);
+		chunk.putShort(BLOCKS_OFFSET + 2 * (2 * CHUNK_CAPACITY + count), (short) c);
+		chunk.putShort(BLOCKS_OFFSET + 2 * (3 * CHUNK_CAPACITY + count), (short) d);
+		chunk.put(FLAGS_OFFSET + count, (byte) (mask | (kind << KIND_SHIFT) | (timeKind << TIME_SHIFT)));
+		chunk.putInt(DELTAS_OFFSET + 4 * count, delta);
+		count++;
+		
+		if(count == CHUNK_CAPACITY) newChunk();
+	}
+	
+	private void newChunk() throws IOException {
+		flush();
+		chunkIndex++;
+		count = 0;
+		written = 0;
+		timeFlags = 0;
+		Arrays.fill(chunk.array(), (byte) 0);
+	}
+	
+	/**
+	 * Writes the records added since the last flush, and the chunk header.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if(count == written) return;
+		
+		long pos = HEADER_SIZE + chunkIndex * CHUNK_SIZE;
+		
+		chunk.putInt(COUNT, count);
+		chunk.putInt(TIME_FLAGS, timeFlags);
+		chunk.putInt(BASE_SEQUENTIAL, baseSequential);
+		chunk.putLong(BASE_REAL, baseReal);
+		
+		if(written == 0) {
+			// new chunk: write it entirely, so that the file is always
+			// made of complete chunks
+			chunk.clear();
+			writeFully(chunk, pos);
+		} else {
+			writeRange(pos, 0, CHUNK_HEADER_SIZE);
+			for(int b=0; b<4; b++) {
+				writeRange(pos, BLOCKS_OFFSET + 2 * (b * CHUNK_CAPACITY + written), 2 * (count - written));
+			}
+			writeRange(pos, FLAGS_OFFSET + written, count - written);
+			writeRange(pos, DELTAS_OFFSET + 4 * written, 4 * (count - written));
+		}
+		written = count;
+	}
+	
+	private void writeRange(long chunkPos, int offset, int length) throws IOException {
+		ByteBuffer slice = chunk.duplicate();
+		slice.limit(offset + length).position(offset);
+		writeFully(slice, chunkPos + offset);
+	}
+	
+	private void writeFully(ByteBuffer buf, long pos) throws IOException {
+		while(buf.hasRemaining()) {
+			pos += channel.write(buf, pos);
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(closed) return;
+		closed = true;
+		flush();
+		file.close();
+	}
+}
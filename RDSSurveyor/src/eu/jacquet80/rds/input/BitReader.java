@@ -24,9 +24,73 @@
 */
 
 package eu.jacquet80.rds.input;
+import java.io.EOFException;
 import java.io.IOException;
 
 
 public abstract class BitReader extends RDSReader {
+	/**
+	 * Maximum number of bits returned at once by the default implementation
+	 * of {@link #readBits(long[], int)}: one block.
+	 */
+	private final static int DEFAULT_MAX_BITS = 26;
+	
 	public abstract boolean getBit() throws IOException;
+	
+	/**
+	 * Reads several bits at once. Bits are packed into 64-bit words, most
+	 * significant bit first: the n-th bit read is stored at bit
+	 * {@code 63 - n % 64} of {@code dst[n / 64]}. Unused bits of the last
+	 * word are set to zero.
+	 * 
+	 * The default implementation calls {@link #getBit()} repeatedly, for at
+	 * most one block: {@link #getBit()} waits for each bit, so reading more
+	 * would hold back the bits of live sources. Subclasses should override
+	 * it when they can produce bits in bulk.
+	 * 
+	 * @param dst the array in which to store the bits
+	 * @param maxBits the maximum number of bits to read
+	 * @return the number of bits actually read, at least one, or -1 if the
+	 * end of the stream has been reached
+	 * @throws IOException
+	 */
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = 0;
+		long word = 0;
+		maxBits = Math.min(maxBits, DEFAULT_MAX_BITS);
+		try {
+			for(; n < maxBits; n++) {
+				word <<= 1;
+				if(getBit()) word |= 1;
+				if((n & 63) == 63) {
+					dst[n >> 6] = word;
+					word = 0;
+				}
+			}
+		} catch(EOFException e) {
+			if(n == 0) return -1;
+			word >>>= 1;    // the last shift did not get a bit
+		}
+		if((n & 63) != 0) dst[n >> 6] = word << (64 - (n & 63));
+		return n;
+	}
+	
+	/**
+	 * Stores the {@code count} least significant bits of {@code value} at
+	 * position {@code pos} of a bit array packed as in
+	 * {@link #readBits(long[], int)}. Bits after {@code pos + count} in the
+	 * words that are written are cleared, so bits must be stored in order.
+	 */
+	protected static void putBits(long[] dst, int pos, long value, int count) {
+		int idx = pos >> 6;
+		int shift = 64 - (pos & 63) - count;
+		value &= count == 64 ? -1L : (1L << count) - 1;
+		long mask = (pos & 63) == 0 ? 0 : -1L << (64 - (pos & 63));
+		if(shift >= 0) {
+			dst[idx] = (dst[idx] & mask) | (value << shift);
+		} else {
+			dst[idx] = (dst[idx] & mask) | (value >>> -shift);
+			dst[idx + 1] = value << (64 + shift);
+		}
+	}
 }
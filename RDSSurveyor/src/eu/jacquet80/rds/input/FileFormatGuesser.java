@@ -1,14 +1,16 @@
 package eu.jacquet80.rds.input;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import eu.jacquet80.rds.core.BitStreamSynchronizer;
 
@@ -20,8 +22,27 @@ public class FileFormatGuesser {
 			Pattern.compile("[01]{40}");
 	
 	private static GroupReader createReader(InputStream is) throws IOException {
+		return createReader(is, System.out);
+	}
+	
+	/**
+	 * Creates a reader for a stream whose format is guessed from its first
+	 * bytes. Messages about the detected format, and the bit-level decoding
+	 * traces if any, are printed to {@code console}.
+	 */
+	public static GroupReader createReader(InputStream is, PrintStream console) throws IOException {
 		char[] guessBuffer = new char[GUESS_BUFFER_SIZE];
 		BufferedInputStream bis = new BufferedInputStream(is);
+		
+		// compressed logs
+		bis.mark(2);
+		int b0 = bis.read(), b1 = bis.read();
+		bis.reset();
+		if(b0 == 0x1F && b1 == 0x8B) {
+			console.println("Detected a gzip-compressed file.");
+			return createReader(new GZIPInputStream(bis), console);
+		}
+		
 		InputStreamReader isr = new InputStreamReader(bis, "ASCII");
 		bis.mark(GUESS_BUFFER_SIZE+1);
 		int guessCharCount = isr.read(guessBuffer);
@@ -32,38 +53,62 @@ public class FileFormatGuesser {
 
 		String guessString = new String(guessBuffer, 0, guessCharCount);
 		
-		if(guessString.startsWith("% RDS hexgroups") ||
+		if(guessString.startsWith(new String(BinaryGroupLog.MAGIC, "ASCII"))) {
+			// the binary group log reader needs random access
+			throw new IOException("Binary group logs can only be read from a local file.");
+		} else if(guessString.startsWith("% RDS hexgroups") ||
 				guessString.startsWith("<recorder=\"RDS Spy\"") ||
 				HEXGROUP_PATTERN.matcher(guessString).matches()) {
 			// grouphexfile
-			System.out.println("Detected a group-level file.");
+			console.println("Detected a group-level file.");
 			bis.reset();
-			return new HexFileGroupReader(new BufferedReader(new InputStreamReader(bis)));
+			return new HexFileGroupReader(bis);
 		} else if (BINSTR_PATTERN.matcher(guessString).matches()) {
 			// binstrfile
-			System.out.println("Detected a binary string file.");
+			console.println("Detected a binary string file.");
 			bis.reset();
-			return new BitStreamSynchronizer(System.out, new BinStringFileBitReader(bis));
+			return new BitStreamSynchronizer(console, new BinStringFileBitReader(bis));
 		} else if ((guessString.length() >= 2) && (guessString.codePointAt(0) == 0xfffd) && (guessString.codePointAt(1) == 0x6)) {
 			// syncbinfile
-			System.out.println("Detected a synchronized binary file.");
+			console.println("Detected a synchronized binary file.");
 			bis.reset();
-			return new BitStreamSynchronizer(System.out, new SyncBinaryFileBitReader(bis));
+			return new BitStreamSynchronizer(console, new SyncBinaryFileBitReader(bis));
 		} else {
 			// binfile
-			System.out.println("Detected a binary file.");
+			console.println("Detected a binary file.");
 			bis.reset();
-			return new BitStreamSynchronizer(System.out, new BinaryFileBitReader(bis));
+			return new BitStreamSynchronizer(console, new BinaryFileBitReader(bis));
 		}
 		
 		//throw new IOException("Could not identify the file format");
 	}
 	
 	public static GroupReader createReader(URL url) throws IOException {
+		if("file".equals(url.getProtocol())) {
+			try {
+				return createReader(new File(url.toURI()));
+			} catch(URISyntaxException e) {
+				// fall back to a stream
+			} catch(IllegalArgumentException e) {
+				// fall back to a stream
+			}
+		}
 		return createReader(url.openStream());
 	}
 	
 	public static GroupReader createReader(File file) throws IOException {
-		return createReader(new FileInputStream(file));
+		return createReader(file, System.out);
+	}
+	
+	/**
+	 * Same as {@link #createReader(InputStream, PrintStream)}, but also
+	 * recognizes binary group logs, which need random access to the file.
+	 */
+	public static GroupReader createReader(File file, PrintStream console) throws IOException {
+		if(BinaryGroupLog.isBinaryGroupLog(file)) {
+			console.println("Detected a binary group log.");
+			return new BinaryGroupLogReader(file);
+		}
+		return createReader(new FileInputStream(file), console);
 	}
 }
@@ -27,10 +27,16 @@ package eu.jacquet80.rds.input;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -42,26 +48,87 @@ import eu.jacquet80.rds.log.RDSTime;
 import eu.jacquet80.rds.log.RealTime;
 import eu.jacquet80.rds.log.SequentialTime;
 
+/**
+ * Reads group-level files, in the hexgroup format written by RDS Surveyor or
+ * in the RDS Spy format.
+ *
+ * When reading from a file or a stream, lines are scanned directly from a
+ * byte buffer, without creating intermediate strings. Only lines that this
+ * scanner does not understand (comments, metadata, or malformed lines) are
+ * handed over to {@link #parseHexLine(String, RDSTime)}.
+ */
 public class HexFileGroupReader extends GroupReader {
-	private final static Pattern FIRST_NUMBER = Pattern.compile(".*\\D(\\d+)");
+	private final static Pattern FIRST_NUMBER = Pattern.compile("\\D*(\\d+).*");
 	private final static Pattern RDS_SPY_DATE_FORMAT = 
 			Pattern.compile(".*@(\\d{4})/(\\d{2})/(\\d{2})\\s+(\\d{2}):(\\d{2}):(\\d{2}).(\\d{2,4})$");
+	private static final Pattern SPACE = Pattern.compile("\\s+");
+	private final static int BUFFER_SIZE = 1 << 16;
+	
 	private final BufferedReader br;
 	private int groupTime = 0;
-	private static final Pattern SPACE = Pattern.compile("\\s+");
+	
+	// byte-level input: either a mapped file, or a buffer refilled from a stream
+	private final InputStream is;
+	private ByteBuffer buf;
+	private int pos = 0;
+	private int limit = 0;
+	private boolean eof;
+	private int lineStart, lineEnd;
+	
+	// start of the last hour seen in a time stamp, to avoid date computations
+	private int cachedHour = -1;
+	private long cachedHourMillis;
 	
 	public HexFileGroupReader(BufferedReader br) {
 		this.br = br;
+		this.is = null;
 	}
 	
-	// TODO: remove?
-	public HexFileGroupReader(File file) throws FileNotFoundException {
-		this(new BufferedReader(new FileReader(file)));
+	public HexFileGroupReader(InputStream is) {
+		this.br = null;
+		this.is = is;
+		this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+		this.eof = false;
+	}
+	
+	public HexFileGroupReader(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) {
+				// too large to be mapped at once
+				this.br = null;
+				this.is = new FileInputStream(file);
+				this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+				this.eof = false;
+			} else {
+				// the mapping remains valid after the channel is closed
+				this.br = null;
+				this.is = null;
+				this.buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				this.limit = (int) size;
+				this.eof = true;
+			}
+		} finally {
+			raf.close();
+		}
 	}
 	
 	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
 		GroupReaderEvent event;
 		
+		if(br == null) {
+			do {
+				if(! nextLine()) throw new EndOfStream();
+				
+				event = parseLine(buf, lineStart, lineEnd, new SequentialTime(groupTime));
+				groupTime++;
+			} while(event == null);
+			
+			return event;
+		}
+		
 		do {
 			String line = br.readLine();
 			if(line == null) throw new EndOfStream();
@@ -73,6 +140,174 @@ public class HexFileGroupReader extends GroupReader {
 		return event;
 	}
 	
+	/**
+	 * Finds the next line in the buffer, refilling it if needed.
+	 * 
+	 * @return {@code false} at the end of the input
+	 */
+	private boolean nextLine() throws IOException {
+		int scan = pos;
+		while(true) {
+			for(int i=scan; i<limit; i++) {
+				if(buf.get(i) == '\n') {
+					lineStart = pos;
+					lineEnd = i;
+					pos = i + 1;
+					return true;
+				}
+			}
+			
+			if(eof) {
+				if(pos == limit) return false;
+				lineStart = pos;
+				lineEnd = limit;
+				pos = limit;
+				return true;
+			}
+			
+			// move the partial line to the beginning of the buffer, and read more
+			scan = limit - pos;
+			byte[] b = buf.array();
+			if(pos > 0) {
+				System.arraycopy(b, pos, b, 0, limit - pos);
+				limit -= pos;
+				pos = 0;
+			}
+			if(limit == b.length) {
+				buf = ByteBuffer.wrap(Arrays.copyOf(b, 2 * b.length));
+				b = buf.array();
+			}
+			int n = is.read(b, limit, b.length - limit);
+			if(n < 0) eof = true;
+			else limit += n;
+		}
+	}
+	
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == 0x0B;
+	}
+	
+	private static int hexValue(byte c) {
+		if(c >= '0' && c <= '9') return c - '0';
+		if(c >= 'A' && c <= 'F') return c - 'A' + 10;
+		if(c >= 'a' && c <= 'f') return c - 'a' + 10;
+		return -1;
+	}
+	
+	/**
+	 * Parses {@code n} decimal digits.
+	 * 
+	 * @return the value, or -1 if a character is not a digit
+	 */
+	private static int decimal(ByteBuffer b, int p, int n) {
+		int v = 0;
+		for(int i=p; i<p+n; i++) {
+			int d = b.get(i) - '0';
+			if(d < 0 || d > 9) return -1;
+			v = 10 * v + d;
+		}
+		return v;
+	}
+	
+	/**
+	 * Parses a line from the buffer. The result is the same as that of
+	 * {@link #parseHexLine(String, RDSTime)}.
+	 */
+	private GroupReaderEvent parseLine(ByteBuffer b, int start, int end, RDSTime time) throws IOException {
+		while(start < end && isSpace(b.get(start))) start++;
+		while(end > start && isSpace(b.get(end - 1))) end--;
+		
+		// ignore empty lines, and RDS Spy-specific lines
+		if(start == end || b.get(start) == '<') return null;
+		
+		int[] blocks = new int[4];
+		int p = start;
+		for(int i=0; i<4; i++) {
+			if(i > 0) {
+				if(p == end || ! isSpace(b.get(p))) return parseSlowly(b, start, end, time);
+				while(isSpace(b.get(p))) p++;
+			}
+			if(p + 4 > end) return parseSlowly(b, start, end, time);
+			
+			if(b.get(p) == '-' && b.get(p+1) == '-' && b.get(p+2) == '-' && b.get(p+3) == '-') {
+				blocks[i] = -1;
+			} else {
+				int v = 0;
+				for(int k=p; k<p+4; k++) {
+					int h = hexValue(b.get(k));
+					if(h < 0) return parseSlowly(b, start, end, time);
+					v = (v << 4) | h;
+				}
+				blocks[i] = v;
+			}
+			p += 4;
+		}
+		if(p < end && ! isSpace(b.get(p))) return parseSlowly(b, start, end, time);
+		
+		// the time stamp, if any, follows the last '@' of the line
+		int at = end - 1;
+		while(at >= p && b.get(at) != '@') at--;
+		if(at >= p) {
+			long millis = parseDate(b, at + 1, end);
+			if(millis != Long.MIN_VALUE) time = new RealTime(new Date(millis));
+		}
+		
+		return new GroupEvent(time, blocks, false);
+	}
+	
+	/**
+	 * Parses a date such as {@code 2010/02/12 14:30:00.00}, with 2 to 4
+	 * digits for the fraction of second, ending exactly at {@code end}.
+	 * 
+	 * @return the time in milliseconds, or {@code Long.MIN_VALUE}
+	 */
+	private long parseDate(ByteBuffer b, int p, int end) {
+		if(end - p < 19 + 2) return Long.MIN_VALUE;
+		int year = decimal(b, p, 4);
+		int month = decimal(b, p + 5, 2);
+		int day = decimal(b, p + 8, 2);
+		if(year < 0 || month < 0 || day < 0 || b.get(p + 4) != '/' || b.get(p + 7) != '/') return Long.MIN_VALUE;
+		
+		p += 10;
+		if(! isSpace(b.get(p))) return Long.MIN_VALUE;
+		while(p < end && isSpace(b.get(p))) p++;
+		
+		int fracDigits = end - p - 9;
+		if(fracDigits < 2 || fracDigits > 4) return Long.MIN_VALUE;
+		int hour = decimal(b, p, 2);
+		int minute = decimal(b, p + 3, 2);
+		int second = decimal(b, p + 6, 2);
+		int frac = decimal(b, p + 9, fracDigits);
+		if(hour < 0 || minute < 0 || second < 0 || frac < 0 
+				|| b.get(p + 2) != ':' || b.get(p + 5) != ':') return Long.MIN_VALUE;
+		
+		int millis;
+		switch(fracDigits) {
+		case 2: millis = frac * 10; break;
+		case 3: millis = frac; break;
+		default: millis = (frac + 5) / 10;
+		}
+		
+		// the calendar is only needed once per hour of log
+		int hourKey = ((year * 13 + month) * 32 + day) * 24 + hour;
+		if(hourKey != cachedHour) {
+			cachedHourMillis = new GregorianCalendar(year, month - 1, day, hour, 0, 0).getTimeInMillis();
+			cachedHour = hourKey;
+		}
+		return cachedHourMillis + minute * 60000L + second * 1000L + millis;
+	}
+	
+	private static GroupReaderEvent parseSlowly(ByteBuffer b, int start, int end, RDSTime time) throws IOException {
+		byte[] line = new byte[end - start];
+		for(int i=0; i<line.length; i++) line[i] = b.get(start + i);
+		try {
+			return parseHexLine(new String(line, StandardCharsets.ISO_8859_1), time);
+		} catch(NumberFormatException e) {
+			// ignore incorrect lines
+			return null;
+		}
+	}
+	
 	/* package */ static GroupReaderEvent parseHexLine(String line, RDSTime time) throws IOException {
 		line = line.trim();
 		
@@ -120,7 +355,7 @@ public class HexFileGroupReader extends GroupReader {
 					Integer.parseInt(m.group(4)), 
 					Integer.parseInt(m.group(5)),
 					Integer.parseInt(m.group(6)));
-			c.set(Calendar.MILLISECOND, (int)(Float.parseFloat("0." + m.group(7)) * 1000));
+			c.set(Calendar.MILLISECOND, Math.round(Float.parseFloat("0." + m.group(7)) * 1000));
 			time = new RealTime(c.getTime());
 		}
 
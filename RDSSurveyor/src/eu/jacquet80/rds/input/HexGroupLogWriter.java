@@ -0,0 +1,104 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEventVisitor;
+import eu.jacquet80.rds.input.group.StationChangeEvent;
+
+/**
+ * Writes groups in the text format read by {@link HexFileGroupReader}: one
+ * line per group, with four hexadecimal blocks followed by the time.
+ */
+public class HexGroupLogWriter implements GroupLogWriter {
+	private final PrintWriter writer;
+	
+	public HexGroupLogWriter(File of) throws IOException {
+		this(new PrintWriter(of));
+	}
+	
+	/**
+	 * Writes to a stream, for instance a compressed one. The stream is
+	 * buffered, and closed when this writer is closed.
+	 */
+	public HexGroupLogWriter(OutputStream os) {
+		this(new PrintWriter(new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.US_ASCII))));
+	}
+	
+	private HexGroupLogWriter(PrintWriter writer) {
+		this.writer = writer;
+		writer.println("% RDS hexgroups");
+	}
+	
+	@Override
+	public void write(GroupReaderEvent event) {
+		event.accept(new GroupReaderEventVisitor() {
+			@Override
+			public void visit(FrequencyChangeEvent freqChangeEvent) {
+				writer.print("% Freq " + freqChangeEvent.frequency + ", date=" + 
+						freqChangeEvent.getTime().toLongString());
+				writer.println();
+			}
+			
+			@Override
+			public void visit(GroupEvent groupEvent) {
+				for(int i=0; i<4; i++) {
+					if(groupEvent.blocks[i]>=0) writer.printf("%04X ", groupEvent.blocks[i]);
+					else writer.print("---- ");
+				}
+				writer.print("@" + groupEvent.getTime().toLongString());
+				writer.println();
+			}
+
+			@Override
+			public void visit(StationChangeEvent stationChangeEvent) {
+				// not represented in this format
+			}
+		});
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		// checkError() flushes the stream, and reports errors, which PrintWriter
+		// does not throw
+		if(writer.checkError()) throw new IOException("Could not write the group log");
+	}
+	
+	@Override
+	public void close() {
+		writer.close();
+	}
+}
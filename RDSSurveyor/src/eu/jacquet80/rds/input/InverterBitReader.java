@@ -45,5 +45,14 @@ public class InverterBitReader extends BitReader {
 	public boolean getBit() throws IOException {
 		return !baseReader.getBit();
 	}
+	
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = baseReader.readBits(dst, maxBits);
+		if(n < 0) return n;
+		for(int i=0; i<n>>6; i++) dst[i] = ~dst[i];
+		if((n & 63) != 0) dst[n>>6] ^= -1L << (64 - (n & 63));
+		return n;
+	}
 
 }
@@ -0,0 +1,163 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+/**
+ * Writes a group log split into several files, a new file being started
+ * when the current one reaches a given size or a given age.
+ *
+ * Files are named after a template file, with the date at which they were
+ * started: {@code log.rds} gives {@code log_20100212_143000.rds}, etc. The
+ * last frequency is repeated at the beginning of every file, so that each
+ * file can be decoded independently.
+ */
+public class RotatingGroupLogWriter implements GroupLogWriter {
+	public static enum Format {
+		HEX(""),
+		HEX_GZIP(".gz"),
+		BINARY("");
+		
+		private final String suffix;
+		
+		private Format(String suffix) {
+			this.suffix = suffix;
+		}
+	}
+	
+	/** Number of events between two checks of the file size */
+	private final static int SIZE_CHECK_EVENTS = 256;
+	
+	private final File template;
+	private final Format format;
+	private final long maxBytes;
+	private final long maxMillis;
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
+	
+	private GroupLogWriter current;
+	private File currentFile;
+	private long openedAt;
+	private int sinceSizeCheck = 0;
+	private FrequencyChangeEvent lastFrequency;
+	
+	/**
+	 * @param template the file name template
+	 * @param format the format of the files
+	 * @param maxBytes the maximum size of a file, or 0 for no limit
+	 * @param maxMillis the maximum duration of a file, or 0 for no limit
+	 */
+	public RotatingGroupLogWriter(File template, Format format, long maxBytes, long maxMillis) {
+		this.template = template;
+		this.format = format;
+		this.maxBytes = maxBytes;
+		this.maxMillis = maxMillis;
+	}
+	
+	/**
+	 * Opens a group log writer for a single file.
+	 */
+	public static GroupLogWriter open(File file, Format format) throws IOException {
+		switch(format) {
+		case BINARY:
+			return new BinaryGroupLogWriter(file);
+		case HEX_GZIP:
+			// sync flush so that flushed groups can be read immediately
+			return new HexGroupLogWriter(new GZIPOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file)), 8192, true));
+		default:
+			return new HexGroupLogWriter(file);
+		}
+	}
+	
+	private boolean mustRotate() {
+		if(current == null) return true;
+		if(maxMillis > 0 && System.currentTimeMillis() - openedAt >= maxMillis) return true;
+		if(maxBytes > 0 && ++sinceSizeCheck >= SIZE_CHECK_EVENTS) {
+			sinceSizeCheck = 0;
+			// the size does not take buffered data into account, which is
+			// close enough
+			return currentFile.length() >= maxBytes;
+		}
+		return false;
+	}
+	
+	private void rotate() throws IOException {
+		if(current != null) current.close();
+		
+		openedAt = System.currentTimeMillis();
+		String name = template.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		String ext = dot > 0 ? name.substring(dot) : "";
+		String date = dateFormat.format(new Date(openedAt));
+		
+		File f = new File(template.getAbsoluteFile().getParentFile(), base + "_" + date + ext + format.suffix);
+		for(int i=1; f.exists(); i++) {
+			f = new File(template.getAbsoluteFile().getParentFile(), base + "_" + date + "_" + i + ext + format.suffix);
+		}
+		
+		currentFile = f;
+		current = open(f, format);
+		sinceSizeCheck = 0;
+		if(lastFrequency != null) current.write(lastFrequency);
+	}
+	
+	/**
+	 * @return the file currently written, or {@code null} if no event has
+	 * been written yet
+	 */
+	public File getCurrentFile() {
+		return currentFile;
+	}
+	
+	@Override
+	public void write(GroupReaderEvent event) throws IOException {
+		if(mustRotate()) rotate();
+		current.write(event);
+		if(event instanceof FrequencyChangeEvent) lastFrequency = (FrequencyChangeEvent) event;
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		if(current != null) current.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(current != null) current.close();
+		current = null;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import eu.jacquet80.rds.input.dsp.RdsModulator;
+
+/**
+ * Generates a synthetic RDS signal from a hexgroups file, for testing the
+ * decoders without radio hardware.
+ * 
+ * The output is either the bit stream, in the format read by
+ * {@code -inbinfile}, or an MPX signal, as a WAV file read by
+ * {@code -inmpxwav}, or as raw 16-bit little-endian PCM read by
+ * {@code -inaudiopipe}.
+ * 
+ * Usage: {@code SignalGenerator [options] <hexgroups file> <output file>}, with options:
+ * <ul>
+ * <li>{@code -mpx <sample rate>}: write an MPX signal, as WAV if the name
+ * of the output file ends with {@code .wav}, as raw PCM otherwise,</li>
+ * <li>{@code -ber <rate>}: bit error rate,</li>
+ * <li>{@code -bursts <rate>:<max length>}: rate of burst errors per bit,
+ * and their maximum length,</li>
+ * <li>{@code -slips <rate>}: bit slip rate,</li>
+ * <li>{@code -invert}: invert the polarity of the bit stream,</li>
+ * <li>{@code -noise <level>}: RMS level of the noise added to the MPX
+ * signal, the RDS signal having a peak level of 0.05,</li>
+ * <li>{@code -seed <seed>}: seed of the random generator of errors.</li>
+ * </ul>
+ */
+public class SignalGenerator {
+	private final static int BUFLEN = 4096;
+	
+	public static void main(String[] args) throws IOException {
+		int sampleRate = 0;
+		double noise = 0;
+		long seed = 0;
+		File in = null, out = null;
+		
+		double ber = 0, burstRate = 0, slips = 0;
+		int burstLength = 0;
+		boolean invert = false;
+		
+		for(int i=0; i<args.length; i++) {
+			if("-mpx".equals(args[i]) && i+1 < args.length) {
+				sampleRate = Integer.parseInt(args[++i]);
+			} else if("-ber".equals(args[i]) && i+1 < args.length) {
+				ber = Double.parseDouble(args[++i]);
+			} else if("-bursts".equals(args[i]) && i+1 < args.length) {
+				String[] p = args[++i].split(":");
+				burstRate = Double.parseDouble(p[0]);
+				burstLength = p.length > 1 ? Integer.parseInt(p[1]) : 10;
+			} else if("-slips".equals(args[i]) && i+1 < args.length) {
+				slips = Double.parseDouble(args[++i]);
+			} else if("-invert".equals(args[i])) {
+				invert = true;
+			} else if("-noise".equals(args[i]) && i+1 < args.length) {
+				noise = Double.parseDouble(args[++i]);
+			} else if("-seed".equals(args[i]) && i+1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if(in == null) {
+				in = new File(args[i]);
+			} else if(out == null) {
+				out = new File(args[i]);
+			} else {
+				out = null;
+				break;
+			}
+		}
+		
+		if(out == null) {
+			System.err.println("Usage: SignalGenerator [-mpx <sample rate>] [-ber <rate>] [-bursts <rate>:<max length>] "
+					+ "[-slips <rate>] [-invert] [-noise <level>] [-seed <seed>] <hexgroups file> <output file>");
+			System.exit(1);
+		}
+		
+		SyntheticBitReader bits = new SyntheticBitReader(new HexFileGroupReader(in));
+		bits.setSeed(seed);
+		bits.setBitErrorRate(ber);
+		bits.setBurstErrors(burstRate, burstLength);
+		bits.setBitSlipRate(slips);
+		bits.setInverted(invert);
+		
+		if(sampleRate == 0) {
+			OutputStream os = new BufferedOutputStream(new FileOutputStream(out));
+			try {
+				writeBits(bits, os);
+			} finally {
+				os.close();
+			}
+		} else {
+			RdsModulator modulator = new RdsModulator(sampleRate);
+			modulator.setSeed(seed);
+			modulator.setNoiseLevel(noise);
+			InputStream pcm = new PcmInputStream(bits, modulator);
+			if(out.getName().toLowerCase().endsWith(".wav")) {
+				AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+				AudioSystem.write(new AudioInputStream(pcm, format, AudioSystem.NOT_SPECIFIED), 
+						AudioFileFormat.Type.WAVE, out);
+			} else {
+				OutputStream os = new BufferedOutputStream(new FileOutputStream(out));
+				try {
+					byte[] buf = new byte[2 * BUFLEN];
+					int n;
+					while((n = pcm.read(buf)) > 0) os.write(buf, 0, n);
+				} finally {
+					os.close();
+				}
+			}
+		}
+		
+		System.out.println("Encoded " + bits.getGroupCount() + " groups into " + bits.getBitCount() + " bits, with " 
+				+ bits.getErrorCount() + " bit errors and " + bits.getSlipCount() + " bit slips.");
+	}
+	
+	/**
+	 * Writes a bit stream, 8 bits per byte, most significant bit first, in
+	 * the format read by {@link BinaryFileBitReader}.
+	 */
+	public static void writeBits(BitReader bits, OutputStream os) throws IOException {
+		long[] buf = new long[BUFLEN / 64];
+		byte[] bytes = new byte[BUFLEN / 8];
+		int pending = 0, pendingCount = 0;
+		int n;
+		while((n = bits.readBits(buf, BUFLEN)) > 0) {
+			int len = 0;
+			for(int i=0; i<n; i++) {
+				pending = (pending << 1) | (int) (buf[i >> 6] >>> (63 - (i & 63)) & 1);
+				if(++pendingCount == 8) {
+					bytes[len++] = (byte) pending;
+					pending = 0;
+					pendingCount = 0;
+				}
+			}
+			os.write(bytes, 0, len);
+		}
+		// pad the last byte with zeros
+		if(pendingCount > 0) os.write(pending << (8 - pendingCount));
+	}
+	
+	/**
+	 * Streams the MPX signal as 16-bit little-endian PCM.
+	 */
+	private static class PcmInputStream extends InputStream {
+		private final BitReader bits;
+		private final RdsModulator modulator;
+		private final double[] samples = new double[BUFLEN];
+		private final byte[] buf = new byte[2 * BUFLEN];
+		private int pos = 0, len = 0;
+		
+		public PcmInputStream(BitReader bits, RdsModulator modulator) {
+			this.bits = bits;
+			this.modulator = modulator;
+		}
+		
+		private boolean fill() throws IOException {
+			if(pos < len) return true;
+			int n = modulator.modulate(bits, samples, 0, BUFLEN);
+			if(n <= 0) return false;
+			for(int i=0; i<n; i++) {
+				int s = (int) Math.round(samples[i] * 32767);
+				buf[2*i] = (byte) s;
+				buf[2*i+1] = (byte) (s >> 8);
+			}
+			pos = 0;
+			len = 2 * n;
+			return true;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			return fill() ? buf[pos++] & 0xFF : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int l) throws IOException {
+			if(! fill()) return -1;
+			int n = Math.min(l, len - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+	}
+}
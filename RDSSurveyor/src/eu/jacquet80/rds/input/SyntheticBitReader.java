@@ -0,0 +1,219 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+import eu.jacquet80.rds.core.RDS;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+/**
+ * A bit reader that encodes the groups read from a {@link GroupReader} into
+ * an RDS bit stream, with check words and offset words, as a receiver would
+ * get it once demodulated and differentially decoded. It can be read by a
+ * {@link eu.jacquet80.rds.core.BitStreamSynchronizer}, written to a file for
+ * {@link BinaryFileBitReader}, or modulated into an MPX signal by an
+ * {@link eu.jacquet80.rds.input.dsp.RdsModulator}.
+ * 
+ * Transmission errors can be injected, at controlled rates:
+ * <ul>
+ * <li>noise, that is independent bit errors,</li>
+ * <li>burst errors,</li>
+ * <li>bit slips, where a bit is lost or a spurious bit is inserted, as
+ * happens when the bit clock is lost,</li>
+ * <li>polarity inversion of the whole stream.</li>
+ * </ul>
+ * Errors are drawn from a seeded random generator, so that a stream can be
+ * reproduced exactly.
+ * 
+ * Groups that are not {@link GroupEvent}s are skipped. Missing blocks of
+ * groups are encoded with a wrong check word.
+ */
+public class SyntheticBitReader extends BitReader {
+	private final GroupReader groups;
+	private Random random = new Random(0);
+	
+	private double bitErrorRate = 0;
+	private double burstRate = 0;
+	private int maxBurstLength = 0;
+	private double slipRate = 0;
+	private boolean inverted = false;
+	
+	/** The 26-bit blocks of the current group, and the position of the next bit */
+	private final int[] blocks = new int[4];
+	private int pos = 104;
+	
+	/** Remaining bits of the current burst */
+	private int burstRemaining = 0;
+	
+	private long bitCount = 0;
+	private long groupCount = 0;
+	private long errorCount = 0;
+	private long slipCount = 0;
+	
+	public SyntheticBitReader(GroupReader groups) {
+		this.groups = groups;
+		setParent(groups);
+	}
+	
+	/**
+	 * Sets the seed of the random generator of errors.
+	 */
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	}
+	
+	/**
+	 * Sets the probability that a bit is inverted by noise.
+	 */
+	public void setBitErrorRate(double rate) {
+		this.bitErrorRate = rate;
+	}
+	
+	/**
+	 * Sets the probability that a burst error starts at a given bit. The
+	 * first and last bits of a burst are in error, and the bits in between
+	 * have a one-in-two chance of being in error.
+	 * 
+	 * @param rate the probability that a burst starts at a bit
+	 * @param maxLength the maximum length of bursts, at least 2
+	 */
+	public void setBurstErrors(double rate, int maxLength) {
+		this.burstRate = rate;
+		this.maxBurstLength = Math.max(maxLength, 2);
+	}
+	
+	/**
+	 * Sets the probability of a bit slip at a given bit. Bit slips drop a
+	 * bit or insert a random bit, with equal probability.
+	 */
+	public void setBitSlipRate(double rate) {
+		this.slipRate = rate;
+	}
+	
+	/**
+	 * Sets whether the polarity of the bit stream is inverted.
+	 */
+	public void setInverted(boolean inverted) {
+		this.inverted = inverted;
+	}
+	
+	/**
+	 * Returns the number of bits produced so far.
+	 */
+	public long getBitCount() {
+		return bitCount;
+	}
+	
+	/**
+	 * Returns the number of groups encoded so far.
+	 */
+	public long getGroupCount() {
+		return groupCount;
+	}
+	
+	/**
+	 * Returns the number of bits inverted by noise or burst errors so far.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+	
+	/**
+	 * Returns the number of bit slips so far.
+	 */
+	public long getSlipCount() {
+		return slipCount;
+	}
+	
+	/**
+	 * Encodes the next group into {@link #blocks}.
+	 */
+	private void nextGroup() throws IOException {
+		GroupReaderEvent evt;
+		try {
+			do {
+				evt = groups.getGroup();
+			} while(! (evt instanceof GroupEvent));
+		} catch(EndOfStream e) {
+			throw new EOFException();
+		}
+		
+		int[] data = ((GroupEvent) evt).blocks;
+		int version = data[1] >= 0 ? (data[1] >> 11) & 1 : 0;
+		for(int i=0; i<4; i++) {
+			if(data[i] >= 0) blocks[i] = RDS.encodeBlock(data[i], i, version);
+			else blocks[i] = RDS.encodeBlock(0, i, version) ^ 1;
+		}
+		pos = 0;
+		groupCount++;
+	}
+	
+	/**
+	 * Returns the next bit of the encoded stream, before errors.
+	 */
+	private boolean nextBit() throws IOException {
+		if(pos == 104) nextGroup();
+		boolean bit = ((blocks[pos / 26] >> (25 - pos % 26)) & 1) != 0;
+		pos++;
+		return bit;
+	}
+	
+	@Override
+	public boolean getBit() throws IOException {
+		boolean bit;
+		if(slipRate > 0 && random.nextDouble() < slipRate) {
+			slipCount++;
+			if(random.nextBoolean()) {
+				// drop a bit
+				nextBit();
+				bit = nextBit();
+			} else {
+				// insert a bit
+				bit = random.nextBoolean();
+			}
+		} else {
+			bit = nextBit();
+		}
+		
+		boolean error = bitErrorRate > 0 && random.nextDouble() < bitErrorRate;
+		if(burstRemaining > 0) {
+			burstRemaining--;
+			if(burstRemaining == 0 || random.nextBoolean()) error = true;
+		} else if(burstRate > 0 && random.nextDouble() < burstRate) {
+			burstRemaining = 1 + random.nextInt(maxBurstLength - 1);
+			error = true;
+		}
+		if(error) errorCount++;
+		
+		bitCount++;
+		return bit ^ error ^ inverted;
+	}
+}
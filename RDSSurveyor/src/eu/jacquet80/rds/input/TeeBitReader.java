@@ -45,6 +45,20 @@ public class TeeBitReader extends BitReader {
 	
 	public boolean getBit() throws IOException {
 		boolean bit = reader.getBit();
+		writeBit(bit);
+		return bit;
+	}
+	
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = reader.readBits(dst, maxBits);
+		for(int i=0; i<n; i++) {
+			writeBit((dst[i>>6] << (i & 63)) < 0);
+		}
+		return n;
+	}
+	
+	private void writeBit(boolean bit) throws IOException {
 		currentByte <<= 1;
 		if(bit) currentByte |= 1;
 		currentBitCount++;
@@ -58,7 +72,6 @@ public class TeeBitReader extends BitReader {
 				currentByteCount = 0;
 			}
 		}
-		return bit;
 	}
 
 	@Override
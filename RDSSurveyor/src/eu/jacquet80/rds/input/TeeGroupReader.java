@@ -28,54 +28,39 @@ package eu.jacquet80.rds.input;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 
-import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
-import eu.jacquet80.rds.input.group.GroupEvent;
 import eu.jacquet80.rds.input.group.GroupReaderEvent;
-import eu.jacquet80.rds.input.group.GroupReaderEventVisitor;
-import eu.jacquet80.rds.input.group.StationChangeEvent;
 
 public class TeeGroupReader extends GroupReader {
-	private final PrintWriter writer;
+	private final GroupLogWriter writer;
 	private final GroupReader reader;
 	
+	/**
+	 * Writes the groups to a hexgroup file, from a background thread.
+	 */
 	public TeeGroupReader(GroupReader reader, File of) throws IOException {
+		this(reader, new AsyncGroupLogWriter(new HexGroupLogWriter(of)));
+	}
+	
+	public TeeGroupReader(GroupReader reader, GroupLogWriter writer) {
 		this.reader = reader;
-		writer = new PrintWriter(of);
-		writer.println("% RDS hexgroups");
+		this.writer = writer;
 		setParent(reader);
 	}
 	
 	@Override
 	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
-		GroupReaderEvent event = reader.getGroup();
+		GroupReaderEvent event;
+		try {
+			event = reader.getGroup();
+		} catch(EndOfStream eos) {
+			writer.close();
+			throw eos;
+		}
 		if(event == null) return null;		// propagate null event
 		
-		event.accept(new GroupReaderEventVisitor() {
-			@Override
-			public void visit(FrequencyChangeEvent freqChangeEvent) {
-				writer.print("% Freq " + freqChangeEvent.frequency + ", date=" + 
-						freqChangeEvent.getTime().toLongString());
-			}
-			
-			@Override
-			public void visit(GroupEvent groupEvent) {
-				for(int i=0; i<4; i++) {
-					if(groupEvent.blocks[i]>=0) writer.printf("%04X ", groupEvent.blocks[i]);
-					else writer.print("---- ");
-				}
-				writer.print("@" + groupEvent.getTime().toLongString());
-			}
-
-			@Override
-			public void visit(StationChangeEvent stationChangeEvent) {
-				// do nothing
-			}
-		});
-
-		writer.println();
-		writer.flush();
+		// the writer decides when to flush
+		writer.write(event);
 		
 		return event;
 	}
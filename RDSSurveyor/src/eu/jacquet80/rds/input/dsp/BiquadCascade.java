@@ -0,0 +1,117 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input.dsp;
+
+/**
+ * An IIR filter implemented as a cascade of second-order sections
+ * (transposed direct form II). Coefficients and state are kept in
+ * primitive arrays, so filtering does not allocate anything.
+ *
+ * Compared to a single high-order direct form filter, a cascade of
+ * biquads is much less sensitive to rounding errors when the cutoff
+ * frequency is low compared to the sample rate.
+ */
+public final class BiquadCascade {
+	private final int sections;
+
+	/** Coefficients b0, b1, b2, a1, a2 for each section (a0 = 1) */
+	private final double[] coeffs;
+
+	/** State variables z1, z2 for each section */
+	private final double[] state;
+
+	private BiquadCascade(double[] coeffs) {
+		this.coeffs = coeffs;
+		this.sections = coeffs.length / 5;
+		this.state = new double[2 * sections];
+	}
+
+	/**
+	 * Designs a Butterworth low-pass filter, using the bilinear transform
+	 * with frequency prewarping.
+	 *
+	 * @param order the order of the filter
+	 * @param fcf the cutoff frequency, as a fraction of the sample rate
+	 */
+	public static BiquadCascade butterworthLowpass(int order, double fcf) {
+		int nSections = (order + 1) / 2;
+		double[] c = new double[5 * nSections];
+		double k = Math.tan(Math.PI * fcf);
+
+		for(int s=0; s<order/2; s++) {
+			// quality factor of the pair of conjugate poles, whose angle
+			// from the imaginary axis is (2s+1)pi/2N for odd and even orders
+			double q = 1 / (2 * Math.sin((2*s + 1) * Math.PI / (2 * order)));
+			double norm = 1 / (1 + k/q + k*k);
+			c[5*s]     = k * k * norm;
+			c[5*s + 1] = 2 * c[5*s];
+			c[5*s + 2] = c[5*s];
+			c[5*s + 3] = 2 * (k*k - 1) * norm;
+			c[5*s + 4] = (1 - k/q + k*k) * norm;
+		}
+
+		if(order % 2 == 1) {
+			// real pole: first-order section
+			int s = nSections - 1;
+			double norm = 1 / (k + 1);
+			c[5*s]     = k * norm;
+			c[5*s + 1] = k * norm;
+			c[5*s + 2] = 0;
+			c[5*s + 3] = (k - 1) * norm;
+			c[5*s + 4] = 0;
+		}
+
+		return new BiquadCascade(c);
+	}
+
+	/**
+	 * Filters one sample.
+	 */
+	public double step(double x) {
+		final double[] c = coeffs;
+		final double[] z = state;
+		for(int s=0, ci=0, zi=0; s<sections; s++, ci+=5, zi+=2) {
+			double y = c[ci] * x + z[zi];
+			z[zi]     = c[ci + 1] * x - c[ci + 3] * y + z[zi + 1];
+			z[zi + 1] = c[ci + 2] * x - c[ci + 4] * y;
+			x = y;
+		}
+		return x;
+	}
+
+	/**
+	 * Filters a block of samples in place.
+	 */
+	public void process(double[] samples, int offset, int length) {
+		for(int i=offset; i<offset+length; i++) {
+			samples[i] = step(samples[i]);
+		}
+	}
+
+	public void reset() {
+		for(int i=0; i<state.length; i++) state[i] = 0;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input.dsp;
+
+/**
+ * An in-place radix-2 complex FFT, working on separate arrays for the real
+ * and imaginary parts. Twiddle factors and the bit reversal permutation are
+ * computed once, so that transforms do not allocate anything. An instance
+ * may be shared between threads, provided they transform different arrays.
+ */
+public final class Fft {
+	private final int size;
+	private final double[] cos;
+	private final double[] sin;
+	private final int[] reversed;
+
+	/**
+	 * @param size the transform size, a power of two
+	 */
+	public Fft(int size) {
+		if(size < 2 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+		}
+		this.size = size;
+
+		cos = new double[size / 2];
+		sin = new double[size / 2];
+		for(int i=0; i<size/2; i++) {
+			cos[i] = Math.cos(2 * Math.PI * i / size);
+			sin[i] = Math.sin(2 * Math.PI * i / size);
+		}
+
+		int bits = Integer.numberOfTrailingZeros(size);
+		reversed = new int[size];
+		for(int i=0; i<size; i++) {
+			reversed[i] = Integer.reverse(i) >>> (32 - bits);
+		}
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Computes the forward transform, {@code X[k] = sum x[n] e^(-2i pi kn/N)}.
+	 */
+	public void forward(double[] re, double[] im) {
+		transform(re, im, -1);
+	}
+
+	/**
+	 * Computes the inverse transform, without the {@code 1/N} normalization.
+	 */
+	public void inverse(double[] re, double[] im) {
+		transform(re, im, 1);
+	}
+
+	private void transform(double[] re, double[] im, int sign) {
+		final int n = size;
+		for(int i=0; i<n; i++) {
+			int j = reversed[i];
+			if(j > i) {
+				double t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+
+		for(int len=2; len<=n; len<<=1) {
+			int half = len >> 1;
+			int step = n / len;
+			for(int start=0; start<n; start+=len) {
+				for(int k=0, t=0; k<half; k++, t+=step) {
+					double wr = cos[t];
+					double wi = sign * sin[t];
+					int a = start + k;
+					int b = a + half;
+					double xr = re[b] * wr - im[b] * wi;
+					double xi = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - xr;
+					im[b] = im[a] - xi;
+					re[a] += xr;
+					im[a] += xi;
+				}
+			}
+		}
+	}
+}
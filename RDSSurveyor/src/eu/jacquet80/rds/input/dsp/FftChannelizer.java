@@ -0,0 +1,207 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input.dsp;
+
+/**
+ * Splits a wideband complex signal into several narrowband channels, using
+ * fast convolution (overlap-save) filtering.
+ *
+ * Each block of input samples is transformed once with a large FFT. For
+ * every channel, the bins around the channel's center frequency are
+ * weighted by the filter response, moved to baseband and transformed back
+ * with a small inverse FFT, which decimates the signal at the same time.
+ * The cost of the large FFT is shared by all channels, and the cost per
+ * channel is that of a small FFT at the output rate, whatever the number of
+ * filter taps.
+ *
+ * The decimation factor is a power of two, chosen so that the output rate
+ * is large enough for a broadcast FM channel. Channel centers are rounded
+ * to the nearest FFT bin; the resulting frequency error is a few hundred
+ * hertz at most, which shows up as a harmless DC offset after FM
+ * demodulation.
+ */
+public final class FftChannelizer {
+	/** Minimum output sample rate, to fit a whole FM broadcast channel */
+	public static final int MIN_OUTPUT_RATE = 240000;
+
+	/** Passband edge, relative to the channel center */
+	private static final double PASSBAND = 100000;
+
+	/** Stopband edge, relative to the channel center */
+	private static final double STOPBAND = 150000;
+
+	private final int inRate;
+	private final int decimation;
+
+	private final Fft fft;
+	private final Fft ifft;
+
+	/** Last {@code fftSize} input samples, the newest ones in the second half */
+	private final double[] inRe;
+	private final double[] inIm;
+
+	/** Spectrum of the last block */
+	private final double[] re;
+	private final double[] im;
+
+	/** Filter response for output bins {@code -M/2..M/2-1}, including normalization */
+	private final double[] gain;
+
+	/** Center bin of each channel, in the large FFT */
+	private final int[] centerBins;
+
+	/** Work buffers for the inverse FFT of each channel */
+	private final double[][] chanRe;
+	private final double[][] chanIm;
+
+	private long blockCount = 0;
+
+	/**
+	 * @param inRate the input sample rate
+	 * @param offsets the center frequency of each channel, relative to the
+	 * center of the input band, in hertz
+	 */
+	public FftChannelizer(int inRate, double[] offsets) {
+		this.inRate = inRate;
+
+		int d = 1;
+		while(inRate / (2 * d) >= MIN_OUTPUT_RATE && inRate % (2 * d) == 0) d *= 2;
+		this.decimation = d;
+
+		// frequency resolution of about 100 to 200 Hz
+		int fftSize = Math.max(4 * d, Integer.highestOneBit(Math.max(inRate / 128, 2)));
+		int outSize = fftSize / d;
+		this.fft = new Fft(fftSize);
+		this.ifft = new Fft(outSize);
+
+		inRe = new double[fftSize];
+		inIm = new double[fftSize];
+		re = new double[fftSize];
+		im = new double[fftSize];
+
+		double outRate = (double) inRate / d;
+		double stop = Math.min(STOPBAND, outRate / 2);
+		double pass = Math.min(PASSBAND, 0.7 * stop);
+		gain = new double[outSize];
+		for(int j=-outSize/2; j<outSize/2; j++) {
+			double f = Math.abs((double) j * inRate / fftSize);
+			double g;
+			if(f <= pass) g = 1;
+			else if(f >= stop) g = 0;
+			else g = 0.5 + 0.5 * Math.cos(Math.PI * (f - pass) / (stop - pass));
+			gain[j + outSize/2] = g / fftSize;
+		}
+
+		centerBins = new int[offsets.length];
+		chanRe = new double[offsets.length][outSize];
+		chanIm = new double[offsets.length][outSize];
+		for(int c=0; c<offsets.length; c++) {
+			if(Math.abs(offsets[c]) + pass > inRate / 2.0) {
+				throw new IllegalArgumentException("Channel at offset " + offsets[c] + " Hz is outside of the input band");
+			}
+			int bin = (int) Math.round(offsets[c] * fftSize / inRate);
+			centerBins[c] = (bin + fftSize) % fftSize;
+		}
+	}
+
+	public int getChannelCount() {
+		return centerBins.length;
+	}
+
+	/**
+	 * Returns the sample rate of the channel outputs.
+	 */
+	public int getOutputRate() {
+		return inRate / decimation;
+	}
+
+	/**
+	 * Returns the number of input samples that make up a block.
+	 */
+	public int getBlockLength() {
+		return fft.getSize() / 2;
+	}
+
+	/**
+	 * Returns the number of output samples per channel and per block.
+	 */
+	public int getOutputLength() {
+		return getBlockLength() / decimation;
+	}
+
+	/**
+	 * Adds a block of {@link #getBlockLength()} input samples, and computes
+	 * the spectrum used by {@link #extract(int, double[], double[])}.
+	 */
+	public void transform(double[] blockRe, double[] blockIm) {
+		final int half = getBlockLength();
+		System.arraycopy(inRe, half, inRe, 0, half);
+		System.arraycopy(inIm, half, inIm, 0, half);
+		System.arraycopy(blockRe, 0, inRe, half, half);
+		System.arraycopy(blockIm, 0, inIm, half, half);
+		System.arraycopy(inRe, 0, re, 0, 2 * half);
+		System.arraycopy(inIm, 0, im, 0, 2 * half);
+		fft.forward(re, im);
+		blockCount++;
+	}
+
+	/**
+	 * Extracts the complex baseband signal of a channel, for the block most
+	 * recently passed to {@link #transform(double[], double[])}. Distinct
+	 * channels may be extracted concurrently, but no block may be
+	 * transformed at the same time.
+	 *
+	 * @param channel the channel index
+	 * @param outRe receives the real part of the {@link #getOutputLength()} output samples
+	 * @param outIm receives the imaginary part of the output samples
+	 */
+	public void extract(int channel, double[] outRe, double[] outIm) {
+		final int n = fft.getSize();
+		final int m = ifft.getSize();
+		final double[] cr = chanRe[channel];
+		final double[] ci = chanIm[channel];
+		final int center = centerBins[channel];
+
+		for(int j=-m/2; j<m/2; j++) {
+			int src = (center + j + n) % n;
+			int dst = (j + m) % m;
+			double g = gain[j + m/2];
+			cr[dst] = re[src] * g;
+			ci[dst] = im[src] * g;
+		}
+		ifft.inverse(cr, ci);
+
+		// Shifting the center bin to DC within a block rotates each block
+		// by e^(i pi center blockIndex), as blocks overlap by half the FFT size
+		double sign = ((center & blockCount & 1) == 0) ? 1 : -1;
+
+		// the first half is corrupted by circular convolution
+		for(int i=0; i<m/2; i++) {
+			outRe[i] = sign * cr[m/2 + i];
+			outIm[i] = sign * ci[m/2 + i];
+		}
+	}
+}
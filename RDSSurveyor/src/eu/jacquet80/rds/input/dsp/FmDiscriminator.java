@@ -0,0 +1,72 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input.dsp;
+
+/**
+ * Demodulates a complex baseband FM signal into an MPX signal, by taking
+ * the phase difference between consecutive samples. The output is scaled
+ * so that the nominal broadcast deviation of 75 kHz maps to 1.0, like a
+ * full-scale MPX recording.
+ */
+public final class FmDiscriminator {
+	/** Nominal peak deviation of broadcast FM */
+	public static final double DEVIATION = 75000;
+
+	private final double scale;
+
+	private double prevRe = 1;
+	private double prevIm = 0;
+
+	/**
+	 * @param sampleRate the sample rate of the complex input signal
+	 */
+	public FmDiscriminator(int sampleRate) {
+		this.scale = sampleRate / (2 * Math.PI * DEVIATION);
+	}
+
+	/**
+	 * Demodulates a block of samples.
+	 *
+	 * @param re the real part of the input samples
+	 * @param im the imaginary part of the input samples
+	 * @param length the number of samples
+	 * @param out receives the MPX samples
+	 */
+	public void process(double[] re, double[] im, int length, double[] out) {
+		double pr = prevRe, pi = prevIm;
+		for(int i=0; i<length; i++) {
+			double r = re[i], q = im[i];
+			// z[n] * conj(z[n-1])
+			double dr = r * pr + q * pi;
+			double di = q * pr - r * pi;
+			out[i] = scale * Math.atan2(di, dr);
+			pr = r;
+			pi = q;
+		}
+		prevRe = pr;
+		prevIm = pi;
+	}
+}
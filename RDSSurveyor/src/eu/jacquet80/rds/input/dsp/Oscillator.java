@@ -0,0 +1,73 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input.dsp;
+
+/**
+ * Table-based sine and cosine, for numerically controlled oscillators.
+ *
+ * Values are interpolated linearly between the entries of a 4096-entry
+ * table, which gives a maximum error of about 3e-7, well below the
+ * resolution of 16-bit samples.
+ */
+public final class Oscillator {
+	private final static int TABLE_BITS = 12;
+	private final static int TABLE_SIZE = 1 << TABLE_BITS;
+	private final static int TABLE_MASK = TABLE_SIZE - 1;
+	private final static double SCALE = TABLE_SIZE / (2 * Math.PI);
+
+	/** One period of sine, plus one extra entry for interpolation */
+	private final static double[] SINE = new double[TABLE_SIZE + 1];
+
+	static {
+		for(int i=0; i<=TABLE_SIZE; i++) {
+			SINE[i] = Math.sin(2 * Math.PI * i / TABLE_SIZE);
+		}
+	}
+
+	private Oscillator() {}
+
+	/**
+	 * Returns the sine of a phase, in radians.
+	 */
+	public static double sin(double phi) {
+		double x = phi * SCALE;
+		double fl = Math.floor(x);
+		int idx = (int) ((long) fl & TABLE_MASK);
+		double frac = x - fl;
+		return SINE[idx] + frac * (SINE[idx + 1] - SINE[idx]);
+	}
+
+	/**
+	 * Returns the cosine of a phase, in radians.
+	 */
+	public static double cos(double phi) {
+		double x = phi * SCALE;
+		double fl = Math.floor(x);
+		int idx = (int) (((long) fl + TABLE_SIZE / 4) & TABLE_MASK);
+		double frac = x - fl;
+		return SINE[idx] + frac * (SINE[idx + 1] - SINE[idx]);
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input.dsp;
+
+import eu.jacquet80.rds.util.MathUtil;
+
+/**
+ * A complex band-pass filter combined with a rational polyphase
+ * resampler. It selects a band around a center frequency in a real signal,
+ * and resamples it by a factor {@code up/down} (with {@code up <= down}).
+ *
+ * The output is complex. Since the band-pass filter is a modulated
+ * low-pass filter, the output is the baseband signal multiplied by the
+ * center frequency oscillator sampled at the output instants. When the
+ * center frequency is a multiple of the output rate, the output is thus
+ * exactly the complex baseband signal.
+ *
+ * Only the filter phase needed by each output sample is computed, so the
+ * cost per input sample is about {@code 2 * taps * up / down} operations.
+ */
+public final class PolyphaseDecimator {
+	/** Largest supported interpolation factor, to bound the filter size */
+	public final static int MAX_UP = 256;
+
+	private final int up;
+	private final int down;
+
+	/** Number of taps per filter phase */
+	private final int taps;
+
+	/** Coefficients, indexed by phase then by tap */
+	private final double[][] coeffsRe;
+	private final double[][] coeffsIm;
+
+	/** Input history, stored twice so that any window is contiguous */
+	private final double[] history;
+	private int historyPos = 0;
+
+	private int phase = 0;
+	private int skip = 1;
+
+	/**
+	 * @param inRate the input sample rate
+	 * @param outRate the output sample rate, at most {@code inRate}
+	 * @param centerFreq the center frequency of the band to select
+	 * @param bandwidth the one-sided bandwidth of the band to select; the
+	 * transition band extends from there until aliases of the band edge
+	 * @throws IllegalArgumentException if the ratio between the rates
+	 * cannot be represented with a small enough interpolation factor
+	 */
+	public PolyphaseDecimator(int inRate, int outRate, double centerFreq, double bandwidth) {
+		int gcd = MathUtil.gcd(inRate, outRate);
+		this.up = outRate / gcd;
+		this.down = inRate / gcd;
+		if(up > down) throw new IllegalArgumentException("Output rate must not exceed input rate");
+		if(up > MAX_UP) throw new IllegalArgumentException("Unsupported resampling ratio " + up + "/" + down);
+
+		// Blackman window: the transition width is about 5.5 / N
+		double transition = outRate - 2 * bandwidth;
+		this.taps = Math.max(8, (int) Math.ceil(5.5 * inRate / transition));
+		int length = taps * up;
+		double upRate = (double) inRate * up;
+
+		coeffsRe = new double[up][taps];
+		coeffsIm = new double[up][taps];
+		double[] h = new double[length];
+		double sum = 0;
+		double fc = (bandwidth + transition / 2) / upRate;
+		for(int i=0; i<length; i++) {
+			double t = i - (length - 1) / 2.0;
+			double sinc = t == 0 ? 2 * fc : Math.sin(2 * Math.PI * fc * t) / (Math.PI * t);
+			double w = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1))
+					+ 0.08 * Math.cos(4 * Math.PI * i / (length - 1));
+			h[i] = sinc * w;
+			sum += h[i];
+		}
+
+		// normalize the DC gain to up, to compensate for zero stuffing,
+		// and modulate to the center frequency
+		double w0 = 2 * Math.PI * centerFreq / upRate;
+		for(int i=0; i<length; i++) {
+			double g = h[i] * up / sum;
+			coeffsRe[i % up][i / up] = g * Math.cos(w0 * i);
+			coeffsIm[i % up][i / up] = g * Math.sin(w0 * i);
+		}
+
+		history = new double[2 * taps];
+	}
+
+	/**
+	 * Processes a block of real samples.
+	 *
+	 * @param in the input samples
+	 * @param offset the offset of the first input sample
+	 * @param length the number of input samples
+	 * @param outRe the real part of the output samples
+	 * @param outIm the imaginary part of the output samples
+	 * @return the number of output samples, at most
+	 * {@code ceil(length * up / down)}
+	 */
+	public int process(double[] in, int offset, int length, double[] outRe, double[] outIm) {
+		final int taps = this.taps;
+		final double[] hist = this.history;
+		int nOut = 0;
+
+		for(int i=offset; i<offset+length; i++) {
+			hist[historyPos] = hist[historyPos + taps] = in[i];
+			historyPos++;
+			if(historyPos == taps) historyPos = 0;
+
+			if(--skip > 0) continue;
+
+			// the newest sample is at base, older samples before it
+			final int base = historyPos + taps - 1;
+			final double[] cr = coeffsRe[phase];
+			final double[] ci = coeffsIm[phase];
+			double re = 0, im = 0;
+			for(int k=0; k<taps; k++) {
+				double x = hist[base - k];
+				re += cr[k] * x;
+				im += ci[k] * x;
+			}
+			outRe[nOut] = re;
+			outIm[nOut] = im;
+			nOut++;
+
+			phase += down;
+			skip = phase / up;
+			phase %= up;
+		}
+
+		return nOut;
+	}
+
+	/**
+	 * Returns the maximum number of output samples for a given number of
+	 * input samples.
+	 */
+	public int maxOutput(int length) {
+		return (int) (((long) length * up + down - 1) / down) + 1;
+	}
+}
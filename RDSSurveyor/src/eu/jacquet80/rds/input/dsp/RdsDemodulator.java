@@ -0,0 +1,424 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+ 
+ Copyright (c) 2015 Michael von Glasow
+ Portions Copyright (c) Oona Räisänen OH2EIQ (windyoona@gmail.com)
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input.dsp;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import eu.jacquet80.rds.util.BitQueue;
+
+/**
+ * Demodulates the RDS subcarrier of an MPX signal into data bits.
+ *
+ * The subcarrier is recovered by a PLL, mixed down to baseband and
+ * low-pass filtered. The 1187.5 Hz bit clock is derived from the subcarrier
+ * phase, and biphase symbols are integrated and dumped. The differentially
+ * decoded bits are put into a {@link BitQueue}.
+ *
+ * When the input sample rate allows it, the MPX signal first goes through
+ * a polyphase decimator that selects the band around 57 kHz and brings it
+ * down to complex baseband at {@link #BASEBAND_RATE}. The PLL and symbol
+ * recovery then run at that low rate, instead of the input rate.
+ * 
+ * Samples are processed in blocks of primitive doubles, and nothing is
+ * allocated while processing.
+ */
+public final class RdsDemodulator {
+	private static final boolean DEBUG = false; // set to true to enable debug output
+
+	/** RDS carrier frequency */
+	private static final double FC_0 = 57000.0;
+
+	/**
+	 * Tolerance of RDS subcarrier frequency.
+	 * As per the specs, tolerance is +/- 6 Hz. We use twice the value to allow for some tolerance
+	 * in the processing chain.
+	 */
+	private static final double FC_TOLERANCE = 12.0;
+
+	/** PLL gain, per sample, when processing at full rate */
+	private static final double PLL_BETA = 50;
+	
+	/** PLL gain, per sample, when processing at baseband rate */
+	private static final double PLL_BETA_BASEBAND = 100;
+
+	/**
+	 * Sample rate of the complex baseband signal, 16 times the RDS bit rate.
+	 * The subcarrier frequency is a multiple of this rate, so the decimated
+	 * subcarrier lies exactly at 0 Hz.
+	 */
+	public static final int BASEBAND_RATE = 19000;
+	
+	/** One-sided bandwidth kept by the decimator around the subcarrier */
+	private static final double BASEBAND_BANDWIDTH = 3000;
+
+	private final int sampleRate;
+	
+	/** Sample rate at which the PLL runs: input rate, or baseband rate */
+	private final int pllRate;
+	
+	private final double pllBeta;
+	
+	/** Band-pass decimator, or {@code null} if the input is processed at full rate */
+	private final PolyphaseDecimator decimator;
+	
+	/** Baseband buffers, for the output of the decimator */
+	private double[] basebandRe = new double[0];
+	private double[] basebandIm = new double[0];
+
+	/** Decimation factor for clock recovery, determined based on the sample rate */
+	private final int decimate;
+
+	/** 2 pi / sample rate */
+	private final double phaseFactor;
+
+	private final BitQueue bits;
+
+	private final BiquadCascade lp2400i;
+	private final BiquadCascade lp2400q;
+	private final BiquadCascade lpPll;
+
+	/* Subcarrier frequency */
+	private double fsc = FC_0;
+
+	/* Subcarrier phase */
+	private double subcarrPhi = 0;
+
+	/* Clock phase offset */
+	private double clockOffset = 0;
+
+	private double prevClock = 0;
+	private double prevBb = 0;
+	private double acc = 0;
+
+	/* Number of samples processed, modulo the decimation factor */
+	private int sampleCount = 0;
+
+	/** Demodulated sample from RDS data stream (NRZ-M encoded) */
+	private int dbit = 0;
+
+	// Used by biphase()
+	private double prevAcc = 0;
+	private int counter = 0;
+	private int readingFrame = 0;
+	private final int totErrs[] = new int[] {0, 0};
+
+	private final DebugOutput debug;
+
+	public RdsDemodulator(int sampleRate, BitQueue bits) {
+		this.sampleRate = sampleRate;
+		this.bits = bits;
+		
+		PolyphaseDecimator dec = null;
+		if(sampleRate > 2 * (FC_0 + BASEBAND_BANDWIDTH)) {
+			try {
+				dec = new PolyphaseDecimator(sampleRate, BASEBAND_RATE, FC_0, BASEBAND_BANDWIDTH);
+			} catch(IllegalArgumentException e) {
+				System.out.println("RdsDemodulator: " + e.getMessage() + ", processing at full rate");
+			}
+		}
+		this.decimator = dec;
+		this.pllRate = dec == null ? sampleRate : BASEBAND_RATE;
+		
+		// at baseband rate, the clock is recovered at every sample
+		this.decimate = dec == null ? sampleRate / 7125 : 1;
+		this.phaseFactor = 2 * Math.PI / pllRate;
+		this.pllBeta = dec == null ? PLL_BETA : PLL_BETA_BASEBAND;
+
+		lp2400i = BiquadCascade.butterworthLowpass(5, 2000.0 / pllRate);
+		lp2400q = BiquadCascade.butterworthLowpass(5, 2000.0 / pllRate);
+		lpPll = BiquadCascade.butterworthLowpass(1, 2200.0 / pllRate);
+
+		debug = DEBUG ? new DebugOutput(pllRate) : null;
+	}
+
+	/**
+	 * Processes a block of samples, normalized to [-1, 1].
+	 */
+	public void process(double[] samples, int offset, int length) {
+		if(decimator == null) {
+			processFullRate(samples, offset, length);
+		} else {
+			int max = decimator.maxOutput(length);
+			if(basebandRe.length < max) {
+				basebandRe = new double[max];
+				basebandIm = new double[max];
+			}
+			int n = decimator.process(samples, offset, length, basebandRe, basebandIm);
+			processBaseband(basebandRe, basebandIm, n);
+		}
+	}
+	
+	/**
+	 * Processes complex baseband samples, at {@link #BASEBAND_RATE}.
+	 */
+	private void processBaseband(double[] re, double[] im, int length) {
+		// local copies of the state, for the JIT's sake
+		double fsc = this.fsc;
+		double phi = this.subcarrPhi;
+		final double phaseFactor = this.phaseFactor;
+		final double beta = this.pllBeta;
+		final int decimate = this.decimate;
+		int sampleCount = this.sampleCount;
+
+		for(int n=0; n<length; n++) {
+			/* Phase recovery: rotate the baseband signal by the phase estimate */
+			phi += fsc * phaseFactor;
+			final double c = Oscillator.cos(phi);
+			final double s = Oscillator.sin(phi);
+			final double bbI = lp2400i.step(re[n] * c + im[n] * s);
+			final double bbQ = lp2400q.step(re[n] * s - im[n] * c);
+
+			final double dPhiSc = lpPll.step(bbQ * bbI);
+			phi -= beta * dPhiSc;
+			fsc -= 0.5 * beta * dPhiSc;
+
+			if(sampleCount == 0) {
+				/* Reset subcarrier frequency if it is outside tolerance range */
+				if((fsc > FC_0 + FC_TOLERANCE) || (fsc < FC_0 - FC_TOLERANCE)) {
+					fsc = FC_0;
+				}
+
+				symbol(phi, bbI);
+
+				if(DEBUG) debug.write(re[n], fsc, dPhiSc, bbI, bbQ, clockOffset, acc, dbit, prevClock);
+			}
+
+			if(++sampleCount == decimate) sampleCount = 0;
+		}
+
+		this.fsc = fsc;
+		this.subcarrPhi = phi;
+		this.sampleCount = sampleCount;
+	}
+
+	/**
+	 * Processes real MPX samples at the input rate.
+	 */
+	private void processFullRate(double[] samples, int offset, int length) {
+		// local copies of the state, for the JIT's sake
+		double fsc = this.fsc;
+		double phi = this.subcarrPhi;
+		final double phaseFactor = this.phaseFactor;
+		final int decimate = this.decimate;
+		int sampleCount = this.sampleCount;
+
+		for(int n=offset; n<offset+length; n++) {
+			final double x = samples[n];
+
+			/* Subcarrier downmix & phase recovery */
+			phi += fsc * phaseFactor;
+			final double bbI = lp2400i.step(x * Oscillator.cos(phi));
+			final double bbQ = lp2400q.step(x * Oscillator.sin(phi));
+
+			final double dPhiSc = lpPll.step(bbQ * bbI);
+			phi -= PLL_BETA * dPhiSc;
+			fsc -= 0.5 * PLL_BETA * dPhiSc;
+
+			/* Decimate band-limited signal */
+			if(sampleCount == 0) {
+				/* Reset subcarrier frequency if it is outside tolerance range */
+				if((fsc > FC_0 + FC_TOLERANCE) || (fsc < FC_0 - FC_TOLERANCE)) {
+					fsc = FC_0;
+				}
+
+				symbol(phi, bbI);
+
+				if(DEBUG) debug.write(x, fsc, dPhiSc, bbI, bbQ, clockOffset, acc, dbit, prevClock);
+			}
+
+			if(++sampleCount == decimate) sampleCount = 0;
+		}
+
+		this.fsc = fsc;
+		this.subcarrPhi = phi;
+		this.sampleCount = sampleCount;
+	}
+
+	/**
+	 * Clock recovery and symbol integration, at the decimated rate.
+	 */
+	private void symbol(double phi, double bb) {
+		/* 1187.5 Hz clock */
+		double clockPhi = phi / 48.0 + clockOffset;
+		double loClock = ((clockPhi % (2 * Math.PI)) < Math.PI ? 1 : -1);
+
+		/* Clock phase recovery */
+		if(sign(prevBb) != sign(bb)) {
+			double dCphi = clockPhi % Math.PI;
+			if(dCphi >= (Math.PI / 2)) dCphi -= Math.PI;
+			clockOffset -= 0.005 * dCphi;
+		}
+
+		/* biphase symbol integrate & dump */
+		acc += bb * loClock;
+
+		if(sign(loClock) != sign(prevClock)) {
+			biphase(acc);
+			acc = 0;
+		}
+
+		prevClock = loClock;
+		prevBb = bb;
+	}
+
+	private static int sign(double a) {
+		return (a >= 0 ? 1 : 0);
+	}
+
+	private void biphase(double acc) {
+		if(sign(acc) != sign(prevAcc)) {
+			totErrs[counter % 2] ++;
+		}
+
+		if(counter % 2 == readingFrame) {
+			storeValue(sign(acc + prevAcc));
+		}
+		if(counter == 0) {
+			if(totErrs[1 - readingFrame] < totErrs[readingFrame]) {
+				readingFrame = 1 - readingFrame;
+			}
+			totErrs[0] = 0;
+			totErrs[1] = 0;
+		}
+
+		prevAcc = acc;
+		counter = (counter + 1) % 800;
+	}
+
+	/**
+	 * Stores a value in the bit queue.
+	 *
+	 * @param b The new bit received. If it is different from the last bit that was received, 1 is
+	 * stored, else 0 is stored.
+	 */
+	private void storeValue(int b) {
+		bits.put((b ^ dbit) != 0);
+		dbit = b;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+
+	/**
+	 * Debug output, written to WAV files through sox, and to a CSV file.
+	 */
+	private static class DebugOutput {
+		private final int sampleRate;
+		private final int decimate;
+		private DataOutputStream outU = null;
+		private DataOutputStream outIQ = null;
+		private DataOutputStream outRaw = null;
+		private PrintStream stats = null;
+		private double t = 0;
+		private int count = 0;
+		private int prevDbit = 0;
+
+		DebugOutput(int sampleRate) {
+			this.sampleRate = sampleRate;
+			this.decimate = sampleRate / 7125;
+
+			String tempPath = "/tmp";
+			String pathSep ="/";
+			try {
+				tempPath = System.getProperty("java.io.tmpdir", tempPath);
+			} catch (Exception e) {
+				// NOP
+			}
+			try {
+				pathSep = System.getProperty("file.separator", pathSep);
+			} catch (Exception e) {
+				// NOP
+			}
+
+			outU = sox(5, tempPath + pathSep + "dbg-out.wav");
+			outIQ = sox(2, tempPath + pathSep + "dbg-out-iq.wav");
+			outRaw = sox(1, tempPath + pathSep + "dbg-out-raw.wav");
+
+			try {
+				stats = new PrintStream(new File(tempPath, "stats.csv"));
+				stats.print("t,fsc,d_phi_sc,subcarr_bb_re,subcarr_bb_im,clock_offset\n");
+			} catch (FileNotFoundException e) {
+				e.printStackTrace();
+				stats = null;
+			}
+		}
+
+		private DataOutputStream sox(int channels, String path) {
+			String[] cmd = {"sox", "-c", Integer.toString(channels), "-r", Integer.toString(sampleRate), "-t", ".s16", "-", path};
+			try {
+				Process p = new ProcessBuilder()
+					.command(cmd)
+					.redirectErrorStream(true)
+					.start();
+				return new DataOutputStream(p.getOutputStream());
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		private static void write(DataOutputStream out, double value) {
+			if(out == null) return;
+			try {
+				out.writeShort(Short.reverseBytes((short) value));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		void write(double sample, double fsc, double dPhiSc, double bbI, double bbQ,
+				double clockOffset, double acc, int dbit, double loClock) {
+			/* raw input */
+			write(outRaw, sample * 32768);
+			/* dbg-out.wav channel 1: d_phi_sc */
+			write(outU, dPhiSc * 6000);
+			/* dbg-out.wav channel 2: 1187.5 Hz clock */
+			write(outU, loClock * 16000);
+			/* dbg-out-iq.wav channels 1 and 2 */
+			write(outIQ, bbI * 32000);
+			write(outIQ, bbQ * 32000);
+			/* dbg-out.wav channel 3: acc */
+			write(outU, acc * 800);
+			/* dbg-out.wav channel 4: dbit (demodulated RDS stream) */
+			write(outU, dbit * 16000);
+			/* dbg-out.wav channel 5: sbit (decoded RDS data stream) */
+			write(outU, ((dbit ^ prevDbit) != 0 ? 1 : -1) * 16000);
+			prevDbit = dbit;
+
+			t += (double) decimate / sampleRate;
+			if((stats != null) && (count++ % 16 == 0))
+				// qua (quality) is not implemented so far
+				stats.printf("%f,%f,%f,%f,%f,%f\n", t, fsc, dPhiSc, bbI, bbQ, clockOffset);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input.dsp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+import eu.jacquet80.rds.input.BitReader;
+
+/**
+ * Modulates an RDS bit stream into an MPX signal, as an RDS encoder does.
+ *
+ * Data bits are differentially encoded, then biphase coded, with each
+ * symbol shaped as one period of a sine to limit the bandwidth. The
+ * resulting signal is modulated in amplitude, with suppressed carrier, onto
+ * a 57 kHz subcarrier, which is the third harmonic of the 19 kHz pilot tone
+ * that is also part of the MPX signal. The bit clock is derived from the
+ * pilot too, 16 pilot periods making one bit.
+ *
+ * White Gaussian noise can be added to the signal. Samples are clipped to
+ * [-1, 1], so that they can be converted to PCM.
+ */
+public final class RdsModulator {
+	/** Pilot tone frequency */
+	private static final double F_PILOT = 19000.0;
+
+	/** Pilot periods per RDS bit */
+	private static final int PILOT_PERIODS_PER_BIT = 16;
+
+	private static final double PILOT_LEVEL = 0.09;
+	private static final double DEFAULT_RDS_LEVEL = 0.05;
+
+	private final double pilotStep;
+	private double rdsLevel = DEFAULT_RDS_LEVEL;
+	private double noiseLevel = 0;
+	private Random random = new Random(0);
+
+	/** Phase of the pilot, in periods, from 0 to {@link #PILOT_PERIODS_PER_BIT} */
+	private double pilotPhase = 0;
+
+	/** Output level of the differential encoder */
+	private boolean level = false;
+
+	private final long[] bitBuffer = new long[1];
+	private boolean needBit = true;
+	private boolean endOfStream = false;
+
+	/**
+	 * @param sampleRate the sample rate of the MPX signal, which must be
+	 * above twice the highest frequency of the RDS signal (about 60 kHz)
+	 */
+	public RdsModulator(int sampleRate) {
+		if(sampleRate < 128000) {
+			throw new IllegalArgumentException("Sample rate too low for the RDS subcarrier: " + sampleRate);
+		}
+		this.pilotStep = F_PILOT / sampleRate;
+	}
+
+	/**
+	 * Sets the peak level of the RDS signal. It is 0.05 by default, the
+	 * pilot level being 0.09.
+	 */
+	public void setRdsLevel(double level) {
+		this.rdsLevel = level;
+	}
+
+	/**
+	 * Sets the RMS level of the white noise added to the signal. There is no
+	 * noise by default.
+	 */
+	public void setNoiseLevel(double level) {
+		this.noiseLevel = level;
+	}
+
+	/**
+	 * Sets the seed of the noise generator.
+	 */
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * Generates MPX samples, reading bits from the given reader as needed.
+	 *
+	 * @param bits the data bits to transmit
+	 * @param dst the array in which to store the samples
+	 * @param offset the index of the first sample in {@code dst}
+	 * @param length the number of samples to generate
+	 * @return the number of samples generated, which is less than
+	 * {@code length} only at the end of the bit stream, or -1 if the end of
+	 * the bit stream had already been reached
+	 * @throws IOException
+	 */
+	public int modulate(BitReader bits, double[] dst, int offset, int length) throws IOException {
+		if(endOfStream) return -1;
+		for(int i=0; i<length; i++) {
+			if(needBit) {
+				// start of a new bit: differential encoding
+				int n;
+				try {
+					n = bits.readBits(bitBuffer, 1);
+				} catch(EOFException e) {
+					n = -1;
+				}
+				if(n < 0) {
+					endOfStream = true;
+					return i == 0 ? -1 : i;
+				}
+				if(bitBuffer[0] < 0) level = ! level;
+				needBit = false;
+			}
+
+			double symbol = Oscillator.sin(2 * Math.PI * pilotPhase / PILOT_PERIODS_PER_BIT);
+			if(! level) symbol = -symbol;
+			double sample = PILOT_LEVEL * Oscillator.sin(2 * Math.PI * pilotPhase)
+					+ rdsLevel * symbol * Oscillator.sin(3 * 2 * Math.PI * pilotPhase);
+			if(noiseLevel > 0) sample += noiseLevel * random.nextGaussian();
+			dst[offset + i] = Math.max(-1, Math.min(1, sample));
+
+			pilotPhase += pilotStep;
+			if(pilotPhase >= PILOT_PERIODS_PER_BIT) {
+				pilotPhase -= PILOT_PERIODS_PER_BIT;
+				needBit = true;
+			}
+		}
+		return length;
+	}
+}
@@ -10,6 +10,12 @@ public class GroupReceived extends LogMessage {
 	private final String analysis;
 	private final int nbOk;
 	
+	private final static char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	
+	/**
+	 * @param analysis the analysis text, or {@code null} if the analysis is
+	 * disabled (see {@link eu.jacquet80.rds.core.DecoderConfig#setAnalysisEnabled(boolean)})
+	 */
 	public GroupReceived(RDSTime time, int[] blocks, int nbOk, String analysis) {
 		super(time);
 		
@@ -50,8 +56,12 @@ public class GroupReceived extends LogMessage {
 				(blocks[3] != -1 ? 8 : 0);
 	}
 	
+	/**
+	 * @brief Returns the human-readable analysis of the group, or an empty string if
+	 * the analysis was disabled.
+	 */
 	public String getAnalysis() {
-		return analysis;
+		return analysis == null ? "" : analysis;
 	}
 
 	public String toString(boolean includeTime) {
@@ -64,8 +74,9 @@ public class GroupReceived extends LogMessage {
 		sb.append("[");
 		
 		for(int i=0; i<4; i++) {
-			if(blocks[i] >= 0) sb.append(String.format("%04X", blocks[i]));
-			else sb.append("----");
+			if(blocks[i] >= 0) {
+				for(int shift=12; shift>=0; shift-=4) sb.append(HEX_DIGITS[(blocks[i] >> shift) & 0xF]);
+			} else sb.append("----");
 			if(i < 3) sb.append(' ');
 		}
 		sb.append("] ").append(getAnalysis());
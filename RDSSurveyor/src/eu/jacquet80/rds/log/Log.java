@@ -25,21 +25,411 @@
 
 package eu.jacquet80.rds.log;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
+import eu.jacquet80.rds.input.BinaryGroupLogReader;
+import eu.jacquet80.rds.input.BinaryGroupLogWriter;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.group.GroupEvent;
+
+/**
+ * The log of a decoding session.
+ *
+ * Messages are stored in segments of {@value #SEGMENT_SIZE} messages. A log
+ * may be given a memory budget: when the messages in memory exceed it, the
+ * oldest segments are taken out of memory. If a spill file is given, their
+ * groups are written to it (in the binary group log format) and they are
+ * reloaded when needed; otherwise their groups are simply evicted. The
+ * other messages (stations, clock times...) are few, and always kept.
+ *
+ * Message indices never change, and {@link #getMessage(int)} works for any
+ * index below {@link #messageCount()}, but returns {@code null} for evicted
+ * groups. Reloaded groups have no analysis text.
+ * 
+ * The log is indexed by time, by type of message and by PI, so that the
+ * messages in a given window can be found without scanning the whole log.
+ * The indexes are always kept in memory, and take about 8 bytes per message.
+ * 
+ * Messages in memory, their count and their elapsed times are read without
+ * locking: a message is fully stored before the count that covers it is
+ * published, so readers never wait for the decoder. Reloading spilled
+ * groups and the indexes by type and PI use the lock of the log.
+ * 
+ * New messages are given to listeners outside of the lock of the log, so
+ * that slow listeners do not block the readers of the log. By default each
+ * listener runs in its own thread, see {@link MessageSubscription}.
+ */
 public class Log {
-	private ArrayList<LogMessage> messages = new ArrayList<LogMessage>();
+	public final static int SEGMENT_SIZE = 4096;
+	
+	/** Estimated size of a message in memory, excluding the analysis text */
+	private final static int MESSAGE_SIZE = 100;
+	
+	/** Number of reloaded segments kept in memory */
+	private final static int RELOADED_SEGMENTS = 2;
+	
+	private final long memoryBudget;
+	private final File spillFile;
+	
+	// grown by copy, and published before the count of messages, so that
+	// it covers every index below the count seen by a reader
+	private volatile Segment[] segments = new Segment[16];
+	private int segmentCount = 0;
+	private volatile int count = 0;
+	private volatile long memoryUsed = 0;
+	
+	/** Index of the oldest segment whose messages are in memory */
+	private int firstInMemory = 0;
+	
+	private BinaryGroupLogWriter spillWriter;
+	private BinaryGroupLogReader spillReader;
+	private long spilledRecords = 0;
+	private boolean closed = false;
+	
+	private final Map<Segment, LogMessage[]> reloaded = new LinkedHashMap<Segment, LogMessage[]>(4, .75f, true) {
+		private static final long serialVersionUID = 1L;
 
-	// create a set of log message visitors in order to ensure that the same
-	// visitor is not registered several times
-	private Set<LogMessageVisitor> newMessageListeners = new HashSet<LogMessageVisitor>();
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Segment, LogMessage[]> eldest) {
+			return size() > RELOADED_SEGMENTS;
+		}
+	};
+
+	/** Serializes the writers, so that listeners see messages in order */
+	private final Object writeLock = new Object();
+	
+	// copy-on-write array, so that messages are dispatched without locking;
+	// the same visitor is never registered several times
+	private volatile MessageSubscription[] subscriptions = new MessageSubscription[0];
+	
+	/** The time runs of the log, in order */
+	private final List<Run> runs = new ArrayList<Run>();
+	
+	/** Indices of the messages other than groups, by type of message */
+	private final Map<Class<? extends LogMessage>, IntList> typeIndex = new HashMap<Class<? extends LogMessage>, IntList>();
+	
+	/** Ranges of messages of the tuned stations, by PI */
+	private final Map<Integer, List<Range>> piIndex = new HashMap<Integer, List<Range>>();
+	private Range currentPIRange;
+	private int currentPI = -1;
+	
+	private static class Segment {
+		/** The messages, or {@code null} once the segment is out of memory */
+		volatile LogMessage[] messages = new LogMessage[SEGMENT_SIZE];
+		
+		/** Elapsed times of the messages, always kept in memory */
+		final long[] elapsed = new long[SEGMENT_SIZE];
+		int length = 0;
+		long size = 0;
+		
+		/** Messages that are not groups, by offset, once out of memory */
+		Map<Integer, LogMessage> others;
+		
+		/** Number of the first spilled record, or -1 if groups were evicted */
+		long firstRecord = -1;
+	}
+	
+	/**
+	 * A sequence of messages whose times are of the same kind and do not
+	 * go backwards, typically the messages from one input stream.
+	 */
+	private static class Run {
+		final int firstIndex;
+		final boolean realTime;
+		final long firstKey;
+		final long firstElapsed;
+		long lastKey;
+		
+		Run(int firstIndex, boolean realTime, long key, long elapsed) {
+			this.firstIndex = firstIndex;
+			this.realTime = realTime;
+			this.firstKey = this.lastKey = key;
+			this.firstElapsed = elapsed;
+		}
+	}
+	
+	/**
+	 * A range of message indices, from {@code start} (inclusive) to
+	 * {@code end} (exclusive).
+	 */
+	public static class Range {
+		private final int start;
+		private int end;
+		
+		Range(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+		
+		public int getStart() {
+			return start;
+		}
+		
+		public int getEnd() {
+			return end;
+		}
+		
+		public String toString() {
+			return "[" + start + ", " + end + ")";
+		}
+	}
+	
+	/** A growable array of increasing indices */
+	private static class IntList {
+		int[] values = new int[16];
+		int size = 0;
+		
+		void add(int v) {
+			if(size == values.length) {
+				int[] n = new int[2 * size];
+				System.arraycopy(values, 0, n, 0, size);
+				values = n;
+			}
+			values[size++] = v;
+		}
+		
+		/** @return the position of the first value that is at least {@code v} */
+		int lowerBound(int v) {
+			int lo = 0, hi = size;
+			while(lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if(values[mid] < v) lo = mid + 1; else hi = mid;
+			}
+			return lo;
+		}
+	}
+	
+	/**
+	 * Creates a log that keeps all messages in memory.
+	 */
+	public Log() {
+		this(Long.MAX_VALUE, null);
+	}
+	
+	/**
+	 * Creates a log with a bounded memory footprint.
+	 * 
+	 * @param memoryBudget the approximate size of the messages kept in
+	 * memory, in bytes; the newest segment is always kept
+	 * @param spillFile the file where groups are spilled, or {@code null} to
+	 * evict them
+	 */
+	public Log(long memoryBudget, File spillFile) {
+		this.memoryBudget = memoryBudget;
+		this.spillFile = spillFile;
+	}
+	
+	public void addMessage(LogMessage message) {
+		synchronized(writeLock) {
+			// the spill file is written outside of the lock of the log, so
+			// that readers do not wait for the disk
+			for(Segment s : store(message)) offload(s);
+			for(MessageSubscription sub : subscriptions) sub.publish(message);
+		}
+	}
+	
+	/**
+	 * Stores a message.
+	 * 
+	 * @return the segments to take out of memory to stay within the budget
+	 */
+	private synchronized List<Segment> store(LogMessage message) {
+		Segment s = segmentCount == 0 ? null : segments[segmentCount - 1];
+		if(s == null || s.length == SEGMENT_SIZE) {
+			s = new Segment();
+			if(segmentCount == segments.length) {
+				Segment[] n = new Segment[2 * segmentCount];
+				System.arraycopy(segments, 0, n, 0, segmentCount);
+				segments = n;
+			}
+			segments[segmentCount++] = s;
+		}
+		int index = count;
+		s.elapsed[s.length] = indexTime(message, index);
+		s.messages[s.length++] = message;
+		indexTypeAndPI(message, index);
+		long size = sizeOf(message);
+		s.size += size;
+		memoryUsed += size;
+		// publishes the message to the readers
+		count = index + 1;
+		
+		List<Segment> full = Collections.emptyList();
+		long used = memoryUsed;
+		while(used > memoryBudget && firstInMemory < segmentCount - 1) {
+			if(full.isEmpty()) full = new ArrayList<Segment>();
+			Segment f = segments[firstInMemory++];
+			full.add(f);
+			used -= f.size;
+		}
+		return full;
+	}
+	
+	/**
+	 * @return the time of a message, in milliseconds, as the comparable key
+	 * of its time kind, or {@code null} if the message has no time
+	 */
+	private static Long timeKey(RDSTime time) {
+		if(time instanceof RealTime) {
+			return time.getRealTime(null, null).getTime();
+		} else if(time instanceof SequentialTime) {
+			return (long) (((SequentialTime) time).getGroupTime() * 1000 / 1187.5);
+		}
+		return null;
+	}
+	
+	/**
+	 * Updates the runs with the time of a new message.
+	 * 
+	 * @return the elapsed time of the message
+	 */
+	private long indexTime(LogMessage message, int index) {
+		Run run = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+		long previous = index == 0 ? 0 : elapsedAt(index - 1);
+		Long key = timeKey(message.getTime());
+		if(key == null) return previous;
+		
+		boolean realTime = message.getTime() instanceof RealTime;
+		if(run == null || run.realTime != realTime || key < run.lastKey) {
+			// a new run starts where the previous one stopped
+			runs.add(new Run(index, realTime, key, previous));
+			return previous;
+		}
+		run.lastKey = key;
+		return run.firstElapsed + key - run.firstKey;
+	}
+	
+	private void indexTypeAndPI(LogMessage message, int index) {
+		int pi = -1;
+		if(message instanceof GroupReceived) {
+			pi = ((GroupReceived) message).getBlocks()[0];
+		} else {
+			IntList l = typeIndex.get(message.getClass());
+			if(l == null) typeIndex.put(message.getClass(), l = new IntList());
+			l.add(index);
+			
+			if(message instanceof StationTuned) {
+				pi = ((StationTuned) message).getStation().getPI();
+			} else if(message instanceof StationLost) {
+				pi = ((StationLost) message).getStation().getPI();
+			}
+		}
+		
+		if(pi < 0) return;
+		if(pi != currentPI) {
+			List<Range> l = piIndex.get(pi);
+			if(l == null) piIndex.put(pi, l = new ArrayList<Range>());
+			currentPIRange = new Range(index, index + 1);
+			l.add(currentPIRange);
+			currentPI = pi;
+		} else {
+			currentPIRange.end = index + 1;
+		}
+	}
 	
-	public synchronized void addMessage(LogMessage message) {
-		messages.add(message);
+	private long elapsedAt(int index) {
+		return segments[index / SEGMENT_SIZE].elapsed[index % SEGMENT_SIZE];
+	}
+	
+	private static long sizeOf(LogMessage message) {
+		if(message instanceof GroupReceived) {
+			return MESSAGE_SIZE + 2 * ((GroupReceived) message).getAnalysis().length();
+		}
+		return MESSAGE_SIZE;
+	}
+	
+	/**
+	 * Takes the groups of a segment out of memory. Called with the write
+	 * lock held, but not the lock of the log: the segment is full, so its
+	 * messages do not change, and readers keep reading them from memory
+	 * until they have been written.
+	 */
+	private void offload(Segment s) {
+		Map<Integer, LogMessage> others = new HashMap<Integer, LogMessage>();
+		long firstRecord = -1;
+		long records = 0;
 		
-		for(LogMessageVisitor v : newMessageListeners) message.accept(v);
+		if(spillFile != null && spillWriter == null && !closed) {
+			try {
+				spillWriter = new BinaryGroupLogWriter(spillFile);
+			} catch(IOException e) {
+				System.err.println("Cannot create log spill file, old groups will be discarded: " + e);
+			}
+		}
+		
+		boolean spill = spillWriter != null;
+		if(spill) firstRecord = spilledRecords;
+		
+		try {
+			for(int i=0; i<s.length; i++) {
+				LogMessage m = s.messages[i];
+				if(m instanceof GroupReceived) {
+					if(spill) {
+						GroupReceived g = (GroupReceived) m;
+						spillWriter.write(new GroupEvent(g.getTime(), g.getBlocks(), false));
+						records++;
+					}
+				} else others.put(i, m);
+			}
+			if(spill) spillWriter.flush();
+		} catch(IOException e) {
+			System.err.println("Cannot write log spill file, old groups will be discarded: " + e);
+			firstRecord = -1;
+			try {
+				spillWriter.close();
+			} catch(IOException e2) {}
+			spillWriter = null;
+		}
+		
+		synchronized(this) {
+			spilledRecords += records;
+			s.others = others;
+			s.firstRecord = firstRecord;
+			s.messages = null;
+			memoryUsed -= s.size;
+		}
+	}
+	
+	/**
+	 * Reads the groups of a spilled segment back from the spill file.
+	 */
+	private LogMessage[] reload(Segment s) {
+		LogMessage[] messages = reloaded.get(s);
+		if(messages != null) return messages;
+		
+		messages = new LogMessage[s.length];
+		try {
+			if(spillReader == null || spillReader.getRecordCount() < spilledRecords) {
+				if(spillReader != null) spillReader.close();
+				spillReader = new BinaryGroupLogReader(spillFile);
+			}
+			spillReader.seekToRecord(s.firstRecord);
+			for(int i=0; i<s.length; i++) {
+				LogMessage m = s.others.get(i);
+				if(m == null) {
+					GroupEvent g = (GroupEvent) spillReader.getGroup();
+					int nbOk = 0;
+					for(int b : g.blocks) if(b >= 0) nbOk++;
+					m = new GroupReceived(g.getTime(), g.blocks, nbOk, null);
+				}
+				messages[i] = m;
+			}
+		} catch(IOException e) {
+			System.err.println("Cannot read log spill file: " + e);
+		} catch(GroupReader.EndOfStream e) {
+			System.err.println("Log spill file is truncated");
+		}
+		reloaded.put(s, messages);
+		return messages;
 	}
 	
 	/*
@@ -52,30 +442,259 @@ public class Log {
 	// section issue if some message appears between the moment the count is
 	// gotten and the moment the items are iterated. Newer messages simply are
 	// not scanned this time.
-	public synchronized int messageCount() {
-		return messages.size();
+	public int messageCount() {
+		return count;
+	}
+	
+	/**
+	 * Returns a message, reloading it from the spill file if needed.
+	 * 
+	 * @return the message, or {@code null} if it was a group, and it was
+	 * evicted from memory
+	 */
+	public LogMessage getMessage(int i) {
+		int n = count;
+		if(i < 0 || i >= n) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + n);
+		
+		Segment s = segments[i / SEGMENT_SIZE];
+		LogMessage[] messages = s.messages;
+		if(messages != null) return messages[i % SEGMENT_SIZE];
+		return getOffloaded(s, i % SEGMENT_SIZE);
 	}
 	
-	public synchronized LogMessage getMessage(int i) {
-		return messages.get(i);
+	private synchronized LogMessage getOffloaded(Segment s, int offset) {
+		LogMessage m = s.others.get(offset);
+		if(m != null || s.firstRecord < 0) return m;
+		return reload(s)[offset];
+	}
+	
+	/**
+	 * @return the approximate size of the messages currently in memory, in
+	 * bytes
+	 */
+	public long getMemoryUsed() {
+		return memoryUsed;
+	}
+	
+	/**
+	 * Returns the time of a message on the timeline of the log, which
+	 * starts at 0 and never goes backwards: when the time of messages jumps
+	 * backwards (for instance when a new file is played), the timeline goes
+	 * on from the time of the previous message. Messages without a time
+	 * have the time of the previous message.
+	 * 
+	 * @return the elapsed time, in milliseconds
+	 */
+	public long getElapsed(int index) {
+		int n = count;
+		if(index < 0 || index >= n) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + n);
+		return elapsedAt(index);
+	}
+	
+	/**
+	 * @return the index of the first message whose elapsed time is at least
+	 * {@code elapsed}, or {@link #messageCount()} if there is none
+	 */
+	public int indexAtElapsed(long elapsed) {
+		int lo = 0, hi = count;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(elapsedAt(mid) < elapsed) lo = mid + 1; else hi = mid;
+		}
+		return lo;
+	}
+	
+	/**
+	 * Finds the first message at or after a given time. If the time occurs
+	 * in several runs (for instance if the same file was played twice), the
+	 * first one is used.
+	 * 
+	 * @return the index of the message, or {@link #messageCount()} if the
+	 * time is after all messages, or -1 if it is not in the log
+	 */
+	public synchronized int indexAt(RDSTime time) {
+		Long key = timeKey(time);
+		if(key == null) return -1;
+		boolean realTime = time instanceof RealTime;
+		
+		for(int i=0; i<runs.size(); i++) {
+			Run run = runs.get(i);
+			if(run.realTime != realTime || key > run.lastKey) continue;
+			if(key <= run.firstKey) return run.firstIndex;
+			int end = i + 1 < runs.size() ? runs.get(i + 1).firstIndex : count;
+			return Math.min(indexAtElapsed(run.firstElapsed + key - run.firstKey), end);
+		}
+		
+		Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+		return last != null && last.realTime == realTime && key > last.lastKey ? count : -1;
+	}
+	
+	/**
+	 * @return the indices of the messages of a given type, between
+	 * {@code from} (inclusive) and {@code to} (exclusive); groups are not
+	 * indexed
+	 */
+	public synchronized int[] getIndices(Class<? extends LogMessage> type, int from, int to) {
+		IntList l = typeIndex.get(type);
+		if(l == null || from >= to) return new int[0];
+		int start = l.lowerBound(from), end = l.lowerBound(to);
+		int[] res = new int[end - start];
+		System.arraycopy(l.values, start, res, 0, res.length);
+		return res;
+	}
+	
+	/**
+	 * @return the messages of a given type, between {@code from}
+	 * (inclusive) and {@code to} (exclusive); groups are not indexed
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T extends LogMessage> List<T> getMessages(Class<T> type, int from, int to) {
+		int[] indices = getIndices(type, from, to);
+		List<T> res = new ArrayList<T>(indices.length);
+		for(int i : indices) res.add((T) getMessage(i));
+		return res;
+	}
+	
+	/**
+	 * @return the index of the last message of a given type before
+	 * {@code index}, or -1 if there is none
+	 */
+	public synchronized int previousIndex(Class<? extends LogMessage> type, int index) {
+		IntList l = typeIndex.get(type);
+		if(l == null) return -1;
+		int pos = l.lowerBound(index);
+		return pos == 0 ? -1 : l.values[pos - 1];
+	}
+	
+	/**
+	 * @return the index of the first message of a given type at or after
+	 * {@code index}, or -1 if there is none
+	 */
+	public synchronized int nextIndex(Class<? extends LogMessage> type, int index) {
+		IntList l = typeIndex.get(type);
+		if(l == null) return -1;
+		int pos = l.lowerBound(index);
+		return pos == l.size ? -1 : l.values[pos];
+	}
+	
+	/**
+	 * @return the PIs of the stations tuned in the log
+	 */
+	public synchronized Set<Integer> getPIs() {
+		return new TreeSet<Integer>(piIndex.keySet());
+	}
+	
+	/**
+	 * Returns the ranges of messages during which a station was tuned. A
+	 * range extends from the first to the last group or station message
+	 * with the PI of the station.
+	 * 
+	 * @return the ranges that intersect {@code from} (inclusive) to
+	 * {@code to} (exclusive)
+	 */
+	public synchronized List<Range> getRanges(int pi, int from, int to) {
+		List<Range> l = piIndex.get(pi);
+		if(l == null) return Collections.emptyList();
+		// ranges do not overlap, so their ends are increasing
+		int lo = 0, hi = l.size();
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(l.get(mid).end <= from) lo = mid + 1; else hi = mid;
+		}
+		List<Range> res = new ArrayList<Range>();
+		for(int i=lo; i<l.size() && l.get(i).start < to; i++) {
+			res.add(new Range(l.get(i).start, l.get(i).end));
+		}
+		return res;
 	}
 	
 	/*public void addGroupListener(Runnable r) {
 		groupListeners.add(r);
 	}*/
 	
-	public synchronized void addNewMessageListener(LogMessageVisitor v) {
-		newMessageListeners.add(v);
+	/**
+	 * Registers a listener of new messages, with its own thread, that blocks
+	 * the writers when it lags too much.
+	 */
+	public MessageSubscription addNewMessageListener(LogMessageVisitor v) {
+		return addNewMessageListener(v, MessageSubscription.Policy.BLOCK);
+	}
+	
+	/**
+	 * Registers a listener of new messages. If the listener is already
+	 * registered, its existing subscription is returned.
+	 */
+	public MessageSubscription addNewMessageListener(LogMessageVisitor v, MessageSubscription.Policy policy) {
+		synchronized(writeLock) {
+			for(MessageSubscription sub : subscriptions) {
+				if(sub.getVisitor() == v) return sub;
+			}
+			MessageSubscription sub = new MessageSubscription(v, policy);
+			MessageSubscription[] subs = new MessageSubscription[subscriptions.length + 1];
+			System.arraycopy(subscriptions, 0, subs, 0, subscriptions.length);
+			subs[subscriptions.length] = sub;
+			subscriptions = subs;
+			return sub;
+		}
+	}
+	
+	public void removeNewMessageListener(LogMessageVisitor v) {
+		synchronized(writeLock) {
+			List<MessageSubscription> subs = new ArrayList<MessageSubscription>();
+			for(MessageSubscription sub : subscriptions) {
+				if(sub.getVisitor() == v) sub.cancel();
+				else subs.add(sub);
+			}
+			subscriptions = subs.toArray(new MessageSubscription[subs.size()]);
+		}
+	}
+	
+	/**
+	 * @return the subscriptions of the listeners, for instance to monitor
+	 * their lag
+	 */
+	public MessageSubscription[] getSubscriptions() {
+		return subscriptions.clone();
 	}
 	
-	public synchronized void removeNewMessageListener(LogMessageVisitor v) {
-		newMessageListeners.remove(v);
+	/**
+	 * Waits until all listeners have processed the messages added so far.
+	 */
+	public void awaitListeners() throws InterruptedException {
+		for(MessageSubscription sub : subscriptions) sub.awaitProcessed();
+	}
+	
+	/**
+	 * Closes the spill file, if any. The messages that were spilled can no
+	 * longer be reloaded, and older messages are evicted from now on.
+	 */
+	public void close() {
+		// the spill writer belongs to the writers
+		synchronized(writeLock) {
+			synchronized(this) {
+				closed = true;
+				try {
+					if(spillWriter != null) spillWriter.close();
+					if(spillReader != null) spillReader.close();
+				} catch(IOException e) {
+					System.err.println("Cannot close log spill file: " + e);
+				}
+				spillWriter = null;
+				spillReader = null;
+				for(int i=0; i<segmentCount; i++) {
+					if(segments[i].messages == null) segments[i].firstRecord = -1;
+				}
+				reloaded.clear();
+			}
+		}
 	}
 	
 	public String toString() {
 		StringBuffer res = null;
 		synchronized(this) {
-			for(LogMessage m : messages) {
+			for(int i=0; i<count; i++) {
+				LogMessage m = getMessage(i);
+				if(m == null) continue;
 				if(res == null) res = new StringBuffer("Log\t");
 				else res.append("\n\t");
 				res.append(m);
@@ -84,8 +703,8 @@ public class Log {
 		return (res == null) ? "Empty Log" : res.toString();
 	}
 	
-	public synchronized boolean empty() {
-		return messages.size() == 0;
+	public boolean empty() {
+		return count == 0;
 	}
 	
 	public void notifyGroup() {
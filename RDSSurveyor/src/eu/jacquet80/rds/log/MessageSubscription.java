@@ -0,0 +1,255 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import eu.jacquet80.rds.util.BoundedQueue;
+
+/**
+ * The registration of a listener of new messages at a {@link Log}.
+ * 
+ * Unless its policy is {@link Policy#SYNCHRONOUS}, a listener has its own
+ * queue and its own thread, so a slow listener (typically one that updates
+ * the user interface) does not slow down the decoder nor the other
+ * listeners. The policy tells what to do when the queue of a listener is
+ * full.
+ */
+public class MessageSubscription {
+	public final static int QUEUE_CAPACITY = 4096;
+	
+	/** Maximum time a listener thread waits before checking its queue again */
+	private final static long PARK_NANOS = 10000000;
+	
+	public static enum Policy {
+		/** Messages are visited in the thread that adds them to the log */
+		SYNCHRONOUS,
+		
+		/** The thread that adds a message waits until there is room for it */
+		BLOCK,
+		
+		/** Messages that do not fit in the queue are dropped */
+		DROP,
+		
+		/**
+		 * Groups that do not fit in the queue are dropped, but the other
+		 * messages (which are rare, and which change state) are waited for.
+		 */
+		COALESCE
+	}
+	
+	private final LogMessageVisitor visitor;
+	private final Policy policy;
+	private final BoundedQueue<LogMessage> queue;
+	private final Thread thread;
+	
+	/** Number of messages given to this subscription */
+	private final AtomicLong published = new AtomicLong();
+	
+	/** Number of messages visited or dropped */
+	private final AtomicLong processed = new AtomicLong();
+	
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile long maxLag = 0;
+	private volatile boolean waiting = false;
+	private volatile boolean active = true;
+	
+	MessageSubscription(LogMessageVisitor visitor, Policy policy) {
+		this.visitor = visitor;
+		this.policy = policy;
+		if(policy == Policy.SYNCHRONOUS) {
+			queue = null;
+			thread = null;
+		} else {
+			queue = new BoundedQueue<LogMessage>(QUEUE_CAPACITY);
+			thread = new Thread("Log listener " + visitor.getClass().getName()) {
+				public void run() {
+					consume();
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	/**
+	 * Gives a new message to the listener. Must only be called by one thread
+	 * at a time.
+	 */
+	void publish(LogMessage message) {
+		published.incrementAndGet();
+		
+		if(queue == null) {
+			try {
+				message.accept(visitor);
+			} finally {
+				processed.incrementAndGet();
+			}
+			return;
+		}
+		
+		boolean queued = active && queue.offer(message);
+		if(! queued && active) {
+			if(policy == Policy.DROP || 
+					(policy == Policy.COALESCE && message instanceof GroupReceived)) {
+				dropped.incrementAndGet();
+				processed.incrementAndGet();
+				return;
+			}
+			
+			while(active && ! (queued = queue.offer(message))) {
+				wakeUp();
+				LockSupport.parkNanos(PARK_NANOS / 100);
+			}
+		}
+		
+		if(! active) {
+			// the listener is gone, and will never visit the message nor
+			// those still in its queue
+			if(! queued) {
+				dropped.incrementAndGet();
+				processed.incrementAndGet();
+			}
+			discardQueued();
+			return;
+		}
+		
+		long lag = getLag();
+		if(lag > maxLag) maxLag = lag;
+		if(waiting) wakeUp();
+	}
+	
+	private void wakeUp() {
+		LockSupport.unpark(thread);
+	}
+	
+	private void consume() {
+		try {
+			while(active) {
+				LogMessage message = queue.poll();
+				if(message == null) {
+					waiting = true;
+					// a message may have been added before waiting was set
+					if((message = queue.poll()) == null) {
+						LockSupport.parkNanos(this, PARK_NANOS);
+						waiting = false;
+						continue;
+					}
+					waiting = false;
+				}
+				
+				try {
+					message.accept(visitor);
+				} catch(RuntimeException e) {
+					System.err.println("In log listener " + visitor + ": " + e);
+					e.printStackTrace(System.err);
+				} finally {
+					processed.incrementAndGet();
+				}
+			}
+		} finally {
+			// if the thread dies, do not let writers wait for it
+			active = false;
+			discardQueued();
+		}
+	}
+	
+	/**
+	 * Counts the messages left in the queue of a listener that has stopped
+	 * as dropped.
+	 */
+	private void discardQueued() {
+		while(queue.poll() != null) {
+			dropped.incrementAndGet();
+			processed.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Stops delivering messages. The messages still in the queue are
+	 * discarded.
+	 */
+	void cancel() {
+		active = false;
+		if(thread != null) wakeUp();
+	}
+	
+	/**
+	 * Waits until the listener has processed all the messages given to it
+	 * so far.
+	 */
+	public void awaitProcessed() throws InterruptedException {
+		long target = published.get();
+		while(active && processed.get() < target) {
+			if(Thread.interrupted()) throw new InterruptedException();
+			LockSupport.parkNanos(PARK_NANOS / 100);
+		}
+	}
+	
+	public LogMessageVisitor getVisitor() {
+		return visitor;
+	}
+	
+	public Policy getPolicy() {
+		return policy;
+	}
+	
+	/**
+	 * @return the number of messages given to the listener that it has not
+	 * processed yet
+	 */
+	public long getLag() {
+		return published.get() - processed.get();
+	}
+	
+	/**
+	 * @return the largest lag observed so far
+	 */
+	public long getMaxLag() {
+		return maxLag;
+	}
+	
+	/**
+	 * @return the number of messages dropped because the listener was too slow
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+	
+	/**
+	 * @return the number of messages visited by the listener
+	 */
+	public long getDelivered() {
+		return processed.get() - dropped.get();
+	}
+	
+	public String toString() {
+		return visitor.getClass().getName() + " (" + policy + "): lag " + getLag() + 
+				" (max " + maxLag + "), " + getDelivered() + " delivered, " + 
+				getDropped() + " dropped";
+	}
+}
@@ -29,11 +29,16 @@ public class RealTime implements RDSTime {
 		this.time = new Date();
 	}
 	
+	// SimpleDateFormat is not thread-safe, and several decoders may run at once
 	public String toString() {
-		return TIME_FORMAT.format(this.time);
+		synchronized(TIME_FORMAT) {
+			return TIME_FORMAT.format(this.time);
+		}
 	}
 	
 	public String toLongString() {
-		return LONG_TIME_FORMAT.format(this.time);
+		synchronized(LONG_TIME_FORMAT) {
+			return LONG_TIME_FORMAT.format(this.time);
+		}
 	}
 }
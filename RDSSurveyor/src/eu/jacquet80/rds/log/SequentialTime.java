@@ -37,6 +37,13 @@ public class SequentialTime implements RDSTime {
 		this.groupTime = groupTime;
 	}
 	
+	/**
+	 * @return the raw value of the counter
+	 */
+	public int getGroupTime() {
+		return groupTime;
+	}
+	
 	public String toString() {
 		return FORMAT.format(groupTime % 10000);
 	}
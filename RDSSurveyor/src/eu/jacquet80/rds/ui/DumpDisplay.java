@@ -11,8 +11,6 @@ import java.awt.RenderingHints;
 import java.awt.Toolkit;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
-import java.util.HashSet;
-import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.swing.BorderFactory;
@@ -28,6 +26,8 @@ import javax.swing.event.DocumentListener;
 import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
 import eu.jacquet80.rds.log.GroupReceived;
 import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.LogMessageVisitor;
+import eu.jacquet80.rds.log.MessageSubscription;
 
 public class DumpDisplay extends JFrame {
 	private static final long serialVersionUID = -5330439172208705930L;
@@ -70,7 +70,15 @@ public class DumpDisplay extends JFrame {
 	private final static Pattern NEWLINE_PATTERN = Pattern.compile("\n");
 	private final static String TAB_STRING = "                      ";
 	
-	private Set<Log> logsImRegisteredAt = new HashSet<Log>();
+	/** The log whose groups are displayed */
+	private Log log = null;
+	
+	private final LogMessageVisitor groupVisitor = new DefaultLogMessageVisitor() {
+		@Override
+		public void visit(GroupReceived groupReceived) {
+			addGroup(groupReceived);
+		}
+	};
 	
 	private Pattern searchText = null;
 	
@@ -248,16 +256,13 @@ public class DumpDisplay extends JFrame {
 	public void resetForNewLog(Log log) {
 		// register at the log, but avoid registering twice at the same log
 		// (otherwise each line read would appear twice (or more) in the
-		// window...)
-		if(! logsImRegisteredAt.contains(log)) {
-			log.addNewMessageListener(new DefaultLogMessageVisitor() {
-				@Override
-				public void visit(GroupReceived groupReceived) {
-					addGroup(groupReceived);
-				}
-			});
+		// window...), and stop the listener thread of the previous log
+		if(log != this.log) {
+			if(this.log != null) this.log.removeNewMessageListener(groupVisitor);
 			
-			logsImRegisteredAt.add(log);
+			// the dump may skip groups rather than slow down the decoder
+			log.addNewMessageListener(groupVisitor, MessageSubscription.Policy.COALESCE);
+			this.log = log;
 		}
 		
 		synchronized(this) {
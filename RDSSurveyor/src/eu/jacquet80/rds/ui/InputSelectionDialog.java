@@ -92,7 +92,7 @@ public class InputSelectionDialog extends JFrame implements ActionListener {
 				try {
 					if("msvcrt.dll".equalsIgnoreCase(path.getName())) continue;
 
-					res = (i==0) ? new NativeTunerGroupReader(path.getAbsolutePath()) : new SdrGroupReader(RDSSurveyor.nullConsole, path.getAbsolutePath());
+					res = (i==0) ? new NativeTunerGroupReader(path.getAbsolutePath()) : new SdrGroupReader(null, path.getAbsolutePath());
 					live = true;
 					found = true;
 					return res;
@@ -63,6 +63,7 @@ import javax.swing.SwingUtilities;
 import javax.swing.text.JTextComponent;
 
 import eu.jacquet80.rds.app.Application;
+import eu.jacquet80.rds.core.DecoderShell;
 import eu.jacquet80.rds.core.RDS;
 import eu.jacquet80.rds.core.TunedStation;
 import eu.jacquet80.rds.input.RDSReader;
@@ -72,6 +73,7 @@ import eu.jacquet80.rds.log.EndOfStream;
 import eu.jacquet80.rds.log.GroupReceived;
 import eu.jacquet80.rds.log.Log;
 import eu.jacquet80.rds.log.LogMessageVisitor;
+import eu.jacquet80.rds.log.MessageSubscription;
 import eu.jacquet80.rds.log.StationTuned;
 import eu.jacquet80.rds.ui.app.AppPanel;
 import eu.jacquet80.rds.ui.input.InputToolBar;
@@ -127,10 +129,16 @@ public class MainWindow extends JFrame {
 	private final DumpDisplay dumpDisplay;
 	private PlaylistWindow playlistWindow;
 	
+	/** The decoder session whose results are displayed */
+	private final DecoderShell decoderShell;
+	
 	private Map<Application, AppPanel> currentAppPanels = new HashMap<Application, AppPanel>();
 	
 	private final LogMessageVisitor windowUpdaterVisitor;
 	
+	/** The log which windowUpdaterVisitor listens to */
+	private Log currentLog = null;
+	
 	private List<InputToolBar> toolbars = new ArrayList<InputToolBar>();
 	
 	
@@ -142,6 +150,10 @@ public class MainWindow extends JFrame {
 		return playlistWindow;
 	}
 	
+	public DecoderShell getDecoderShell() {
+		return decoderShell;
+	}
+	
 	
 	private void updateAppTabs() {
 		if(station == null) return;
@@ -207,13 +219,17 @@ public class MainWindow extends JFrame {
 		pack();
 		repaint();
 		
-		log.addNewMessageListener(windowUpdaterVisitor);
+		// groups only update statistics, they may be skipped under load
+		if(currentLog != null && currentLog != log) currentLog.removeNewMessageListener(windowUpdaterVisitor);
+		log.addNewMessageListener(windowUpdaterVisitor, MessageSubscription.Policy.COALESCE);
+		currentLog = log;
 		
 		dumpDisplay.resetForNewLog(log);
 	}
 	
-	public MainWindow() {
+	public MainWindow(DecoderShell decoderShell) {
 		super("RDS Surveyor");
+		this.decoderShell = decoderShell;
 		
 		// menu bar
 		Menu.setWindow(this);
@@ -9,7 +9,6 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 
-import eu.jacquet80.rds.core.DecoderShell;
 import eu.jacquet80.rds.input.GroupReader;
 
 public class Menu {
@@ -89,8 +88,8 @@ public class Menu {
 							InputSelectionDialog dialog = new InputSelectionDialog();
 							GroupReader reader = dialog.makeChoice();
 							if (reader != null) {
-								mainWindow.setReader(DecoderShell.instance.getLog(), reader);
-								DecoderShell.instance.process(reader, dialog.live);
+								mainWindow.setReader(mainWindow.getDecoderShell().getLog(), reader);
+								mainWindow.getDecoderShell().process(reader, dialog.live);
 							}
 							break;
 						}
@@ -10,17 +10,19 @@ import eu.jacquet80.rds.input.TunerGroupReader;
 
 public class Overviewer extends Thread {
 	private final TunerGroupReader tgr;
+	private final DecoderShell decoderShell;
 	private PrintStream console;
 	
 	
-	public Overviewer(TunerGroupReader tgr, PrintStream console) {
+	public Overviewer(TunerGroupReader tgr, DecoderShell decoderShell, PrintStream console) {
 		this.tgr = tgr;
+		this.decoderShell = decoderShell;
 		this.console = console;
 		this.setName("Overviewer");
 	}
 	
 	public void run() {
-		GroupLevelDecoder groupDecoder = DecoderShell.instance.getGroupReader();
+		GroupLevelDecoder groupDecoder = decoderShell.getGroupReader();
 		
 		console.println("Measuring signal strength");
 		MeasuredSignal[] strength = new MeasuredSignal[206];
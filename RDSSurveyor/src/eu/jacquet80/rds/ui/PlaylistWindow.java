@@ -26,7 +26,6 @@ import javax.swing.JScrollPane;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 
-import eu.jacquet80.rds.core.DecoderShell;
 import eu.jacquet80.rds.input.FileFormatGuesser;
 import eu.jacquet80.rds.input.GroupReader;
 
@@ -86,8 +85,8 @@ public class PlaylistWindow extends JFrame {
 								return;
 							}
 
-							main.setReader(DecoderShell.instance.getLog(), reader);
-							DecoderShell.instance.process(reader, false);
+							main.setReader(main.getDecoderShell().getLog(), reader);
+							main.getDecoderShell().process(reader, false);
 						}
 					}.start();
 				}
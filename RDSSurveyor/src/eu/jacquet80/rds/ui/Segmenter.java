@@ -30,6 +30,7 @@ import java.io.PrintStream;
 import eu.jacquet80.rds.core.TunedStation;
 import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
 import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.MessageSubscription;
 import eu.jacquet80.rds.log.RDSTime;
 import eu.jacquet80.rds.log.StationLost;
 import eu.jacquet80.rds.log.StationTuned;
@@ -44,7 +45,7 @@ public class Segmenter {
 	}
 	
 	public void registerAtLog(Log log) {
-		log.addNewMessageListener(visitor);
+		log.addNewMessageListener(visitor, MessageSubscription.Policy.BLOCK);
 	}
 	
 	private class Visitor extends DefaultLogMessageVisitor {
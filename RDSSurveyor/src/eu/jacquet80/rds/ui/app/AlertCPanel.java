@@ -35,6 +35,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.List;
 
 import javax.swing.Box;
 import javax.swing.JButton;
@@ -151,8 +152,9 @@ public class AlertCPanel extends AppPanel {
 				if (freezeDetails)
 					return;
 				int row = tblList.getSelectedRow();
-				if(row >= 0) {
-					Message msg = app.getMessages().get(row);
+				List<Message> messages = app.getMessages();
+				if(row >= 0 && row < messages.size()) {
+					Message msg = messages.get(row);
 					latestSelectedLocation = msg.lcid;
 					txtDetails.setText(msg.html());
 				} else {
@@ -237,8 +239,10 @@ public class AlertCPanel extends AppPanel {
 		
 		@Override
 		public Object getValueAt(int row, int column) {
-			AlertC.Message msg = app.getMessages().get(row);
-			if(msg == null) return null;
+			// the messages may have changed since the row count was read
+			List<AlertC.Message> messages = app.getMessages();
+			if(row >= messages.size()) return null;
+			AlertC.Message msg = messages.get(row);
 			
 			switch(column) {
 			case 0:
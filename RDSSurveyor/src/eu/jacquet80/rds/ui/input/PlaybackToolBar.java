@@ -15,6 +15,7 @@ import eu.jacquet80.rds.log.EndOfStream;
 import eu.jacquet80.rds.log.GroupReceived;
 import eu.jacquet80.rds.log.Log;
 import eu.jacquet80.rds.log.LogMessageVisitor;
+import eu.jacquet80.rds.log.MessageSubscription;
 import eu.jacquet80.rds.log.StationLost;
 
 @SuppressWarnings("serial")
@@ -103,7 +104,8 @@ public class PlaybackToolBar extends InputToolBar {
 			}
 		};
 		
-		log.addNewMessageListener(visitor);
+		// synchronous, because the listener paces the decoder
+		log.addNewMessageListener(visitor, MessageSubscription.Policy.SYNCHRONOUS);
 		
 		initialTime = System.currentTimeMillis();
 	}
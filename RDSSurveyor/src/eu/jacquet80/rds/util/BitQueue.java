@@ -0,0 +1,119 @@
+package eu.jacquet80.rds.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free bounded queue of bits, for exactly one producer thread and
+ * one consumer thread. Bits are stored in a primitive array, so nothing is
+ * allocated when bits are transferred.
+ *
+ * When the queue is full (resp. empty), the producer (resp. consumer) spins
+ * briefly, then parks for short periods until room (resp. data) becomes
+ * available.
+ */
+public class BitQueue {
+	private final static int SPIN_COUNT = 100;
+	private final static long PARK_NANOS = 100000;
+
+	private final byte[] bits;
+	private final int mask;
+
+	/** Index of the next bit to be written, only modified by the producer */
+	private final AtomicLong head = new AtomicLong();
+
+	/** Index of the next bit to be read, only modified by the consumer */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** Cached value of {@code tail}, only used by the producer */
+	private long tailCache = 0;
+
+	/** Cached value of {@code head}, only used by the consumer */
+	private long headCache = 0;
+
+	private volatile boolean closed = false;
+
+	/** Set when the consumer no longer reads bits */
+	private volatile boolean abandoned = false;
+
+	/**
+	 * @param capacity the capacity of the queue, rounded up to a power of two
+	 */
+	public BitQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		bits = new byte[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds a bit to the queue, waiting for room if necessary. Must only be
+	 * called by the producer thread.
+	 */
+	public void put(boolean bit) {
+		long h = head.get();
+		if(h - tailCache > mask) {
+			int spins = 0;
+			while(h - (tailCache = tail.get()) > mask) {
+				// nobody will make room, drop the bit
+				if(abandoned) return;
+				if(++spins > SPIN_COUNT) LockSupport.parkNanos(PARK_NANOS);
+			}
+		}
+		bits[(int) h & mask] = (byte) (bit ? 1 : 0);
+		head.lazySet(h + 1);
+	}
+
+	/**
+	 * Signals that no more bits will be added to the queue. Must only be
+	 * called by the producer thread.
+	 */
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Signals that the consumer stops reading bits, for instance because it
+	 * failed. From then on, {@link #put(boolean)} drops the bits that do not
+	 * fit in the queue instead of waiting for room. May be called from any
+	 * thread.
+	 */
+	public void abandon() {
+		abandoned = true;
+	}
+
+	/**
+	 * Reads bits from the queue and packs them as described in
+	 * {@link eu.jacquet80.rds.input.BitReader#readBits(long[], int)}. Waits
+	 * until at least one bit is available, then returns all available bits,
+	 * up to {@code maxBits}. Must only be called by the consumer thread.
+	 *
+	 * @return the number of bits read, or -1 if the queue is empty and closed
+	 */
+	public int take(long[] dst, int maxBits) {
+		long t = tail.get();
+		if(headCache == t) {
+			int spins = 0;
+			while((headCache = head.get()) == t) {
+				if(closed) {
+					// bits may have been added just before closing
+					if((headCache = head.get()) == t) return -1;
+					break;
+				}
+				if(++spins > SPIN_COUNT) LockSupport.parkNanos(PARK_NANOS);
+			}
+		}
+
+		int n = (int) Math.min(headCache - t, maxBits);
+		long word = 0;
+		for(int i=0; i<n; i++) {
+			word = (word << 1) | bits[(int) (t + i) & mask];
+			if((i & 63) == 63) {
+				dst[i >> 6] = word;
+				word = 0;
+			}
+		}
+		if((n & 63) != 0) dst[n >> 6] = word << (64 - (n & 63));
+		tail.lazySet(t + n);
+		return n;
+	}
+}
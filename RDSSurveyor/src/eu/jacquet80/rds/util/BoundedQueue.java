@@ -0,0 +1,108 @@
+package eu.jacquet80.rds.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free bounded queue, for any number of producer and consumer
+ * threads.
+ *
+ * Each slot carries a sequence number, which tells whether it is ready to
+ * be written or read for a given round, so that producers (resp.
+ * consumers) only compete on one counter, with a compare-and-set.
+ */
+public class BoundedQueue<T> {
+	private final static int SPIN_COUNT = 100;
+	private final static long PARK_NANOS = 100000;
+	
+	private final AtomicReferenceArray<T> items;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	
+	/** Position of the next item to be written */
+	private final AtomicLong head = new AtomicLong();
+	
+	/** Position of the next item to be read */
+	private final AtomicLong tail = new AtomicLong();
+	
+	/**
+	 * @param capacity the capacity of the queue, rounded up to a power of two
+	 */
+	public BoundedQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+		items = new AtomicReferenceArray<T>(size);
+		sequences = new AtomicLongArray(size);
+		for(int i=0; i<size; i++) sequences.set(i, i);
+		mask = size - 1;
+	}
+	
+	/**
+	 * Adds an item if there is room for it.
+	 * 
+	 * @return {@code false} if the queue is full
+	 */
+	public boolean offer(T item) {
+		while(true) {
+			long h = head.get();
+			int slot = (int) h & mask;
+			long diff = sequences.get(slot) - h;
+			if(diff == 0) {
+				if(head.compareAndSet(h, h + 1)) {
+					items.set(slot, item);
+					sequences.set(slot, h + 1);
+					return true;
+				}
+			} else if(diff < 0) {
+				return false;
+			}
+			// otherwise another producer took the slot, retry
+		}
+	}
+	
+	/**
+	 * Adds an item, waiting for room if necessary.
+	 */
+	public void put(T item) {
+		int spins = 0;
+		while(! offer(item)) {
+			if(++spins > SPIN_COUNT) LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+	
+	/**
+	 * Removes the oldest item.
+	 * 
+	 * @return the item, or {@code null} if the queue is empty
+	 */
+	public T poll() {
+		while(true) {
+			long t = tail.get();
+			int slot = (int) t & mask;
+			long diff = sequences.get(slot) - (t + 1);
+			if(diff == 0) {
+				if(tail.compareAndSet(t, t + 1)) {
+					T item = items.get(slot);
+					items.set(slot, null);
+					sequences.set(slot, t + mask + 1);
+					return item;
+				}
+			} else if(diff < 0) {
+				return null;
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of items in the queue, which may be outdated as
+	 * soon as it is returned
+	 */
+	public int size() {
+		return (int) Math.max(head.get() - tail.get(), 0);
+	}
+	
+	public int capacity() {
+		return mask + 1;
+	}
+}
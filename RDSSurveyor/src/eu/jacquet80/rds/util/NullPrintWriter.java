@@ -0,0 +1,112 @@
+package eu.jacquet80.rds.util;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * A {@code PrintWriter} that discards everything. Unlike a writer to a null
+ * stream, it does not even format its arguments.
+ */
+public final class NullPrintWriter extends PrintWriter {
+	public final static NullPrintWriter INSTANCE = new NullPrintWriter();
+	
+	private NullPrintWriter() {
+		super(new Writer() {
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+			}
+			
+			@Override
+			public void flush() {
+			}
+			
+			@Override
+			public void close() {
+			}
+		});
+	}
+	
+	@Override
+	public void write(int c) {
+	}
+	
+	@Override
+	public void write(char[] buf, int off, int len) {
+	}
+	
+	@Override
+	public void write(char[] buf) {
+	}
+	
+	@Override
+	public void write(String s, int off, int len) {
+	}
+	
+	@Override
+	public void write(String s) {
+	}
+	
+	@Override
+	public void print(Object obj) {
+	}
+	
+	@Override
+	public void print(String s) {
+	}
+	
+	@Override
+	public void println() {
+	}
+	
+	@Override
+	public void println(Object x) {
+	}
+	
+	@Override
+	public void println(String x) {
+	}
+	
+	@Override
+	public PrintWriter format(String format, Object... args) {
+		return this;
+	}
+	
+	@Override
+	public PrintWriter format(Locale l, String format, Object... args) {
+		return this;
+	}
+	
+	@Override
+	public PrintWriter printf(String format, Object... args) {
+		return this;
+	}
+	
+	@Override
+	public PrintWriter printf(Locale l, String format, Object... args) {
+		return this;
+	}
+	
+	@Override
+	public PrintWriter append(CharSequence csq) {
+		return this;
+	}
+	
+	@Override
+	public PrintWriter append(CharSequence csq, int start, int end) {
+		return this;
+	}
+	
+	@Override
+	public PrintWriter append(char c) {
+		return this;
+	}
+	
+	@Override
+	public void flush() {
+	}
+	
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,71 @@
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.input.BinaryGroupLogReader;
+import eu.jacquet80.rds.input.BinaryGroupLogWriter;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.log.RealTime;
+
+class BinaryGroupLogTest {
+	private final static long START = 1714564800000L;
+	private final static int COUNT = 10000;
+	
+	private File writeLog() throws IOException {
+		File f = File.createTempFile("rdsgroups", ".bgl");
+		f.deleteOnExit();
+		BinaryGroupLogWriter writer = new BinaryGroupLogWriter(f);
+		writer.write(new FrequencyChangeEvent(new RealTime(new Date(START)), 97600));
+		for(int i=0; i<COUNT; i++) {
+			int[] blocks = {0xF202, i & 0xFFFF, 0xE0CD, i % 7 == 0 ? -1 : 0x4142};
+			writer.write(new GroupEvent(new RealTime(new Date(START + 100L * i)), blocks, false));
+			// flushing in the middle of a chunk must not lose anything
+			if(i == 5000) writer.flush();
+		}
+		writer.close();
+		return f;
+	}
+
+	@Test
+	void testRoundTrip() throws IOException, GroupReader.EndOfStream {
+		BinaryGroupLogReader reader = new BinaryGroupLogReader(writeLog());
+		assertEquals(COUNT + 1, reader.getRecordCount());
+		
+		GroupReaderEvent first = reader.getGroup();
+		assertTrue(first instanceof FrequencyChangeEvent);
+		assertEquals(97600, ((FrequencyChangeEvent) first).frequency);
+		
+		for(int i=0; i<COUNT; i++) {
+			GroupEvent g = (GroupEvent) reader.getGroup();
+			assertArrayEquals(new int[] {0xF202, i, 0xE0CD, i % 7 == 0 ? -1 : 0x4142}, g.blocks);
+			assertEquals(START + 100L * i, g.getTime().getRealTime(null, null).getTime());
+		}
+		reader.close();
+	}
+
+	@Test
+	void testSeek() throws IOException, GroupReader.EndOfStream {
+		BinaryGroupLogReader reader = new BinaryGroupLogReader(writeLog());
+		
+		reader.seek(new Date(START + 123456));
+		assertEquals(1235, ((GroupEvent) reader.getGroup()).blocks[1]);
+		
+		reader.seek(700000);
+		assertEquals(7000, ((GroupEvent) reader.getGroup()).blocks[1]);
+		
+		reader.seekToRecord(4097);
+		assertEquals(4096, ((GroupEvent) reader.getGroup()).blocks[1]);
+		reader.close();
+	}
+}
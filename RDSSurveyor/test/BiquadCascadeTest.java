@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import biz.source_code.dsp.filter.FilterCharacteristicsType;
+import biz.source_code.dsp.filter.FilterPassType;
+import biz.source_code.dsp.filter.IirFilterCoefficients;
+import biz.source_code.dsp.filter.IirFilterDesignFisher;
+import eu.jacquet80.rds.input.dsp.BiquadCascade;
+
+class BiquadCascadeTest {
+	// cutoff of the baseband filters of the demodulator, at a typical rate
+	private final static double FCF = 2000.0 / 28500;
+
+	private final static int IMPULSE_LEN = 8192;
+
+	/**
+	 * Magnitude response of a filter given by its impulse response.
+	 */
+	private static double magnitude(double[] h, double f) {
+		double re = 0, im = 0;
+		for(int n=0; n<h.length; n++) {
+			re += h[n] * Math.cos(2 * Math.PI * f * n);
+			im -= h[n] * Math.sin(2 * Math.PI * f * n);
+		}
+		return Math.hypot(re, im);
+	}
+
+	/**
+	 * Magnitude response of a filter given by its direct form coefficients.
+	 */
+	private static double magnitude(IirFilterCoefficients c, double f) {
+		double nre = 0, nim = 0, dre = 0, dim = 0;
+		for(int k=0; k<c.b.length; k++) {
+			nre += c.b[k] * Math.cos(2 * Math.PI * f * k);
+			nim -= c.b[k] * Math.sin(2 * Math.PI * f * k);
+		}
+		for(int k=0; k<c.a.length; k++) {
+			dre += c.a[k] * Math.cos(2 * Math.PI * f * k);
+			dim -= c.a[k] * Math.sin(2 * Math.PI * f * k);
+		}
+		return Math.hypot(nre, nim) / Math.hypot(dre, dim);
+	}
+
+	private static void checkOrder(int order) {
+		BiquadCascade filter = BiquadCascade.butterworthLowpass(order, FCF);
+		double[] h = new double[IMPULSE_LEN];
+		h[0] = filter.step(1);
+		for(int n=1; n<h.length; n++) h[n] = filter.step(0);
+
+		IirFilterCoefficients ref = IirFilterDesignFisher.design(FilterPassType.lowpass,
+				FilterCharacteristicsType.butterworth, order, 0, FCF, FCF);
+
+		for(double r : new double[] {0, 0.25, 0.5, 0.8, 1, 1.5, 3}) {
+			assertEquals(magnitude(ref, r * FCF), magnitude(h, r * FCF), 1e-3);
+		}
+		assertEquals(Math.sqrt(0.5), magnitude(h, FCF), 1e-3);
+	}
+
+	@Test
+	void testEvenOrder() {
+		checkOrder(4);
+	}
+
+	@Test
+	void testOddOrder() {
+		checkOrder(5);
+	}
+}
@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.core.BurstErrorCorrector;
+import eu.jacquet80.rds.core.RDS;
+
+class BurstErrorCorrectorTest {
+	// PI code F202 with offset word A
+	private final static int BLOCK = 0x3C80802;
+
+	@Test
+	void testValidBlock() {
+		assertEquals(RDS.calcSyndrome(BLOCK), RDS.syndromes[0][0]);
+	}
+
+	@Test
+	void testShiftSyndrome() {
+		int block = 0, synd = 0;
+		for(int i=25; i>=0; i--) {
+			boolean bit = ((BLOCK >> i) & 1) != 0;
+			synd = RDS.shiftSyndrome(synd, block, bit);
+			block = ((block << 1) & 0x3FFFFFF) | (bit ? 1 : 0);
+		}
+		assertEquals(synd, RDS.syndromes[0][0]);
+		assertEquals(RDS.calcSyndrome(~BLOCK), synd ^ RDS.SYNDROME_ALL_ONES);
+	}
+
+	@Test
+	void testCorrectBurst() {
+		BurstErrorCorrector corrector = new BurstErrorCorrector(5);
+		int error = 0x1D << 12;
+		int synd = RDS.calcSyndrome(BLOCK ^ error);
+		assertEquals(corrector.errorPattern(synd, RDS.syndromes[0][0]), error);
+		assertEquals(corrector.burstLength(synd, RDS.syndromes[0][0]), 5);
+	}
+
+	@Test
+	void testBurstTooLong() {
+		BurstErrorCorrector corrector = new BurstErrorCorrector(2);
+		int synd = RDS.calcSyndrome(BLOCK ^ (0x5 << 3));
+		assertEquals(corrector.errorPattern(synd, RDS.syndromes[0][0]), 0);
+	}
+}
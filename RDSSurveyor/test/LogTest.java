@@ -0,0 +1,191 @@
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
+import eu.jacquet80.rds.log.EndOfStream;
+import eu.jacquet80.rds.log.GroupReceived;
+import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.LogMessage;
+import eu.jacquet80.rds.log.MessageSubscription;
+import eu.jacquet80.rds.log.SequentialTime;
+
+class LogTest {
+	private final static int COUNT = 5 * Log.SEGMENT_SIZE + 100;
+	
+	private static void fill(Log log) {
+		for(int i=0; i<COUNT; i++) {
+			if(i % 1000 == 0) log.addMessage(new EndOfStream(new SequentialTime(i)));
+			else log.addMessage(new GroupReceived(new SequentialTime(i), 
+					new int[] {0xF202, i & 0xFFFF, -1, 0x4142}, 3, "analysis"));
+		}
+	}
+	
+	@Test
+	void testSpill() throws IOException {
+		File spill = File.createTempFile("rdslog", ".bgl");
+		spill.deleteOnExit();
+		Log log = new Log(100000, spill);
+		fill(log);
+		
+		assertEquals(COUNT, log.messageCount());
+		assertTrue(log.getMemoryUsed() <= 100000 + Log.SEGMENT_SIZE * 200);
+		for(int i=0; i<COUNT; i++) {
+			LogMessage m = log.getMessage(i);
+			if(i % 1000 == 0) {
+				assertTrue(m instanceof EndOfStream);
+			} else {
+				assertArrayEquals(new int[] {0xF202, i & 0xFFFF, -1, 0x4142}, ((GroupReceived) m).getBlocks());
+				assertEquals(3, ((GroupReceived) m).getNbOk());
+			}
+		}
+		log.close();
+	}
+	
+	@Test
+	void testConcurrentSpill() throws Exception {
+		File spill = File.createTempFile("rdslog", ".bgl");
+		spill.deleteOnExit();
+		final Log log = new Log(100000, spill);
+		final Throwable[] error = new Throwable[1];
+		// reads messages while segments are being spilled
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					while(log.messageCount() < COUNT) {
+						int n = log.messageCount();
+						for(int i=Math.max(0, n - 2 * Log.SEGMENT_SIZE); i<n; i++) {
+							LogMessage m = log.getMessage(i);
+							if(i % 1000 != 0) assertEquals(i & 0xFFFF, ((GroupReceived) m).getBlocks()[1]);
+						}
+					}
+				} catch(Throwable e) {
+					error[0] = e;
+				}
+			}
+		};
+		reader.start();
+		fill(log);
+		reader.join();
+		
+		assertNull(error[0]);
+		assertEquals(1, ((GroupReceived) log.getMessage(1)).getBlocks()[1]);
+		log.close();
+	}
+	
+	@Test
+	void testEvict() {
+		Log log = new Log(0, null);
+		fill(log);
+		
+		assertEquals(COUNT, log.messageCount());
+		assertNull(log.getMessage(1));
+		assertTrue(log.getMessage(1000) instanceof EndOfStream);
+		assertEquals(COUNT - 1, ((GroupReceived) log.getMessage(COUNT - 1)).getBlocks()[1]);
+	}
+	
+	@Test
+	void testListeners() throws InterruptedException {
+		Log log = new Log(0, null);
+		final int[] blocking = new int[2];
+		final int[] dropping = new int[1];
+		MessageSubscription block = log.addNewMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				// groups must arrive in order
+				assertEquals(blocking[0]++ & 0xFFFF, groupReceived.getBlocks()[1]);
+			}
+			
+			@Override
+			public void visit(EndOfStream endOfStream) {
+				blocking[0]++;
+				blocking[1]++;
+			}
+		});
+		MessageSubscription coalesce = log.addNewMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				try {
+					Thread.sleep(1);
+				} catch(InterruptedException e) {}
+			}
+			
+			@Override
+			public void visit(EndOfStream endOfStream) {
+				dropping[0]++;
+			}
+		}, MessageSubscription.Policy.COALESCE);
+		fill(log);
+		log.awaitListeners();
+		
+		assertEquals(COUNT, blocking[0]);
+		assertEquals(0, block.getLag());
+		assertEquals(0, block.getDropped());
+		
+		// the slow listener misses groups, but no other message
+		int ends = (COUNT + 999) / 1000;
+		assertEquals(ends, blocking[1]);
+		assertEquals(ends, dropping[0]);
+		assertTrue(coalesce.getDropped() > 0);
+		assertEquals(COUNT, coalesce.getDelivered() + coalesce.getDropped());
+		assertTrue(coalesce.getMaxLag() >= MessageSubscription.QUEUE_CAPACITY - 1);
+	}
+	
+	@Test
+	void testDeadListener() throws InterruptedException {
+		Log log = new Log(0, null);
+		final int[] visited = new int[1];
+		MessageSubscription block = log.addNewMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				// kills the thread of the listener
+				if(++visited[0] == 10) throw new Error("listener died");
+			}
+		});
+		fill(log);
+		log.awaitListeners();
+		
+		// the messages that the listener will never see are counted as dropped
+		assertEquals(0, block.getLag());
+		assertEquals(COUNT, block.getDelivered() + block.getDropped());
+		assertTrue(block.getDropped() > 0);
+	}
+	
+	@Test
+	void testIndexes() {
+		Log log = new Log(0, null);
+		fill(log);
+		// a second stream, whose times go backwards
+		for(int i=0; i<1000; i++) {
+			log.addMessage(new GroupReceived(new SequentialTime(i), new int[] {0xF203, 0, 0, 0}, 4, ""));
+		}
+		
+		assertEquals(5000, log.indexAt(new SequentialTime(5000)));
+		assertEquals(0, log.indexAt(new SequentialTime(0)));
+		assertEquals(log.messageCount(), log.indexAt(new SequentialTime(COUNT + 10)));
+		
+		// the timeline goes on after the time jumps backwards
+		long end = log.getElapsed(COUNT - 1);
+		assertEquals(end, log.getElapsed(COUNT));
+		assertEquals(end + 421, log.getElapsed(COUNT + 500));
+		assertEquals(COUNT + 2, log.indexAtElapsed(end + 1));
+		
+		assertArrayEquals(new int[] {1000, 2000}, log.getIndices(EndOfStream.class, 1, 2001));
+		assertEquals(2000, log.previousIndex(EndOfStream.class, 2500));
+		assertEquals(3000, log.nextIndex(EndOfStream.class, 2001));
+		
+		assertEquals(2, log.getPIs().size());
+		assertEquals(1, log.getRanges(0xF202, 0, COUNT).size());
+		assertEquals(COUNT, log.getRanges(0xF202, 0, COUNT).get(0).getEnd());
+		assertEquals(0, log.getRanges(0xF203, 0, COUNT).size());
+		assertEquals(COUNT, log.getRanges(0xF203, 0, COUNT + 1).get(0).getStart());
+	}
+}
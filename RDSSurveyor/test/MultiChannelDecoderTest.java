@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.MultiChannelDecoder;
+import eu.jacquet80.rds.core.MultiChannelDecoder.SampleFormat;
+import eu.jacquet80.rds.input.HexFileGroupReader;
+import eu.jacquet80.rds.input.SyntheticBitReader;
+import eu.jacquet80.rds.input.dsp.FmDiscriminator;
+import eu.jacquet80.rds.input.dsp.RdsModulator;
+import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
+import eu.jacquet80.rds.log.GroupReceived;
+import eu.jacquet80.rds.log.MessageSubscription;
+
+class MultiChannelDecoderTest {
+	private final static int RATE = 240000;
+	private final static int FREQUENCY = 100000;
+
+	/**
+	 * An FM station at the center of the band, which only broadcasts RDS,
+	 * as signed 16-bit I/Q samples.
+	 */
+	private static class FmSignal extends InputStream {
+		private final SyntheticBitReader bits;
+		private final RdsModulator modulator = new RdsModulator(RATE);
+		private final double[] mpx = new double[4096];
+		private final byte[] buffer = new byte[4 * mpx.length];
+		private int pos = 0, len = 0;
+		private double phase = 0;
+
+		FmSignal(int nbGroups) {
+			StringBuilder sb = new StringBuilder();
+			for(int i=0; i<nbGroups; i++) {
+				sb.append(String.format("F202 %04X E0CD %04X\n", 0x0400 | (i & 3), 0x4141 + (i & 3)));
+			}
+			bits = new SyntheticBitReader(new HexFileGroupReader(new BufferedReader(new StringReader(sb.toString()))));
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(pos == len && !fill()) return -1;
+			return buffer[pos++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int n) throws IOException {
+			if(pos == len && !fill()) return -1;
+			n = Math.min(n, len - pos);
+			System.arraycopy(buffer, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		private boolean fill() throws IOException {
+			int n = modulator.modulate(bits, mpx, 0, mpx.length);
+			for(int i=0; i<n; i++) {
+				phase += 2 * Math.PI * FmDiscriminator.DEVIATION * mpx[i] / RATE;
+				short re = (short) (16000 * Math.cos(phase));
+				short im = (short) (16000 * Math.sin(phase));
+				buffer[4*i] = (byte) re;
+				buffer[4*i + 1] = (byte) (re >> 8);
+				buffer[4*i + 2] = (byte) im;
+				buffer[4*i + 3] = (byte) (im >> 8);
+			}
+			pos = 0;
+			len = 4 * n;
+			return n > 0;
+		}
+	}
+
+	@Test
+	void testFailingChannel() throws Exception {
+		final MultiChannelDecoder decoder = new MultiChannelDecoder(RATE, FREQUENCY, new int[] {FREQUENCY});
+		final RuntimeException injected = new RuntimeException("injected");
+		decoder.getLog(FREQUENCY).addNewMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				throw injected;
+			}
+		}, MessageSubscription.Policy.SYNCHRONOUS);
+
+		final File outDir = File.createTempFile("multichannel", "");
+		outDir.delete();
+		outDir.mkdir();
+		final Throwable[] thrown = new Throwable[1];
+		// many more bits than the bit queue holds, so that the demodulator
+		// would wait forever for the failed channel to read them
+		Thread t = new Thread() {
+			public void run() {
+				try {
+					decoder.decode(new FmSignal(150), SampleFormat.S16, outDir, 2, RDSSurveyor.nullConsole);
+				} catch(Throwable e) {
+					thrown[0] = e;
+				}
+			}
+		};
+		t.start();
+		t.join(60000);
+		for(File f : outDir.listFiles()) f.delete();
+		outDir.delete();
+
+		assertTrue(! t.isAlive());
+		assertTrue(thrown[0] instanceof IOException);
+		assertEquals(injected, thrown[0].getCause());
+	}
+}
@@ -0,0 +1,126 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.BitStreamSynchronizer;
+import eu.jacquet80.rds.core.RDS;
+import eu.jacquet80.rds.input.AudioBitReader;
+import eu.jacquet80.rds.input.BitReader;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.HexFileGroupReader;
+import eu.jacquet80.rds.input.SyntheticBitReader;
+import eu.jacquet80.rds.input.dsp.RdsModulator;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+class SyntheticSignalTest {
+	// PS "TEST" of PI F202, and a 2B group
+	private final static int[][] GROUPS = {
+		{0xF202, 0x0400, 0xE0CD, 0x5445}, {0xF202, 0x0401, 0xE0CD, 0x5354}, {0xF202, 0x2800, 0xF202, 0x4142},
+	};
+	
+	private final static PrintStream console = RDSSurveyor.nullConsole;
+	
+	private static SyntheticBitReader encode(int nbGroups) {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<nbGroups; i++) {
+			int[] g = GROUPS[i % GROUPS.length];
+			sb.append(String.format("%04X %04X %04X %04X\n", g[0], g[1], g[2], g[3]));
+		}
+		return new SyntheticBitReader(new HexFileGroupReader(new BufferedReader(new StringReader(sb.toString()))));
+	}
+	
+	/**
+	 * Reads groups until the end of the stream, and returns the number of
+	 * groups equal to those which were encoded.
+	 */
+	private static int decode(BitReader reader) throws IOException {
+		BitStreamSynchronizer sync = new BitStreamSynchronizer(console, reader);
+		int ok = 0;
+		try {
+			while(true) {
+				GroupReaderEvent evt = sync.getGroup();
+				if(! (evt instanceof GroupEvent)) continue;
+				int[] blocks = ((GroupEvent) evt).blocks;
+				for(int[] g : GROUPS) {
+					if(Arrays.equals(g, blocks)) ok++;
+				}
+			}
+		} catch(EndOfStream e) {
+			// the synchronizer must stay at the end of the stream
+			boolean again = false;
+			try {
+				sync.getGroup();
+			} catch(EndOfStream e2) {
+				again = true;
+			}
+			assertTrue(again);
+			return ok;
+		}
+	}
+	
+	@Test
+	void testEncodeBlock() {
+		for(int i=0; i<4; i++) {
+			for(int v=0; v<2; v++) {
+				assertEquals(RDS.syndromes[i][v], RDS.calcSyndrome(RDS.encodeBlock(0x1234, i, v)));
+			}
+		}
+	}
+	
+	@Test
+	void testBitStream() throws IOException {
+		SyntheticBitReader reader = encode(60);
+		reader.setInverted(true);
+		long[] bits = new long[1];
+		int first = reader.readBits(bits, 26);
+		assertEquals(26, first);
+		// block A of the first group, inverted
+		assertEquals(~RDS.encodeBlock(0xF202, 0, 0) & 0x3FFFFFF, (int) (bits[0] >>> 38));
+		
+		// the synchronizer needs a few groups to acquire synchronization
+		int ok = decode(reader);
+		assertTrue(ok > 50);
+		assertEquals(60 * 104, reader.getBitCount());
+	}
+	
+	@Test
+	void testErrors() throws IOException {
+		SyntheticBitReader reader = encode(200);
+		reader.setSeed(1);
+		reader.setBitErrorRate(0.002);
+		reader.setBurstErrors(0.001, 5);
+		int ok = decode(reader);
+		assertTrue(reader.getErrorCount() > 0);
+		assertTrue(ok > 100 && ok < 200);
+	}
+	
+	@Test
+	void testMpx() throws IOException {
+		final int sampleRate = 228000;
+		SyntheticBitReader bits = encode(30);
+		RdsModulator modulator = new RdsModulator(sampleRate);
+		modulator.setNoiseLevel(0.01);
+		AudioBitReader reader = new AudioBitReader(sampleRate);
+		double[] samples = new double[4096];
+		int n;
+		int total = 0;
+		while((n = modulator.modulate(bits, samples, 0, samples.length)) > 0) {
+			reader.process(samples, 0, n);
+			total += n;
+		}
+		reader.endOfStream();
+		assertEquals(30 * 104 * sampleRate / RDS.RDS_BITRATE, total, 1);
+		
+		int ok = decode(reader);
+		assertTrue(ok > 20);
+	}
+}
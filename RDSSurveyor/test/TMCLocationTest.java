@@ -0,0 +1,182 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.app.oda.tmc.LocationTableCompiler;
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.app.oda.tmc.TMCPoint;
+import eu.jacquet80.rds.app.oda.tmc.TMCPointIndex;
+
+class TMCLocationTest {
+	private static final String[] DATA = {
+		"insert into Countries values (58, 'E0', 'D', 'Germany')",
+		"insert into LocationDataSets values (58, 1, '', '1.0', '')",
+		"insert into TabcdAliases values (58, 9, 1)",
+		"insert into Names (CID, LID, NID, NAME) values (58, 1, 1, 'Berlin')",
+		"insert into Names (CID, LID, NID, NAME) values (58, 1, 2, 'Potsdam')",
+		"insert into Names (CID, LID, NID, NAME) values (58, 1, 3, 'Werder')",
+		"insert into Names (CID, LID, NID, NAME) values (58, 1, 4, 'Ring')",
+		"insert into AdministrativeAreas values (58, 1, 101, 'A', 10, 0, 1, 100)",
+		"insert into AdministrativeAreas values (58, 1, 100, 'A', 3, 0, null, null)",
+		"insert into Roads (CID, TABCD, LCD, CLASS, TCD, STCD, ROADNUMBER, RNID, POL_LCD) values (58, 1, 200, 'L', 1, 1, 'A10', 4, 100)",
+		"insert into Segments (CID, TABCD, LCD, CLASS, TCD, STCD, ROADNUMBER, ROA_LCD, POL_LCD) values (58, 1, 300, 'L', 3, 0, 'A10', 200, 100)",
+		"insert into Points (CID, TABCD, LCD, CLASS, TCD, STCD, N1ID, POL_LCD, SEG_LCD, ROA_LCD, XCOORD, YCOORD, URBAN) values (58, 1, 400, 'P', 1, 1, 1, 101, 300, 200, 13.4, 52.5, false)",
+		"insert into Points (CID, TABCD, LCD, CLASS, TCD, STCD, N1ID, POL_LCD, SEG_LCD, ROA_LCD, XCOORD, YCOORD, URBAN) values (58, 1, 401, 'P', 1, 1, 2, 101, 300, 200, 13.1, 52.4, false)",
+		"insert into Points (CID, TABCD, LCD, CLASS, TCD, STCD, N1ID, POL_LCD, SEG_LCD, ROA_LCD, XCOORD, YCOORD, URBAN) values (58, 1, 402, 'P', 1, 1, 3, 101, 300, 200, 12.9, 52.4, false)",
+		"insert into Poffsets values (58, 1, 400, null, 401)",
+		"insert into Poffsets values (58, 1, 401, 400, 402)",
+		"insert into Poffsets values (58, 1, 402, 401, null)",
+	};
+
+	/** The same location table, in exchange format */
+	private static final String[][] FILES = {
+		{"COUNTRIES.DAT", "CID;ECC;CCD;CNAME", "58;E0;D;Germany"},
+		{"LOCATIONDATASETS.DAT", "CID;TABCD;DCOMMENT;VERSION;VERSIONDESCRIPTION", "58;1;;1.0;"},
+		{"TABCDALIASES.DAT", "CID;ALIAS;TABCD", "58;9;1"},
+		{"NAMES.DAT", "CID;LID;NID;NAME;NCOMMENT;OFFICIALNAME",
+			"58;1;1;Berlin;;", "58;1;2;Potsdam;;", "58;1;2;Potsdam;duplicate;", "58;1;3;Werder;;", "58;1;4;Ring;;"},
+		{"ADMINISTRATIVEAREA.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;NID;POL_LCD",
+			"58;1;101;A;10;0;1;100", "58;1;100;A;3;0;;"},
+		{"ROADS.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;ROADNUMBER;RNID;N1ID;N2ID;POL_LCD;PES_LEV;RDID",
+			"58;1;200;L;1;1;A10;4;;;100;;"},
+		{"SEGMENTS.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;ROADNUMBER;RNID;N1ID;N2ID;ROA_LCD;SEG_LCD;POL_LCD;RDID",
+			"58;1;300;L;3;0;A10;;;;200;;100;"},
+		{"POINTS.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;JUNCTIONNUMBER;RNID;N1ID;N2ID;POL_LCD;OTH_LCD;SEG_LCD;ROA_LCD;"
+				+ "INPOS;INNEG;OUTPOS;OUTNEG;PRESENTPOS;PRESENTNEG;DIVERSIONPOS;DIVERSIONNEG;XCOORD;YCOORD;INTERRUPTSROAD;URBAN;JNID",
+			"58;1;400;P;1;1;;;1;;101;;300;200;;;;;;;;;+1340000;+5250000;;0;",
+			"58;1;401;P;1;1;;;2;;101;;300;200;;;;;;;;;+1310000;+5240000;;0;",
+			"58;1;402;P;1;1;;;3;;101;;300;200;;;;;;;;;+1290000;+5240000;;0;"},
+		{"POFFSETS.DAT", "CID;TABCD;LCD;NEG_OFF_LCD;POS_OFF_LCD",
+			"58;1;400;;401", "58;1;401;400;402", "58;1;402;401;"},
+	};
+
+	private static void open(String name) throws SQLException {
+		String url = "jdbc:hsqldb:mem:" + name;
+		TMC.setDbUrl(url);
+		Connection c = DriverManager.getConnection(url);
+		Statement stmt = c.createStatement();
+		for (String sql : DATA)
+			stmt.execute(sql);
+		c.commit();
+		c.close();
+	}
+
+	private static void checkLocations() {
+		TMCPoint p = TMC.getPoint(58, 1, 401);
+		assertEquals("Potsdam", p.name1.name);
+		assertEquals("Berlin", p.getAreaName());
+		assertEquals("A10", p.road.roadNumber);
+		assertEquals("Ring", p.road.roadName.name);
+		assertEquals(402, p.getPosOffset().lcd);
+		assertEquals(400, p.getNegOffset().lcd);
+		assertEquals(52.4f, p.yCoord, 1e-4);
+
+		// alias of the location table
+		assertEquals(401, TMC.getLocation(58, 9, 401).lcd);
+		assertEquals(400, TMC.getFirstPoint(58, 1, 200).lcd);
+		assertEquals(402, TMC.getLastPoint(58, 1, 300).lcd);
+		assertNull(TMC.getLocation(58, 1, 999));
+	}
+
+	private static void checkPointIndex() {
+		TMCPointIndex index = new TMCPointIndex();
+		assertEquals(3, index.addLocationTable(58, 9));
+		assertEquals(401, index.getNearestPoint(13.15f, 52.41f, 10).lcd);
+		assertNull(index.getNearestPoint(14.0f, 52.41f, 10));
+		assertEquals(2, index.getPoints(12.8f, 52.3f, 13.2f, 52.45f).size());
+	}
+
+	@Test
+	void testLookup() throws SQLException {
+		open("tmcLookup");
+		checkLocations();
+		checkPointIndex();
+	}
+
+	/**
+	 * Writes the location table in exchange format to a new temporary directory.
+	 */
+	private static File writeFiles() throws IOException {
+		File dir = File.createTempFile("ltdir", "");
+		dir.delete();
+		dir.mkdir();
+		for (String[] file : FILES) {
+			Writer w = new OutputStreamWriter(new FileOutputStream(new File(dir, file[0])), "ISO-8859-1");
+			for (int i = 1; i < file.length; i++)
+				w.write(file[i] + "\r\n");
+			w.close();
+		}
+		return dir;
+	}
+
+	private static void delete(File dir) {
+		for (File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	@Test
+	void testImport() throws IOException {
+		File dir = writeFiles();
+		TMC.setImportBatchSize(2);
+		try {
+			TMC.setDbUrl("jdbc:hsqldb:mem:tmcImport");
+			TMC.readLocationTables(dir);
+			checkLocations();
+			assertEquals("", TMC.getName(58, 1, 2).nameComment);
+		} finally {
+			TMC.setImportBatchSize(1000);
+			TMC.setDbUrl("jdbc:hsqldb:mem:.");
+			delete(dir);
+		}
+	}
+
+	@Test
+	void testCompiled() throws IOException {
+		File dir = writeFiles();
+		File out = new File(dir, "lt.bin");
+		try {
+			LocationTableCompiler.compile(dir, out);
+			TMC.setDbUrl("ltc:" + out.getPath());
+			checkLocations();
+			checkPointIndex();
+			assertEquals("D", TMC.getCountry("D", 9).ccd);
+			assertEquals(0, TMC.preload(58, 1));
+		} finally {
+			TMC.setDbUrl("jdbc:hsqldb:mem:.");
+			delete(dir);
+		}
+	}
+
+	@Test
+	void testEviction() throws SQLException {
+		TMC.setCacheSize(2);
+		try {
+			open("tmcEviction");
+			checkLocations();
+			checkLocations();
+		} finally {
+			TMC.setCacheSize(100000);
+		}
+	}
+
+	@Test
+	void testPreload() throws SQLException {
+		open("tmcPreload");
+		assertEquals(7, TMC.preload(58, 9));
+		assertTrue(TMC.getLocation(58, 1, 100) != null);
+		checkLocations();
+	}
+}